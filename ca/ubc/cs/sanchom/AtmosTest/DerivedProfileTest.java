@@ -0,0 +1,118 @@
+package ca.ubc.cs.sanchom.AtmosTest;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import ca.ubc.cs.sanchom.AtmosView.DerivedPoint;
+import ca.ubc.cs.sanchom.AtmosView.DerivedProfile;
+
+/**
+ * @author Sancho McCann
+ *
+ */
+public class DerivedProfileTest {
+
+	private static DerivedProfile profile() {
+		DerivedProfile profile = new DerivedProfile(17, 10, 2);
+		for (int i = 0; i < 5; i++)
+		{
+			int index = profile.append(1000 - i * 10, 15 - i, 15 - i * 2, 200 + i, 10 + i);
+			if (i >= 2)
+			{
+				profile.setLiftedParcelTemp(index, 15 - i * 0.5);
+			}
+		}
+		return profile;
+	}
+
+	/**
+	 * Test method for {@link DerivedProfile#append(double, double, double, double, double)}.
+	 */
+	@Test
+	public void testDerivation() {
+		DerivedProfile profile = profile();
+		assertEquals(5, profile.size());
+		for (int i = 0; i < profile.size(); i++)
+		{
+			// The columns must agree exactly with a DerivedPoint's own derivation
+			DerivedPoint expected = new DerivedPoint(17 + i * 10, 1000 - i * 10, 15 - i, 15 - i * 2, 200 + i, 10 + i);
+			expected.setLiftedParcelTemp(i >= 2 ? 15 - i * 0.5 : Double.NaN);
+
+			assertEquals(expected.getSampleHeight(), profile.getSampleHeight(i), 0);
+			assertEquals(expected.getSpread(), profile.getSpread(i), 0);
+			assertEquals(expected.getRelativeHumidity(), profile.getRelativeHumidity(i), 0);
+			assertEquals(expected.getVapourPressure(), profile.getVapourPressure(i), 0);
+			assertEquals(expected.getMixingRatio(), profile.getMixingRatio(i), 0);
+			assertEquals(expected.isStratusCloud(), profile.isStratusCloud(i));
+			assertEquals(expected.getLiftedParcelTemp(), profile.getLiftedParcelTemp(i), 0);
+			assertEquals(expected.getLiftedDiff(), profile.getLiftedDiff(i), 0);
+			assertEquals(expected.toString(), profile.get(i).toString());
+		}
+		assertTrue(profile.isStratusCloud(0));
+		assertFalse(profile.isStratusCloud(4));
+	}
+
+	/**
+	 * Test method for {@link DerivedProfile.Cursor}.
+	 */
+	@Test
+	public void testCursor() {
+		DerivedProfile profile = profile();
+		DerivedProfile.Cursor cursor = profile.cursor();
+		for (int i = profile.size() - 1; i >= 0; i--)
+		{
+			assertSame(cursor, cursor.moveTo(i));
+			assertEquals(i, cursor.getIndex());
+			assertEquals(profile.getSampleHeight(i), cursor.getSampleHeight(), 0);
+			assertEquals(profile.getPressure(i), cursor.getPressure(), 0);
+			assertEquals(profile.getDewpoint(i), cursor.getDewpoint(), 0);
+			assertEquals(profile.getSpeed(i), cursor.getSpeed(), 0);
+			assertEquals(profile.getMixingRatio(i), cursor.getMixingRatio(), 0);
+			assertEquals(profile.getLiftedDiff(i), cursor.getLiftedDiff(), 0);
+		}
+		try
+		{
+			cursor.moveTo(profile.size());
+			fail();
+		}
+		catch (IndexOutOfBoundsException e)
+		{
+		}
+	}
+
+	/**
+	 * Test method for {@link DerivedProfile#indexOfHeight(double)} and {@link DerivedProfile#indexOfPressureLevel(double)}.
+	 */
+	@Test
+	public void testSearch() {
+		DerivedProfile profile = profile();
+		assertEquals(0, profile.indexOfHeight(0));
+		assertEquals(1, profile.indexOfHeight(30));
+		assertEquals(2, profile.indexOfHeight(37));
+		assertEquals(0, profile.indexOfPressureLevel(1005));
+		assertEquals(2, profile.indexOfPressureLevel(975));
+		assertEquals(3, profile.indexOfPressureLevel(900));
+	}
+
+	/**
+	 * Test method for {@link DerivedProfile#asList()}.
+	 */
+	@Test
+	public void testAsList() {
+		DerivedProfile profile = profile();
+		List<DerivedPoint> list = profile.asList();
+		assertEquals(5, list.size());
+		assertEquals(profile.getTemperature(3), list.get(3).getTemperature(), 0);
+		try
+		{
+			list.add(list.get(0));
+			fail();
+		}
+		catch (UnsupportedOperationException e)
+		{
+		}
+	}
+}
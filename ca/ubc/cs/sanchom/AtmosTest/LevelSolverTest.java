@@ -0,0 +1,187 @@
+package ca.ubc.cs.sanchom.AtmosTest;
+
+import static org.junit.Assert.*;
+
+import java.util.GregorianCalendar;
+
+import org.junit.Test;
+
+import ca.ubc.cs.sanchom.AtmosView.DerivedData;
+import ca.ubc.cs.sanchom.AtmosView.LevelSolver;
+import ca.ubc.cs.sanchom.AtmosView.SoundingData;
+import ca.ubc.cs.sanchom.AtmosView.SoundingSnapshot;
+
+/**
+ * @author Sancho McCann
+ *
+ */
+public class LevelSolverTest {
+
+	/**
+	 * A summer afternoon sounding: warm and humid at the surface, cooling at 7.5 degrees
+	 * per kilometre to the tropopause, with an inversion capping the boundary layer.
+	 */
+	private static SoundingSnapshot convective() {
+		SoundingData data = new SoundingData(new GregorianCalendar(2006,6,1,0,0));
+		double[] metres =      {  300,  800, 1200, 1500, 2000, 3000, 4500, 6000, 8000, 10000, 12000, 13000 };
+		double[] temperature = {   30,   25, 21.5, 22.5,   19, 11.5,  0.3,-10.9,-25.9, -40.9, -55.9, -56 };
+		double[] dewpoint =    {   22,   20,   17,    5,    2,   -5,  -15,  -25,  -40,   -55,   -70, -70 };
+		double pressure = 980;
+		for (int i = 0; i < metres.length; i++)
+		{
+			if (i > 0)
+			{
+				// Hydrostatic with a scale height of 8 km
+				pressure *= Math.exp(-(metres[i] - metres[i - 1]) / 8000);
+			}
+			data.add(pressure, metres[i], temperature[i], dewpoint[i], 200, 10);
+		}
+		return data.snapshot();
+	}
+
+	/**
+	 * Test method for {@link LevelSolver#getLclTemperature(double, double)}.
+	 */
+	@Test
+	public void testBolton() {
+		// Bolton's equation 15 for T = 30C, Td = 20C
+		assertEquals(17.67, LevelSolver.getLclTemperature(30, 20), 0.01);
+		// A saturated parcel is at its LCL
+		assertEquals(15, LevelSolver.getLclTemperature(15, 15), 1e-9);
+		// The dry adiabat through the LCL returns the parcel's temperature
+		double p = LevelSolver.getDryAdiabaticPressure(1000, 30, 17.67);
+		assertEquals(17.67, DerivedData.getDryAdiabaticCooledTemperature(1000, 30, p), 1e-9);
+	}
+
+	/**
+	 * Test method for {@link LevelSolver#getDewpoint(double)}.
+	 */
+	@Test
+	public void testDewpoint() {
+		for (double t = -40; t <= 40; t += 5)
+		{
+			assertEquals(t, LevelSolver.getDewpoint(DerivedData.getVapourPressure(t)), 1e-9);
+		}
+	}
+
+	/**
+	 * Test method for {@link LevelSolver#getMoistAdiabaticTemperature(double, double, double)}.
+	 */
+	@Test
+	public void testMoistAdiabat() {
+		double reference = 20;
+		for (double p = 1000; p > 500; p -= 0.5)
+		{
+			reference = LevelSolver.getMoistAdiabaticTemperature(p, reference, p - 0.5);
+		}
+		double t = LevelSolver.getMoistAdiabaticTemperature(1000, 20, 500);
+		assertEquals(reference, t, 0.01);
+		// Cools more slowly than a dry parcel
+		assertTrue(t > DerivedData.getDryAdiabaticCooledTemperature(1000, 20, 500));
+		assertTrue(t < 20);
+	}
+
+	/**
+	 * Test method for {@link LevelSolver#getCCL(double)}.
+	 */
+	@Test
+	public void testCCL() {
+		LevelSolver solver = new LevelSolver(convective());
+		double vapourPressure = DerivedData.getVapourPressure(19);
+		double ccl = solver.getCCL(vapourPressure);
+		assertEquals(2000, ccl, 1e-6);
+		assertEquals(19, solver.getTemperature(ccl), 1e-9);
+
+		vapourPressure = DerivedData.getVapourPressure(0);
+		ccl = solver.getCCL(vapourPressure);
+		assertEquals(4500 + 1500 * 0.3 / 11.2, ccl, 1e-6);
+
+		// Saturated at the surface
+		assertEquals(300, solver.getCCL(DerivedData.getVapourPressure(35)), 0);
+		// Never that cold
+		assertTrue(Double.isNaN(solver.getCCL(DerivedData.getVapourPressure(-80))));
+	}
+
+	/**
+	 * Test method for {@link LevelSolver.Parcel}, against marching up the sounding a metre at a time.
+	 */
+	@Test
+	public void testParcel() {
+		LevelSolver solver = new LevelSolver(convective());
+		LevelSolver.Parcel parcel = solver.lift(solver.getPressure(300), 30, 22);
+
+		assertEquals(solver.getPressure(parcel.getLclHeight()), parcel.getLclPressure(), 1e-6);
+		assertEquals(parcel.getLclTemperature(), parcel.getTemperature(parcel.getLclPressure()), 1e-9);
+		assertTrue(parcel.getLclHeight() > 1000 && parcel.getLclHeight() < 1500);
+
+		double lfc = Double.NaN;
+		double el = Double.NaN;
+		double cape = 0;
+		for (double h = parcel.getLclHeight(); h < 13000 && Double.isNaN(el); h += 1)
+		{
+			double b = parcel.getBuoyancy(h);
+			if (Double.isNaN(lfc) && b > 0)
+			{
+				lfc = h;
+			}
+			if (!Double.isNaN(lfc))
+			{
+				if (b <= 0)
+				{
+					el = h;
+				}
+				else
+				{
+					double environment = DerivedData.toKelvin(solver.getTemperature(h));
+					cape += 9.8 * b / environment;
+				}
+			}
+		}
+
+		// The cap holds the parcel back until above the inversion
+		assertTrue(lfc > 1500);
+		assertEquals(lfc, parcel.getLFC(), 1);
+		assertEquals(el, parcel.getEL(), 1);
+		assertTrue(cape > 500);
+		assertEquals(cape, parcel.getCAPE(), cape * 0.005);
+	}
+
+	/**
+	 * Test method for {@link LevelSolver.Parcel} saturated at the bottom of the sounding.
+	 */
+	@Test
+	public void testSaturatedSurface() {
+		LevelSolver solver = new LevelSolver(convective());
+		double surface = solver.getPressure(300);
+		for (double t = -30; t <= 35; t += 0.37)
+		{
+			LevelSolver.Parcel parcel = solver.lift(surface, t, t);
+			assertEquals("T = " + t, 300, parcel.getLclHeight(), 1e-6);
+			assertEquals(surface, parcel.getLclPressure(), 1e-9);
+			assertEquals(t, parcel.getLclTemperature(), 1e-9);
+		}
+
+		// Warm and saturated at the surface, so buoyant from the start
+		LevelSolver.Parcel parcel = solver.lift(surface, 30, 30);
+		assertEquals(300, parcel.getLFC(), 1e-6);
+		assertTrue(parcel.getCAPE() > 0);
+	}
+
+	/**
+	 * Test method for {@link LevelSolver.Parcel} when the parcel never becomes buoyant.
+	 */
+	@Test
+	public void testStable() {
+		LevelSolver solver = new LevelSolver(convective());
+		LevelSolver.Parcel parcel = solver.lift(solver.getPressure(300), 20, 0);
+		assertFalse(Double.isNaN(parcel.getLclHeight()));
+		assertTrue(Double.isNaN(parcel.getLFC()));
+		assertTrue(Double.isNaN(parcel.getEL()));
+		assertEquals(0, parcel.getCAPE(), 0);
+
+		// Too dry to saturate within the sounding
+		parcel = solver.lift(solver.getPressure(300), 30, -90);
+		assertTrue(Double.isNaN(parcel.getLclHeight()));
+		assertEquals(DerivedData.getDryAdiabaticCooledTemperature(solver.getPressure(300), 30, 500), parcel.getTemperature(500), 0);
+	}
+}
@@ -0,0 +1,84 @@
+package ca.ubc.cs.sanchom.AtmosTest;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import ca.ubc.cs.sanchom.AtmosView.MappedSoundingCSVParser;
+import ca.ubc.cs.sanchom.AtmosView.SoundingCSVParser;
+import ca.ubc.cs.sanchom.AtmosView.SoundingColumns;
+import ca.ubc.cs.sanchom.AtmosView.SoundingData;
+
+/**
+ * @author Sancho McCann
+ *
+ */
+public class MappedSoundingCSVParserTest {
+
+	private File csv = null;
+
+	@Before
+	public void setUp() throws Exception {
+		csv = File.createTempFile("sounding", ".csv");
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		csv.delete();
+	}
+
+	private void write(String contents) throws IOException {
+		FileWriter out = new FileWriter(csv);
+		out.write(contents);
+		out.close();
+	}
+
+	/**
+	 * Test method for {@link MappedSoundingCSVParser#parse(java.io.File)}.
+	 */
+	@Test
+	public void testMatchesSoundingCSVParser() throws IOException {
+		write("1000,110,12.4,8.1\n925.5,790,7.0,-1.25\r\n850,1500,2.2e0,-4\n700,3050,-6.3,-19.3");
+
+		SoundingData expected = SoundingCSVParser.getSounding(csv);
+		MappedSoundingCSVParser.Result result = MappedSoundingCSVParser.parse(csv);
+		SoundingColumns columns = result.getColumns();
+
+		assertEquals(0, result.getRejectedLines());
+		assertEquals(expected.size(), columns.size());
+		for (int i = 0; i < columns.size(); i++)
+		{
+			assertEquals(expected.get(i).getMillibars(), columns.getMillibars(i), 0);
+			assertEquals(expected.get(i).getMetres(), columns.getMetres(i), 0);
+			assertEquals(expected.get(i).getTemperature(), columns.getTemperature(i), 0);
+			assertEquals(expected.get(i).getDewpoint(), columns.getDewpoint(i), 0);
+		}
+	}
+
+	/**
+	 * Test method for {@link MappedSoundingCSVParser#parse(java.io.File)}.
+	 */
+	@Test
+	public void testRejectedLines() throws IOException {
+		write("pressure,height,temperature,dewpoint\n1000,110,12.4,8.1\n\n850,1500,bad,-4\n700,3050,-6.3\n500,5600,-20,-30\n");
+
+		MappedSoundingCSVParser.Result result = MappedSoundingCSVParser.parse(csv);
+
+		assertEquals(2, result.getColumns().size());
+		assertEquals(3, result.getRejectedLines());
+		assertEquals(1, result.getFirstRejectedLine());
+	}
+
+	@Test
+	public void testEmptyFile() throws IOException {
+		MappedSoundingCSVParser.Result result = MappedSoundingCSVParser.parse(csv);
+		assertEquals(0, result.getColumns().size());
+		assertEquals(0, result.getRejectedLines());
+	}
+}
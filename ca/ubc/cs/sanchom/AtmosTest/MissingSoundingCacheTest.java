@@ -0,0 +1,95 @@
+package ca.ubc.cs.sanchom.AtmosTest;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.GregorianCalendar;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import ca.ubc.cs.sanchom.AtmosView.MissingSoundingCache;
+
+/**
+ * @author Sancho McCann
+ *
+ */
+public class MissingSoundingCacheTest {
+
+	private static final long TWELVE_HOURS = 12 * 60 * 60 * 1000L;
+
+	private File file = null;
+
+	@Before
+	public void setUp() throws IOException {
+		file = File.createTempFile("missing", ".txt");
+		file.delete();
+	}
+
+	@After
+	public void tearDown() {
+		file.delete();
+	}
+
+	/**
+	 * Test method for {@link MissingSoundingCache#isMissing(String, long)}.
+	 */
+	@Test
+	public void testPersisted() {
+		long time = new GregorianCalendar(2006,0,1,0,0).getTimeInMillis();
+		MissingSoundingCache missing = new MissingSoundingCache(file);
+		assertFalse(missing.isMissing("71109", time));
+		missing.addMissing("71109", time);
+		missing.addMissing("71109", time + TWELVE_HOURS);
+		missing.found("71109", time + TWELVE_HOURS);
+		assertTrue(missing.isMissing("71109", time));
+		assertFalse(missing.isMissing("71109", time + TWELVE_HOURS));
+		assertFalse(missing.isMissing("71119", time));
+		missing.close();
+
+		MissingSoundingCache reopened = new MissingSoundingCache(file);
+		assertEquals(1, reopened.size());
+		assertTrue(reopened.isMissing("71109", time));
+		assertFalse(reopened.isMissing("71109", time + TWELVE_HOURS));
+		assertEquals(1, reopened.getSkipped());
+		reopened.close();
+	}
+
+	@Test
+	public void testRecentGapsRechecked() {
+		long now = System.currentTimeMillis();
+		long recent = now - now % TWELVE_HOURS;
+		long old = recent - 30 * 2 * TWELVE_HOURS;
+
+		MissingSoundingCache missing = new MissingSoundingCache(file);
+		missing.addMissing("71109", recent);
+		missing.addMissing("71109", old);
+		missing.addMissing("71109", recent + 2 * TWELVE_HOURS);
+		assertTrue(missing.isMissing("71109", recent));
+		assertFalse("a future time isn't a gap", missing.isMissing("71109", recent + 2 * TWELVE_HOURS));
+
+		// Once the check is stale, a recent gap is asked for again but an old one never is
+		missing.setRecheckPolicy(MissingSoundingCache.DEFAULT_SETTLED_AGE, 0);
+		assertFalse(missing.isMissing("71109", recent));
+		assertTrue(missing.isMissing("71109", old));
+		missing.close();
+	}
+
+	@Test
+	public void testManyGaps() {
+		long time = new GregorianCalendar(2006,0,1,0,0).getTimeInMillis();
+		MissingSoundingCache missing = new MissingSoundingCache(file);
+		for (int i = 0; i < 5000; i++)
+		{
+			missing.addMissing(Integer.toString(70000 + i), time);
+		}
+		for (int i = 0; i < 5000; i++)
+		{
+			assertTrue(missing.isMissing(Integer.toString(70000 + i), time));
+			assertFalse(missing.isMissing(Integer.toString(70000 + i), time + TWELVE_HOURS));
+		}
+		missing.close();
+	}
+}
@@ -0,0 +1,73 @@
+package ca.ubc.cs.sanchom.AtmosTest;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import ca.ubc.cs.sanchom.AtmosView.LevelSolver;
+import ca.ubc.cs.sanchom.AtmosView.MoistAdiabatTable;
+
+/**
+ * @author Sancho McCann
+ *
+ */
+public class MoistAdiabatTableTest {
+
+	/**
+	 * Test method for {@link MoistAdiabatTable#getTemperature(double, double)}, against the reference integrator.
+	 */
+	@Test
+	public void testAgainstIntegrator() {
+		MoistAdiabatTable table = MoistAdiabatTable.getInstance();
+		double worst = 0;
+		// Off the grid in both directions
+		for (double thetaW = -57.3; thetaW < MoistAdiabatTable.MAX_THETA_W; thetaW += 1.7)
+		{
+			for (double p = 1093; p > 10; p *= 0.93)
+			{
+				double reference = LevelSolver.getMoistAdiabaticTemperature(1000, thetaW, p);
+				worst = Math.max(worst, Math.abs(table.getTemperature(thetaW, p) - reference));
+			}
+		}
+		assertTrue("Worst error " + worst, worst < 0.05);
+	}
+
+	/**
+	 * Test method for {@link MoistAdiabatTable#getThetaW(double, double)}.
+	 */
+	@Test
+	public void testThetaW() {
+		MoistAdiabatTable table = MoistAdiabatTable.getInstance();
+		// The label of an adiabat is its temperature at 1000 millibars
+		assertEquals(20, table.getThetaW(1000, 20), 0.01);
+		assertEquals(-35.5, table.getThetaW(1000, -35.5), 0.01);
+
+		for (double thetaW = -40; thetaW <= 35; thetaW += 3.3)
+		{
+			for (double p = 950; p > 100; p -= 85)
+			{
+				// The table inverts itself exactly...
+				double t = table.getTemperature(thetaW, p);
+				assertEquals(thetaW, table.getThetaW(p, t), 1e-9);
+				// ...and the integrator closely
+				t = LevelSolver.getMoistAdiabaticTemperature(1000, thetaW, p);
+				assertEquals(thetaW, table.getThetaW(p, t), 0.05);
+			}
+		}
+	}
+
+	/**
+	 * Test method for {@link MoistAdiabatTable} outside its range.
+	 */
+	@Test
+	public void testOutOfRange() {
+		MoistAdiabatTable table = MoistAdiabatTable.getInstance();
+		assertSame(table, MoistAdiabatTable.getInstance());
+		assertTrue(Double.isNaN(table.getTemperature(MoistAdiabatTable.MAX_THETA_W + 1, 500)));
+		assertTrue(Double.isNaN(table.getTemperature(20, MoistAdiabatTable.MIN_MILLIBARS / 2)));
+		assertTrue(Double.isNaN(table.getTemperature(20, MoistAdiabatTable.MAX_MILLIBARS + 1)));
+		assertTrue(Double.isNaN(table.getTemperature(Double.NaN, 500)));
+		assertTrue(Double.isNaN(table.getThetaW(500, 60)));
+		assertTrue(Double.isNaN(table.getThetaW(5, -50)));
+	}
+}
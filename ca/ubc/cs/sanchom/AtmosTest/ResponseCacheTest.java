@@ -0,0 +1,109 @@
+package ca.ubc.cs.sanchom.AtmosTest;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import ca.ubc.cs.sanchom.AtmosView.ResponseCache;
+
+/**
+ * @author Sancho McCann
+ *
+ */
+public class ResponseCacheTest {
+
+	private static final String URL = "http://weather.uwyo.edu/cgi-bin/sounding?region=naconf&TYPE=TEXT%3ALIST&YEAR=2006&MONTH=1&FROM=0100&TO=0100&STNM=71109";
+
+	private File directory = null;
+
+	@Before
+	public void setUp() throws Exception {
+		directory = File.createTempFile("responses", "");
+		directory.delete();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		File[] files = directory.listFiles();
+		for (int i = 0; i < files.length; i++)
+			files[i].delete();
+		directory.delete();
+	}
+
+	private static byte[] body(int seed, int length) {
+		Random random = new Random(seed);
+		byte[] body = new byte[length];
+		random.nextBytes(body);
+		return body;
+	}
+
+	/**
+	 * Test method for {@link ResponseCache#get(String)}.
+	 */
+	@Test
+	public void testPutGetAndReopen() throws IOException {
+		ResponseCache cache = new ResponseCache(directory, 1 << 20);
+		byte[] page = ResponseCacheTest.class.getResourceAsStream("71109_2006010100-2006010212.html").readAllBytes();
+		assertNull(cache.get(URL));
+		cache.put(URL, page, ResponseCache.NEVER_EXPIRES);
+
+		assertTrue(Arrays.equals(page, cache.get(URL)));
+		assertTrue("stored " + cache.getSize() + " bytes", cache.getSize() < page.length / 3);
+		assertEquals(1, cache.getHits());
+		assertEquals(1, cache.getMisses());
+
+		ResponseCache reopened = new ResponseCache(directory, 1 << 20);
+		assertEquals(1, reopened.getEntryCount());
+		assertTrue(Arrays.equals(page, reopened.get(URL)));
+	}
+
+	/**
+	 * Test method for {@link ResponseCache#normalize(String)}.
+	 */
+	@Test
+	public void testNormalize() throws IOException {
+		assertEquals(ResponseCache.normalize(URL),
+				ResponseCache.normalize("HTTP://Weather.UWYO.edu:80/cgi-bin/sounding?STNM=71109&TO=0100&FROM=0100&MONTH=1&YEAR=2006&TYPE=TEXT%3ALIST&region=naconf#top"));
+		assertFalse(ResponseCache.normalize(URL).equals(ResponseCache.normalize(URL.replace("STNM=71109", "STNM=71119"))));
+
+		ResponseCache cache = new ResponseCache(directory, 1 << 20);
+		cache.put(URL, body(1, 100), ResponseCache.NEVER_EXPIRES);
+		assertNotNull(cache.get("http://weather.uwyo.edu:80/cgi-bin/sounding?STNM=71109&region=naconf&TYPE=TEXT%3ALIST&YEAR=2006&MONTH=1&FROM=0100&TO=0100"));
+	}
+
+	@Test
+	public void testExpiry() throws IOException {
+		ResponseCache cache = new ResponseCache(directory, 1 << 20);
+		cache.put(URL, body(1, 100), System.currentTimeMillis() - 1);
+		assertNull(cache.get(URL));
+		assertEquals(0, cache.getEntryCount());
+		assertEquals(0, directory.listFiles().length);
+	}
+
+	@Test
+	public void testLeastRecentlyUsedEviction() throws IOException {
+		ResponseCache cache = new ResponseCache(directory, 1 << 20);
+		cache.put(URL + "&n=0", body(0, 4000), ResponseCache.NEVER_EXPIRES);
+		long entrySize = cache.getSize();
+
+		cache = new ResponseCache(directory, entrySize * 3 + entrySize / 2);
+		cache.put(URL + "&n=1", body(1, 4000), ResponseCache.NEVER_EXPIRES);
+		cache.put(URL + "&n=2", body(2, 4000), ResponseCache.NEVER_EXPIRES);
+		assertNotNull(cache.get(URL + "&n=0")); // now the most recently used
+		cache.put(URL + "&n=3", body(3, 4000), ResponseCache.NEVER_EXPIRES);
+
+		assertEquals(3, cache.getEntryCount());
+		assertTrue(cache.getSize() <= entrySize * 3 + entrySize / 2);
+		assertNull(cache.get(URL + "&n=1"));
+		assertNotNull(cache.get(URL + "&n=0"));
+		assertNotNull(cache.get(URL + "&n=2"));
+		assertNotNull(cache.get(URL + "&n=3"));
+	}
+}
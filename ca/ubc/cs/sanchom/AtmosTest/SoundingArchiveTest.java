@@ -0,0 +1,126 @@
+package ca.ubc.cs.sanchom.AtmosTest;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.GregorianCalendar;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import ca.ubc.cs.sanchom.AtmosView.SoundingArchive;
+import ca.ubc.cs.sanchom.AtmosView.SoundingData;
+import ca.ubc.cs.sanchom.AtmosView.SoundingPoint;
+import ca.ubc.cs.sanchom.AtmosView.SoundingRecord;
+
+/**
+ * @author Sancho McCann
+ *
+ */
+public class SoundingArchiveTest {
+
+	private File file = null;
+	private SoundingData data = null;
+
+	@Before
+	public void setUp() throws Exception {
+		file = File.createTempFile("sounding", ".atms");
+
+		data = new SoundingData(new GregorianCalendar(2006,0,1,0,0));
+		data.setStationId("71109");
+		data.setStationName("YZT Port Hardy at 00Z 01 Jan 2006");
+		data.add(new SoundingPoint(1000, 17, 6.4, 3.1, 110, 12));
+		data.add(new SoundingPoint(925, 656, 2.0, 0.5, 140, 25));
+		data.add(new SoundingPoint(850, 1341, -1.3, -3.2));
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		file.delete();
+	}
+
+	/**
+	 * Test method for {@link SoundingArchive#open(java.io.File)}.
+	 */
+	@Test
+	public void testRoundTrip() throws IOException {
+		SoundingArchive.write(file, data);
+		SoundingRecord record = SoundingArchive.open(file);
+
+		assertEquals(data.size(), record.size());
+		assertEquals("71109", record.getStationId());
+		assertEquals(data.getStationName(), record.getStationName());
+		assertEquals(data.getTime().getTimeInMillis(), record.getTimeInMillis());
+		assertEquals(-1.3, record.getTemperatureColumn().get(2), 0);
+
+		SoundingData copy = record.toSoundingData();
+		for (int i = 0; i < data.size(); i++)
+		{
+			assertEquals(data.get(i), copy.get(i));
+		}
+		assertEquals(data.timeString(), copy.timeString());
+	}
+
+	/**
+	 * Test method for {@link SoundingRecord#SoundingRecord(ByteBuffer)} with a corrupt level count.
+	 */
+	@Test
+	public void testCorruptLevelCount() {
+		ByteBuffer buffer = ByteBuffer.allocate(SoundingRecord.encodedSize(data));
+		SoundingRecord.write(data, buffer);
+		// Six columns of this many doubles overflow an int to 32 bytes
+		int[] sizes = { 89478486, -1, Integer.MAX_VALUE };
+		for (int i = 0; i < sizes.length; i++)
+		{
+			buffer.putInt(16, sizes[i]);
+			buffer.position(0);
+			try
+			{
+				new SoundingRecord(buffer);
+				fail("accepted " + sizes[i] + " levels");
+			}
+			catch (IllegalArgumentException e)
+			{
+				// Rejected by the header check, not by a buffer sized from a wrapped length
+				assertTrue(e.getMessage(), e.getMessage().contains("sounding record"));
+			}
+		}
+	}
+
+	/**
+	 * Test method for {@link SoundingRecord#write(SoundingData, ByteBuffer)} with a station name
+	 * too long for its length field.
+	 */
+	@Test
+	public void testLongStationName() {
+		char[] name = new char[Short.MAX_VALUE];
+		Arrays.fill(name, 'x');
+		data.setStationName(new String(name));
+		ByteBuffer buffer = ByteBuffer.allocate(SoundingRecord.encodedSize(data));
+		SoundingRecord.write(data, buffer);
+		buffer.position(0);
+		assertEquals(data.getStationName(), new SoundingRecord(buffer).getStationName());
+
+		data.setStationName(data.getStationName() + "x");
+		try
+		{
+			SoundingRecord.write(data, ByteBuffer.allocate(SoundingRecord.encodedSize(data)));
+			fail("wrote a station name of " + data.getStationName().length() + " bytes");
+		}
+		catch (IllegalArgumentException e)
+		{
+		}
+	}
+
+	@Test(expected= IOException.class) public void testNotAnArchive() throws IOException
+	{
+		java.io.FileWriter out = new java.io.FileWriter(file);
+		out.write("1000,17,6.4,3.1\n");
+		out.close();
+		SoundingArchive.open(file);
+	}
+}
@@ -0,0 +1,90 @@
+package ca.ubc.cs.sanchom.AtmosTest;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Random;
+
+import ca.ubc.cs.sanchom.AtmosView.MappedSoundingCSVParser;
+import ca.ubc.cs.sanchom.AtmosView.SoundingCSVParser;
+import ca.ubc.cs.sanchom.AtmosView.SoundingColumns;
+
+/**
+ * Compares SoundingCSVParser with MappedSoundingCSVParser over a directory of
+ * generated sounding csv files.
+ * Usage: SoundingCSVParserBenchmark [number of files] [rounds]
+ * @author Sancho McCann
+ *
+ */
+public class SoundingCSVParserBenchmark {
+
+	private static final int LEVELS = 80; ///< Rows per generated file
+
+	public static void main(String[] args) throws IOException {
+		int numFiles = (args.length > 0 ? Integer.parseInt(args[0]) : 10000);
+		int rounds = (args.length > 1 ? Integer.parseInt(args[1]) : 5);
+
+		File dir = File.createTempFile("csvbench", "");
+		dir.delete();
+		dir.mkdir();
+
+		System.out.println("Generating " + numFiles + " files in " + dir);
+		File[] files = generate(dir, numFiles);
+
+		// The first round of each parser is a warm-up and is not reported
+		for (int round = 0; round <= rounds; round++)
+		{
+			long levels = 0;
+			long start = System.nanoTime();
+			for (int i = 0; i < files.length; i++)
+			{
+				levels += SoundingCSVParser.getSounding(files[i]).size();
+			}
+			long readerTime = System.nanoTime() - start;
+
+			long mappedLevels = 0;
+			SoundingColumns columns = new SoundingColumns();
+			start = System.nanoTime();
+			for (int i = 0; i < files.length; i++)
+			{
+				mappedLevels += MappedSoundingCSVParser.parse(files[i], columns).getColumns().size();
+			}
+			long mappedTime = System.nanoTime() - start;
+
+			if (round > 0)
+			{
+				System.out.println("Round " + round + ": " +
+						"SoundingCSVParser " + (readerTime / 1000000) + " ms (" + levels + " levels), " +
+						"MappedSoundingCSVParser " + (mappedTime / 1000000) + " ms (" + mappedLevels + " levels), " +
+						"speedup " + ((double)readerTime / mappedTime));
+			}
+		}
+
+		for (int i = 0; i < files.length; i++)
+		{
+			files[i].delete();
+		}
+		dir.delete();
+	}
+
+	private static File[] generate(File dir, int numFiles) throws IOException {
+		Random random = new Random(71109);
+		File[] files = new File[numFiles];
+		for (int i = 0; i < numFiles; i++)
+		{
+			files[i] = new File(dir, "sounding" + i + ".csv");
+			FileWriter out = new FileWriter(files[i]);
+			double temperature = 15 + random.nextGaussian() * 5;
+			for (int level = 0; level < LEVELS; level++)
+			{
+				double pressure = 1000 - level * 11.5;
+				int height = 100 + level * 190;
+				double dewpoint = temperature - Math.abs(random.nextGaussian() * 4);
+				out.write(pressure + "," + height + "," + (Math.round(temperature * 10) / 10.0) + "," + (Math.round(dewpoint * 10) / 10.0) + "\n");
+				temperature -= 1.2 + random.nextGaussian() * 0.3;
+			}
+			out.close();
+		}
+		return files;
+	}
+}
@@ -0,0 +1,68 @@
+package ca.ubc.cs.sanchom.AtmosTest;
+
+import static org.junit.Assert.*;
+
+import java.util.GregorianCalendar;
+
+import org.junit.Test;
+
+import ca.ubc.cs.sanchom.AtmosView.DerivedData;
+import ca.ubc.cs.sanchom.AtmosView.SoundingCache;
+import ca.ubc.cs.sanchom.AtmosView.SoundingData;
+
+/**
+ * @author Sancho McCann
+ *
+ */
+public class SoundingCacheTest {
+
+	private static SoundingData sounding(int day, int hour) {
+		return SoundingFixtures.sounding(null, day, hour, 20, 100, 15, 12);
+	}
+
+	/**
+	 * Test method for {@link SoundingCache#get(String, GregorianCalendar)}.
+	 */
+	@Test
+	public void testRoundedKey() {
+		SoundingCache cache = new SoundingCache(1 << 24);
+		SoundingData data = sounding(1, 0);
+		DerivedData derived = new DerivedData(data);
+		cache.put("71109", new GregorianCalendar(2006,0,1,0,0), data, derived);
+
+		SoundingCache.Entry entry = cache.get("71109", new GregorianCalendar(2006,0,1,3,30));
+		assertSame(data, entry.getSoundingData());
+		assertSame(derived, entry.getDerivedData());
+		assertNull(cache.get("71109", new GregorianCalendar(2006,0,1,12,0)));
+		assertNull(cache.get("71119", new GregorianCalendar(2006,0,1,0,0)));
+
+		assertEquals(1, cache.getHits());
+		assertEquals(2, cache.getMisses());
+	}
+
+	@Test
+	public void testEvictionByEstimatedSize() {
+		SoundingData data = sounding(1, 0);
+		DerivedData derived = new DerivedData(data);
+		SoundingCache sizing = new SoundingCache(Long.MAX_VALUE);
+		sizing.put("71109", data.getTime(), data, derived);
+		long entryBytes = sizing.getEstimatedBytes();
+		assertTrue(entryBytes > derived.size() * 9 * 8);
+
+		SoundingCache cache = new SoundingCache(entryBytes * 3);
+		for (int day = 1; day <= 3; day++)
+		{
+			SoundingData d = sounding(day, 0);
+			cache.put("71109", d.getTime(), d, new DerivedData(d));
+		}
+		assertNotNull(cache.get("71109", new GregorianCalendar(2006,0,1,0,0))); // now the most recently used
+		SoundingData d = sounding(4, 0);
+		cache.put("71109", d.getTime(), d, new DerivedData(d));
+
+		assertEquals(3, cache.size());
+		assertEquals(1, cache.getEvictions());
+		assertTrue(cache.getEstimatedBytes() <= entryBytes * 3);
+		assertNull(cache.get("71109", new GregorianCalendar(2006,0,2,0,0)));
+		assertNotNull(cache.get("71109", new GregorianCalendar(2006,0,1,0,0)));
+	}
+}
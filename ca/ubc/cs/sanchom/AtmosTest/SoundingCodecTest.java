@@ -0,0 +1,133 @@
+package ca.ubc.cs.sanchom.AtmosTest;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.util.GregorianCalendar;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import ca.ubc.cs.sanchom.AtmosView.SoundingCodec;
+import ca.ubc.cs.sanchom.AtmosView.SoundingData;
+import ca.ubc.cs.sanchom.AtmosView.SoundingPoint;
+import ca.ubc.cs.sanchom.AtmosView.SoundingRecord;
+
+/**
+ * @author Sancho McCann
+ *
+ */
+public class SoundingCodecTest {
+
+	private SoundingData data = null;
+
+	/**
+	 * Builds a sounding with the precision of the Wyoming TEXT:LIST output:
+	 * tenths for pressure and temperatures, whole metres, degrees and knots.
+	 */
+	@Before
+	public void setUp() throws Exception {
+		Random random = new Random(71109);
+		data = new SoundingData(new GregorianCalendar(2006,0,1,0,0));
+		data.setStationId("71109");
+		data.setStationName("YZT Port Hardy at 00Z 01 Jan 2006");
+		double temperature = 6.4;
+		for (int i = 0; i < 90; i++)
+		{
+			double pressure = Math.round((1000 - i * 10.3) * 10) / 10.0;
+			double dewpoint = Math.round((temperature - 1 - random.nextInt(80) / 10.0) * 10) / 10.0;
+			double direction = (i % 7 == 6 ? Double.NaN : 180 + random.nextInt(90));
+			double speed = (i % 7 == 6 ? Double.NaN : 5 + i / 2 + random.nextInt(5));
+			data.add(new SoundingPoint(pressure, 17 + i * 165, temperature, dewpoint, direction, speed));
+			temperature = Math.round((temperature - 0.6 - random.nextInt(6) / 10.0) * 10) / 10.0;
+		}
+	}
+
+	/**
+	 * Test method for {@link SoundingCodec#decode(java.nio.ByteBuffer)}.
+	 */
+	@Test
+	public void testRoundTrip() {
+		SoundingData copy = SoundingCodec.decode(ByteBuffer.wrap(SoundingCodec.encode(data)));
+
+		assertEquals(data.size(), copy.size());
+		assertEquals("71109", copy.getStationId());
+		assertEquals(data.getStationName(), copy.getStationName());
+		assertEquals(data.getTime().getTimeInMillis(), copy.getTime().getTimeInMillis());
+		for (int i = 0; i < data.size(); i++)
+		{
+			assertEquals(data.get(i), copy.get(i));
+		}
+	}
+
+	@Test
+	public void testArbitraryDoubles() {
+		Random random = new Random(1);
+		SoundingData noisy = new SoundingData(new GregorianCalendar());
+		for (int i = 0; i < 50; i++)
+		{
+			noisy.add(new SoundingPoint(random.nextDouble() * 1000, i * 100 + random.nextDouble(), -0.0, random.nextGaussian(), Double.NaN, Double.NaN));
+		}
+		SoundingData copy = SoundingCodec.decode(ByteBuffer.wrap(SoundingCodec.encode(noisy)));
+		for (int i = 0; i < noisy.size(); i++)
+		{
+			assertEquals(noisy.get(i), copy.get(i));
+			assertEquals(Double.doubleToRawLongBits(-0.0), Double.doubleToRawLongBits(copy.get(i).getTemperature()));
+		}
+	}
+
+	@Test
+	public void testCompression() {
+		int raw = SoundingRecord.encodedSize(data);
+		int compressed = SoundingCodec.encode(data).length;
+		assertTrue("compressed " + compressed + " bytes of " + raw, compressed * 4 < raw);
+	}
+
+	/**
+	 * Test method for {@link SoundingCodec.Decoder#nextColumn(double[])}.
+	 */
+	@Test
+	public void testSkipColumns() {
+		SoundingCodec.Decoder decoder = new SoundingCodec.Decoder(ByteBuffer.wrap(SoundingCodec.encode(data)));
+		double[] temperature = new double[decoder.size()];
+		decoder.nextColumn(null);
+		decoder.nextColumn(null);
+		decoder.nextColumn(temperature);
+		for (int i = 0; i < data.size(); i++)
+		{
+			assertEquals(data.get(i).getTemperature(), temperature[i], 0);
+		}
+	}
+
+	/**
+	 * Test method for {@link SoundingCodec.Decoder#Decoder(ByteBuffer)} with a corrupt level count.
+	 */
+	@Test
+	public void testCorruptCount() {
+		byte[] encoded = SoundingCodec.encode(data);
+		ByteBuffer corrupt = ByteBuffer.wrap(encoded);
+		corrupt.putInt(12, Integer.MAX_VALUE);
+		try
+		{
+			SoundingCodec.decode(corrupt);
+			fail("decoded " + Integer.MAX_VALUE + " levels from " + encoded.length + " bytes");
+		}
+		catch (IllegalArgumentException e)
+		{
+			assertEquals("Corrupt compressed sounding: " + Integer.MAX_VALUE + " levels", e.getMessage());
+		}
+
+		// The bound still admits the smallest real encodings
+		SoundingData empty = new SoundingData(new GregorianCalendar(2006,0,1,0,0));
+		empty.setStationId("71109");
+		assertEquals(0, SoundingCodec.decode(ByteBuffer.wrap(SoundingCodec.encode(empty))).size());
+		SoundingData steady = new SoundingData(new GregorianCalendar(2006,0,1,0,0));
+		steady.setStationId("71109");
+		for (int i = 0; i < 9; i++)
+		{
+			steady.add(new SoundingPoint(1000, 17, 6.4, 2.1, 180, 5));
+		}
+		assertEquals(9, SoundingCodec.decode(ByteBuffer.wrap(SoundingCodec.encode(steady))).size());
+	}
+}
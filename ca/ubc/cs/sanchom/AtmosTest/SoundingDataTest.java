@@ -0,0 +1,95 @@
+package ca.ubc.cs.sanchom.AtmosTest;
+
+import static org.junit.Assert.*;
+
+import java.util.GregorianCalendar;
+
+import org.junit.Test;
+
+import ca.ubc.cs.sanchom.AtmosView.SoundingData;
+import ca.ubc.cs.sanchom.AtmosView.SoundingPoint;
+
+/**
+ * @author Sancho McCann
+ *
+ */
+public class SoundingDataTest {
+
+	private static SoundingData unsorted() {
+		SoundingData data = new SoundingData(new GregorianCalendar(2006,0,1,0,0));
+		data.add(new SoundingPoint(1000, 110, 5, 3, 90, 10));
+		data.add(new SoundingPoint(1005, 70, 6, 4));
+		data.add(1020, 17, 7, 5, 100, 12);
+		data.add(new SoundingPoint(925, 770, 1, -2, 120, 20));
+		return data;
+	}
+
+	/**
+	 * Test method for {@link SoundingData#sort(java.util.Comparator)}.
+	 */
+	@Test
+	public void testSortByHeight() {
+		SoundingData data = unsorted();
+		assertEquals(4, data.size());
+		assertFalse(data.isSorted());
+
+		data.sort(null);
+		assertTrue(data.isSorted());
+		assertEquals(17, data.getMetres(0), 0);
+		assertEquals(70, data.getMetres(1), 0);
+		assertEquals(new SoundingPoint(1005, 70, 6, 4), data.get(1));
+		assertEquals(new SoundingPoint(1000, 110, 5, 3, 90, 10), data.get(2));
+		assertEquals(120, data.getDirection(3), 0);
+	}
+
+	/**
+	 * Test method for {@link SoundingData#searchMetres(double)}.
+	 */
+	@Test
+	public void testSearchMetres() {
+		SoundingData data = unsorted();
+		try
+		{
+			data.searchMetres(70);
+			fail("searched unsorted levels");
+		}
+		catch (IllegalStateException e)
+		{
+		}
+
+		data.sort(null);
+		assertEquals(1, data.searchMetres(70));
+		assertEquals(-3, data.searchMetres(100));
+		assertEquals(-1, data.searchMetres(0));
+		assertEquals(-5, data.searchMetres(1000));
+	}
+
+	@Test
+	public void testView() {
+		SoundingData data = unsorted();
+		try
+		{
+			data.set(0, new SoundingPoint(1, 2, 3, 4));
+			fail("replaced a level");
+		}
+		catch (UnsupportedOperationException e)
+		{
+		}
+		try
+		{
+			data.remove(0);
+			fail("removed a level");
+		}
+		catch (UnsupportedOperationException e)
+		{
+		}
+
+		SoundingData copy = (SoundingData)data.clone();
+		copy.add(new SoundingPoint(850, 1500, -3, -9));
+		copy.sort(null);
+		assertEquals(4, data.size());
+		assertEquals(110, data.getMetres(0), 0);
+		assertEquals(5, copy.size());
+		assertEquals(data.getTime(), copy.getTime());
+	}
+}
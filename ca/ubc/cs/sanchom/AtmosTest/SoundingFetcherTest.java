@@ -0,0 +1,521 @@
+package ca.ubc.cs.sanchom.AtmosTest;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.http.HttpTimeoutException;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import ca.ubc.cs.sanchom.AtmosView.MissingSoundingCache;
+import ca.ubc.cs.sanchom.AtmosView.ResponseCache;
+import ca.ubc.cs.sanchom.AtmosView.SoundingData;
+import ca.ubc.cs.sanchom.AtmosView.SoundingFetcher;
+import ca.ubc.cs.sanchom.AtmosView.StationCatalog;
+
+/**
+ * Runs SoundingFetcher against a local stub server replaying recorded pages.
+ * @author Sancho McCann
+ *
+ */
+public class SoundingFetcherTest {
+
+	private static final String STATION_PAGE =
+		"<HTML><MAP NAME=\"raob\">\n" +
+		"<AREA COORDS=\"1,2,3\" HREF=\"javascript:g('71109')\" onMouseOver=\"return s('71109 YZT Port Hardy')\">\n" +
+		"</MAP></HTML>\n";
+
+	private static final String BUSY_PAGE =
+		"<HTML><BODY>\nSorry, the server is too busy to process your request. Please try again later.\n</BODY></HTML>\n";
+
+	private static final String NO_DATA_PAGE =
+		"<HTML><BODY>\nCan't get 71109 YZT Port Hardy Observations at 00Z 01 Jan 2006.\n</BODY></HTML>\n";
+
+	private HttpServer server = null;
+	private List<String> queries = null;
+	private byte[] soundingPage = null;
+	private SoundingFetcher fetcher = null;
+	private final AtomicInteger inFlight = new AtomicInteger();
+	private final AtomicInteger maxInFlight = new AtomicInteger();
+	private volatile long delay = 0; ///< Milliseconds the stub takes to answer a sounding request
+	private final AtomicInteger unavailable = new AtomicInteger(); ///< Sounding requests left to answer 503
+	private volatile boolean gzip = false; ///< Whether the stub compresses sounding pages for clients that accept it
+	private volatile String acceptEncoding = null; ///< The Accept-Encoding of the last sounding request
+
+	@Before
+	public void setUp() throws Exception {
+		queries = Collections.synchronizedList(new ArrayList<String>());
+		soundingPage = SoundingFetcherTest.class.getResourceAsStream("71109_2006010100-2006010212.html").readAllBytes();
+
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/upperair/naconf.html", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				reply(exchange, STATION_PAGE.getBytes("US-ASCII"));
+			}
+		});
+		server.createContext("/cgi-bin/sounding", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				String query = exchange.getRequestURI().getQuery();
+				queries.add(query);
+				acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+				if (unavailable.getAndDecrement() > 0)
+				{
+					exchange.sendResponseHeaders(503, -1);
+					exchange.close();
+					return;
+				}
+				int running = inFlight.incrementAndGet();
+				synchronized (maxInFlight)
+				{
+					maxInFlight.set(Math.max(maxInFlight.get(), running));
+				}
+				try
+				{
+					Thread.sleep(query.endsWith("STNM=slow") ? 2000 : delay);
+				}
+				catch (InterruptedException e)
+				{
+				}
+				inFlight.decrementAndGet();
+				if (query.endsWith("STNM=fail"))
+				{
+					exchange.sendResponseHeaders(500, -1);
+					exchange.close();
+					return;
+				}
+				if (query.endsWith("STNM=busy") || query.endsWith("STNM=none"))
+				{
+					reply(exchange, (query.endsWith("STNM=busy") ? BUSY_PAGE : NO_DATA_PAGE).getBytes("US-ASCII"));
+					return;
+				}
+				if (gzip && acceptEncoding != null && acceptEncoding.contains("gzip"))
+				{
+					ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+					GZIPOutputStream out = new GZIPOutputStream(compressed);
+					out.write(soundingPage);
+					out.close();
+					exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+					reply(exchange, compressed.toByteArray());
+					return;
+				}
+				reply(exchange, soundingPage);
+			}
+		});
+		server.setExecutor(Executors.newCachedThreadPool());
+		server.start();
+
+		fetcher = SoundingFetcher.create("http://127.0.0.1:" + server.getAddress().getPort());
+		fetcher.setRetries(SoundingFetcher.DEFAULT_MAX_ATTEMPTS, 10);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		server.stop(0);
+	}
+
+	private static void reply(HttpExchange exchange, byte[] body) throws IOException {
+		exchange.sendResponseHeaders(200, body.length);
+		OutputStream out = exchange.getResponseBody();
+		out.write(body);
+		out.close();
+	}
+
+	/**
+	 * Test method for {@link SoundingFetcher#refreshStationList()}.
+	 */
+	@Test
+	public void testStationCatalog() throws IOException {
+		File file = File.createTempFile("stations", ".txt");
+		file.delete();
+		try
+		{
+			assertTrue(fetcher.getStationList().isEmpty());
+			fetcher.setStationCatalog(new StationCatalog(file));
+			assertEquals("71109", fetcher.refreshStationList().get("YZT Port Hardy"));
+			assertEquals("71109", fetcher.getStationList().get("YZT Port Hardy"));
+
+			// The next start has the list without going to the server
+			server.stop(0);
+			StationCatalog catalog = new StationCatalog(file);
+			assertTrue(catalog.getUpdated() > 0);
+			SoundingFetcher offline = SoundingFetcher.create("http://127.0.0.1:1");
+			offline.setStationCatalog(catalog);
+			assertEquals("71109", offline.getStationList().get("YZT Port Hardy"));
+			try
+			{
+				offline.refreshStationList();
+				fail("refreshed from a closed port");
+			}
+			catch (IOException e)
+			{
+				assertEquals("71109", offline.getStationList().get("YZT Port Hardy"));
+			}
+		}
+		finally
+		{
+			file.delete();
+		}
+	}
+
+	/**
+	 * Test method for {@link SoundingFetcher#getSoundings(String, GregorianCalendar, GregorianCalendar)}.
+	 */
+	@Test
+	public void testRangeInOneRequest() throws IOException {
+		List<SoundingData> soundings = fetcher.getSoundings("71109",
+				new GregorianCalendar(2006,0,1,0,0), new GregorianCalendar(2006,0,2,12,0));
+
+		assertEquals(1, queries.size());
+		assertTrue(queries.get(0), queries.get(0).contains("YEAR=2006&MONTH=1&FROM=0100&TO=0212&STNM=71109"));
+
+		assertEquals(4, soundings.size());
+		for (int i = 0; i < soundings.size(); i++)
+		{
+			SoundingData data = soundings.get(i);
+			assertEquals(new GregorianCalendar(2006,0,1 + i / 2,12 * (i % 2),0).getTimeInMillis(), data.getTime().getTimeInMillis());
+			assertEquals("71109", data.getStationId());
+			assertTrue(data.size() > 40);
+			for (int j = 1; j < data.size(); j++)
+			{
+				assertTrue(data.get(j - 1).getMetres() <= data.get(j).getMetres());
+			}
+		}
+		assertFalse(soundings.get(0).get(0).equals(soundings.get(1).get(0)));
+	}
+
+	@Test
+	public void testRangeAcrossMonths() throws IOException {
+		fetcher.getSoundings("71109", new GregorianCalendar(2006,0,31,12,0), new GregorianCalendar(2006,1,1,0,0));
+
+		assertEquals(2, queries.size());
+		assertTrue(queries.get(0), queries.get(0).contains("MONTH=1&FROM=3112&TO=3112"));
+		assertTrue(queries.get(1), queries.get(1).contains("MONTH=2&FROM=0100&TO=0100"));
+	}
+
+	/**
+	 * Test method for {@link SoundingFetcher#setMissingSoundingCache(MissingSoundingCache)}.
+	 */
+	@Test
+	public void testKnownGapsSkipped() throws IOException {
+		File file = File.createTempFile("missing", ".txt");
+		file.delete();
+		try
+		{
+			fetcher.setMissingSoundingCache(new MissingSoundingCache(file));
+			// The page only holds soundings up to 12Z on the 2nd
+			assertEquals(4, fetcher.getSoundings("71109", new GregorianCalendar(2006,0,1,0,0), new GregorianCalendar(2006,0,3,12,0)).size());
+			assertEquals(1, queries.size());
+
+			// The gaps at the end of the range are left out of the next request
+			MissingSoundingCache missing = new MissingSoundingCache(file);
+			fetcher.setMissingSoundingCache(missing);
+			assertEquals(4, fetcher.getSoundings("71109", new GregorianCalendar(2006,0,1,0,0), new GregorianCalendar(2006,0,3,12,0)).size());
+			assertEquals(2, queries.size());
+			assertTrue(queries.get(1), queries.get(1).contains("FROM=0100&TO=0212"));
+
+			// and a range or sounding that is all gaps needs no request
+			assertEquals(0, fetcher.getSoundings("71109", new GregorianCalendar(2006,0,3,0,0), new GregorianCalendar(2006,0,3,12,0)).size());
+			assertEquals(0, fetcher.getSounding("71109", new GregorianCalendar(2006,0,3,12,0)).size());
+			assertEquals(2, queries.size());
+			missing.close();
+		}
+		finally
+		{
+			file.delete();
+		}
+	}
+
+	/**
+	 * Test method for {@link SoundingFetcher#setMissingSoundingCache(MissingSoundingCache)}
+	 * with pages that hold no soundings.
+	 */
+	@Test
+	public void testOnlyReportedGapsRemembered() throws IOException {
+		File file = File.createTempFile("missing", ".txt");
+		file.delete();
+		try
+		{
+			MissingSoundingCache missing = new MissingSoundingCache(file);
+			fetcher.setMissingSoundingCache(missing);
+			GregorianCalendar time = new GregorianCalendar(2006,0,1,0,0);
+
+			// A busy page says nothing about whether the sounding exists
+			assertEquals(0, fetcher.getSounding("busy", time).size());
+			assertEquals(0, fetcher.getSoundings("busy", time, new GregorianCalendar(2006,0,1,12,0)).size());
+			assertFalse(missing.isMissing("busy", time.getTimeInMillis()));
+			assertFalse(missing.isMissing("busy", new GregorianCalendar(2006,0,1,12,0).getTimeInMillis()));
+
+			// but the server saying it has none does
+			assertEquals(0, fetcher.getSounding("none", time).size());
+			assertTrue(missing.isMissing("none", time.getTimeInMillis()));
+			missing.close();
+		}
+		finally
+		{
+			file.delete();
+		}
+	}
+
+	/**
+	 * Test method for {@link SoundingFetcher#getSoundings(String, GregorianCalendar, GregorianCalendar)}
+	 * in a default zone that changes to daylight time within the range.
+	 */
+	@Test
+	public void testRangeAcrossDaylightTime() throws IOException {
+		TimeZone zone = TimeZone.getDefault();
+		File file = File.createTempFile("missing", ".txt");
+		file.delete();
+		try
+		{
+			TimeZone.setDefault(TimeZone.getTimeZone("America/Vancouver"));
+			MissingSoundingCache missing = new MissingSoundingCache(file);
+			fetcher.setMissingSoundingCache(missing);
+
+			// The stub only serves January, so every time from March 30 to April 3 is missing
+			assertEquals(0, fetcher.getSoundings("71109", new GregorianCalendar(2006,2,30,0,0), new GregorianCalendar(2006,3,3,12,0)).size());
+			assertEquals(2, queries.size());
+			assertTrue(queries.get(1), queries.get(1).contains("MONTH=4&FROM=0100&TO=0312"));
+			for (int day = 1; day <= 3; day++)
+			{
+				assertTrue(missing.isMissing("71109", new GregorianCalendar(2006,3,day,0,0).getTimeInMillis()));
+				assertTrue(missing.isMissing("71109", new GregorianCalendar(2006,3,day,12,0).getTimeInMillis()));
+			}
+
+			// So none is asked for again
+			assertEquals(0, fetcher.getSoundings("71109", new GregorianCalendar(2006,2,30,0,0), new GregorianCalendar(2006,3,3,12,0)).size());
+			assertEquals(2, queries.size());
+			missing.close();
+		}
+		finally
+		{
+			TimeZone.setDefault(zone);
+			file.delete();
+		}
+	}
+
+	/**
+	 * Test method for {@link SoundingFetcher#getSounding(String, GregorianCalendar)}.
+	 */
+	@Test
+	public void testSingleSounding() throws IOException {
+		GregorianCalendar time = new GregorianCalendar(2006,0,1,1,30);
+		SoundingData data = fetcher.getSounding("71109", time);
+
+		assertEquals(1, queries.size());
+		assertTrue(queries.get(0), queries.get(0).contains("FROM=0100&TO=0100"));
+		assertEquals(new GregorianCalendar(2006,0,1,0,0).getTimeInMillis(), data.getTime().getTimeInMillis());
+		assertEquals("YZT Port Hardy at 00Z 01 Jan 2006", data.getStationName());
+		assertEquals(Calendar.JANUARY, data.getTime().get(Calendar.MONTH));
+	}
+
+	/**
+	 * Test method for {@link SoundingFetcher#getSoundings(java.util.Collection, GregorianCalendar, int, SoundingFetcher.FetchListener)}.
+	 */
+	@Test
+	public void testBulkFetch() throws InterruptedException {
+		delay = 50;
+		fetcher.setTimeouts(1000, 500);
+		List<String> ids = new ArrayList<String>();
+		for (int i = 0; i < 20; i++)
+		{
+			ids.add("7" + (1000 + i));
+		}
+		ids.add("fail");
+		ids.add("slow");
+
+		final Map<String, SoundingData> fetched = new ConcurrentHashMap<String, SoundingData>();
+		final Map<String, Exception> failed = new ConcurrentHashMap<String, Exception>();
+		int count = fetcher.getSoundings(ids, new GregorianCalendar(2006,0,1,0,0), 4, new SoundingFetcher.FetchListener() {
+			public void soundingFetched(String id, SoundingData data) {
+				fetched.put(id, data);
+			}
+
+			public void fetchFailed(String id, Exception cause) {
+				failed.put(id, cause);
+			}
+		});
+
+		assertEquals(20, count);
+		assertEquals(20, fetched.size());
+		assertEquals(2, failed.size());
+		assertTrue(failed.get("slow") instanceof HttpTimeoutException);
+		assertTrue(failed.get("fail") instanceof IOException);
+		assertEquals("71001", fetched.get("71001").getStationId());
+		assertTrue(maxInFlight.get() + " in flight", maxInFlight.get() <= 4 && maxInFlight.get() > 1);
+	}
+
+	@Test
+	public void testResponseCache() throws IOException {
+		File directory = File.createTempFile("responses", "");
+		directory.delete();
+		try
+		{
+			ResponseCache cache = new ResponseCache(directory, 1 << 20);
+			String base = "http://127.0.0.1:" + server.getAddress().getPort();
+			GregorianCalendar time = new GregorianCalendar(2006,0,1,0,0);
+
+			SoundingFetcher caching = SoundingFetcher.create(base, cache);
+			caching.refreshStationList();
+			SoundingData first = caching.getSounding("71109", time);
+			assertEquals(1, queries.size());
+
+			// A new fetcher, as on the next run, answers the station list and the historical sounding from disk
+			SoundingFetcher reopened = SoundingFetcher.create(base, new ResponseCache(directory, 1 << 20));
+			SoundingData second = reopened.getSounding("71109", time);
+			assertEquals(1, queries.size());
+			server.stop(0);
+			assertEquals("71109", reopened.refreshStationList().get("YZT Port Hardy"));
+			assertEquals(first.size(), second.size());
+			assertEquals(first.get(0), second.get(0));
+		}
+		finally
+		{
+			File[] files = directory.listFiles();
+			for (int i = 0; i < files.length; i++)
+				files[i].delete();
+			directory.delete();
+		}
+	}
+
+	/**
+	 * Test method for {@link SoundingFetcher#getSoundingAsync(String, GregorianCalendar)}.
+	 */
+	@Test
+	public void testAsync() throws Exception {
+		delay = 200;
+		CompletableFuture<SoundingData> first = fetcher.getSoundingAsync("71109", new GregorianCalendar(2006,0,1,0,0));
+		CompletableFuture<SoundingData> second = fetcher.getSoundingAsync("71109", new GregorianCalendar(2006,0,1,12,0));
+		assertFalse(first.isDone());
+
+		assertEquals(new GregorianCalendar(2006,0,1,0,0).getTimeInMillis(), first.get().getTime().getTimeInMillis());
+		assertEquals(new GregorianCalendar(2006,0,1,12,0).getTimeInMillis(), second.get().getTime().getTimeInMillis());
+		assertEquals(2, maxInFlight.get());
+
+		try
+		{
+			fetcher.getSoundingAsync("fail", new GregorianCalendar(2006,0,1,0,0)).get();
+			fail("fetched from a failing server");
+		}
+		catch (ExecutionException e)
+		{
+			assertTrue(e.getCause() instanceof IOException);
+		}
+	}
+
+	@Test
+	public void testGzip() throws IOException {
+		gzip = true;
+		SoundingData data = fetcher.getSounding("71109", new GregorianCalendar(2006,0,1,0,0));
+
+		assertTrue(acceptEncoding, acceptEncoding.contains("gzip"));
+		assertEquals("YZT Port Hardy at 00Z 01 Jan 2006", data.getStationName());
+		assertTrue(data.size() > 40);
+	}
+
+	@Test
+	public void testRetry() throws IOException {
+		unavailable.set(2);
+		SoundingData data = fetcher.getSounding("71109", new GregorianCalendar(2006,0,1,0,0));
+		assertEquals(3, queries.size());
+		assertTrue(data.size() > 40);
+
+		// Gives up once the attempts are used up
+		queries.clear();
+		unavailable.set(5);
+		try
+		{
+			fetcher.getSounding("71109", new GregorianCalendar(2006,0,2,0,0));
+			fail("fetched from an unavailable server");
+		}
+		catch (IOException e)
+		{
+			assertEquals(SoundingFetcher.DEFAULT_MAX_ATTEMPTS, queries.size());
+		}
+	}
+
+	/**
+	 * Test method for {@link SoundingFetcher#getSounding(String, GregorianCalendar)}.
+	 */
+	@Test
+	public void testConcurrentRequestsCoalesced() throws Exception {
+		delay = 300;
+		final int callers = 8;
+		final CyclicBarrier start = new CyclicBarrier(callers);
+		List<Future<SoundingData>> results = new ArrayList<Future<SoundingData>>();
+		ExecutorService pool = Executors.newFixedThreadPool(callers);
+		for (int i = 0; i < callers; i++)
+		{
+			final int minute = i;
+			results.add(pool.submit(new Callable<SoundingData>() {
+				public SoundingData call() throws Exception {
+					start.await();
+					// Different minutes that round to the same sounding
+					return fetcher.getSounding("71109", new GregorianCalendar(2006,0,1,0,minute));
+				}
+			}));
+		}
+
+		SoundingData first = results.get(0).get();
+		for (int i = 1; i < callers; i++)
+		{
+			SoundingData data = results.get(i).get();
+			assertNotSame(first, data);
+			assertEquals(first, data);
+		}
+		pool.shutdown();
+
+		assertEquals(1, queries.size());
+		assertEquals(1, maxInFlight.get());
+	}
+
+	/**
+	 * Test method for {@link SoundingFetcher#getSoundingAsync(String, GregorianCalendar)}.
+	 */
+	@Test
+	public void testCoalescedCallersIsolated() throws Exception {
+		delay = 300;
+		GregorianCalendar time = new GregorianCalendar(2006,0,1,0,0);
+		CompletableFuture<SoundingData> owner = fetcher.getSoundingAsync("71109", time);
+		CompletableFuture<SoundingData> waiter = fetcher.getSoundingAsync("71109", time);
+
+		// The caller that started the download changes its sounding as soon as it arrives
+		CompletableFuture<Void> changed = owner.thenAccept(new Consumer<SoundingData>() {
+			public void accept(SoundingData data) {
+				data.setStationName("Changed");
+			}
+		});
+
+		changed.get();
+		assertEquals("Changed", owner.get().getStationName());
+		assertEquals("YZT Port Hardy at 00Z 01 Jan 2006", waiter.get().getStationName());
+		assertEquals(1, queries.size());
+	}
+}
@@ -0,0 +1,49 @@
+package ca.ubc.cs.sanchom.AtmosTest;
+
+import java.util.GregorianCalendar;
+
+import ca.ubc.cs.sanchom.AtmosView.SoundingData;
+import ca.ubc.cs.sanchom.AtmosView.SoundingPoint;
+
+/**
+ * Synthetic soundings shared by the tests. Levels are 40 millibars and 400 metres
+ * apart, cooling 2.5 degrees per level with the dewpoint falling 3, and the wind
+ * freshening a knot per level.
+ * @author Sancho McCann
+ *
+ */
+final class SoundingFixtures {
+
+	private SoundingFixtures() {
+	}
+
+	/**
+	 * Returns a sounding in January 2006.
+	 * @param id the station id, or null for none
+	 * @param day the day of the month
+	 * @param hour the hour
+	 * @param levels the number of levels
+	 * @param surfaceMetres the height of the first level in metres
+	 * @param surfaceTemperature the temperature of the first level in degrees celcius
+	 * @param surfaceDewpoint the dewpoint of the first level in degrees celcius
+	 */
+	static SoundingData sounding(String id, int day, int hour, int levels, double surfaceMetres, double surfaceTemperature, double surfaceDewpoint) {
+		SoundingData data = new SoundingData(new GregorianCalendar(2006,0,day,hour,0));
+		if (id != null)
+		{
+			data.setStationId(id);
+		}
+		for (int i = 0; i < levels; i++)
+		{
+			data.add(new SoundingPoint(1000 - i * 40, surfaceMetres + i * 400, surfaceTemperature - i * 2.5, surfaceDewpoint - i * 3, 200, 10 + i));
+		}
+		return data;
+	}
+
+	/**
+	 * Returns the time of a sounding in January 2006, in milliseconds since the epoch
+	 */
+	static long time(int day, int hour) {
+		return new GregorianCalendar(2006,0,day,hour,0).getTimeInMillis();
+	}
+}
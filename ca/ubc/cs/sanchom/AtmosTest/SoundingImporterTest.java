@@ -0,0 +1,162 @@
+package ca.ubc.cs.sanchom.AtmosTest;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import ca.ubc.cs.sanchom.AtmosView.SoundingData;
+import ca.ubc.cs.sanchom.AtmosView.SoundingImporter;
+
+/**
+ * @author Sancho McCann
+ *
+ */
+public class SoundingImporterTest {
+
+	private static final String CSV = "1000,110,12.4,8.1\n925,790,7.0,-1.25\n850,1500,2.2,-4\n700,3050,-6.3,-19.3\n";
+
+	private File root = null;
+
+	/**
+	 * Collects the outcome of each file.
+	 */
+	private static class Collector implements SoundingImporter.Listener
+	{
+		final Map<String, SoundingData> imported = new ConcurrentHashMap<String, SoundingData>();
+		final Map<String, Exception> failed = new ConcurrentHashMap<String, Exception>();
+
+		public void soundingImported(File file, SoundingData data)
+		{
+			imported.put(file.getName(), data);
+		}
+
+		public void importFailed(File file, Exception cause)
+		{
+			failed.put(file.getName(), cause);
+		}
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		root = File.createTempFile("import", "");
+		root.delete();
+		root.mkdir();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		delete(root);
+	}
+
+	private static void delete(File file) {
+		File[] children = file.listFiles();
+		if (children != null)
+		{
+			for (int i = 0; i < children.length; i++)
+				delete(children[i]);
+		}
+		file.delete();
+	}
+
+	private void write(String path, String contents) throws IOException {
+		File file = new File(root, path);
+		file.getParentFile().mkdirs();
+		FileWriter out = new FileWriter(file);
+		out.write(contents);
+		out.close();
+	}
+
+	/**
+	 * Test method for {@link SoundingImporter#importDirectory(File, SoundingImporter.Listener)}.
+	 */
+	@Test
+	public void testImportTree() throws IOException {
+		write("71109_2006010100.csv", CSV);
+		write("2006/01/71109_2006010112.csv", CSV);
+		write("2006/02/72249-2006022812.csv", CSV);
+		write("2006/02/71109_2006020100.csv", "pressure,height\nnot,a,sounding\n");
+		write("2006/13/71109_2006130100.csv", CSV);
+		write("2006/02/71109_2006022900.csv", CSV);
+		write("2006/02/71109_2006020125.csv", CSV);
+		write("2006/02/notes.txt", "ignored");
+
+		Collector collector = new Collector();
+		SoundingImporter.Summary summary = new SoundingImporter(2).importDirectory(root, collector);
+
+		assertEquals(3, summary.getImported());
+		assertEquals(4, summary.getFailed());
+		assertEquals(summary.getImported(), collector.imported.size());
+		assertEquals(summary.getFailed(), collector.failed.size());
+
+		SoundingData data = collector.imported.get("72249-2006022812.csv");
+		assertEquals("72249", data.getStationId());
+		assertEquals(new GregorianCalendar(2006,1,28,12,0).getTimeInMillis(), data.getTimeInMillis());
+		assertEquals(4, data.size());
+
+		// A bad file, and names of no real time, are reported rather than rolled over
+		assertTrue(collector.failed.containsKey("71109_2006020100.csv"));
+		assertTrue(collector.failed.containsKey("71109_2006130100.csv"));
+		assertTrue(collector.failed.containsKey("71109_2006022900.csv"));
+		assertTrue(collector.failed.containsKey("71109_2006020125.csv"));
+		assertFalse(collector.imported.containsKey("notes.txt"));
+	}
+
+	/**
+	 * Test method for {@link SoundingImporter#importDirectory(File, SoundingImporter.Listener)}
+	 * with a slow listener: no more files are in flight than allowed.
+	 */
+	@Test
+	public void testBackPressure() throws IOException {
+		for (int i = 1; i <= 20; i++)
+		{
+			write("71109_200601" + (i < 10 ? "0" : "") + i + "00.csv", CSV);
+		}
+
+		final int maxPending = 3;
+		final AtomicInteger inFlight = new AtomicInteger();
+		final AtomicInteger maxInFlight = new AtomicInteger();
+		final List<Long> times = Collections.synchronizedList(new ArrayList<Long>());
+		SoundingImporter.Summary summary = new SoundingImporter(4, maxPending).importDirectory(root, new SoundingImporter.Listener() {
+			public void soundingImported(File file, SoundingData data)
+			{
+				int running = inFlight.incrementAndGet();
+				synchronized (maxInFlight)
+				{
+					maxInFlight.set(Math.max(maxInFlight.get(), running));
+				}
+				try
+				{
+					Thread.sleep(20);
+				}
+				catch (InterruptedException e)
+				{
+				}
+				times.add(data.getTimeInMillis());
+				inFlight.decrementAndGet();
+			}
+
+			public void importFailed(File file, Exception cause)
+			{
+				fail(file + ": " + cause);
+			}
+		});
+
+		assertEquals(20, summary.getImported());
+		assertEquals(20, times.size());
+		assertTrue(maxInFlight.get() <= maxPending);
+		assertTrue(maxInFlight.get() > 1);
+	}
+}
@@ -0,0 +1,82 @@
+package ca.ubc.cs.sanchom.AtmosTest;
+
+import static org.junit.Assert.*;
+
+import java.util.GregorianCalendar;
+
+import org.junit.Test;
+
+import ca.ubc.cs.sanchom.AtmosView.SoundingData;
+import ca.ubc.cs.sanchom.AtmosView.SoundingInterpolator;
+import ca.ubc.cs.sanchom.AtmosView.SoundingSnapshot;
+
+/**
+ * @author Sancho McCann
+ *
+ */
+public class SoundingInterpolatorTest {
+
+	private static SoundingSnapshot sounding() {
+		SoundingData data = new SoundingData(new GregorianCalendar(2006,0,1,0,0));
+		data.add(1000, 100, 10, 6, 350, 10);
+		data.add(900, 1000, 4, 0, 10, 20);
+		data.add(800, 2000, -2, -8, 90, 30);
+		return data.snapshot();
+	}
+
+	/**
+	 * Test method for {@link SoundingInterpolator#moveTo(double)} on and between levels.
+	 */
+	@Test
+	public void testMoveTo() {
+		SoundingInterpolator cursor = new SoundingInterpolator(sounding());
+
+		cursor.moveTo(100);
+		assertEquals(1000, cursor.getMillibars(), 0);
+		assertEquals(10, cursor.getTemperature(), 0);
+		assertEquals(350, cursor.getDirection(), 0);
+
+		cursor.moveTo(550);
+		assertEquals(950, cursor.getMillibars(), 1e-9);
+		assertEquals(7, cursor.getTemperature(), 1e-9);
+		assertEquals(3, cursor.getDewpoint(), 1e-9);
+		assertEquals(15, cursor.getSpeed(), 1e-9);
+		// The short way round, through North
+		assertEquals(360, cursor.getDirection(), 1e-9);
+
+		cursor.moveTo(1000);
+		assertEquals(900, cursor.getMillibars(), 0);
+		assertEquals(10, cursor.getDirection(), 0);
+
+		cursor.moveTo(1500);
+		assertEquals(850, cursor.getMillibars(), 1e-9);
+		assertEquals(50, cursor.getDirection(), 1e-9);
+		assertEquals(1500, cursor.toDerivedPoint().getSampleHeight(), 0);
+	}
+
+	/**
+	 * Test method for {@link SoundingInterpolator#moveTo(double)} going down and off the top.
+	 */
+	@Test
+	public void testOutOfOrder() {
+		SoundingInterpolator cursor = new SoundingInterpolator(sounding());
+
+		cursor.moveTo(2500);
+		assertEquals(800, cursor.getMillibars(), 0);
+		assertEquals(-2, cursor.getTemperature(), 0);
+
+		cursor.moveTo(550);
+		assertEquals(950, cursor.getMillibars(), 1e-9);
+
+		cursor.moveTo(100);
+		assertEquals(1000, cursor.getMillibars(), 0);
+	}
+
+	/**
+	 * Test method for {@link SoundingInterpolator#SoundingInterpolator(SoundingSnapshot)}.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testEmpty() {
+		new SoundingInterpolator(new SoundingData(new GregorianCalendar()).snapshot());
+	}
+}
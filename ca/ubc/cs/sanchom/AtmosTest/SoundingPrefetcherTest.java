@@ -0,0 +1,111 @@
+package ca.ubc.cs.sanchom.AtmosTest;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.GregorianCalendar;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import ca.ubc.cs.sanchom.AtmosView.SoundingCache;
+import ca.ubc.cs.sanchom.AtmosView.SoundingFetcher;
+import ca.ubc.cs.sanchom.AtmosView.SoundingPrefetcher;
+
+/**
+ * @author Sancho McCann
+ *
+ */
+public class SoundingPrefetcherTest {
+
+	private HttpServer server = null;
+	private List<String> queries = null;
+	private SoundingCache cache = null;
+	private SoundingPrefetcher prefetcher = null;
+
+	@Before
+	public void setUp() throws Exception {
+		queries = Collections.synchronizedList(new ArrayList<String>());
+		final byte[] page = SoundingPrefetcherTest.class.getResourceAsStream("71109_2006010100.html").readAllBytes();
+
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/cgi-bin/sounding", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				queries.add(exchange.getRequestURI().getQuery());
+				exchange.sendResponseHeaders(200, page.length);
+				OutputStream out = exchange.getResponseBody();
+				out.write(page);
+				out.close();
+			}
+		});
+		server.start();
+
+		cache = new SoundingCache(1 << 26);
+		prefetcher = new SoundingPrefetcher(SoundingFetcher.create("http://127.0.0.1:" + server.getAddress().getPort()), cache);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		prefetcher.close();
+		server.stop(0);
+	}
+
+	private void awaitPrefetched(long count) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000;
+		while (prefetcher.getPrefetched() < count && System.currentTimeMillis() < deadline)
+		{
+			Thread.sleep(10);
+		}
+		assertEquals(count, prefetcher.getPrefetched());
+	}
+
+	/**
+	 * Test method for {@link SoundingPrefetcher#requested(String, GregorianCalendar)}.
+	 */
+	@Test
+	public void testAdjacentTimesAndRecentStations() throws InterruptedException {
+		prefetcher.requested("71109", new GregorianCalendar(2006,0,2,0,0));
+		awaitPrefetched(4);
+		assertTrue(cache.contains("71109", new GregorianCalendar(2006,0,1,0,0)));
+		assertTrue(cache.contains("71109", new GregorianCalendar(2006,0,1,12,0)));
+		assertTrue(cache.contains("71109", new GregorianCalendar(2006,0,2,12,0)));
+		assertTrue(cache.contains("71109", new GregorianCalendar(2006,0,3,0,0)));
+
+		prefetcher.requested("72249", new GregorianCalendar(2006,0,2,0,0));
+		awaitPrefetched(9);
+		assertTrue(cache.contains("71109", new GregorianCalendar(2006,0,2,0,0)));
+		assertTrue(cache.contains("72249", new GregorianCalendar(2006,0,3,0,0)));
+
+		// Only 00Z on the 2nd (never prefetched, being the request itself) and 12Z on the 3rd
+		// aren't cached already; the rest don't go to the server again
+		int requests = queries.size();
+		prefetcher.requested("72249", new GregorianCalendar(2006,0,2,12,0));
+		awaitPrefetched(11);
+		assertEquals(requests + 2, queries.size());
+	}
+
+	/**
+	 * Test method for {@link SoundingPrefetcher#interactiveStarted()}.
+	 */
+	@Test
+	public void testYieldsToInteractiveRequests() throws InterruptedException {
+		prefetcher.interactiveStarted();
+		prefetcher.requested("71109", new GregorianCalendar(2006,0,2,0,0));
+		Thread.sleep(300);
+		assertEquals(0, queries.size());
+		assertEquals(0, prefetcher.getPrefetched());
+
+		prefetcher.interactiveFinished();
+		awaitPrefetched(4);
+	}
+}
@@ -0,0 +1,126 @@
+package ca.ubc.cs.sanchom.AtmosTest;
+
+import static org.junit.Assert.*;
+import static ca.ubc.cs.sanchom.AtmosTest.SoundingFixtures.time;
+
+import org.junit.Test;
+
+import ca.ubc.cs.sanchom.AtmosView.SoundingData;
+import ca.ubc.cs.sanchom.AtmosView.SoundingSeries;
+import ca.ubc.cs.sanchom.AtmosView.SoundingSnapshot;
+
+/**
+ * @author Sancho McCann
+ *
+ */
+public class SoundingSeriesTest {
+
+	private static final long TWELVE_HOURS = 12 * 60 * 60 * 1000L;
+
+	private static SoundingData sounding(int day, int hour, double surfaceTemperature) {
+		// More levels on later days, so soundings differ in size
+		return SoundingFixtures.sounding("71109", day, hour, 10 + day, 17, surfaceTemperature, surfaceTemperature - 3);
+	}
+
+	/**
+	 * Test method for {@link SoundingSeries#append(SoundingData)}.
+	 */
+	@Test
+	public void testAppendOutOfOrder() {
+		SoundingSeries series = new SoundingSeries("71109");
+		for (int day = 1; day <= 20; day++)
+		{
+			if (day != 5)
+				series.append(sounding(day, 0, day));
+		}
+		series.append(sounding(5, 0, 5).snapshot());
+		series.append(sounding(3, 12, 99));
+
+		assertEquals(21, series.size());
+		for (int i = 1; i < series.size(); i++)
+		{
+			assertTrue(series.getTime(i - 1) < series.getTime(i));
+		}
+		assertEquals(3, series.indexOf(time(3, 12)));
+		assertEquals(99, series.getTemperature(3, 0), 0);
+		assertEquals(5, series.getTemperature(series.indexOf(time(5, 0)), 0), 0);
+		assertEquals(15, series.getLevelCount(series.indexOf(time(5, 0))));
+
+		SoundingSnapshot copy = series.get(series.indexOf(time(5, 0)));
+		assertEquals(sounding(5, 0, 5).snapshot(), copy);
+
+		// A second launch at the same time replaces the first
+		series.append(sounding(3, 12, 50));
+		assertEquals(21, series.size());
+		assertEquals(50, series.getTemperature(3, 0), 0);
+
+		try
+		{
+			SoundingData other = sounding(21, 0, 0);
+			other.setStationId("71119");
+			series.append(other);
+			fail("appended another station");
+		}
+		catch (IllegalArgumentException e)
+		{
+		}
+	}
+
+	/**
+	 * Test method for {@link SoundingSeries#slice(long, long)}.
+	 */
+	@Test
+	public void testSlice() {
+		SoundingSeries series = new SoundingSeries("71109");
+		for (int day = 1; day <= 20; day++)
+		{
+			series.append(sounding(day, 0, day));
+		}
+
+		SoundingSeries week = series.slice(time(7, 0), time(13, 12));
+		assertEquals(7, week.size());
+		assertEquals(time(7, 0), week.getTime(0));
+		assertEquals(13, week.getTemperature(6, 0), 0);
+		assertEquals(0, series.slice(time(21, 0), time(30, 0)).size());
+		assertEquals(0, series.slice(time(7, 12), time(7, 12)).size());
+		assertEquals(1, series.slice(time(7, 0), time(7, 0)).size());
+		assertEquals(0, series.slice(time(8, 0), time(7, 0)).size());
+
+		// Appends to the series don't disturb the slice
+		for (int day = 21; day <= 40; day++)
+		{
+			series.append(sounding(day, 0, day));
+		}
+		series.append(sounding(10, 0, -50));
+		assertEquals(10, week.getTemperature(3, 0), 0);
+		assertEquals(-50, series.getTemperature(9, 0), 0);
+
+		try
+		{
+			week.append(sounding(8, 12, 0));
+			fail("appended to a slice");
+		}
+		catch (UnsupportedOperationException e)
+		{
+		}
+	}
+
+	/**
+	 * Test method for {@link SoundingSeries#nearest(long)}.
+	 */
+	@Test
+	public void testNearest() {
+		SoundingSeries series = new SoundingSeries(null);
+		assertEquals(-1, series.nearest(time(1, 0)));
+		series.append(sounding(1, 0, 0));
+		series.append(sounding(2, 0, 0));
+		series.append(sounding(4, 0, 0));
+
+		assertEquals(0, series.nearest(time(1, 0) - 10 * TWELVE_HOURS));
+		assertEquals(1, series.nearest(time(2, 0)));
+		assertEquals(1, series.nearest(time(2, 18)));
+		assertEquals(1, series.nearest(time(3, 0)));
+		assertEquals(2, series.nearest(time(3, 1)));
+		assertEquals(2, series.nearest(time(9, 0)));
+	}
+}
@@ -0,0 +1,93 @@
+package ca.ubc.cs.sanchom.AtmosTest;
+
+import static org.junit.Assert.*;
+
+import java.util.GregorianCalendar;
+
+import org.junit.Test;
+
+import ca.ubc.cs.sanchom.AtmosView.DerivedData;
+import ca.ubc.cs.sanchom.AtmosView.SoundingData;
+import ca.ubc.cs.sanchom.AtmosView.SoundingPoint;
+import ca.ubc.cs.sanchom.AtmosView.SoundingSnapshot;
+
+/**
+ * @author Sancho McCann
+ *
+ */
+public class SoundingSnapshotTest {
+
+	private static SoundingData sounding() {
+		SoundingData data = new SoundingData(new GregorianCalendar(2006,0,1,0,0));
+		data.setStationId("71109");
+		data.add(new SoundingPoint(1000, 110, 5, 3, 90, 10));
+		data.add(new SoundingPoint(1020, 17, 7, 5, 100, 12));
+		for (int i = 1; i < 40; i++)
+		{
+			data.add(new SoundingPoint(1000 - i * 20, 110 + i * 250, 5 - i * 1.6, 3 - i * 2, 200, 10 + i));
+		}
+		return data;
+	}
+
+	/**
+	 * Test method for {@link SoundingSnapshot#of(SoundingData)}.
+	 */
+	@Test
+	public void testSnapshotIsIndependent() {
+		SoundingData data = sounding();
+		SoundingSnapshot snapshot = data.snapshot();
+
+		assertEquals(data.getTimeInMillis(), snapshot.getTime());
+		assertEquals("71109", snapshot.getStationId());
+		assertEquals(41, snapshot.size());
+		assertEquals(17, snapshot.getMetres(0), 0);
+		assertEquals(1, snapshot.searchMetres(110));
+
+		data.add(new SoundingPoint(100, 16000, -60, -80));
+		data.setStationId("71119");
+		assertEquals(41, snapshot.size());
+		assertEquals("71109", snapshot.getStationId());
+		assertEquals(snapshot, SoundingSnapshot.of(snapshot.toSoundingData()));
+	}
+
+	@Test
+	public void testWithModification() {
+		SoundingSnapshot snapshot = sounding().snapshot();
+		double[] warmer = new double[snapshot.size()];
+		for (int i = 0; i < warmer.length; i++)
+		{
+			warmer[i] = snapshot.getTemperature(i) + 2;
+		}
+
+		SoundingSnapshot modified = snapshot.withTemperature(warmer);
+		warmer[0] = 100;
+		assertEquals(snapshot.getTemperature(0) + 2, modified.getTemperature(0), 0);
+		assertEquals(snapshot.getDewpoint(5), modified.getDewpoint(5), 0);
+		assertFalse(snapshot.equals(modified));
+
+		SoundingSnapshot level = snapshot.withLevel(3, -10, -20);
+		assertEquals(-10, level.getTemperature(3), 0);
+		assertEquals(snapshot.getTemperature(3), snapshot.withTime(0).getTemperature(3), 0);
+		assertEquals(snapshot.getTemperature(4), level.getTemperature(4), 0);
+
+		try
+		{
+			snapshot.withDewpoint(new double[3]);
+			fail("replaced a column with the wrong number of levels");
+		}
+		catch (IllegalArgumentException e)
+		{
+		}
+	}
+
+	/**
+	 * Test method for {@link DerivedData#DerivedData(SoundingSnapshot)}.
+	 */
+	@Test
+	public void testDerivedDataShares() {
+		SoundingSnapshot snapshot = sounding().snapshot();
+		DerivedData derived = new DerivedData(snapshot);
+		assertSame(snapshot, derived.getSnapshot());
+		assertTrue(derived.size() > 0);
+	}
+}
@@ -0,0 +1,157 @@
+package ca.ubc.cs.sanchom.AtmosTest;
+
+import static org.junit.Assert.*;
+import static ca.ubc.cs.sanchom.AtmosTest.SoundingFixtures.time;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import ca.ubc.cs.sanchom.AtmosView.SoundingData;
+import ca.ubc.cs.sanchom.AtmosView.SoundingStore;
+
+/**
+ * @author Sancho McCann
+ *
+ */
+public class SoundingStoreTest {
+
+	private File directory = null;
+	private SoundingStore store = null;
+
+	@Before
+	public void setUp() throws Exception {
+		directory = File.createTempFile("store", "");
+		directory.delete();
+		store = new SoundingStore(directory, 4096);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		store.close();
+		File[] files = directory.listFiles();
+		for (int i = 0; i < files.length; i++)
+			files[i].delete();
+		directory.delete();
+	}
+
+	private static SoundingData sounding(String id, int day, int hour, double surfaceTemp) {
+		return SoundingFixtures.sounding(id, day, hour, 20, 100, surfaceTemp, surfaceTemp);
+	}
+
+	private long diskUsage() {
+		long total = 0;
+		File[] files = directory.listFiles();
+		for (int i = 0; i < files.length; i++)
+			total += files[i].length();
+		return total;
+	}
+
+	@Test
+	public void testGetAndRange() throws IOException {
+		store.append(sounding("71109", 1, 0, 10));
+		store.append(sounding("71109", 1, 12, 11));
+		store.append(sounding("71109", 2, 0, 12));
+		store.append(sounding("72249", 1, 12, 20));
+
+		assertEquals(4, store.size());
+		assertNull(store.get("71109", time(3, 0)));
+		assertEquals(11, store.get("71109", time(1, 12)).get(0).getTemperature(), 0);
+
+		List<SoundingData> range = store.getRange("71109", time(1, 6), time(5, 0));
+		assertEquals(2, range.size());
+		assertEquals(11, range.get(0).get(0).getTemperature(), 0);
+		assertEquals(12, range.get(1).get(0).getTemperature(), 0);
+	}
+
+	@Test
+	public void testReopenAndSupersede() throws IOException {
+		store.append(sounding("71109", 1, 0, 10));
+		store.append(sounding("71109", 1, 0, 15));
+		store.close();
+
+		store = new SoundingStore(directory, 4096);
+		assertEquals(1, store.size());
+		assertEquals(15, store.get("71109", time(1, 0)).get(0).getTemperature(), 0);
+	}
+
+	@Test
+	public void testCompressedFrames() throws IOException {
+		store.append(sounding("71109", 1, 0, 10));
+		store.setCompressed(true);
+		store.append(sounding("71109", 1, 12, 11));
+		store.close();
+
+		store = new SoundingStore(directory, 4096);
+		SoundingData expected = sounding("71109", 1, 12, 11);
+		SoundingData actual = store.get("71109", time(1, 12));
+		for (int i = 0; i < expected.size(); i++)
+		{
+			assertEquals(expected.get(i), actual.get(i));
+		}
+		assertEquals(10, store.get("71109", time(1, 0)).get(0).getTemperature(), 0);
+	}
+
+	@Test
+	public void testCompaction() throws IOException {
+		// Each sounding is close to 1k, so this rolls through several segments whose
+		// frames are mostly superseded
+		for (int day = 1; day <= 28; day++)
+		{
+			store.append(sounding("71109", day, 0, day));
+			store.append(sounding("71109", day, 0, day + 0.25));
+			store.append(sounding("71109", day, 0, day + 0.5));
+		}
+		// Background compaction may already have run; this picks up whatever is left.
+		// Two thirds of the 84 frames written are superseded.
+		store.compact();
+		assertTrue(diskUsage() < 84 * 1000 / 2);
+
+		for (int day = 1; day <= 28; day++)
+		{
+			assertEquals(day + 0.5, store.get("71109", time(day, 0)).get(0).getTemperature(), 0);
+		}
+
+		store.close();
+		store = new SoundingStore(directory, 4096);
+		assertEquals(28, store.size());
+		assertEquals(28.5, store.get("71109", time(28, 0)).get(0).getTemperature(), 0);
+	}
+
+	@Test
+	public void testInterruptedCompaction() throws IOException {
+		for (int day = 1; day <= 8; day++)
+		{
+			store.append(sounding("71109", day, 0, day));
+		}
+		store.close();
+		File[] segments = directory.listFiles();
+		Arrays.sort(segments);
+		assertTrue(segments.length > 1);
+
+		// Crashed while writing the output: the inputs are intact and the output is discarded
+		File stray = new File(directory, segments[segments.length - 1].getName() + ".tmp");
+		FileOutputStream out = new FileOutputStream(stray);
+		out.write(new byte[100]);
+		out.close();
+		store = new SoundingStore(directory, 4096);
+		assertEquals(8, store.size());
+		assertFalse(stray.exists());
+		store.close();
+
+		// A complete output whose input is gone is kept
+		File first = segments[0];
+		File merged = new File(directory, "segment-00000099.seg.tmp");
+		assertTrue(first.renameTo(merged));
+		store = new SoundingStore(directory, 4096);
+		assertEquals(8, store.size());
+		assertFalse(merged.exists());
+		assertEquals(1, store.get("71109", time(1, 0)).get(0).getTemperature(), 0);
+	}
+}
@@ -0,0 +1,113 @@
+package ca.ubc.cs.sanchom.AtmosTest;
+
+import static org.junit.Assert.*;
+
+import java.util.GregorianCalendar;
+
+import org.junit.Test;
+
+import ca.ubc.cs.sanchom.AtmosView.SoundingData;
+import ca.ubc.cs.sanchom.AtmosView.SoundingValidator;
+
+/**
+ * @author Sancho McCann
+ *
+ */
+public class SoundingValidatorTest {
+
+	private static SoundingData sounding() {
+		return new SoundingData(new GregorianCalendar(2006,0,1,0,0));
+	}
+
+	/**
+	 * Test method for {@link SoundingValidator#clean(SoundingData)} on a sounding that needs nothing done.
+	 */
+	@Test
+	public void testClean() {
+		SoundingData data = sounding();
+		data.add(1020, 17, 7, 5, 100, 12);
+		data.add(1000, 110, 5, 3, Double.NaN, Double.NaN);
+		data.add(925, 770, 1, -2, 120, 20);
+
+		SoundingValidator.Report report = SoundingValidator.clean(data);
+		assertTrue(report.toString(), report.isClean());
+		assertEquals(3, data.size());
+		assertTrue(Double.isNaN(data.getDirection(1)));
+		assertEquals(20, data.getSpeed(2), 0);
+	}
+
+	/**
+	 * Test method for {@link SoundingValidator#clean(SoundingData)} on levels out of order.
+	 */
+	@Test
+	public void testReorder() {
+		SoundingData data = sounding();
+		data.add(1000, 110, 5, 3, 90, 10);
+		data.add(925, 770, 1, -2, 120, 20);
+		data.add(1020, 17, 7, 5, 100, 12);
+		data.add(850, 1500, -4, -9, 150, 25);
+		data.add(1005, 70, 6, 4, 95, 11);
+		data.add(700, 3000, -12, -20, 200, 30);
+		assertFalse(data.isSorted());
+
+		SoundingValidator.Report report = SoundingValidator.clean(data);
+		assertTrue(report.isReordered());
+		assertEquals(0, report.getMerged());
+		assertTrue(data.isSorted());
+		double[] expected = {17, 70, 110, 770, 1500, 3000};
+		for (int i = 0; i < expected.length; i++)
+		{
+			assertEquals(expected[i], data.getMetres(i), 0);
+		}
+		// Levels move whole
+		assertEquals(1005, data.getMillibars(1), 0);
+		assertEquals(95, data.getDirection(1), 0);
+		assertEquals(-9, data.getDewpoint(4), 0);
+	}
+
+	/**
+	 * Test method for {@link SoundingValidator#clean(SoundingData)} on levels at the same height.
+	 */
+	@Test
+	public void testDuplicates() {
+		SoundingData data = sounding();
+		data.add(1020, 17, 7, 5, Double.NaN, Double.NaN);
+		data.add(1000, 110, 5, 3, 90, 10);
+		data.add(1020, 17, 7.2, 5.1, 100, 12);
+		data.add(1000, 110, 5.5, 3.5, 95, 11);
+
+		SoundingValidator.Report report = SoundingValidator.clean(data);
+		assertEquals(2, report.getMerged());
+		assertEquals(2, data.size());
+		// The first level at a height is kept, taking the wind it lacked
+		assertEquals(7, data.getTemperature(0), 0);
+		assertEquals(100, data.getDirection(0), 0);
+		assertEquals(12, data.getSpeed(0), 0);
+		assertEquals(5, data.getTemperature(1), 0);
+		assertEquals(90, data.getDirection(1), 0);
+		assertTrue(data.searchMetres(110) == 1);
+	}
+
+	/**
+	 * Test method for {@link SoundingValidator#clean(SoundingData)} on missing-value sentinels.
+	 */
+	@Test
+	public void testSentinels() {
+		SoundingData data = sounding();
+		data.add(1020, 17, 7, 5, 100, 12);
+		data.add(1000, 110, -9999, 3, 90, 10);
+		data.add(925, 770, 1, -2, 999.9, -9999);
+		data.add(-9999, 1500, -4, -9, 150, 25);
+		data.add(700, 99999, -12, -20, 200, 30);
+		data.add(500, 5600, -25, Double.NaN, 250, 40);
+
+		SoundingValidator.Report report = SoundingValidator.clean(data);
+		assertEquals(5, report.getFlagged());
+		assertEquals(4, report.getDropped());
+		assertEquals(2, data.size());
+		assertEquals(17, data.getMetres(0), 0);
+		assertEquals(770, data.getMetres(1), 0);
+		assertTrue(Double.isNaN(data.getDirection(1)));
+		assertTrue(Double.isNaN(data.getSpeed(1)));
+	}
+}
@@ -0,0 +1,137 @@
+package ca.ubc.cs.sanchom.AtmosTest;
+
+import static org.junit.Assert.*;
+
+import org.junit.After;
+import org.junit.Test;
+
+import ca.ubc.cs.sanchom.AtmosView.DerivedData;
+import ca.ubc.cs.sanchom.AtmosView.DerivedProfile;
+import ca.ubc.cs.sanchom.AtmosView.ThermoKernels;
+
+/**
+ * @author Sancho McCann
+ *
+ */
+public class ThermoKernelsTest {
+
+	@After
+	public void tearDown() {
+		ThermoKernels.setExact(false);
+	}
+
+	/**
+	 * Test method for {@link ThermoKernels#exp(double)}.
+	 */
+	@Test
+	public void testExp() {
+		for (double x = -700; x < 700; x += 0.737)
+		{
+			double expected = Math.exp(x);
+			assertEquals(expected, ThermoKernels.exp(x), expected * 1e-12);
+		}
+		assertEquals(1, ThermoKernels.exp(0), 0);
+		assertEquals(0, ThermoKernels.exp(-1000), 0);
+		assertEquals(Double.POSITIVE_INFINITY, ThermoKernels.exp(1000), 0);
+		assertTrue(Double.isNaN(ThermoKernels.exp(Double.NaN)));
+	}
+
+	/**
+	 * Test method for {@link ThermoKernels#log(double)}.
+	 */
+	@Test
+	public void testLog() {
+		for (double x = 1e-300; x < 1e300; x *= 1.37)
+		{
+			assertEquals(Math.log(x), ThermoKernels.log(x), 1e-12);
+		}
+		for (double x = 0.5; x < 2; x += 0.001)
+		{
+			assertEquals(Math.log(x), ThermoKernels.log(x), 1e-12);
+		}
+		assertEquals(Double.NEGATIVE_INFINITY, ThermoKernels.log(0), 0);
+		assertTrue(Double.isNaN(ThermoKernels.log(-1)));
+	}
+
+	/**
+	 * Test method for the column kernels, fast and exact.
+	 */
+	@Test
+	public void testKernels() {
+		int count = 200;
+		double[] temperature = new double[count];
+		double[] pressure = new double[count];
+		for (int i = 0; i < count; i++)
+		{
+			temperature[i] = -80 + i * 0.6;
+			pressure[i] = 1050 - i * 5;
+		}
+
+		for (boolean exact : new boolean[] { false, true })
+		{
+			ThermoKernels.setExact(exact);
+			double tolerance = exact ? 0 : 1e-10;
+			double[] e = new double[count];
+			double[] w = new double[count];
+			double[] t = new double[count];
+			// Leave the ends untouched
+			ThermoKernels.getVapourPressure(temperature, e, 1, count - 1);
+			ThermoKernels.getMixingRatio(pressure, e, w, 1, count - 1);
+			ThermoKernels.getDryAdiabaticCooledTemperature(1000, 25, pressure, t, 1, count - 1);
+			assertEquals(0, e[0], 0);
+			assertEquals(0, t[count - 1], 0);
+			for (int i = 1; i < count - 1; i++)
+			{
+				double expected = DerivedData.getVapourPressure(temperature[i]);
+				assertEquals(expected, e[i], expected * tolerance);
+				expected = DerivedData.getMixingRatio(pressure[i], e[i]);
+				assertEquals(expected, w[i], 0);
+				expected = DerivedData.getDryAdiabaticCooledTemperature(1000, 25, pressure[i]);
+				assertEquals(expected, t[i], tolerance * 300);
+			}
+		}
+	}
+
+	/**
+	 * Test method for {@link DerivedProfile#appendAll(double[], double[], double[], double[], double[], int)}.
+	 */
+	@Test
+	public void testAppendAll() {
+		int count = 50;
+		double[] pressure = new double[count];
+		double[] temperature = new double[count];
+		double[] dewpoint = new double[count];
+		double[] direction = new double[count];
+		double[] speed = new double[count];
+		for (int i = 0; i < count; i++)
+		{
+			pressure[i] = 1000 - i * 10;
+			temperature[i] = 15 - i * 0.7;
+			dewpoint[i] = 15 - i;
+			direction[i] = 200 + i;
+			speed[i] = 10 + i;
+		}
+
+		DerivedProfile single = new DerivedProfile(0, 10, 1);
+		single.append(1010, 16, 16, 199, 9);
+		for (int i = 0; i < count; i++)
+		{
+			single.append(pressure[i], temperature[i], dewpoint[i], direction[i], speed[i]);
+		}
+		DerivedProfile batch = new DerivedProfile(0, 10, 1);
+		batch.append(1010, 16, 16, 199, 9);
+		assertEquals(1, batch.appendAll(pressure, temperature, dewpoint, direction, speed, count));
+
+		assertEquals(single.size(), batch.size());
+		for (int i = 0; i < single.size(); i++)
+		{
+			assertEquals(single.getPressure(i), batch.getPressure(i), 0);
+			assertEquals(single.getSpeed(i), batch.getSpeed(i), 0);
+			assertEquals(single.getVapourPressure(i), batch.getVapourPressure(i), 1e-10);
+			assertEquals(single.getRelativeHumidity(i), batch.getRelativeHumidity(i), 1e-8);
+			assertEquals(single.getMixingRatio(i), batch.getMixingRatio(i), 1e-10);
+			assertEquals(single.isStratusCloud(i), batch.isStratusCloud(i));
+			assertTrue(Double.isNaN(batch.getLiftedParcelTemp(i)));
+		}
+	}
+}
@@ -0,0 +1,122 @@
+package ca.ubc.cs.sanchom.AtmosTest;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.GregorianCalendar;
+import java.util.StringTokenizer;
+
+import ca.ubc.cs.sanchom.AtmosView.SoundingColumns;
+import ca.ubc.cs.sanchom.AtmosView.SoundingData;
+import ca.ubc.cs.sanchom.AtmosView.SoundingPoint;
+import ca.ubc.cs.sanchom.AtmosView.WyomingSoundingParser;
+
+/**
+ * Compares the line and StringTokenizer parsing that SoundingFetcher used to do with
+ * WyomingSoundingParser, over the recorded response 71109_2006010100.html.
+ * Usage: WyomingSoundingParserBenchmark [iterations] [rounds]
+ * @author Sancho McCann
+ *
+ */
+public class WyomingSoundingParserBenchmark {
+
+	public static void main(String[] args) throws IOException {
+		int iterations = (args.length > 0 ? Integer.parseInt(args[0]) : 20000);
+		int rounds = (args.length > 1 ? Integer.parseInt(args[1]) : 5);
+
+		byte[] page = WyomingSoundingParserBenchmark.class.getResourceAsStream("71109_2006010100.html").readAllBytes();
+		GregorianCalendar time = new GregorianCalendar(2006, 0, 1, 0, 0);
+
+		// The first round of each parser is a warm-up and is not reported
+		for (int round = 0; round <= rounds; round++)
+		{
+			long levels = 0;
+			long start = System.nanoTime();
+			for (int i = 0; i < iterations; i++)
+			{
+				levels += tokenizerParse(new ByteArrayInputStream(page), time).size();
+			}
+			long tokenizerTime = System.nanoTime() - start;
+
+			long streamedLevels = 0;
+			SoundingColumns columns = new SoundingColumns();
+			start = System.nanoTime();
+			for (int i = 0; i < iterations; i++)
+			{
+				WyomingSoundingParser parser = new WyomingSoundingParser(new ByteArrayInputStream(page), columns);
+				while (parser.next())
+				{
+					streamedLevels += columns.size();
+				}
+			}
+			long streamedTime = System.nanoTime() - start;
+
+			if (round > 0)
+			{
+				System.out.println("Round " + round + ": " +
+						"StringTokenizer " + (tokenizerTime / 1000000) + " ms (" + levels + " levels), " +
+						"WyomingSoundingParser " + (streamedTime / 1000000) + " ms (" + streamedLevels + " levels), " +
+						"speedup " + ((double)tokenizerTime / streamedTime));
+			}
+		}
+	}
+
+	/**
+	 * The parsing SoundingFetcher did before WyomingSoundingParser, kept as the baseline.
+	 */
+	private static SoundingData tokenizerParse(InputStream stream, GregorianCalendar time) throws IOException {
+		SoundingData soundingData = new SoundingData(time);
+		BufferedReader in = new BufferedReader(new InputStreamReader(stream));
+
+		String inputLine = null;
+		boolean dataSection = false;
+		boolean done = false;
+		int barCount = 0;
+
+		while ( (inputLine = in.readLine()) != null )
+		{
+			if (inputLine.indexOf("<H2>") != -1)
+			{
+				String obs = new String("Observations");
+				String t = inputLine.substring(10, inputLine.indexOf("</H2>"));
+				String first = t.substring(0, t.indexOf(obs));
+				String last = t.substring(t.indexOf(obs) + obs.length() + 1);
+				soundingData.setStationName(first + last);
+			}
+
+			if ( inputLine.toLowerCase().indexOf("------------------------") != -1 )
+			{
+				barCount++;
+				if (barCount == 2)
+				{
+					dataSection = true;
+				}
+			}
+			else if ( inputLine.toLowerCase().indexOf("</pre>") != -1 )
+			{
+				dataSection = false;
+				done = true;
+			}
+			else if ( dataSection && !done )
+			{
+				StringTokenizer st = new StringTokenizer( inputLine );
+
+				if ( st.countTokens() == 11 ) {
+					double pressureLevel = Double.parseDouble(st.nextToken());
+					double metres = Double.parseDouble(st.nextToken());
+					double temperature = Double.parseDouble(st.nextToken());
+					double dewpoint = Double.parseDouble(st.nextToken());
+					st.nextToken(); // ignore relative humidity
+					st.nextToken(); // ignore mixing ratio
+					double windDirection = Double.parseDouble(st.nextToken());
+					double windSpeed = Double.parseDouble(st.nextToken());
+					soundingData.add(new SoundingPoint(pressureLevel, metres, temperature, dewpoint, windDirection, windSpeed));
+				}
+			}
+		}
+		in.close();
+		return soundingData;
+	}
+}
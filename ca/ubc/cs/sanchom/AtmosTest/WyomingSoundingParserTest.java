@@ -0,0 +1,148 @@
+package ca.ubc.cs.sanchom.AtmosTest;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Calendar;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import ca.ubc.cs.sanchom.AtmosView.SoundingColumns;
+import ca.ubc.cs.sanchom.AtmosView.SoundingData;
+import ca.ubc.cs.sanchom.AtmosView.WyomingSoundingParser;
+
+/**
+ * @author Sancho McCann
+ *
+ */
+public class WyomingSoundingParserTest {
+
+	private InputStream page = null;
+
+	@Before
+	public void setUp() throws Exception {
+		page = getClass().getResourceAsStream("71109_2006010100.html");
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		page.close();
+	}
+
+	/**
+	 * Test method for {@link WyomingSoundingParser#next()}.
+	 */
+	@Test
+	public void testRecordedResponse() throws IOException {
+		WyomingSoundingParser parser = new WyomingSoundingParser(page);
+		assertTrue(parser.next());
+
+		assertEquals("71109", parser.getStationId());
+		assertEquals("YZT Port Hardy at 00Z 01 Jan 2006", parser.getStationName());
+		assertEquals(2006, parser.getTime().get(Calendar.YEAR));
+		assertEquals(Calendar.JANUARY, parser.getTime().get(Calendar.MONTH));
+		assertEquals(1, parser.getTime().get(Calendar.DAY_OF_MONTH));
+		assertEquals(0, parser.getTime().get(Calendar.HOUR_OF_DAY));
+
+		SoundingColumns columns = parser.getColumns();
+		assertEquals(61, columns.size());
+		assertEquals(0, parser.getSkippedRows());
+
+		// First row
+		assertEquals(1002.0, columns.getMillibars(0), 0);
+		assertEquals(17, columns.getMetres(0), 0);
+		assertEquals(6.4, columns.getTemperature(0), 0);
+		assertEquals(3.4, columns.getDewpoint(0), 0);
+		assertEquals(195, columns.getDirection(0), 0);
+		assertEquals(10, columns.getSpeed(0), 0);
+
+		// Mandatory level reported below ground: pressure and height only
+		assertEquals(1000.0, columns.getMillibars(3), 0);
+		assertEquals(17, columns.getMetres(3), 0);
+		assertTrue(Double.isNaN(columns.getTemperature(3)));
+		assertTrue(Double.isNaN(columns.getSpeed(3)));
+
+		// Missing wind
+		assertEquals(932.1, columns.getMillibars(5), 0);
+		assertEquals(-12.5, columns.getDewpoint(5), 0);
+		assertTrue(Double.isNaN(columns.getDirection(5)));
+		assertTrue(Double.isNaN(columns.getSpeed(5)));
+
+		assertFalse(parser.next());
+	}
+
+	/**
+	 * Test method for {@link WyomingSoundingParser#toSoundingData(java.util.GregorianCalendar)}.
+	 */
+	@Test
+	public void testToSoundingData() throws IOException {
+		WyomingSoundingParser parser = new WyomingSoundingParser(page);
+		assertTrue(parser.next());
+		SoundingData data = parser.toSoundingData(parser.getTime());
+
+		// The below ground level and the levels above the humidity measurements are left out
+		int complete = 0;
+		SoundingColumns columns = parser.getColumns();
+		for (int i = 0; i < columns.size(); i++)
+		{
+			if (!Double.isNaN(columns.getTemperature(i)) && !Double.isNaN(columns.getDewpoint(i)))
+				complete++;
+		}
+		assertEquals(complete, data.size());
+		assertTrue(data.size() < columns.size());
+		assertTrue(Double.isNaN(data.get(4).getSpeed()));
+		assertEquals("71109", data.getStationId());
+	}
+
+	@Test
+	public void testMultipleSoundingsAndLineEndings() throws IOException {
+		String block =
+			"<H2>72249 FWD Fort Worth Observations at %02dZ 02 Mar 2007</H2>\r\n" +
+			"<PRE>\r\n" +
+			"-----------------------------------------------------------------------------\r\n" +
+			"   PRES   HGHT   TEMP   DWPT   RELH   MIXR   DRCT   SKNT   THTA   THTE   THTV\r\n" +
+			"    hPa     m      C      C      %%    g/kg    deg   knot     K      K      K \r\n" +
+			"-----------------------------------------------------------------------------\r\n" +
+			"  994.0    196   15.2   10.2     72   7.98    170     14  288.9  311.7  290.3\r\n" +
+			"  925.0    810   12.6    7.6\r\n" +
+			"</PRE><H3>Station information and sounding indices</H3><PRE>\r\n" +
+			"                         Station identifier: FWD\r\n" +
+			"</PRE>\r\n";
+		String html = "<HTML>\r\n" + String.format(block, 0) + String.format(block, 12) + "</HTML>";
+
+		WyomingSoundingParser parser = new WyomingSoundingParser(new ByteArrayInputStream(html.getBytes("US-ASCII")));
+		for (int hour = 0; hour <= 12; hour += 12)
+		{
+			assertTrue(parser.next());
+			assertEquals(hour, parser.getTime().get(Calendar.HOUR_OF_DAY));
+			assertEquals(Calendar.MARCH, parser.getTime().get(Calendar.MONTH));
+			assertEquals(2, parser.getColumns().size());
+			assertEquals(7.6, parser.getColumns().getDewpoint(1), 0);
+			assertTrue(Double.isNaN(parser.getColumns().getDirection(1)));
+		}
+		assertFalse(parser.next());
+	}
+
+	/**
+	 * Test method for {@link WyomingSoundingParser#next()} with a page cut off inside a table.
+	 */
+	@Test
+	public void testTruncatedTable() throws IOException {
+		byte[] bytes = page.readAllBytes();
+		int cut = new String(bytes, "US-ASCII").indexOf("</PRE>") - 1;
+		WyomingSoundingParser parser = new WyomingSoundingParser(new ByteArrayInputStream(bytes, 0, cut));
+		try
+		{
+			parser.next();
+			fail("read a table without its closing </PRE>");
+		}
+		catch (IOException e)
+		{
+			assertFalse(parser.next());
+		}
+	}
+}
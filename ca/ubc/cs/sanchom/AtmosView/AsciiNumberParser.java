@@ -0,0 +1,148 @@
+package ca.ubc.cs.sanchom.AtmosView;
+import java.nio.ByteBuffer;
+
+/**
+ * Parses decimal numbers directly from ASCII bytes without creating Strings.
+ * Numbers of up to 18 significant digits with small exponents are converted exactly
+ * (a long mantissa scaled by an exactly representable power of ten); anything else
+ * falls back to Double.parseDouble.
+ * @author Sancho McCann
+ *
+ */
+final class AsciiNumberParser
+{
+	private static final double[] POWERS_OF_TEN = {
+		1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+		1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+	}; ///< The powers of ten that are exactly representable as doubles
+
+	private static final long MAX_EXACT_MANTISSA = 1L << 53; ///< Largest mantissa that converts to a double without rounding
+
+	private AsciiNumberParser()
+	{
+	}
+
+	/**
+	 * Parses a decimal number from the bytes in [start, end). Leading and trailing
+	 * blanks are ignored.
+	 * @param buffer the bytes to parse; its position is not changed
+	 * @param start the absolute index of the first byte
+	 * @param end the absolute index one past the last byte
+	 * @return the parsed value, or NaN if the bytes are blank or not a number
+	 */
+	static double parse(ByteBuffer buffer, int start, int end)
+	{
+		while (start < end && isBlank(buffer.get(start)))
+			start++;
+		while (end > start && isBlank(buffer.get(end - 1)))
+			end--;
+		if (start == end)
+			return Double.NaN;
+
+		int i = start;
+		boolean negative = false;
+		byte b = buffer.get(i);
+		if (b == '-' || b == '+')
+		{
+			negative = (b == '-');
+			i++;
+		}
+
+		long mantissa = 0;
+		int digits = 0;
+		int scale = 0;
+		boolean seenDigit = false;
+		boolean seenPoint = false;
+		for (; i < end; i++)
+		{
+			b = buffer.get(i);
+			if (b >= '0' && b <= '9')
+			{
+				seenDigit = true;
+				if (mantissa == 0 && b == '0')
+				{
+					// leading zeros don't count towards precision
+					if (seenPoint)
+						scale--;
+					continue;
+				}
+				if (++digits > 18)
+					return fallback(buffer, start, end);
+				mantissa = mantissa * 10 + (b - '0');
+				if (seenPoint)
+					scale--;
+			}
+			else if (b == '.' && !seenPoint)
+			{
+				seenPoint = true;
+			}
+			else
+			{
+				break;
+			}
+		}
+		if (!seenDigit)
+			return Double.NaN;
+
+		if (i < end)
+		{
+			if (b != 'e' && b != 'E')
+				return Double.NaN;
+			i++;
+			boolean negativeExponent = false;
+			if (i < end && (buffer.get(i) == '-' || buffer.get(i) == '+'))
+			{
+				negativeExponent = (buffer.get(i) == '-');
+				i++;
+			}
+			if (i == end)
+				return Double.NaN;
+			int exponent = 0;
+			for (; i < end; i++)
+			{
+				b = buffer.get(i);
+				if (b < '0' || b > '9')
+					return Double.NaN;
+				if (exponent > 1000)
+					return fallback(buffer, start, end);
+				exponent = exponent * 10 + (b - '0');
+			}
+			scale += negativeExponent ? -exponent : exponent;
+		}
+
+		double value;
+		if (mantissa == 0)
+			value = 0;
+		else if (mantissa < MAX_EXACT_MANTISSA && scale >= 0 && scale < POWERS_OF_TEN.length)
+			value = mantissa * POWERS_OF_TEN[scale];
+		else if (mantissa < MAX_EXACT_MANTISSA && scale < 0 && -scale < POWERS_OF_TEN.length)
+			value = mantissa / POWERS_OF_TEN[-scale];
+		else
+			return fallback(buffer, start, end);
+
+		return negative ? -value : value;
+	}
+
+	private static boolean isBlank(byte b)
+	{
+		return b == ' ' || b == '\t' || b == '\r';
+	}
+
+	/**
+	 * The rare path for numbers that can't be converted exactly from a long mantissa.
+	 */
+	private static double fallback(ByteBuffer buffer, int start, int end)
+	{
+		byte[] bytes = new byte[end - start];
+		for (int i = 0; i < bytes.length; i++)
+			bytes[i] = buffer.get(start + i);
+		try
+		{
+			return Double.parseDouble(new String(bytes, "US-ASCII"));
+		}
+		catch (Exception e)
+		{
+			return Double.NaN;
+		}
+	}
+}
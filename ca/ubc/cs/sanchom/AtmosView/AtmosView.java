@@ -1,5 +1,8 @@
 package ca.ubc.cs.sanchom.AtmosView;
 
+import java.io.File;
+import java.io.IOException;
+
 /**
  * The executable class for the Atmospheric Sounding Visualization.
  * @author Sancho McCann
@@ -7,7 +10,36 @@ package ca.ubc.cs.sanchom.AtmosView;
  */
 public class AtmosView {
 
+	private static final long RESPONSE_CACHE_BYTES = 64L * 1024 * 1024; ///< Cap on the cached server responses
+
 	public static void main(String args[]) {
+		try {
+			File responses = new File(System.getProperty("user.home"), ".atmosview" + File.separator + "responses");
+			SoundingFetcher.setDefaultResponseCache(new ResponseCache(responses, RESPONSE_CACHE_BYTES));
+		} catch (IOException e) {
+			// Run without the response cache
+			System.err.println(e);
+		}
+
+		try {
+			File store = new File(System.getProperty("user.home"), ".atmosview" + File.separator + "soundings");
+			SoundingStore soundingStore = new SoundingStore(store);
+			soundingStore.setCompressed(true);
+			SoundingFetcher.getInstance().setStore(soundingStore);
+		} catch (IOException e) {
+			// Run without the local store
+			System.err.println(e);
+		}
+		
+		File stations = new File(System.getProperty("user.home"), ".atmosview" + File.separator + "stations.txt");
+		SoundingFetcher.getInstance().setStationCatalog(new StationCatalog(stations));
+
+		File missing = new File(System.getProperty("user.home"), ".atmosview" + File.separator + "missing.txt");
+		SoundingFetcher.getInstance().setMissingSoundingCache(new MissingSoundingCache(missing));
+
+		// Build the pseudo-adiabats before the first sounding needs them
+		MoistAdiabatTable.getInstance();
+
 		MainFrame m = new MainFrame();
 		m.setVisible(true);
 		
@@ -125,7 +125,7 @@ public class BarPanel extends JPanel {
 	private double SWEAT_MAX = 600;
 	private double BRCH_MAX = 100;
 
-	private SoundingData m_data = null;
+	private SoundingSnapshot m_data = null;
 	private DerivedData m_derived = null;
 	
 	/**
@@ -136,17 +136,32 @@ public class BarPanel extends JPanel {
 	 */
 	public void linkSoundingData(SoundingData data)
 	{
-		m_data = data;
-		m_derived = new DerivedData(m_data);
+		linkSounding(new DerivedData(data));
+	}
+	
+	/**
+	 * Gives this widget data already derived from a sounding, such as from a
+	 * SoundingCache. The derived data and its snapshot are shared, not copied.
+	 * @param derived the derived data
+	 */
+	public void linkSounding(DerivedData derived)
+	{
+		m_data = derived.getSnapshot();
+		m_derived = derived;
 		
 		updateShapes();
 	}
 	
-	public SoundingData getSoundingData()
+	public SoundingSnapshot getSnapshot()
 	{
 		return m_data;
 	}
 	
+	public DerivedData getDerivedData()
+	{
+		return m_derived;
+	}
+	
 	/**
 	 * Triggers an update of the shape objects.
 	 */
@@ -233,9 +248,10 @@ public class BarPanel extends JPanel {
 			
 			int previousTriangleHeight = 0;
 			
+			DerivedProfile.Cursor p = m_derived.getProfile().cursor();
 			for (int i = 0; i < m_derived.size(); i++)
 			{
-				DerivedPoint p = m_derived.get(i);
+				p.moveTo(i);
 				
 				Point2D z = new Point2D.Double();
 				Point2D w = new Point2D.Double();
@@ -363,12 +379,13 @@ public class BarPanel extends JPanel {
 			indexBars.add(new Rectangle2D.Double(getWidth() - actualRightMargin / 2 + WIND_OFFSET, getHeight() / 2 + markerFrameHeight * 10, Math.min(markerSize, markerSize * (m_derived.getBRCH()/BRCH_MAX)), markerFrameHeight));
 			
 			
+			DerivedProfile.Cursor wind = m_derived.getProfile().cursor();
 			for (int height = 0; height < Math.min(MAX_HEIGHT, m_derived.maxHeight()); height+=WIND_STEP)
 			{
 				double clampedHeight = Math.max(height, m_derived.minHeight());
-				DerivedPoint p = m_derived.getDataFromHeight(clampedHeight);
-				double speed = p.getSpeed();
-				double clockwiseFromNorth = p.getDirection();
+				wind.moveTo(m_derived.getProfile().indexOfHeight(clampedHeight));
+				double speed = wind.getSpeed();
+				double clockwiseFromNorth = wind.getDirection();
 				double counterclockwiseFromXAxis = 90 - clockwiseFromNorth;
 				if (counterclockwiseFromXAxis < 0)
 				{
@@ -541,7 +558,7 @@ public class BarPanel extends JPanel {
 		{
 			for (int i = 0; i < derivedSpreads.size(); i++)
 			{
-				double x = m_derived.get(i).getLiftedDiff();
+				double x = m_derived.getProfile().getLiftedDiff(i);
 				
 				// Interpolate the colour of the temperature/dewpoint bar based on
 				// convective potential.
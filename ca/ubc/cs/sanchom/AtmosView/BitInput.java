@@ -0,0 +1,61 @@
+package ca.ubc.cs.sanchom.AtmosView;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Reads a stream of bits, most significant bit first, from a region of a ByteBuffer.
+ * @author Sancho McCann
+ *
+ */
+final class BitInput
+{
+	private final ByteBuffer m_buffer;
+	private int m_position; ///< Absolute index of the next byte to load
+	private final int m_end; ///< Absolute index one past the last byte
+	private long m_bits = 0; ///< Loaded bits, right aligned
+	private int m_bitCount = 0; ///< Number of loaded bits
+
+	/**
+	 * Constructor
+	 * @param buffer the buffer to read; its position is not changed
+	 * @param start the absolute index of the first byte
+	 * @param end the absolute index one past the last byte
+	 */
+	BitInput(ByteBuffer buffer, int start, int end)
+	{
+		m_buffer = buffer;
+		m_position = start;
+		m_end = end;
+	}
+
+	/**
+	 * Reads bits as an unsigned value.
+	 * @param count the number of bits to read, 0 to 64
+	 * @throws BufferUnderflowException if the region is exhausted
+	 */
+	long read(int count)
+	{
+		if (count > 32)
+		{
+			long high = read(count - 32);
+			return (high << 32) | read(32);
+		}
+		while (m_bitCount < count)
+		{
+			if (m_position >= m_end)
+				throw new BufferUnderflowException();
+			m_bits = (m_bits << 8) | (m_buffer.get(m_position++) & 0xFF);
+			m_bitCount += 8;
+		}
+		m_bitCount -= count;
+		return (m_bits >>> m_bitCount) & ((1L << count) - 1);
+	}
+
+	/**
+	 * Reads a single bit
+	 */
+	boolean readBit()
+	{
+		return read(1) != 0;
+	}
+}
@@ -0,0 +1,86 @@
+package ca.ubc.cs.sanchom.AtmosView;
+import java.nio.ByteBuffer;
+
+/**
+ * Writes a stream of bits, most significant bit first, into a growable byte array.
+ * @author Sancho McCann
+ *
+ */
+final class BitOutput
+{
+	private byte[] m_bytes = new byte[64];
+	private int m_byteCount = 0; ///< Number of complete bytes written
+	private long m_pending = 0; ///< Bits not yet flushed to m_bytes, right aligned
+	private int m_pendingCount = 0; ///< Number of bits in m_pending
+
+	/**
+	 * Writes the low bits of a value.
+	 * @param value the bits to write, right aligned
+	 * @param count the number of bits to write, 0 to 64
+	 */
+	void write(long value, int count)
+	{
+		if (count > 32)
+		{
+			write(value >>> 32, count - 32);
+			count = 32;
+		}
+		if (count == 0)
+			return;
+
+		m_pending = (m_pending << count) | (value & ((1L << count) - 1));
+		m_pendingCount += count;
+		while (m_pendingCount >= 8)
+		{
+			m_pendingCount -= 8;
+			put((byte)(m_pending >>> m_pendingCount));
+		}
+	}
+
+	/**
+	 * Writes a single bit
+	 */
+	void writeBit(boolean bit)
+	{
+		write(bit ? 1 : 0, 1);
+	}
+
+	/**
+	 * Returns the number of bits written
+	 */
+	long bitLength()
+	{
+		return m_byteCount * 8L + m_pendingCount;
+	}
+
+	/**
+	 * Returns the number of bytes needed to hold the bits written, including the padding
+	 * of the last partial byte.
+	 */
+	int byteLength()
+	{
+		return m_byteCount + (m_pendingCount > 0 ? 1 : 0);
+	}
+
+	/**
+	 * Copies the bits written into a buffer, zero padding the final byte.
+	 * @param out the destination
+	 */
+	void copyTo(ByteBuffer out)
+	{
+		out.put(m_bytes, 0, m_byteCount);
+		if (m_pendingCount > 0)
+			out.put((byte)(m_pending << (8 - m_pendingCount)));
+	}
+
+	private void put(byte b)
+	{
+		if (m_byteCount == m_bytes.length)
+		{
+			byte[] grown = new byte[m_bytes.length * 2];
+			System.arraycopy(m_bytes, 0, grown, 0, m_byteCount);
+			m_bytes = grown;
+		}
+		m_bytes[m_byteCount++] = b;
+	}
+}
@@ -1,6 +1,5 @@
 package ca.ubc.cs.sanchom.AtmosView;
-import java.util.ArrayList;
-import java.util.Collections;
+import java.util.List;
 
 
 /**
@@ -18,16 +17,18 @@ public class DerivedData {
 	 * @name Physical constants
 	 */
 	//@{
-	private final static double PRESSURE_COEFFICIENT = 6.1078; ///< Coefficient in mixing ratio computations.
+	final static double PRESSURE_COEFFICIENT = 6.1078; ///< Coefficient in mixing ratio computations.
 	//private final static double GAS_CONSTANT = 461;
 	//private final static double SPECIFIC_HEAT = 1004; ///< Specific heat of water in J/kg/degreeC
 	private final static double SPECIFIC_HEAT = 1463; ///< Specific heat of water in J/kg/degreeC
 	private final static double LATENT_HEAT = 1800; ///< Latent heat of condensation in J/g
 	private final static double KELVIN_CONVERSION = 273.15;
+	private final static double LN_10 = Math.log(10);
+	final static double KAPPA = 0.28571; ///< Ratio of the gas constant to the specific heat of dry air, the exponent of the dry adiabat
 	//@}
 	
-	private SoundingData m_soundingData = null;
-	private ArrayList<DerivedPoint> m_derivedData = null;
+	private SoundingSnapshot m_soundingData = null; ///< The sounding the data was derived from, sorted by height
+	private DerivedProfile m_profile = null; ///< The interpolated samples
 	
 	/**
 	 * @name Singularly derived values
@@ -85,7 +86,7 @@ public class DerivedData {
 	 */
 	public static double getDryAdiabaticCooledTemperature(double initialPressure, double initialTemp, double queryPressure)
 	{
-		return toCelcius(toKelvin(initialTemp) * Math.pow(queryPressure / initialPressure, 0.28571));
+		return toCelcius(toKelvin(initialTemp) * Math.pow(queryPressure / initialPressure, KAPPA));
 	}
 //	
 //	public static double getDryAdiabaticCooledTemperature_KM(double initialHeight, double initialTemp, double queryHeight)
@@ -104,117 +105,131 @@ public class DerivedData {
 	}
 	
 	/**
-	 * Returns a forward difference approximation of the derivative of mixing ratio with respect to temperature
+	 * Returns the derivative of the saturation mixing ratio with respect to temperature,
+	 * in g/kg per degree. It is differentiated analytically from getVapourPressure and
+	 * getMixingRatio, which costs one power rather than a finite difference's two.
 	 * @param p the pressure level in millibars of the estimate
 	 * @param t the temperature of the estimate in degrees celcius
 	 */
-	private double getDMixingDTemp(double p, double t)
+	static double getDMixingDTemp(double p, double t)
 	{
-		double differential = Math.pow(1,-10);
+		double e_sat = getVapourPressure(t);
+		double dEdT = e_sat * LN_10 * 7.5 * 237.3 / ((237.3+t) * (237.3+t));
 		
-		double e_sat_a = getVapourPressure(t);
-		double e_sat_b = getVapourPressure(t+differential);
-		double mix_a = getMixingRatio(p, e_sat_a);
-		double mix_b = getMixingRatio(p, e_sat_b);
-		
-		return (mix_b - mix_a) / differential;
+		return 0.62197 * 1000 * p * dEdT / ((p-e_sat) * (p-e_sat));
 	}
 
-	//TODO: handle null and empty error cases
-	@SuppressWarnings("unchecked")
+	/**
+	 * Returns the rate of change of temperature with pressure of a saturated parcel, in
+	 * degrees celcius per millibar. This is the dry adiabatic rate, slowed by the latent
+	 * heat released as the parcel's saturation mixing ratio falls.
+	 * @param p the pressure level in millibars
+	 * @param t the temperature of the parcel in degrees celcius
+	 */
+	static double getMoistAdiabaticRate(double p, double t)
+	{
+		double dryRate = KAPPA * toKelvin(t) / p;
+		return dryRate / (1+(LATENT_HEAT/SPECIFIC_HEAT)*getDMixingDTemp(p, t));
+	}
+
+	/**
+	 * Derives data from a sounding, working from a snapshot of it.
+	 * @param soundingData the sounding
+	 */
 	public DerivedData(SoundingData soundingData)
 	{
-		m_soundingData = (SoundingData)soundingData.clone();
-		m_derivedData = new ArrayList<DerivedPoint>();
+		this(soundingData.snapshot());
+	}
+
+	/**
+	 * Derives data from a sounding snapshot. The snapshot is shared, not copied.
+	 * @param soundingData the sounding
+	 */
+	//TODO: handle null and empty error cases
+	public DerivedData(SoundingSnapshot soundingData)
+	{
+		m_soundingData = soundingData;
 		
-		DerivedPoint surfaceData = null;
-		if (m_soundingData.size() > 0)
-		{
-			SoundingPoint p = m_soundingData.get(0);
-			surfaceData = new DerivedPoint(p.getMetres(), p.getMillibars(), p.getTemperature(), p.getDewpoint(), p.getDirection(), p.getSpeed());
-		}
-		else
+		if (m_soundingData.size() == 0)
 		{
+			m_profile = new DerivedProfile(0, SAMPLE_STEP, 0);
 			//TODO: throw exception
 			return;
 		}
+		double surfaceHeight = m_soundingData.getMetres(0);
+		double topHeight = m_soundingData.getMetres(m_soundingData.size()-1);
+		int bottom = (int)Math.ceil(surfaceHeight);
+		m_profile = new DerivedProfile(bottom, SAMPLE_STEP, (int)Math.ceil((topHeight - bottom) / SAMPLE_STEP));
 
-		DerivedPoint pblAverage = getPblAverage(surfaceData, 500);
+		DerivedPoint pblAverage = getPblAverage(surfaceHeight, 500);
 		
-		double liftedParcelTemp = Double.NaN;
-		DerivedPoint previousSample = null;
+		// The single levels are solved from the raw levels, independent of the sample grid
+		LevelSolver solver = new LevelSolver(m_soundingData);
+		LevelSolver.Parcel parcel = solver.lift(pblAverage.getPressure(), pblAverage.getTemperature(), pblAverage.getDewpoint());
 		
-		for (int sampleHeight = (int)Math.ceil(surfaceData.getSampleHeight());
-		sampleHeight < m_soundingData.get(m_soundingData.size()-1).getMetres(); sampleHeight+=SAMPLE_STEP)
+		LCL = parcel.getLclHeight();
+		if (!Double.isNaN(LCL))
 		{
-			DerivedPoint currentSample = getInterpolation(sampleHeight);
-			
-			// If we're already tracking the lifted parcel above the LCL, update it.
-			if (!Double.isNaN(LCL))
-			{
-				double dMixingdTemp = getDMixingDTemp(currentSample.getPressure(), liftedParcelTemp);
-				
-				// This is how much the parcel would have cooled if it were dry
-				double cooled = getDryAdiabaticCooledTemperature(previousSample.getPressure(), liftedParcelTemp,currentSample.getPressure());
-				double DALR = liftedParcelTemp - cooled;
-				// This adjusts for the latent heat released during condensation since the parcel is saturated
-				double MALR = DALR / (1+(LATENT_HEAT/SPECIFIC_HEAT)*dMixingdTemp);
-				liftedParcelTemp = liftedParcelTemp - MALR;
-			}
-
-			if (!Double.isNaN(LFC) && Double.isNaN(EL) && liftedParcelTemp <= currentSample.getTemperature())
-			{
-				EL = currentSample.getSampleHeight();
-			}
-			
-			// If we've found the LFC, but not the EL, accumulate the CAPE
-			if (!Double.isNaN(LFC) && Double.isNaN(EL) && liftedParcelTemp > currentSample.getTemperature())
-			{
-				CAPE += 9.8 * SAMPLE_STEP * (toKelvin(liftedParcelTemp) - toKelvin(currentSample.getTemperature())) / toKelvin(currentSample.getTemperature());
-			}
-			
-			// Will only pass once to set the CCL
-			if (Double.isNaN(CCL) && pblAverage.getVapourPressure() >= getVapourPressure(currentSample.getTemperature()))
-			{
-				CCL = currentSample.getSampleHeight();
-				CCL_pressure = currentSample.getPressure();
-
-				convectiveTemperature = getDryAdiabaticCooledTemperature(currentSample.getPressure(), pblAverage.getTemperature(), pblAverage.getPressure());
-				convectiveTemperatureRise = Math.max(convectiveTemperature - pblAverage.getTemperature(), 0);
-			}
-			
-			// Will only get to inner loop once, to set the LCL
-			if (Double.isNaN(LCL))
-			{
-				liftedParcelTemp = getDryAdiabaticCooledTemperature(pblAverage.getPressure(), pblAverage.getTemperature(), currentSample.getPressure());
-				double forcedAdiabaticSaturationPressure = getVapourPressure(liftedParcelTemp);
-
-				if (pblAverage.getVapourPressure() >= forcedAdiabaticSaturationPressure)
-				{
-					LCL = sampleHeight;
-					LCL_pressure = currentSample.getPressure();
-					LCL_temperature = currentSample.getTemperature();
-				}
-			}
-
-			currentSample.setLiftedParcelTemp(liftedParcelTemp);
-
-			// Now, if we haven't found the LFC, but we're tracking the lifted temperature (above the LCL),
-			// check to see if this is the LFC
-			if (Double.isNaN(LFC) && !Double.isNaN(LCL) && currentSample.getLiftedParcelTemp() > currentSample.getTemperature())
-			{
-				LFC = currentSample.getSampleHeight();
-				LFC_pressure = currentSample.getPressure();
-			}
-			
-			previousSample = currentSample;
-			m_derivedData.add(currentSample);
+			LCL_pressure = parcel.getLclPressure();
+			LCL_temperature = solver.getTemperature(LCL);
+		}
+		
+		CCL = solver.getCCL(pblAverage.getVapourPressure());
+		if (!Double.isNaN(CCL))
+		{
+			CCL_pressure = solver.getPressure(CCL);
+			convectiveTemperature = getDryAdiabaticCooledTemperature(CCL_pressure, pblAverage.getTemperature(), pblAverage.getPressure());
+			convectiveTemperatureRise = Math.max(convectiveTemperature - pblAverage.getTemperature(), 0);
+		}
+		
+		LFC = parcel.getLFC();
+		if (!Double.isNaN(LFC))
+		{
+			LFC_pressure = solver.getPressure(LFC);
+		}
+		EL = parcel.getEL();
+		CAPE = parcel.getCAPE();
+		
+		// The sample heights rise, so one cursor walks the levels and the samples together
+		int count = Math.max((int)Math.ceil((topHeight - bottom) / SAMPLE_STEP), 0);
+		double[] pressure = new double[count];
+		double[] temperature = new double[count];
+		double[] dewpoint = new double[count];
+		double[] direction = new double[count];
+		double[] speed = new double[count];
+		SoundingInterpolator cursor = new SoundingInterpolator(m_soundingData);
+		for (int i = 0; i < count; i++)
+		{
+			cursor.moveTo(bottom + i * SAMPLE_STEP);
+			pressure[i] = cursor.getMillibars();
+			temperature[i] = cursor.getTemperature();
+			dewpoint[i] = cursor.getDewpoint();
+			direction[i] = cursor.getDirection();
+			speed[i] = cursor.getSpeed();
+		}
+		int first = m_profile.appendAll(pressure, temperature, dewpoint, direction, speed, count);
+		
+		// The parcel is dry below the LCL, where the samples' pressures are a run at the start
+		int dry = 0;
+		while (dry < count && (Double.isNaN(LCL) || pressure[dry] >= LCL_pressure))
+		{
+			dry++;
+		}
+		double[] lifted = new double[count];
+		ThermoKernels.getDryAdiabaticCooledTemperature(pblAverage.getPressure(), pblAverage.getTemperature(), pressure, lifted, 0, dry);
+		for (int i = dry; i < count; i++)
+		{
+			lifted[i] = parcel.getTemperature(pressure[i]);
+		}
+		for (int i = 0; i < count; i++)
+		{
+			m_profile.setLiftedParcelTemp(first + i, lifted[i]);
 		}
 		
 		// get some indices
-		DerivedPoint data500 = getDataFromPressureLevel(500);
-		DerivedPoint data700 = getDataFromPressureLevel(700);
-		DerivedPoint data850 = getDataFromPressureLevel(850);
+		DerivedProfile.Cursor data500 = m_profile.cursor().moveTo(m_profile.indexOfPressureLevel(500));
+		DerivedProfile.Cursor data700 = m_profile.cursor().moveTo(m_profile.indexOfPressureLevel(700));
+		DerivedProfile.Cursor data850 = m_profile.cursor().moveTo(m_profile.indexOfPressureLevel(850));
 				
 		LIFTED_INDEX = data500.getTemperature() - data500.getLiftedParcelTemp();
 		KINX = (data850.getTemperature() - data500.getTemperature()) + data850.getDewpoint() -(data700.getTemperature() - data700.getDewpoint());
@@ -224,12 +239,13 @@ public class DerivedData {
 		SWEAT = 12 * data850.getTemperature() + 20 * Math.max(TOTAL_TOTALS_INDEX - 49, 0) + 2 * data850.getSpeed() + data500.getSpeed() + 125 * (Math.sin( Math.toRadians(data500.getDirection()) - Math.toRadians(data850.getDirection()) ) + 0.2);
 		
 
+		DerivedProfile.Cursor d = m_profile.cursor();
 		double u1Accumulator = 0;
 		double v1Accumulator = 0;
 		double numAccumulated = 0;
 		for (int i = 0; i <= 500; i += 100)
 		{
-			DerivedPoint d = getDataFromHeight(surfaceData.getSampleHeight() + i);
+			d.moveTo(m_profile.indexOfHeight(surfaceHeight + i));
 			u1Accumulator += d.getSpeed() * Math.cos(Math.toRadians(d.getDirection()));
 			v1Accumulator += d.getSpeed() * Math.sin(Math.toRadians(d.getDirection()));
 			
@@ -243,7 +259,7 @@ public class DerivedData {
 		numAccumulated = 0;
 		for (int i = 0; i <= 500; i += 6000)
 		{
-			DerivedPoint d = getDataFromHeight(surfaceData.getSampleHeight() + i);
+			d.moveTo(m_profile.indexOfHeight(surfaceHeight + i));
 			u2Accumulator += d.getSpeed() * Math.cos(Math.toRadians(d.getDirection()));
 			v2Accumulator += d.getSpeed() * Math.sin(Math.toRadians(d.getDirection()));
 			
@@ -256,197 +272,81 @@ public class DerivedData {
 		
 	}
 
+	/**
+	 * Returns a new DerivedPoint holding the sample at or just below a height
+	 * @param targetHeight the height in metres
+	 */
 	public DerivedPoint getDataFromHeight(double targetHeight)
 	{
-		DerivedPoint closestPoint = null;
-		
-		int bottomIndex = 0;
-		int topIndex = m_derivedData.size() - 1;
-		
-		while (closestPoint == null && bottomIndex + 1 < topIndex)
-		{
-			
-			int midIndex = (bottomIndex + topIndex) / 2;
-			double midHeight = m_derivedData.get(midIndex).getSampleHeight();
-			
-			if (targetHeight == midHeight)
-			{
-				closestPoint = m_derivedData.get(midIndex);
-			}
-			
-			// the highest millibars are stored closer to the zero index
-			if (targetHeight > midHeight)
-			{
-				bottomIndex = midIndex;
-			}
-			else
-			{
-				topIndex = midIndex;
-			}	
-		}
-		
-		if (bottomIndex + 1 >= topIndex)
-		{
-			closestPoint = m_derivedData.get(bottomIndex);
-		}
-		
-		return closestPoint;
+		return m_profile.get(m_profile.indexOfHeight(targetHeight));
 	}
 	
+	/**
+	 * Returns a new DerivedPoint holding the sample at or just below a pressure level
+	 * @param targetMillibars the pressure in millibars
+	 */
 	public DerivedPoint getDataFromPressureLevel(double targetMillibars)
 	{
-		DerivedPoint closestPoint = null;
-		
-		int bottomIndex = 0;
-		int topIndex = m_derivedData.size() - 1;
-		
-		while (closestPoint == null && bottomIndex + 1 < topIndex)
-		{
-			
-			int midIndex = (bottomIndex + topIndex) / 2;
-			double midPressure = m_derivedData.get(midIndex).getPressure();
-			
-			if (targetMillibars == midPressure)
-			{
-				closestPoint = m_derivedData.get(midIndex);
-			}
-			
-			// the highest millibars are stored closer to the zero index
-			if (targetMillibars > midPressure)
-			{
-				topIndex = midIndex;
-			}
-			else
-			{
-				bottomIndex = midIndex;
-			}	
-		}
-		
-		if (bottomIndex + 1 >= topIndex)
-		{
-			closestPoint = m_derivedData.get(bottomIndex);
-		}
-		
-		return closestPoint;
+		return m_profile.get(m_profile.indexOfPressureLevel(targetMillibars));
 	}
 	
-	private DerivedPoint getPblAverage(DerivedPoint baseData, int windowHeight)
+	/**
+	 * Averages the sounding over a layer, sampling it every SAMPLE_STEP metres.
+	 * @param surfaceHeight the bottom of the layer in metres
+	 * @param windowHeight the depth of the layer in metres
+	 * @return the average, with no wind
+	 */
+	private DerivedPoint getPblAverage(double surfaceHeight, int windowHeight)
 	{
-		int baseHeight = (int)Math.ceil(baseData.getSampleHeight());
+		int baseHeight = (int)Math.ceil(surfaceHeight);
 		
-		DerivedPoint accumulator = new DerivedPoint(0,0,0,0,0,0);
+		double heightSum = 0;
+		double pressureSum = 0;
+		double temperatureSum = 0;
+		double dewpointSum = 0;
 
+		SoundingInterpolator cursor = new SoundingInterpolator(m_soundingData);
 		int numSamples = 0;
 		for (int sampleHeight = baseHeight;
 			sampleHeight < baseHeight + windowHeight; sampleHeight+=SAMPLE_STEP)
 		{
-			DerivedPoint currentSample = getInterpolation(sampleHeight);
+			cursor.moveTo(sampleHeight);
 
-			accumulator.setSampleHeight(accumulator.getSampleHeight() + currentSample.getSampleHeight());
-			accumulator.setPressure(accumulator.getPressure() + currentSample.getPressure());
-			accumulator.setTemperature(accumulator.getTemperature() + currentSample.getTemperature());
-			accumulator.setDewpoint(accumulator.getDewpoint() + currentSample.getDewpoint());
+			heightSum += cursor.getMetres();
+			pressureSum += cursor.getMillibars();
+			temperatureSum += cursor.getTemperature();
+			dewpointSum += cursor.getDewpoint();
 			
 			numSamples++;
 		}
 
 		// Do the average
-		accumulator.setSampleHeight(accumulator.getSampleHeight() / numSamples);
-		accumulator.setPressure(accumulator.getPressure() / numSamples);
-		accumulator.setTemperature(accumulator.getTemperature() / numSamples);
-		accumulator.setDewpoint(accumulator.getDewpoint() / numSamples);
-		
-		return accumulator;
+		return new DerivedPoint(heightSum / numSamples, pressureSum / numSamples,
+				temperatureSum / numSamples, dewpointSum / numSamples, 0, 0);
 	}
 	
-	@SuppressWarnings("unchecked")
-	private DerivedPoint getInterpolation(int sampleHeight)
+	/**
+	 * Returns the sounding this data was derived from
+	 */
+	public SoundingSnapshot getSnapshot()
 	{
-		SoundingPoint dummy = new SoundingPoint(Double.NaN, sampleHeight, Double.NaN, Double.NaN, Double.NaN, Double.NaN);
-		int index = Collections.binarySearch(m_soundingData, dummy);
-		double interpolatedTemp;
-		double interpolatedDew;
-		double interpolatedPressure;
-		double interpolatedDirection;
-		double interpolatedSpeed;
-		if ( index >= 0 ) {
-			// No interpolation needed
-			SoundingPoint a = m_soundingData.get(index);
-			interpolatedTemp = a.getTemperature();
-			interpolatedDew = a.getDewpoint();
-			interpolatedPressure = a.getMillibars();
-			interpolatedDirection = a.getDirection();
-			interpolatedSpeed = a.getSpeed();
-		}
-		else {
-			// Interpolation needed
-			int insertPoint = -index - 1;
-			// Guaranteed to be in bounds by construction of the loop
-			SoundingPoint a = m_soundingData.get(insertPoint - 1);
-			SoundingPoint b = m_soundingData.get(insertPoint);
-			
-			double diff = Math.abs(b.getMetres() - a.getMetres());
-			double aWeight = 1 - Math.abs(sampleHeight - a.getMetres()) / diff;
-			double bWeight = 1 - aWeight;
-			
-			interpolatedTemp = aWeight * a.getTemperature() + bWeight * b.getTemperature();
-			interpolatedDew = aWeight * a.getDewpoint() + bWeight * b.getDewpoint();
-			interpolatedPressure = aWeight * a.getMillibars() + bWeight * b.getMillibars();
-			
-			// Interpolate direction: This isn't necessarily valid to do
-		
-			double smallestDirection;
-			double largestDirection;
-			double smallWeight;
-			
-			if (a.getDirection() < b.getDirection())
-			{
-				smallestDirection = a.getDirection();
-				largestDirection = b.getDirection();
-				smallWeight = aWeight;
-			}
-			else
-			{
-				smallestDirection = b.getDirection();
-				largestDirection = a.getDirection();
-				smallWeight = bWeight;
-			}
-			
-			double cwFromLargest = smallestDirection - largestDirection;
-			if (cwFromLargest < 0)
-			{
-				cwFromLargest += 360;
-			}
-			
-			double cwFromSmallest = largestDirection - smallestDirection;
-			
-			if (cwFromLargest < cwFromSmallest)
-			{
-				interpolatedDirection = smallWeight * cwFromLargest + largestDirection;
-				if (interpolatedDirection > 360)
-				{
-					interpolatedDirection -= 360;
-				}
-			}
-			else
-			{
-				interpolatedDirection = (1 - smallWeight) * cwFromSmallest + smallestDirection;
-				if (interpolatedDirection > 360)
-				{
-					interpolatedDirection -= 360;
-				}
-			}
-			
-			interpolatedSpeed = aWeight * a.getSpeed() + bWeight * b.getSpeed();
-		}
-		DerivedPoint d = new DerivedPoint(sampleHeight, interpolatedPressure, interpolatedTemp, interpolatedDew, interpolatedDirection, interpolatedSpeed);
-		
-		return d;
+		return m_soundingData;
+	}
+	
+	/**
+	 * Returns the interpolated samples
+	 */
+	public DerivedProfile getProfile()
+	{
+		return m_profile;
 	}
 	
+	/**
+	 * Returns a new DerivedPoint holding a sample. getProfile() reads samples without copying.
+	 */
 	public DerivedPoint get(int index)
 	{	
-		return m_derivedData.get(index);
+		return m_profile.get(index);
 	}
 	
 	public double getLCL()
@@ -507,7 +407,7 @@ public class DerivedData {
 
 	public int size()
 	{
-		return m_derivedData.size();
+		return m_profile.size();
 	}
 	
 	/**
@@ -515,7 +415,7 @@ public class DerivedData {
 	 */
 	public double minHeight()
 	{
-		return m_derivedData.get(0).getSampleHeight();
+		return m_profile.getSampleHeight(0);
 	}
 	
 	
@@ -524,7 +424,7 @@ public class DerivedData {
 	 */
 	public double maxHeight()
 	{
-		return m_derivedData.get(m_derivedData.size()-1).getSampleHeight();
+		return m_profile.getSampleHeight(m_profile.size()-1);
 	}
 	
 	public double getSampleStep()
@@ -532,9 +432,12 @@ public class DerivedData {
 		return SAMPLE_STEP;
 	}
 	
-	public ArrayList<DerivedPoint> getList()
+	/**
+	 * Returns a read-only list view of the samples, building a DerivedPoint for each one read
+	 */
+	public List<DerivedPoint> getList()
 	{
-		return m_derivedData;
+		return m_profile.asList();
 	}
 	
 	public String toString()
@@ -38,6 +38,27 @@ public class DerivedPoint {
 		redoDerivation();
 	}
 	
+	/**
+	 * Constructor taking values already derived, as held by a DerivedProfile
+	 */
+	DerivedPoint(double height, double pressure, double temperature, double dewpoint, double direction, double speed,
+			double relativeHumidity, double vapourPressure, double mixingRatio, boolean stratusCloud, double liftedParcelTemp)
+	{
+		sampleHeight = height;
+		this.pressure = pressure;
+		this.temperature = temperature;
+		this.dewpoint = dewpoint;
+		this.direction = direction;
+		this.speed = speed;
+		this.temperatureDewpointSpread = temperature - dewpoint;
+		this.relativeHumidity = relativeHumidity;
+		this.vapourPressure = vapourPressure;
+		this.mixingRatio = mixingRatio;
+		this.stratusCloud = stratusCloud;
+		this.liftedParcelTemp = liftedParcelTemp;
+		this.liftedDiff = liftedParcelTemp - temperature;
+	}
+
 	public DerivedPoint(DerivedPoint that)
 	{
 		this.sampleHeight = that.sampleHeight;
@@ -0,0 +1,479 @@
+package ca.ubc.cs.sanchom.AtmosView;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * The interpolated samples of derived data, held as primitive columns.
+ * Each sample's humidity variables are computed once, as it is appended, rather than by
+ * a DerivedPoint on construction and again on each setter. The sample heights are
+ * regular, so they are computed from the index rather than stored, and the
+ * temperature-dewpoint spread and lifted difference are one subtraction on read.
+ * A sample costs nine doubles and a bit, against a DerivedPoint's object of thirteen
+ * fields and a list reference.
+ *
+ * A whole run of samples can be appended at once, deriving each variable over its
+ * column with ThermoKernels.
+ *
+ * For callers that want point-style access, a Cursor is a reusable view of one sample;
+ * get() and asList() build DerivedPoints on demand.
+ * @author Sancho McCann
+ *
+ */
+public class DerivedProfile
+{
+	private final static double STRATUS_RH_THRESHOLD = 99; ///< Threshold for the indication of stratus cloud given humidity.
+
+	private final int m_base; ///< The height of the first sample in metres
+	private final int m_step; ///< The distance between samples in metres
+	private int m_size = 0; ///< The number of samples
+
+	/**
+	 * @name Columns
+	 * Only the first m_size entries are meaningful
+	 */
+	//@{
+	private double[] m_pressure; ///< The pressures in millibars
+	private double[] m_temperature; ///< The temperatures in degrees celcius
+	private double[] m_dewpoint; ///< The dewpoints in degrees celcius
+	private double[] m_direction; ///< The wind directions in degrees clockwise from north
+	private double[] m_speed; ///< The wind speeds in knots
+	private double[] m_relativeHumidity; ///< The relative humidity from the temperature and dewpoint
+	private double[] m_vapourPressure; ///< The vapour pressure actually existant in the air
+	private double[] m_mixingRatio; ///< The mixing ratio in g/kg
+	private double[] m_liftedParcelTemp; ///< The temperature of the lifted parcel: on its dry adiabat up to the LCL, and its moist one above; NaN until set
+	private final BitSet m_stratus = new BitSet(); ///< Samples humid enough to expect cloud
+	//@}
+
+	/**
+	 * Constructor
+	 * @param base the height of the first sample in metres
+	 * @param step the distance between samples in metres
+	 * @param capacity the number of samples expected
+	 */
+	public DerivedProfile(int base, int step, int capacity)
+	{
+		if (step <= 0)
+			throw new IllegalArgumentException("Step must be positive");
+		capacity = Math.max(capacity, 1);
+		m_base = base;
+		m_step = step;
+		m_pressure = new double[capacity];
+		m_temperature = new double[capacity];
+		m_dewpoint = new double[capacity];
+		m_direction = new double[capacity];
+		m_speed = new double[capacity];
+		m_relativeHumidity = new double[capacity];
+		m_vapourPressure = new double[capacity];
+		m_mixingRatio = new double[capacity];
+		m_liftedParcelTemp = new double[capacity];
+	}
+
+	/**
+	 * Appends the next sample, deriving its humidity variables. The lifted parcel
+	 * temperature starts as NaN.
+	 * @param pressure the pressure in millibars
+	 * @param temperature the temperature in degrees celcius
+	 * @param dewpoint the dewpoint in degrees celcius
+	 * @param direction the wind direction in degrees clockwise from north
+	 * @param speed the wind speed in knots
+	 * @return the index of the sample
+	 */
+	public int append(double pressure, double temperature, double dewpoint, double direction, double speed)
+	{
+		if (m_size == m_pressure.length)
+		{
+			grow(m_size * 2);
+		}
+		int i = m_size++;
+		m_pressure[i] = pressure;
+		m_temperature[i] = temperature;
+		m_dewpoint[i] = dewpoint;
+		m_direction[i] = direction;
+		m_speed[i] = speed;
+
+		// Formula from http://www.aprweather.com/pages/calc.htm
+		double e_actual = DerivedData.getVapourPressure(dewpoint);
+		double e_sat = DerivedData.getVapourPressure(temperature);
+		m_relativeHumidity[i] = 100 * e_actual / e_sat;
+		m_stratus.set(i, m_relativeHumidity[i] >= STRATUS_RH_THRESHOLD);
+		m_vapourPressure[i] = e_actual;
+		m_mixingRatio[i] = DerivedData.getMixingRatio(pressure, e_actual);
+		m_liftedParcelTemp[i] = Double.NaN;
+		return i;
+	}
+
+	/**
+	 * Appends a run of samples, deriving their humidity variables a column at a time with
+	 * ThermoKernels. The lifted parcel temperatures start as NaN.
+	 * @param pressure the pressures in millibars
+	 * @param temperature the temperatures in degrees celcius
+	 * @param dewpoint the dewpoints in degrees celcius
+	 * @param direction the wind directions in degrees clockwise from north
+	 * @param speed the wind speeds in knots
+	 * @param count the number of samples, taken from the start of each array
+	 * @return the index of the first sample appended
+	 */
+	public int appendAll(double[] pressure, double[] temperature, double[] dewpoint, double[] direction, double[] speed, int count)
+	{
+		if (m_size + count > m_pressure.length)
+		{
+			grow(Math.max(m_size + count, m_size * 2));
+		}
+		int from = m_size;
+		int to = from + count;
+		System.arraycopy(pressure, 0, m_pressure, from, count);
+		System.arraycopy(temperature, 0, m_temperature, from, count);
+		System.arraycopy(dewpoint, 0, m_dewpoint, from, count);
+		System.arraycopy(direction, 0, m_direction, from, count);
+		System.arraycopy(speed, 0, m_speed, from, count);
+
+		// The saturation vapour pressure is held in the humidity column until the humidity replaces it
+		ThermoKernels.getVapourPressure(m_dewpoint, m_vapourPressure, from, to);
+		ThermoKernels.getVapourPressure(m_temperature, m_relativeHumidity, from, to);
+		for (int i = from; i < to; i++)
+		{
+			m_relativeHumidity[i] = 100 * m_vapourPressure[i] / m_relativeHumidity[i];
+			m_stratus.set(i, m_relativeHumidity[i] >= STRATUS_RH_THRESHOLD);
+		}
+		ThermoKernels.getMixingRatio(m_pressure, m_vapourPressure, m_mixingRatio, from, to);
+		Arrays.fill(m_liftedParcelTemp, from, to, Double.NaN);
+
+		m_size = to;
+		return from;
+	}
+
+	/**
+	 * Sets the temperature of the lifted parcel at a sample
+	 * @param index the sample
+	 * @param liftedParcelTemp the temperature in degrees celcius, dry adiabatic below the LCL and moist adiabatic above it
+	 */
+	public void setLiftedParcelTemp(int index, double liftedParcelTemp)
+	{
+		checkIndex(index);
+		m_liftedParcelTemp[index] = liftedParcelTemp;
+	}
+
+	/**
+	 * Returns the number of samples
+	 */
+	public int size()
+	{
+		return m_size;
+	}
+
+	/**
+	 * Returns the distance between samples in metres
+	 */
+	public int getSampleStep()
+	{
+		return m_step;
+	}
+
+	/**
+	 * @name Samples
+	 * Direct access to a variable of a sample
+	 */
+	//@{
+	public double getSampleHeight(int index)
+	{
+		checkIndex(index);
+		return m_base + index * m_step;
+	}
+
+	public double getPressure(int index)
+	{
+		checkIndex(index);
+		return m_pressure[index];
+	}
+
+	public double getTemperature(int index)
+	{
+		checkIndex(index);
+		return m_temperature[index];
+	}
+
+	public double getDewpoint(int index)
+	{
+		checkIndex(index);
+		return m_dewpoint[index];
+	}
+
+	public double getDirection(int index)
+	{
+		checkIndex(index);
+		return m_direction[index];
+	}
+
+	public double getSpeed(int index)
+	{
+		checkIndex(index);
+		return m_speed[index];
+	}
+
+	public double getSpread(int index)
+	{
+		checkIndex(index);
+		return m_temperature[index] - m_dewpoint[index];
+	}
+
+	public double getRelativeHumidity(int index)
+	{
+		checkIndex(index);
+		return m_relativeHumidity[index];
+	}
+
+	public double getVapourPressure(int index)
+	{
+		checkIndex(index);
+		return m_vapourPressure[index];
+	}
+
+	public double getMixingRatio(int index)
+	{
+		checkIndex(index);
+		return m_mixingRatio[index];
+	}
+
+	public boolean isStratusCloud(int index)
+	{
+		checkIndex(index);
+		return m_stratus.get(index);
+	}
+
+	public double getLiftedParcelTemp(int index)
+	{
+		checkIndex(index);
+		return m_liftedParcelTemp[index];
+	}
+
+	public double getLiftedDiff(int index)
+	{
+		checkIndex(index);
+		return m_liftedParcelTemp[index] - m_temperature[index];
+	}
+	//@}
+
+	/**
+	 * Finds the sample at or just below a height.
+	 * @param targetHeight the height in metres
+	 * @return the index of the sample, clamped to the profile
+	 */
+	public int indexOfHeight(double targetHeight)
+	{
+		int bottomIndex = 0;
+		int topIndex = m_size - 1;
+
+		while (bottomIndex + 1 < topIndex)
+		{
+			int midIndex = (bottomIndex + topIndex) / 2;
+			double midHeight = m_base + midIndex * m_step;
+
+			if (targetHeight > midHeight)
+			{
+				bottomIndex = midIndex;
+			}
+			else
+			{
+				topIndex = midIndex;
+			}
+
+			// An exact match stands unless the search has just closed on the sample below it
+			if (targetHeight == midHeight && bottomIndex + 1 < topIndex)
+			{
+				return midIndex;
+			}
+		}
+
+		return bottomIndex;
+	}
+
+	/**
+	 * Finds the sample at or just below a pressure level.
+	 * @param targetMillibars the pressure in millibars
+	 * @return the index of the sample, clamped to the profile
+	 */
+	public int indexOfPressureLevel(double targetMillibars)
+	{
+		int bottomIndex = 0;
+		int topIndex = m_size - 1;
+
+		while (bottomIndex + 1 < topIndex)
+		{
+			int midIndex = (bottomIndex + topIndex) / 2;
+			double midPressure = m_pressure[midIndex];
+
+			if (targetMillibars == midPressure)
+			{
+				return midIndex;
+			}
+
+			// the highest millibars are stored closer to the zero index
+			if (targetMillibars > midPressure)
+			{
+				topIndex = midIndex;
+			}
+			else
+			{
+				bottomIndex = midIndex;
+			}
+		}
+
+		return bottomIndex;
+	}
+
+	/**
+	 * Returns a new DerivedPoint holding a sample
+	 */
+	public DerivedPoint get(int index)
+	{
+		checkIndex(index);
+		return new DerivedPoint(getSampleHeight(index), m_pressure[index], m_temperature[index], m_dewpoint[index],
+				m_direction[index], m_speed[index], m_relativeHumidity[index], m_vapourPressure[index],
+				m_mixingRatio[index], m_stratus.get(index), m_liftedParcelTemp[index]);
+	}
+
+	/**
+	 * Returns a read-only list view of the samples, building a DerivedPoint for each one read.
+	 */
+	public List<DerivedPoint> asList()
+	{
+		return new PointList();
+	}
+
+	/**
+	 * Returns a new cursor, placed on the first sample
+	 */
+	public Cursor cursor()
+	{
+		return new Cursor();
+	}
+
+	/**
+	 * A reusable view of one sample, with the getters of a DerivedPoint. Moving it
+	 * allocates nothing, so one cursor can visit a whole profile.
+	 */
+	public class Cursor
+	{
+		private int m_index = 0; ///< The sample viewed
+
+		/**
+		 * Moves the cursor to a sample
+		 * @param index the sample
+		 * @return this cursor
+		 */
+		public Cursor moveTo(int index)
+		{
+			checkIndex(index);
+			m_index = index;
+			return this;
+		}
+
+		/**
+		 * Returns the index of the sample viewed
+		 */
+		public int getIndex()
+		{
+			return m_index;
+		}
+
+		public double getSampleHeight()
+		{
+			return m_base + m_index * m_step;
+		}
+
+		public double getPressure()
+		{
+			return m_pressure[m_index];
+		}
+
+		public double getTemperature()
+		{
+			return m_temperature[m_index];
+		}
+
+		public double getDewpoint()
+		{
+			return m_dewpoint[m_index];
+		}
+
+		public double getDirection()
+		{
+			return m_direction[m_index];
+		}
+
+		public double getSpeed()
+		{
+			return m_speed[m_index];
+		}
+
+		public double getSpread()
+		{
+			return m_temperature[m_index] - m_dewpoint[m_index];
+		}
+
+		public double getRelativeHumidity()
+		{
+			return m_relativeHumidity[m_index];
+		}
+
+		public double getVapourPressure()
+		{
+			return m_vapourPressure[m_index];
+		}
+
+		public double getMixingRatio()
+		{
+			return m_mixingRatio[m_index];
+		}
+
+		public boolean isStratusCloud()
+		{
+			return m_stratus.get(m_index);
+		}
+
+		public double getLiftedParcelTemp()
+		{
+			return m_liftedParcelTemp[m_index];
+		}
+
+		public double getLiftedDiff()
+		{
+			return m_liftedParcelTemp[m_index] - m_temperature[m_index];
+		}
+	}
+
+	private class PointList extends AbstractList<DerivedPoint> implements RandomAccess
+	{
+		public DerivedPoint get(int index)
+		{
+			return DerivedProfile.this.get(index);
+		}
+
+		public int size()
+		{
+			return m_size;
+		}
+	}
+
+	private void grow(int capacity)
+	{
+		m_pressure = Arrays.copyOf(m_pressure, capacity);
+		m_temperature = Arrays.copyOf(m_temperature, capacity);
+		m_dewpoint = Arrays.copyOf(m_dewpoint, capacity);
+		m_direction = Arrays.copyOf(m_direction, capacity);
+		m_speed = Arrays.copyOf(m_speed, capacity);
+		m_relativeHumidity = Arrays.copyOf(m_relativeHumidity, capacity);
+		m_vapourPressure = Arrays.copyOf(m_vapourPressure, capacity);
+		m_mixingRatio = Arrays.copyOf(m_mixingRatio, capacity);
+		m_liftedParcelTemp = Arrays.copyOf(m_liftedParcelTemp, capacity);
+	}
+
+	private void checkIndex(int index)
+	{
+		if (index < 0 || index >= m_size)
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + m_size);
+	}
+}
@@ -0,0 +1,526 @@
+package ca.ubc.cs.sanchom.AtmosView;
+
+/**
+ * Finds the single levels of a sounding (LCL, CCL, LFC and EL) and the CAPE directly
+ * from the raw levels, rather than by stepping up a fixed grid and testing each step.
+ * The environment is taken as linear in height between levels, as the interpolation
+ * of derived data takes it, so each level is solved exactly within the segment it
+ * falls in, and the results don't depend on any sampling resolution.
+ *
+ * The LCL is closed form, from Bolton's (1980) temperature of the lifted condensation
+ * level. The CCL is closed form too, since the temperature at which the air would
+ * saturate is fixed and the environment's temperature is linear within a segment.
+ * The LFC and EL are where the parcel's buoyancy changes sign; each is bracketed
+ * between raw levels and refined with Brent's method. CAPE is integrated segment by
+ * segment with three-point Gauss-Legendre quadrature.
+ *
+ * Above its LCL a parcel follows a moist adiabat. The adiabat through the LCL is found
+ * once in the shared MoistAdiabatTable, and the parcel's temperature anywhere above is
+ * a lookup in it; only a parcel off the table is integrated, with fourth-order
+ * Runge-Kutta from the LCL.
+ * @author Sancho McCann
+ *
+ */
+public class LevelSolver
+{
+	private static final double MAX_PRESSURE_STEP = 5; ///< Largest Runge-Kutta step along a moist adiabat in millibars
+	private static final double ROOT_TOLERANCE = 0.01; ///< Precision of solved heights in metres
+	private static final double GRAVITY = 9.8; ///< In metres per second squared
+
+	/**
+	 * @name Gauss-Legendre quadrature
+	 * Three points on [-1, 1]
+	 */
+	//@{
+	private static final double GAUSS_NODE = Math.sqrt(3.0 / 5.0);
+	private static final double GAUSS_OUTER_WEIGHT = 5.0 / 9.0;
+	private static final double GAUSS_CENTRE_WEIGHT = 8.0 / 9.0;
+	//@}
+
+	private final SoundingSnapshot m_levels; ///< The environment, sorted by height
+
+	/**
+	 * Constructor
+	 * @param levels the sounding; must have at least one level
+	 */
+	public LevelSolver(SoundingSnapshot levels)
+	{
+		if (levels.size() == 0)
+			throw new IllegalArgumentException("Can't solve an empty sounding");
+		m_levels = levels;
+	}
+
+	/**
+	 * Returns the temperature in degrees celcius at the lifted condensation level of a
+	 * parcel, by Bolton's formula (his equation 15).
+	 * @param temperature the parcel's temperature in degrees celcius
+	 * @param dewpoint the parcel's dewpoint in degrees celcius
+	 */
+	public static double getLclTemperature(double temperature, double dewpoint)
+	{
+		double t = DerivedData.toKelvin(temperature);
+		double td = DerivedData.toKelvin(Math.min(dewpoint, temperature));
+		return DerivedData.toCelcius(1 / (1 / (td - 56) + Math.log(t / td) / 800) + 56);
+	}
+
+	/**
+	 * Returns the pressure at which a parcel lifted dry adiabatically reaches a temperature.
+	 * @param pressure the parcel's pressure in millibars
+	 * @param temperature the parcel's temperature in degrees celcius
+	 * @param queryTemperature the temperature reached in degrees celcius
+	 */
+	public static double getDryAdiabaticPressure(double pressure, double temperature, double queryTemperature)
+	{
+		return pressure * Math.pow(DerivedData.toKelvin(queryTemperature) / DerivedData.toKelvin(temperature), 1 / DerivedData.KAPPA);
+	}
+
+	/**
+	 * Returns the dewpoint of air with a vapour pressure; the inverse of DerivedData.getVapourPressure.
+	 * @param vapourPressure the vapour pressure in millibars
+	 * @return the dewpoint in degrees celcius
+	 */
+	public static double getDewpoint(double vapourPressure)
+	{
+		double x = Math.log10(vapourPressure / 6.1078);
+		return 237.3 * x / (7.5 - x);
+	}
+
+	/**
+	 * Integrates the temperature of a saturated parcel along a moist adiabat.
+	 * This is the reference integrator: fourth-order Runge-Kutta in steps of at most
+	 * MAX_PRESSURE_STEP millibars.
+	 * @param pressure the starting pressure in millibars
+	 * @param temperature the starting temperature in degrees celcius
+	 * @param queryPressure the pressure of interest in millibars
+	 * @return the parcel's temperature at queryPressure in degrees celcius
+	 */
+	public static double getMoistAdiabaticTemperature(double pressure, double temperature, double queryPressure)
+	{
+		int steps = (int)Math.ceil(Math.abs(queryPressure - pressure) / MAX_PRESSURE_STEP);
+		if (steps == 0)
+		{
+			return temperature;
+		}
+		double h = (queryPressure - pressure) / steps;
+		double p = pressure;
+		double t = temperature;
+		for (int i = 0; i < steps; i++)
+		{
+			double k1 = DerivedData.getMoistAdiabaticRate(p, t);
+			double k2 = DerivedData.getMoistAdiabaticRate(p + h / 2, t + h / 2 * k1);
+			double k3 = DerivedData.getMoistAdiabaticRate(p + h / 2, t + h / 2 * k2);
+			double k4 = DerivedData.getMoistAdiabaticRate(p + h, t + h * k3);
+			t += h / 6 * (k1 + 2 * k2 + 2 * k3 + k4);
+			p = pressure + (i + 1) * h;
+		}
+		return t;
+	}
+
+	/**
+	 * @name Environment
+	 * The sounding interpolated linearly in height; heights outside it take the nearest level's values.
+	 */
+	//@{
+	public double getPressure(double metres)
+	{
+		if (m_levels.size() == 1)
+			return m_levels.getMillibars(0);
+		int a = segment(metres);
+		return interpolate(m_levels.getMillibars(a), m_levels.getMillibars(a + 1), a, metres);
+	}
+
+	public double getTemperature(double metres)
+	{
+		if (m_levels.size() == 1)
+			return m_levels.getTemperature(0);
+		int a = segment(metres);
+		return interpolate(m_levels.getTemperature(a), m_levels.getTemperature(a + 1), a, metres);
+	}
+	//@}
+
+	/**
+	 * Finds the height of a pressure level.
+	 * @param millibars the pressure in millibars
+	 * @return the lowest height at that pressure in metres, or NaN if the sounding doesn't reach it
+	 */
+	public double getHeight(double millibars)
+	{
+		for (int i = 0; i < m_levels.size(); i++)
+		{
+			double p = m_levels.getMillibars(i);
+			if (p == millibars)
+			{
+				return m_levels.getMetres(i);
+			}
+			if (p < millibars)
+			{
+				if (i == 0)
+				{
+					return Double.NaN;
+				}
+				double below = m_levels.getMillibars(i - 1);
+				double fraction = (below - millibars) / (below - p);
+				return m_levels.getMetres(i - 1) + fraction * (m_levels.getMetres(i) - m_levels.getMetres(i - 1));
+			}
+		}
+		return Double.NaN;
+	}
+
+	/**
+	 * Finds the convective condensation level: the lowest height at which the environment
+	 * is cold enough to saturate air of a vapour pressure.
+	 * @param vapourPressure the vapour pressure of the mixed layer in millibars
+	 * @return the height in metres, or NaN if the sounding is never that cold
+	 */
+	public double getCCL(double vapourPressure)
+	{
+		double saturation = getDewpoint(vapourPressure);
+		if (m_levels.getTemperature(0) <= saturation)
+		{
+			return m_levels.getMetres(0);
+		}
+		for (int i = 1; i < m_levels.size(); i++)
+		{
+			double t = m_levels.getTemperature(i);
+			if (t <= saturation)
+			{
+				double below = m_levels.getTemperature(i - 1);
+				double fraction = (below - saturation) / (below - t);
+				return m_levels.getMetres(i - 1) + fraction * (m_levels.getMetres(i) - m_levels.getMetres(i - 1));
+			}
+		}
+		return Double.NaN;
+	}
+
+	/**
+	 * Lifts a parcel through the sounding.
+	 * @param pressure the parcel's starting pressure in millibars
+	 * @param temperature the parcel's starting temperature in degrees celcius
+	 * @param dewpoint the parcel's starting dewpoint in degrees celcius
+	 * @return the parcel, with its levels solved
+	 */
+	public Parcel lift(double pressure, double temperature, double dewpoint)
+	{
+		return new Parcel(pressure, temperature, dewpoint);
+	}
+
+	/**
+	 * A parcel lifted dry adiabatically to its LCL and moist adiabatically above it.
+	 */
+	public class Parcel
+	{
+		private final double m_pressure; ///< The starting pressure in millibars
+		private final double m_temperature; ///< The starting temperature in degrees celcius
+		private final double m_lclPressure; ///< In millibars
+		private final double m_lclTemperature; ///< The parcel's temperature at the LCL in degrees celcius
+		private final double m_lclHeight; ///< In metres, or NaN if the sounding doesn't reach it
+
+		private final MoistAdiabatTable m_adiabats = MoistAdiabatTable.getInstance(); ///< The shared pseudo-adiabats
+		private double m_thetaW = Double.NaN; ///< The wet-bulb potential temperature of the parcel's adiabat, or NaN off the table
+
+		private double m_lfc = Double.NaN; ///< The level of free convection in metres
+		private double m_el = Double.NaN; ///< The equilibrium level in metres
+		private double m_cape = 0; ///< The convective available potential energy in J/kg
+
+		private Parcel(double pressure, double temperature, double dewpoint)
+		{
+			m_pressure = pressure;
+			m_temperature = temperature;
+			// A saturated parcel is at its LCL, but the formulas can put it a few ulps
+			// warmer and lower, below the sounding's bottom level
+			m_lclTemperature = Math.min(LevelSolver.getLclTemperature(temperature, dewpoint), temperature);
+			m_lclPressure = Math.min(getDryAdiabaticPressure(pressure, temperature, m_lclTemperature), pressure);
+			m_lclHeight = getHeight(m_lclPressure);
+			if (Double.isNaN(m_lclHeight))
+			{
+				return;
+			}
+
+			// Above the LCL the parcel keeps to one adiabat of the table
+			m_thetaW = m_adiabats.getThetaW(m_lclPressure, m_lclTemperature);
+
+			int first = segment(m_lclHeight) + 1;
+			if (first < m_levels.size() && m_levels.getMetres(first) <= m_lclHeight)
+			{
+				first++;
+			}
+			solve(first);
+		}
+
+		/**
+		 * Finds the LFC and EL, and integrates the CAPE between them.
+		 * @param first the first raw level above the LCL
+		 */
+		private void solve(int first)
+		{
+			int size = m_levels.size();
+			double top = m_levels.getMetres(size - 1);
+
+			// The LFC: where the parcel first becomes warmer than the environment
+			double a = m_lclHeight;
+			double fa = getBuoyancy(a);
+			if (fa > 0)
+			{
+				m_lfc = a;
+			}
+			for (int i = first; i < size && Double.isNaN(m_lfc); i++)
+			{
+				double b = m_levels.getMetres(i);
+				double fb = getBuoyancy(b);
+				if (fb > 0)
+				{
+					m_lfc = root(a, b, fa, fb);
+					first = i;
+				}
+				a = b;
+				fa = fb;
+			}
+			if (Double.isNaN(m_lfc))
+			{
+				return;
+			}
+
+			// The EL: where it becomes no warmer, integrating the CAPE on the way up
+			// The LFC is a root, so the parcel is buoyant just above it whatever the rounding there
+			a = m_lfc;
+			fa = Math.max(getBuoyancy(a), Double.MIN_VALUE);
+			for (int i = first; i < size && Double.isNaN(m_el); i++)
+			{
+				double b = m_levels.getMetres(i);
+				if (b <= a)
+				{
+					continue;
+				}
+				double fb = getBuoyancy(b);
+				if (fb <= 0)
+				{
+					m_el = root(a, b, fa, fb);
+					b = m_el;
+				}
+				m_cape += integrateCape(a, b);
+				a = b;
+				fa = fb;
+			}
+			if (Double.isNaN(m_el) && a < top)
+			{
+				m_cape += integrateCape(a, top);
+			}
+		}
+
+		/**
+		 * Returns the height of the LCL in metres, or NaN if the sounding doesn't reach it
+		 */
+		public double getLclHeight()
+		{
+			return m_lclHeight;
+		}
+
+		/**
+		 * Returns the pressure of the LCL in millibars
+		 */
+		public double getLclPressure()
+		{
+			return m_lclPressure;
+		}
+
+		/**
+		 * Returns the parcel's temperature at the LCL in degrees celcius
+		 */
+		public double getLclTemperature()
+		{
+			return m_lclTemperature;
+		}
+
+		/**
+		 * Returns the level of free convection in metres, or NaN if there is none
+		 */
+		public double getLFC()
+		{
+			return m_lfc;
+		}
+
+		/**
+		 * Returns the equilibrium level in metres, or NaN if there is none within the sounding
+		 */
+		public double getEL()
+		{
+			return m_el;
+		}
+
+		/**
+		 * Returns the convective available potential energy in J/kg
+		 */
+		public double getCAPE()
+		{
+			return m_cape;
+		}
+
+		/**
+		 * Returns the parcel's temperature at a pressure level.
+		 * @param millibars the pressure in millibars
+		 * @return the temperature in degrees celcius
+		 */
+		public double getTemperature(double millibars)
+		{
+			if (millibars >= m_lclPressure || Double.isNaN(m_lclHeight))
+			{
+				return DerivedData.getDryAdiabaticCooledTemperature(m_pressure, m_temperature, millibars);
+			}
+
+			double t = m_adiabats.getTemperature(m_thetaW, millibars);
+			if (Double.isNaN(t))
+			{
+				// Off the table, so integrate from the LCL
+				t = getMoistAdiabaticTemperature(m_lclPressure, m_lclTemperature, millibars);
+			}
+			return t;
+		}
+
+		/**
+		 * Returns how much warmer the parcel is than the environment at a height.
+		 * @param metres the height in metres
+		 * @return the difference in degrees celcius
+		 */
+		public double getBuoyancy(double metres)
+		{
+			return getTemperature(getPressure(metres)) - LevelSolver.this.getTemperature(metres);
+		}
+
+		/**
+		 * Integrates the CAPE over a layer in which the parcel is buoyant.
+		 */
+		private double integrateCape(double bottom, double top)
+		{
+			double centre = (bottom + top) / 2;
+			double halfDepth = (top - bottom) / 2;
+			return halfDepth * (GAUSS_OUTER_WEIGHT * capeIntegrand(centre - halfDepth * GAUSS_NODE) +
+					GAUSS_CENTRE_WEIGHT * capeIntegrand(centre) +
+					GAUSS_OUTER_WEIGHT * capeIntegrand(centre + halfDepth * GAUSS_NODE));
+		}
+
+		private double capeIntegrand(double metres)
+		{
+			double environment = DerivedData.toKelvin(LevelSolver.this.getTemperature(metres));
+			double parcel = DerivedData.toKelvin(getTemperature(getPressure(metres)));
+			return GRAVITY * Math.max(parcel - environment, 0) / environment;
+		}
+
+		/**
+		 * Finds where the buoyancy crosses zero between two heights, by Brent's method.
+		 * @param a a height at which the buoyancy is fa
+		 * @param b a height at which the buoyancy is fb, of the other sign, or zero
+		 */
+		private double root(double a, double b, double fa, double fb)
+		{
+			if (fb == 0)
+				return b;
+			if (fa == 0)
+				return a;
+
+			double c = a;
+			double fc = fa;
+			double d = b - a;
+			double e = d;
+			while (true)
+			{
+				if ((fb > 0) == (fc > 0))
+				{
+					c = a;
+					fc = fa;
+					d = b - a;
+					e = d;
+				}
+				if (Math.abs(fc) < Math.abs(fb))
+				{
+					a = b;
+					b = c;
+					c = a;
+					fa = fb;
+					fb = fc;
+					fc = fa;
+				}
+
+				double tolerance = 2 * Math.ulp(b) + ROOT_TOLERANCE / 2;
+				double m = (c - b) / 2;
+				if (Math.abs(m) <= tolerance || fb == 0)
+				{
+					return b;
+				}
+
+				if (Math.abs(e) >= tolerance && Math.abs(fa) > Math.abs(fb))
+				{
+					// Secant or inverse quadratic interpolation
+					double p;
+					double q;
+					double s = fb / fa;
+					if (a == c)
+					{
+						p = 2 * m * s;
+						q = 1 - s;
+					}
+					else
+					{
+						double r = fb / fc;
+						q = fa / fc;
+						p = s * (2 * m * q * (q - r) - (b - a) * (r - 1));
+						q = (q - 1) * (r - 1) * (s - 1);
+					}
+					if (p > 0)
+						q = -q;
+					else
+						p = -p;
+					if (2 * p < Math.min(3 * m * q - Math.abs(tolerance * q), Math.abs(e * q)))
+					{
+						e = d;
+						d = p / q;
+					}
+					else
+					{
+						d = m;
+						e = d;
+					}
+				}
+				else
+				{
+					// Bisection
+					d = m;
+					e = d;
+				}
+
+				a = b;
+				fa = fb;
+				b += (Math.abs(d) > tolerance ? d : (m > 0 ? tolerance : -tolerance));
+				fb = getBuoyancy(b);
+			}
+		}
+	}
+
+	/**
+	 * Returns the index of the level at the bottom of the segment holding a height,
+	 * clamped so that there is a level above it.
+	 */
+	private int segment(double metres)
+	{
+		if (m_levels.size() == 1)
+		{
+			return 0;
+		}
+		int index = m_levels.searchMetres(metres);
+		if (index < 0)
+		{
+			index = -index - 2;
+		}
+		return Math.max(0, Math.min(index, m_levels.size() - 2));
+	}
+
+	/**
+	 * Interpolates a variable linearly in height between a level and the one above it.
+	 */
+	private double interpolate(double below, double above, int a, double metres)
+	{
+		double bottom = m_levels.getMetres(a);
+		double top = m_levels.getMetres(a + 1);
+		double fraction = Math.max(0, Math.min(1, (metres - bottom) / (top - bottom)));
+		return below + fraction * (above - below);
+	}
+}
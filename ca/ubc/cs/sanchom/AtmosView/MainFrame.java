@@ -12,6 +12,7 @@ import java.util.Iterator;
 import java.util.Map;
 import java.util.TreeMap;
 import java.util.Vector;
+import java.util.concurrent.ExecutionException;
 
 import javax.swing.BorderFactory;
 import javax.swing.Box;
@@ -27,6 +28,7 @@ import javax.swing.JScrollPane;
 import javax.swing.JSplitPane;
 import javax.swing.JTabbedPane;
 import javax.swing.ListSelectionModel;
+import javax.swing.SwingWorker;
 import javax.swing.filechooser.FileFilter;
 
 import com.toedter.calendar.JDateChooser;
@@ -77,6 +79,16 @@ public class MainFrame extends JFrame {
 	
 	private double splitRatio = 0;
 	
+	private static final long SOUNDING_CACHE_BYTES = 64L * 1024 * 1024; ///< Cap on the soundings and derived data kept in memory
+	
+	private SoundingCache soundingCache = new SoundingCache(SOUNDING_CACHE_BYTES);
+	
+	private SoundingPrefetcher prefetcher = new SoundingPrefetcher(SoundingFetcher.getInstance(), soundingCache);
+	
+	private DownloadTask pendingDownload = null; ///< The download in flight, or null
+	
+	private boolean updatingStations = false; ///< Set while the station list is being replaced
+	
 	private class FileExtensionFilter extends FileFilter
 	{
 		private String extension = null;
@@ -265,30 +277,78 @@ public class MainFrame extends JFrame {
 					}
 				}
 			});
+			stationJList.addListSelectionListener(new javax.swing.event.ListSelectionListener() {
+				public void valueChanged(javax.swing.event.ListSelectionEvent e) {
+					// Picking another station abandons the download in flight
+					if (!updatingStations && !e.getValueIsAdjusting())
+					{
+						cancelDownload();
+					}
+				}
+			});
 			
-			TreeMap stationList = null;
-			try {
-				stationList = SoundingFetcher.getInstance().getStationList();
-			} catch (IOException e) {
-				stationList = new TreeMap();
-			}
-			Vector<String> listData = new Vector<String>();
-			stationIDs = new Vector<String>();
-			
-			Iterator i = stationList.entrySet().iterator();
-			while ( i.hasNext() )
-			{
-				Map.Entry e = (Map.Entry)i.next();
-				String stationName = (String)(e.getKey());
-				String stationID = (String)(e.getValue());
-				stationIDs.add(stationID);
-				listData.add(stationName + "\t" + stationID);
-			}
+			// Show the locally saved catalog right away and bring it up to date in the background
+			setStations(SoundingFetcher.getInstance().getStationList());
+			refreshStations();
+		}
+		return stationJList;
+	}
 
+	/**
+	 * Fills the station list, keeping the selected station selected if it is still listed.
+	 * @param stationList map of station names to station ids
+	 */
+	private void setStations(TreeMap<String,String> stationList) {
+		String selectedID = null;
+		int selectedIndex = stationJList.getSelectedIndex();
+		if (stationIDs != null && selectedIndex >= 0 && selectedIndex < stationIDs.size())
+		{
+			selectedID = stationIDs.get(selectedIndex);
+		}
 
-			stationJList.setListData(listData);
+		Vector<String> listData = new Vector<String>();
+		stationIDs = new Vector<String>();
+		
+		Iterator<Map.Entry<String,String>> i = stationList.entrySet().iterator();
+		while ( i.hasNext() )
+		{
+			Map.Entry<String,String> e = i.next();
+			String stationName = e.getKey();
+			String stationID = e.getValue();
+			stationIDs.add(stationID);
+			listData.add(stationName + "\t" + stationID);
 		}
-		return stationJList;
+
+
+		updatingStations = true;
+		stationJList.setListData(listData);
+		if (selectedID != null && stationIDs.contains(selectedID))
+		{
+			stationJList.setSelectedIndex(stationIDs.indexOf(selectedID));
+		}
+		updatingStations = false;
+	}
+
+	/**
+	 * Fetches the station list on a worker thread and shows it once it arrives.
+	 * On failure the current list is left in place.
+	 */
+	private void refreshStations() {
+		new SwingWorker<TreeMap<String,String>, Void>() {
+			protected TreeMap<String,String> doInBackground() throws IOException {
+				return SoundingFetcher.getInstance().refreshStationList();
+			}
+
+			protected void done() {
+				try {
+					setStations(get());
+				} catch (InterruptedException e) {
+					System.err.println(e);
+				} catch (ExecutionException e) {
+					System.err.println(e.getCause());
+				}
+			}
+		}.execute();
 	}
 
 	/**
@@ -332,10 +392,12 @@ public class MainFrame extends JFrame {
 						if(returnVal == JFileChooser.APPROVE_OPTION) {
 							Cursor orig = jContentPane.getCursor();
 							jContentPane.setCursor(new Cursor(Cursor.WAIT_CURSOR));
-							SoundingData data = SoundingCSVParser.getSounding(chooser.getSelectedFile());
+							SoundingData data = MappedSoundingCSVParser.getSounding(chooser.getSelectedFile());
 
-							SoundingDisplayPanel.linkSoundingData(data);
-							BarDisplayPanel.linkSoundingData(data);
+							// Both panels share one derivation
+							DerivedData derived = new DerivedData(data);
+							SoundingDisplayPanel.linkSounding(derived);
+							BarDisplayPanel.linkSounding(derived);
 							SoundingDisplayPanel.repaint();
 							BarDisplayPanel.repaint();
 							jContentPane.setCursor(orig);
@@ -453,13 +515,22 @@ public class MainFrame extends JFrame {
 			DateChooser.setMaximumSize(new Dimension(200, 30));
 			DateChooser.getCalendarButton().setIcon(null);
 			DateChooser.getCalendarButton().setText("Calendar");
+			DateChooser.addPropertyChangeListener("date", new java.beans.PropertyChangeListener() {
+				public void propertyChange(java.beans.PropertyChangeEvent e) {
+					// Picking another date abandons the download in flight
+					cancelDownload();
+				}
+			});
 		}
 		return DateChooser;
 	}
 	
+	/**
+	 * Fetches the chosen sounding and derives its data on a worker thread, then shows
+	 * it once both are ready. Any download still in flight is cancelled first.
+	 */
 	private void downloadSounding() {
-		Cursor orig = jContentPane.getCursor();
-		jContentPane.setCursor(new Cursor(Cursor.WAIT_CURSOR));
+		cancelDownload();
 		int selectedIndex = stationJList.getSelectedIndex();
 		if (selectedIndex >= 0 && selectedIndex < stationIDs.size())
 		{
@@ -468,59 +539,128 @@ public class MainFrame extends JFrame {
 
 			chosen.set(Calendar.HOUR, Integer.parseInt(HourRadios.getSelection().getActionCommand()));
 
-
-			SoundingData soundingData = null;
-			try {
-				soundingData = SoundingFetcher.getInstance().getSounding(
-						stationIDs.get(selectedIndex),
-						chosen);
-			} catch (IOException e) {
-				System.err.println(e);
+			pendingDownload = new DownloadTask(stationIDs.get(selectedIndex), chosen, jTabbedPane.getSelectedIndex() == 0);
+			jContentPane.setCursor(new Cursor(Cursor.WAIT_CURSOR));
+			pendingDownload.execute();
+		}
+	}
+	
+	/**
+	 * Cancels the download in flight, if any. Its result will not be shown.
+	 */
+	private void cancelDownload() {
+		if (pendingDownload != null)
+		{
+			pendingDownload.cancel(true);
+			pendingDownload = null;
+			jContentPane.setCursor(Cursor.getDefaultCursor());
+		}
+	}
+	
+	/**
+	 * Fetch, parse and derive for one sounding, off the event dispatch thread. The
+	 * sounding and its derived data are handed to the panels together in done().
+	 */
+	private class DownloadTask extends SwingWorker<SoundingCache.Entry, Void>
+	{
+		private final String id;
+		private final GregorianCalendar chosen;
+		private final boolean singleView; ///< Whether the request was made from the Single View tab
+		
+		DownloadTask(String id, GregorianCalendar chosen, boolean singleView)
+		{
+			this.id = id;
+			this.chosen = chosen;
+			this.singleView = singleView;
+		}
+		
+		protected SoundingCache.Entry doInBackground() throws IOException
+		{
+			SoundingCache.Entry cached = soundingCache.get(id, chosen);
+			if (cached != null)
+			{
+				return cached;
 			}
 
-			if (soundingData != null)
+			// Hold off prefetching so this request has the connection to itself
+			prefetcher.interactiveStarted();
+			try
 			{
-				if (jTabbedPane.getSelectedIndex() == 0)
+				SoundingData fetched = SoundingFetcher.getInstance().getSounding(id, chosen);
+				if (isCancelled())
 				{
-					SoundingDisplayPanel.linkSoundingData(soundingData);
-					BarDisplayPanel.linkSoundingData(soundingData);
-					SoundingDisplayPanel.repaint();
-					BarDisplayPanel.repaint();
+					return null;
 				}
-				else
-				{
-					if (multiples.size() < 8)
-					{
-						final BarPanel b = new BarPanel();
-						b.setBackground(Color.WHITE);
-						b.setBorder(BorderFactory.createLoweredBevelBorder());
-
-						b.addMouseListener(new java.awt.event.MouseAdapter() {
-							public void mouseClicked(java.awt.event.MouseEvent e) {
-								int mask = java.awt.event.MouseEvent.BUTTON1_MASK - 1;
-								int mods = e.getModifiers() & mask;
-								if (mods != 0) // Right button clicked, or ctrl click
-								{
-									multiples.remove(b);	
-									redrawMultiples();
-								}
-								else if (e.getClickCount() == 2)
-								{
-									showInSingleView(b.getSoundingData());
-								}
-							}
-						});
-
-						b.linkSoundingData(soundingData);
-						multiples.add(b);
-
-						redrawMultiples();
-					} // end if less than 8 multiples
-				} // if-else for single-view vs multi-view
-			} // end if soundingData != null
-			
+
+				DerivedData derived = new DerivedData(fetched);
+				// An empty sounding may be filled in upstream later, so don't hold on to it
+				return (fetched.size() > 0 ? soundingCache.put(id, chosen, fetched, derived) : new SoundingCache.Entry(fetched, derived));
+			}
+			finally
+			{
+				prefetcher.interactiveFinished();
+			}
+		}
+		
+		protected void done()
+		{
+			if (isCancelled() || pendingDownload != this)
+			{
+				return;
+			}
+			pendingDownload = null;
+			jContentPane.setCursor(Cursor.getDefaultCursor());
+
+			try {
+				showSounding(get(), singleView);
+				prefetcher.requested(id, chosen);
+			} catch (InterruptedException e) {
+				System.err.println(e);
+			} catch (ExecutionException e) {
+				System.err.println(e.getCause());
+			}
+		}
+	}
+	
+	private void showSounding(SoundingCache.Entry cached, boolean singleView) {
+		DerivedData derivedData = cached.getDerivedData();
+		if (singleView)
+		{
+			SoundingDisplayPanel.linkSounding(derivedData);
+			BarDisplayPanel.linkSounding(derivedData);
+			SoundingDisplayPanel.repaint();
+			BarDisplayPanel.repaint();
 		}
-		jContentPane.setCursor(orig);
+		else
+		{
+			if (multiples.size() < 8)
+			{
+				final BarPanel b = new BarPanel();
+				b.setBackground(Color.WHITE);
+				b.setBorder(BorderFactory.createLoweredBevelBorder());
+
+				b.addMouseListener(new java.awt.event.MouseAdapter() {
+					public void mouseClicked(java.awt.event.MouseEvent e) {
+						int mask = java.awt.event.MouseEvent.BUTTON1_MASK - 1;
+						int mods = e.getModifiers() & mask;
+						if (mods != 0) // Right button clicked, or ctrl click
+						{
+							multiples.remove(b);	
+							redrawMultiples();
+						}
+						else if (e.getClickCount() == 2)
+						{
+							showInSingleView(b.getDerivedData());
+						}
+					}
+				});
+
+				b.linkSounding(derivedData);
+				multiples.add(b);
+
+				redrawMultiples();
+			} // end if less than 8 multiples
+		} // if-else for single-view vs multi-view
 	}
 	
 	private void redrawMultiples()
@@ -570,10 +710,10 @@ public class MainFrame extends JFrame {
 		jContentPane.repaint();
 	}
 
-	private void showInSingleView(SoundingData data)
+	private void showInSingleView(DerivedData derived)
 	{
-		SoundingDisplayPanel.linkSoundingData(data);
-		BarDisplayPanel.linkSoundingData(data);
+		SoundingDisplayPanel.linkSounding(derived);
+		BarDisplayPanel.linkSounding(derived);
 		SoundingDisplayPanel.repaint();
 		BarDisplayPanel.repaint();
 		jTabbedPane.setSelectedIndex(0);
@@ -0,0 +1,210 @@
+package ca.ubc.cs.sanchom.AtmosView;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.GregorianCalendar;
+
+/**
+ * A bulk-loading alternative to SoundingCSVParser. The file is memory-mapped and each
+ * "pressure,height,temperature,dewpoint" row is parsed straight from the mapped bytes
+ * into primitive columns, so no Strings or SoundingPoints are created per row.
+ * Rows that can't be parsed are counted rather than silently dropped.
+ * @author Sancho McCann
+ *
+ */
+public class MappedSoundingCSVParser
+{
+	private static final int FIELDS = 4; ///< pressure, height, temperature, dewpoint
+
+	/**
+	 * The outcome of parsing one file.
+	 */
+	public static class Result
+	{
+		private final SoundingColumns m_columns;
+		private final int m_rejectedLines;
+		private final int m_firstRejectedLine;
+
+		Result(SoundingColumns columns, int rejectedLines, int firstRejectedLine)
+		{
+			m_columns = columns;
+			m_rejectedLines = rejectedLines;
+			m_firstRejectedLine = firstRejectedLine;
+		}
+
+		/**
+		 * Returns the parsed levels
+		 */
+		public SoundingColumns getColumns()
+		{
+			return m_columns;
+		}
+
+		/**
+		 * Returns the number of non-blank lines that were not a valid row
+		 */
+		public int getRejectedLines()
+		{
+			return m_rejectedLines;
+		}
+
+		/**
+		 * Returns the 1-based line number of the first rejected line, or 0 if none were rejected
+		 */
+		public int getFirstRejectedLine()
+		{
+			return m_firstRejectedLine;
+		}
+
+		/**
+		 * Builds a SoundingData from the parsed levels.
+		 * @param date_time the time of the sounding
+		 */
+		public SoundingData toSoundingData(GregorianCalendar date_time)
+		{
+			return m_columns.toSoundingData(date_time);
+		}
+	}
+
+	/**
+	 * Parses a sounding csv file.
+	 * @param file the file to parse
+	 * @return the parsed levels and the count of rejected lines
+	 * @throws IOException if the file can't be read
+	 */
+	public static Result parse(File file) throws IOException
+	{
+		return parse(file, new SoundingColumns());
+	}
+
+	/**
+	 * Parses a sounding csv file into a caller supplied set of columns. The columns are
+	 * cleared first, which lets bulk loaders reuse one set of buffers per thread.
+	 * @param file the file to parse
+	 * @param columns the columns to fill
+	 * @return the parsed levels and the count of rejected lines
+	 * @throws IOException if the file can't be read
+	 */
+	public static Result parse(File file, SoundingColumns columns) throws IOException
+	{
+		columns.clear();
+
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try
+		{
+			FileChannel channel = raf.getChannel();
+			long length = channel.size();
+			if (length > Integer.MAX_VALUE)
+			{
+				throw new IOException("Sounding file too large to map: " + file);
+			}
+			if (length == 0)
+			{
+				return new Result(columns, 0, 0);
+			}
+
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+			return parse(buffer, (int)length, columns);
+		}
+		finally
+		{
+			raf.close();
+		}
+	}
+
+	private static Result parse(MappedByteBuffer buffer, int length, SoundingColumns columns)
+	{
+		int[] commas = new int[FIELDS - 1];
+		int rejected = 0;
+		int firstRejected = 0;
+		int lineNumber = 0;
+
+		int lineStart = 0;
+		while (lineStart < length)
+		{
+			lineNumber++;
+
+			// Find the end of the line and the field separators in one scan
+			int commaCount = 0;
+			boolean blank = true;
+			int lineEnd = lineStart;
+			for (; lineEnd < length; lineEnd++)
+			{
+				byte b = buffer.get(lineEnd);
+				if (b == '\n')
+					break;
+				if (b == ',')
+				{
+					if (commaCount < commas.length)
+						commas[commaCount] = lineEnd;
+					commaCount++;
+				}
+				else if (b != ' ' && b != '\t' && b != '\r')
+				{
+					blank = false;
+				}
+			}
+
+			if (!blank)
+			{
+				boolean accepted = false;
+				if (commaCount == FIELDS - 1)
+				{
+					double pressure = AsciiNumberParser.parse(buffer, lineStart, commas[0]);
+					double height = AsciiNumberParser.parse(buffer, commas[0] + 1, commas[1]);
+					double temperature = AsciiNumberParser.parse(buffer, commas[1] + 1, commas[2]);
+					double dewpoint = AsciiNumberParser.parse(buffer, commas[2] + 1, lineEnd);
+
+					if (!Double.isNaN(pressure) && !Double.isNaN(height) && !Double.isNaN(temperature) && !Double.isNaN(dewpoint))
+					{
+						columns.add(pressure, height, temperature, dewpoint, Double.NaN, Double.NaN);
+						accepted = true;
+					}
+				}
+
+				if (!accepted)
+				{
+					if (rejected == 0)
+						firstRejected = lineNumber;
+					rejected++;
+				}
+			}
+
+			lineStart = lineEnd + 1;
+		}
+
+		return new Result(columns, rejected, firstRejected);
+	}
+
+	/**
+	 * Convenience equivalent of SoundingCSVParser.getSounding that goes through the
+	 * mapped path, including validation. Rejected lines and corrections are reported on stderr.
+	 * @param file the file to parse
+	 * @return the sounding, empty if the file couldn't be read
+	 */
+	public static SoundingData getSounding(File file)
+	{
+		try
+		{
+			Result result = parse(file);
+			if (result.getRejectedLines() > 0)
+			{
+				System.err.println(file + ": rejected " + result.getRejectedLines() + " line(s), first at line " + result.getFirstRejectedLine());
+			}
+			SoundingData data = result.toSoundingData(new GregorianCalendar());
+			SoundingValidator.Report report = SoundingValidator.clean(data);
+			if (!report.isClean())
+			{
+				System.err.println(file + ": " + report);
+			}
+			return data;
+		}
+		catch (IOException e)
+		{
+			System.err.println(e);
+			return new SoundingData(new GregorianCalendar());
+		}
+	}
+}
@@ -0,0 +1,370 @@
+package ca.ubc.cs.sanchom.AtmosView;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A persistent record of soundings the server had no data for, so that a skipped
+ * launch is asked for once rather than on every request for it.
+ *
+ * Most lookups are for soundings that exist, so a Bloom filter answers those without
+ * taking a lock; only a possible hit goes on to the exact map, which also keeps when
+ * each gap was last checked. A gap old enough that the server won't fill it in any
+ * more is permanent. A recent one is only trusted for a while after it was checked,
+ * since data is often posted hours after the launch.
+ *
+ * The file is plain text: a header line holding the format version, then one
+ * "id&lt;tab&gt;time&lt;tab&gt;checked" line per record, appended as gaps are learned.
+ * A checked time of -1 records that the sounding turned up after all. The last line
+ * for a sounding wins, and the file is compacted on load when it holds many stale lines.
+ * @author Sancho McCann
+ *
+ */
+public class MissingSoundingCache
+{
+	public static final long DEFAULT_SETTLED_AGE = 7 * 24 * 60 * 60 * 1000L; ///< Age after which a gap is permanent
+	public static final long DEFAULT_RECHECK_INTERVAL = 60 * 60 * 1000L; ///< How long a recent gap is trusted after it was checked
+
+	private static final String HEADER = "AtmosView-missing 1"; ///< Header line, holding the format version
+	private static final int FILTER_BITS = 1 << 20; ///< 128 KB; about 1% false positives at 100,000 gaps
+	private static final int FILTER_HASHES = 7;
+	private static final long FOUND = -1; ///< Checked time recording that a sounding turned up
+
+	private final File m_file;
+	private final AtomicLongArray m_filter = new AtomicLongArray(FILTER_BITS / 64); ///< Bloom filter over every sounding ever recorded missing
+	private final HashMap<String, Long> m_checked = new HashMap<String, Long>(); ///< Keys of known gaps to when they were last checked, in milliseconds since the epoch
+	private Writer m_out = null; ///< Appends to the file; opened on the first record
+	private long m_settledAge = DEFAULT_SETTLED_AGE;
+	private long m_recheckInterval = DEFAULT_RECHECK_INTERVAL;
+	private long m_skipped = 0;
+
+	/**
+	 * Constructor. Loads the file if there is a usable one.
+	 * @param file the file; it need not exist yet
+	 */
+	public MissingSoundingCache(File file)
+	{
+		m_file = file;
+		try
+		{
+			load();
+		}
+		catch ( FileNotFoundException e )
+		{
+			// Nothing recorded yet
+		}
+		catch ( IOException e )
+		{
+			System.err.println(e);
+		}
+	}
+
+	/**
+	 * Sets when recorded gaps are trusted.
+	 * @param settledAge milliseconds after a sounding's time beyond which a gap is permanent
+	 * @param recheckInterval milliseconds after a check for which a more recent gap is trusted
+	 */
+	public synchronized void setRecheckPolicy(long settledAge, long recheckInterval)
+	{
+		if (settledAge < 0 || recheckInterval < 0)
+			throw new IllegalArgumentException("Ages can't be negative");
+		m_settledAge = settledAge;
+		m_recheckInterval = recheckInterval;
+	}
+
+	/**
+	 * Checks whether a sounding is known to be missing and needn't be asked for again.
+	 * @param id the station identifier
+	 * @param time the time of the sounding in milliseconds since the epoch, rounded to twelve hours
+	 * @return true if the server had no data for it, and the gap isn't due to be checked again
+	 */
+	public boolean isMissing(String id, long time)
+	{
+		String key = key(id, time);
+		if (!mightContain(key))
+		{
+			return false;
+		}
+
+		synchronized (this)
+		{
+			Long checked = m_checked.get(key);
+			if (checked == null)
+			{
+				return false;
+			}
+			long now = System.currentTimeMillis();
+			if (checked.longValue() - time < m_settledAge && now - checked.longValue() >= m_recheckInterval)
+			{
+				// Recent when checked, and the check has gone stale
+				return false;
+			}
+			m_skipped++;
+			return true;
+		}
+	}
+
+	/**
+	 * Records that the server had no data for a sounding.
+	 * @param id the station identifier
+	 * @param time the time of the sounding in milliseconds since the epoch, rounded to twelve hours
+	 */
+	public void addMissing(String id, long time)
+	{
+		long now = System.currentTimeMillis();
+		if (time > now)
+		{
+			// Not launched yet, rather than skipped
+			return;
+		}
+
+		String key = key(id, time);
+		synchronized (this)
+		{
+			m_checked.put(key, now);
+			addToFilter(key);
+			append(id, time, now);
+		}
+	}
+
+	/**
+	 * Records that a sounding turned up, forgetting any gap recorded for it.
+	 * @param id the station identifier
+	 * @param time the time of the sounding in milliseconds since the epoch, rounded to twelve hours
+	 */
+	public void found(String id, long time)
+	{
+		String key = key(id, time);
+		if (!mightContain(key))
+		{
+			return;
+		}
+
+		synchronized (this)
+		{
+			if (m_checked.remove(key) != null)
+			{
+				append(id, time, FOUND);
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of recorded gaps, including any due to be checked again
+	 */
+	public synchronized int size()
+	{
+		return m_checked.size();
+	}
+
+	/**
+	 * Returns the number of lookups answered as known missing
+	 */
+	public synchronized long getSkipped()
+	{
+		return m_skipped;
+	}
+
+	/**
+	 * Closes the file. Later records reopen it.
+	 */
+	public synchronized void close()
+	{
+		if (m_out != null)
+		{
+			try
+			{
+				m_out.close();
+			}
+			catch ( IOException e )
+			{
+				System.err.println(e);
+			}
+			m_out = null;
+		}
+	}
+
+	private static String key(String id, long time)
+	{
+		return id + "@" + time;
+	}
+
+	private boolean mightContain(String key)
+	{
+		int hash = key.hashCode();
+		int step = spread(hash);
+		for (int i = 0; i < FILTER_HASHES; i++)
+		{
+			int bit = (hash + i * step) & (FILTER_BITS - 1);
+			if ((m_filter.get(bit >>> 6) & (1L << bit)) == 0)
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void addToFilter(String key)
+	{
+		int hash = key.hashCode();
+		int step = spread(hash);
+		for (int i = 0; i < FILTER_HASHES; i++)
+		{
+			int bit = (hash + i * step) & (FILTER_BITS - 1);
+			long mask = 1L << bit;
+			long word;
+			do
+			{
+				word = m_filter.get(bit >>> 6);
+			} while ((word & mask) == 0 && !m_filter.compareAndSet(bit >>> 6, word, word | mask));
+		}
+	}
+
+	/**
+	 * Derives the second hash for double hashing; odd so that it visits every bit.
+	 */
+	private static int spread(int hash)
+	{
+		hash *= 0x9E3779B9;
+		return (hash ^ (hash >>> 16)) | 1;
+	}
+
+	/**
+	 * Appends a record to the file. A failure only loses persistence, so it is reported
+	 * and the record kept in memory.
+	 */
+	private void append(String id, long time, long checked)
+	{
+		try
+		{
+			if (m_out == null)
+			{
+				boolean fresh = !m_file.exists();
+				File parent = m_file.getAbsoluteFile().getParentFile();
+				if (parent != null && !parent.isDirectory() && !parent.mkdirs())
+				{
+					throw new IOException("Can't create directory " + parent);
+				}
+				m_out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(m_file, true), StandardCharsets.UTF_8));
+				if (fresh)
+				{
+					m_out.write(HEADER + "\n");
+				}
+			}
+			m_out.write(id + "\t" + time + "\t" + checked + "\n");
+			// Each record is flushed so that a crash loses at most the line being written
+			m_out.flush();
+		}
+		catch ( IOException e )
+		{
+			System.err.println(e);
+		}
+	}
+
+	private synchronized void load() throws IOException
+	{
+		int lines = 0;
+		BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(m_file), StandardCharsets.UTF_8));
+		try
+		{
+			String header = in.readLine();
+			if (header == null || !header.equals(HEADER))
+			{
+				throw new IOException("Unrecognized missing sounding file " + m_file);
+			}
+
+			String line;
+			while ((line = in.readLine()) != null)
+			{
+				String[] fields = line.split("\t");
+				if (fields.length != 3)
+				{
+					// A line cut short by a crash
+					continue;
+				}
+				lines++;
+				try
+				{
+					String key = key(fields[0], Long.parseLong(fields[1]));
+					long checked = Long.parseLong(fields[2]);
+					if (checked == FOUND)
+					{
+						m_checked.remove(key);
+					}
+					else
+					{
+						m_checked.put(key, checked);
+					}
+				}
+				catch ( NumberFormatException e )
+				{
+					continue;
+				}
+			}
+		}
+		finally
+		{
+			in.close();
+		}
+
+		for (String key : m_checked.keySet())
+		{
+			addToFilter(key);
+		}
+
+		if (lines > 2 * m_checked.size() + 1024)
+		{
+			compact();
+		}
+	}
+
+	/**
+	 * Rewrites the file with one line per known gap. The file is written and synced
+	 * beside the old one, then atomically moved over it, so a crash leaves either the
+	 * old file or the new one.
+	 */
+	private void compact() throws IOException
+	{
+		File temp = new File(m_file.getPath() + ".tmp");
+		FileOutputStream file = new FileOutputStream(temp);
+		BufferedWriter out = new BufferedWriter(new OutputStreamWriter(file, StandardCharsets.UTF_8));
+		try
+		{
+			out.write(HEADER + "\n");
+			for (Map.Entry<String, Long> e : m_checked.entrySet())
+			{
+				int at = e.getKey().lastIndexOf('@');
+				out.write(e.getKey().substring(0, at) + "\t" + e.getKey().substring(at + 1) + "\t" + e.getValue() + "\n");
+			}
+			out.flush();
+			file.getFD().sync();
+		}
+		finally
+		{
+			out.close();
+		}
+
+		try
+		{
+			Files.move(temp.toPath(), m_file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch (IOException e)
+		{
+			temp.delete();
+			throw e;
+		}
+	}
+}
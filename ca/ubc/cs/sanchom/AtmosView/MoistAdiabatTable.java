@@ -0,0 +1,159 @@
+package ca.ubc.cs.sanchom.AtmosView;
+
+/**
+ * The pseudo-adiabats, precomputed once and shared, so that lifting a saturated parcel
+ * is a table lookup rather than an integration.
+ *
+ * Each adiabat is labelled by its wet-bulb potential temperature: the temperature in
+ * degrees celcius at which it crosses 1000 millibars. The table holds the temperature
+ * of every adiabat at a grid of pressures, integrated up and down from 1000 millibars
+ * with LevelSolver's reference integrator. The pressures are spaced evenly in the log
+ * of pressure, in which the adiabats are nearly straight, so bilinear interpolation in
+ * wet-bulb potential temperature and log pressure stays within a few hundredths of a
+ * degree of the integrator everywhere in the table.
+ * @author Sancho McCann
+ *
+ */
+public class MoistAdiabatTable
+{
+	private static MoistAdiabatTable m_instance = null; ///< The singleton instance
+
+	/**
+	 * @name Grid
+	 * The extent and spacing of the table
+	 */
+	//@{
+	public static final double MIN_THETA_W = -60; ///< Coldest adiabat in degrees celcius
+	public static final double MAX_THETA_W = 35; ///< Warmest adiabat in degrees celcius; above any observed, and warmer ones diverge aloft
+	public static final double MAX_MILLIBARS = 1100; ///< Bottom of the table
+	public static final double MIN_MILLIBARS = 10; ///< Top of the table
+	private static final double THETA_W_STEP = 0.5; ///< In degrees celcius
+	private static final double LOG_PRESSURE_STEP = 0.02; ///< In the natural log of millibars
+	private static final double REFERENCE_MILLIBARS = 1000; ///< Where an adiabat's temperature is its label
+	//@}
+
+	private final int m_adiabats; ///< The number of adiabats
+	private final int m_rows; ///< The number of pressures
+	private final double m_logMaxMillibars = Math.log(MAX_MILLIBARS); ///< The log of the first row's pressure
+
+	/**
+	 * The temperatures in degrees celcius, one adiabat after another, each running from
+	 * MAX_MILLIBARS upward; so a parcel's walk up its adiabat reads consecutive entries.
+	 */
+	private final double[] m_temperature;
+
+	private MoistAdiabatTable()
+	{
+		m_adiabats = (int)Math.round((MAX_THETA_W - MIN_THETA_W) / THETA_W_STEP) + 1;
+		m_rows = (int)Math.ceil((m_logMaxMillibars - Math.log(MIN_MILLIBARS)) / LOG_PRESSURE_STEP) + 1;
+		m_temperature = new double[m_adiabats * m_rows];
+
+		// The row nearest 1000 millibars from above; each adiabat is integrated outward from there
+		int reference = (int)Math.floor((m_logMaxMillibars - Math.log(REFERENCE_MILLIBARS)) / LOG_PRESSURE_STEP);
+		for (int j = 0; j < m_adiabats; j++)
+		{
+			int column = j * m_rows;
+			double thetaW = MIN_THETA_W + j * THETA_W_STEP;
+			m_temperature[column + reference] = LevelSolver.getMoistAdiabaticTemperature(REFERENCE_MILLIBARS, thetaW, getRowPressure(reference));
+			for (int i = reference + 1; i < m_rows; i++)
+			{
+				m_temperature[column + i] = LevelSolver.getMoistAdiabaticTemperature(getRowPressure(i - 1), m_temperature[column + i - 1], getRowPressure(i));
+			}
+			for (int i = reference - 1; i >= 0; i--)
+			{
+				m_temperature[column + i] = LevelSolver.getMoistAdiabaticTemperature(getRowPressure(i + 1), m_temperature[column + i + 1], getRowPressure(i));
+			}
+		}
+	}
+
+	/**
+	 * Returns the table, building it on first use
+	 */
+	public static synchronized MoistAdiabatTable getInstance()
+	{
+		if (m_instance == null)
+		{
+			m_instance = new MoistAdiabatTable();
+		}
+		return m_instance;
+	}
+
+	/**
+	 * Returns the temperature of an adiabat at a pressure.
+	 * @param thetaW the adiabat's wet-bulb potential temperature in degrees celcius
+	 * @param millibars the pressure in millibars
+	 * @return the temperature in degrees celcius, or NaN outside the table
+	 */
+	public double getTemperature(double thetaW, double millibars)
+	{
+		double x = (thetaW - MIN_THETA_W) / THETA_W_STEP;
+		double y = (m_logMaxMillibars - Math.log(millibars)) / LOG_PRESSURE_STEP;
+		if (!(x >= 0 && x <= m_adiabats - 1 && y >= 0 && y <= m_rows - 1))
+		{
+			return Double.NaN;
+		}
+		int j = Math.min((int)x, m_adiabats - 2);
+		int i = Math.min((int)y, m_rows - 2);
+		double u = x - j;
+		double v = y - i;
+
+		int left = j * m_rows + i;
+		int right = left + m_rows;
+		double below = m_temperature[left] + u * (m_temperature[right] - m_temperature[left]);
+		double above = m_temperature[left + 1] + u * (m_temperature[right + 1] - m_temperature[left + 1]);
+		return below + v * (above - below);
+	}
+
+	/**
+	 * Finds the adiabat through a saturated parcel; the inverse of getTemperature at that pressure.
+	 * @param millibars the parcel's pressure in millibars
+	 * @param temperature the parcel's temperature in degrees celcius
+	 * @return the wet-bulb potential temperature in degrees celcius, or NaN outside the table
+	 */
+	public double getThetaW(double millibars, double temperature)
+	{
+		double y = (m_logMaxMillibars - Math.log(millibars)) / LOG_PRESSURE_STEP;
+		if (!(y >= 0 && y <= m_rows - 1))
+		{
+			return Double.NaN;
+		}
+		int i = Math.min((int)y, m_rows - 2);
+		double v = y - i;
+
+		// The adiabats are ordered at any pressure, so search for the pair bracketing the parcel
+		if (temperature < getRowTemperature(0, i, v) || temperature > getRowTemperature(m_adiabats - 1, i, v))
+		{
+			return Double.NaN;
+		}
+		int low = 0;
+		int high = m_adiabats - 1;
+		while (low + 1 < high)
+		{
+			int mid = (low + high) >>> 1;
+			if (getRowTemperature(mid, i, v) <= temperature)
+				low = mid;
+			else
+				high = mid;
+		}
+		double cold = getRowTemperature(low, i, v);
+		double warm = getRowTemperature(high, i, v);
+		return MIN_THETA_W + (low + (temperature - cold) / (warm - cold)) * THETA_W_STEP;
+	}
+
+	/**
+	 * Returns the pressure of a row of the table in millibars
+	 */
+	private double getRowPressure(int row)
+	{
+		return Math.exp(m_logMaxMillibars - row * LOG_PRESSURE_STEP);
+	}
+
+	/**
+	 * Returns an adiabat's temperature interpolated a fraction of the way from a row to the one above it
+	 */
+	private double getRowTemperature(int adiabat, int row, double fraction)
+	{
+		int index = adiabat * m_rows + row;
+		return m_temperature[index] + fraction * (m_temperature[index + 1] - m_temperature[index]);
+	}
+}
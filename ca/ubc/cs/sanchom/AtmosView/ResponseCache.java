@@ -0,0 +1,372 @@
+package ca.ubc.cs.sanchom.AtmosView;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A persistent cache of HTTP response bodies, keyed by request URL.
+ * Each entry is one gzip compressed file named by the SHA-1 of the normalized URL,
+ * so equivalent URLs (differing only in host case, default port or parameter order)
+ * share an entry. An entry carries an expiry time; pass NEVER_EXPIRES for responses
+ * that can't change, such as soundings from the past.
+ *
+ * The total size of the entry files is capped. When a put exceeds it, the least
+ * recently used entries are deleted. Recency survives restarts through the entry
+ * files' modification times, which are refreshed on every hit.
+ * @author Sancho McCann
+ *
+ */
+public class ResponseCache
+{
+	public static final long NEVER_EXPIRES = Long.MAX_VALUE; ///< Expiry time for entries that are kept until evicted
+
+	private static final int MAGIC = 0x41544d43; ///< "ATMC"
+	private static final int VERSION = 1;
+	private static final String SUFFIX = ".gz";
+
+	private final File m_directory;
+	private final long m_maxBytes; ///< The cap on the total size of the entry files
+	private final LinkedHashMap<String, Long> m_entries = new LinkedHashMap<String, Long>(16, 0.75f, true); ///< Entry file names to sizes, least recently used first
+	private long m_totalBytes = 0;
+	private long m_hits = 0;
+	private long m_misses = 0;
+
+	/**
+	 * Constructor. Opens the cache in a directory, creating it if needed.
+	 * @param directory the directory holding the entry files
+	 * @param maxBytes the cap on the total size of the entries
+	 * @throws IOException if the directory can't be created
+	 */
+	public ResponseCache(File directory, long maxBytes) throws IOException
+	{
+		if (!directory.isDirectory() && !directory.mkdirs())
+		{
+			throw new IOException("Can't create cache directory " + directory);
+		}
+		m_directory = directory;
+		m_maxBytes = maxBytes;
+
+		File[] files = directory.listFiles();
+		Arrays.sort(files, new Comparator<File>() {
+			public int compare(File a, File b)
+			{
+				return Long.compare(a.lastModified(), b.lastModified());
+			}
+		});
+		for (int i = 0; i < files.length; i++)
+		{
+			String name = files[i].getName();
+			if (name.endsWith(".tmp"))
+			{
+				// Left by an interrupted put
+				files[i].delete();
+			}
+			else if (name.endsWith(SUFFIX))
+			{
+				m_entries.put(name, files[i].length());
+				m_totalBytes += files[i].length();
+			}
+		}
+	}
+
+	/**
+	 * Gets a cached response body.
+	 * @param url the request URL
+	 * @return the body, or null if it is not cached or has expired
+	 */
+	public byte[] get(String url)
+	{
+		String normalized = normalize(url);
+		String name = fileName(normalized);
+		File file = new File(m_directory, name);
+
+		synchronized (this)
+		{
+			if (!m_entries.containsKey(name))
+			{
+				m_misses++;
+				return null;
+			}
+		}
+
+		try
+		{
+			DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+			try
+			{
+				if (in.readInt() != MAGIC || in.readInt() != VERSION)
+				{
+					throw new IOException("Bad cache entry " + file);
+				}
+				long expires = in.readLong();
+				String entryURL = in.readUTF();
+				if (!entryURL.equals(normalized))
+				{
+					// A hash collision; treat as a miss and let the put replace it
+					synchronized (this)
+					{
+						m_misses++;
+					}
+					return null;
+				}
+				if (expires < System.currentTimeMillis())
+				{
+					in.close();
+					remove(name);
+					synchronized (this)
+					{
+						m_misses++;
+					}
+					return null;
+				}
+
+				// A corrupt entry must still release the inflater
+				byte[] body;
+				try (GZIPInputStream gzip = new GZIPInputStream(in))
+				{
+					body = readFully(gzip);
+				}
+				file.setLastModified(System.currentTimeMillis());
+				synchronized (this)
+				{
+					m_entries.get(name); // mark as recently used
+					m_hits++;
+				}
+				return body;
+			}
+			finally
+			{
+				in.close();
+			}
+		}
+		catch ( FileNotFoundException e )
+		{
+			// Evicted after we looked it up
+		}
+		catch ( IOException e )
+		{
+			System.err.println(e);
+			remove(name);
+		}
+		synchronized (this)
+		{
+			m_misses++;
+		}
+		return null;
+	}
+
+	/**
+	 * Stores a response body, replacing any entry for the same URL.
+	 * @param url the request URL
+	 * @param body the response body
+	 * @param expires the time in milliseconds since the epoch after which the entry
+	 * is no longer returned, or NEVER_EXPIRES
+	 * @throws IOException if the entry can't be written
+	 */
+	public void put(String url, byte[] body, long expires) throws IOException
+	{
+		String normalized = normalize(url);
+		String name = fileName(normalized);
+		File file = new File(m_directory, name);
+		File temp = File.createTempFile(name, ".tmp", m_directory);
+
+		try
+		{
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+			try
+			{
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeLong(expires);
+				out.writeUTF(normalized);
+				GZIPOutputStream gzip = new GZIPOutputStream(out);
+				gzip.write(body);
+				gzip.finish();
+			}
+			finally
+			{
+				out.close();
+			}
+
+			synchronized (this)
+			{
+				Long previous = m_entries.remove(name);
+				if (previous != null)
+				{
+					m_totalBytes -= previous;
+				}
+				// A reader sees the old entry or the new one, never a missing or partial one
+				Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+				m_entries.put(name, file.length());
+				m_totalBytes += file.length();
+				evict();
+			}
+		}
+		finally
+		{
+			temp.delete();
+		}
+	}
+
+	/**
+	 * Returns the total size of the entry files in bytes
+	 */
+	public synchronized long getSize()
+	{
+		return m_totalBytes;
+	}
+
+	/**
+	 * Returns the number of entries
+	 */
+	public synchronized int getEntryCount()
+	{
+		return m_entries.size();
+	}
+
+	/**
+	 * Returns the number of gets answered from the cache
+	 */
+	public synchronized long getHits()
+	{
+		return m_hits;
+	}
+
+	/**
+	 * Returns the number of gets that were not cached or had expired
+	 */
+	public synchronized long getMisses()
+	{
+		return m_misses;
+	}
+
+	/**
+	 * Normalizes a URL so that equivalent requests map to the same entry: the scheme
+	 * and host are lower cased, a default port and any fragment are dropped, and the
+	 * query parameters are sorted.
+	 * @param url the URL
+	 * @return the normalized form, or the URL unchanged if it can't be parsed
+	 */
+	public static String normalize(String url)
+	{
+		try
+		{
+			URI uri = new URI(url);
+			String scheme = (uri.getScheme() == null ? "http" : uri.getScheme().toLowerCase());
+			String host = (uri.getHost() == null ? "" : uri.getHost().toLowerCase());
+			int port = uri.getPort();
+			if ((port == 80 && scheme.equals("http")) || (port == 443 && scheme.equals("https")))
+			{
+				port = -1;
+			}
+			String path = (uri.getRawPath() == null || uri.getRawPath().length() == 0 ? "/" : uri.getRawPath());
+
+			StringBuilder normalized = new StringBuilder();
+			normalized.append(scheme).append("://").append(host);
+			if (port != -1)
+			{
+				normalized.append(':').append(port);
+			}
+			normalized.append(path);
+
+			String query = uri.getRawQuery();
+			if (query != null && query.length() > 0)
+			{
+				String[] parameters = query.split("&");
+				Arrays.sort(parameters);
+				boolean first = true;
+				for (int i = 0; i < parameters.length; i++)
+				{
+					if (parameters[i].length() == 0)
+						continue;
+					normalized.append(first ? '?' : '&').append(parameters[i]);
+					first = false;
+				}
+			}
+			return normalized.toString();
+		}
+		catch ( URISyntaxException e )
+		{
+			return url;
+		}
+	}
+
+	private static String fileName(String normalized)
+	{
+		try
+		{
+			byte[] digest = MessageDigest.getInstance("SHA-1").digest(normalized.getBytes(StandardCharsets.UTF_8));
+			StringBuilder name = new StringBuilder(digest.length * 2 + SUFFIX.length());
+			for (int i = 0; i < digest.length; i++)
+			{
+				name.append(Character.forDigit((digest[i] >> 4) & 0xF, 16));
+				name.append(Character.forDigit(digest[i] & 0xF, 16));
+			}
+			return name.append(SUFFIX).toString();
+		}
+		catch ( NoSuchAlgorithmException e )
+		{
+			// Every Java platform is required to provide SHA-1
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private synchronized void remove(String name)
+	{
+		Long size = m_entries.remove(name);
+		if (size != null)
+		{
+			m_totalBytes -= size;
+		}
+		new File(m_directory, name).delete();
+	}
+
+	/**
+	 * Deletes least recently used entries until the cache is within its cap.
+	 */
+	private void evict()
+	{
+		Iterator<Map.Entry<String, Long>> it = m_entries.entrySet().iterator();
+		while (m_totalBytes > m_maxBytes && it.hasNext())
+		{
+			Map.Entry<String, Long> eldest = it.next();
+			new File(m_directory, eldest.getKey()).delete();
+			m_totalBytes -= eldest.getValue();
+			it.remove();
+		}
+	}
+
+	private static byte[] readFully(InputStream in) throws IOException
+	{
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		int read;
+		while ((read = in.read(buffer)) > 0)
+		{
+			out.write(buffer, 0, read);
+		}
+		return out.toByteArray();
+	}
+}
@@ -0,0 +1,90 @@
+package ca.ubc.cs.sanchom.AtmosView;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads and writes single soundings in the binary columnar format described by
+ * SoundingRecord. Files are opened by memory-mapping them, so a cached sounding can be
+ * exposed without parsing or copying its levels.
+ * @author Sancho McCann
+ *
+ */
+public class SoundingArchive
+{
+	private SoundingArchive()
+	{
+	}
+
+	/**
+	 * Writes a sounding to a file, replacing any existing contents.
+	 * @param file the destination file
+	 * @param data the sounding to write
+	 * @throws IOException if the file can't be written
+	 */
+	public static void write(File file, SoundingData data) throws IOException
+	{
+		ByteBuffer buffer = ByteBuffer.allocate(SoundingRecord.encodedSize(data));
+		SoundingRecord.write(data, buffer);
+		buffer.flip();
+
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try
+		{
+			FileChannel channel = raf.getChannel();
+			channel.truncate(0);
+			while (buffer.hasRemaining())
+			{
+				channel.write(buffer);
+			}
+		}
+		finally
+		{
+			raf.close();
+		}
+	}
+
+	/**
+	 * Opens a sounding file by mapping it into memory. The mapping stays valid after
+	 * this method returns, even though the file itself is closed.
+	 * @param file the file to open
+	 * @return a view of the sounding backed by the mapped file
+	 * @throws IOException if the file can't be read or is not a sounding file
+	 */
+	public static SoundingRecord open(File file) throws IOException
+	{
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try
+		{
+			FileChannel channel = raf.getChannel();
+			if (channel.size() > Integer.MAX_VALUE)
+			{
+				throw new IOException("Sounding file too large to map: " + file);
+			}
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			return new SoundingRecord(buffer);
+		}
+		catch (IllegalArgumentException e)
+		{
+			throw new IOException(file + ": " + e.getMessage());
+		}
+		finally
+		{
+			raf.close();
+		}
+	}
+
+	/**
+	 * Reads a sounding file into a new SoundingData object.
+	 * @param file the file to read
+	 * @return the sounding
+	 * @throws IOException if the file can't be read or is not a sounding file
+	 */
+	public static SoundingData read(File file) throws IOException
+	{
+		return open(file).toSoundingData();
+	}
+}
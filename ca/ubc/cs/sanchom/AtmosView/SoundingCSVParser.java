@@ -40,6 +40,7 @@ public class SoundingCSVParser {
 			
 		}
 		
+		SoundingValidator.clean(data);
 		return data;
 	}
 }
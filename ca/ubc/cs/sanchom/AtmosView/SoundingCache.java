@@ -0,0 +1,232 @@
+package ca.ubc.cs.sanchom.AtmosView;
+import java.util.GregorianCalendar;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * An in-memory cache of soundings together with their derived data, keyed by station
+ * and synoptic time. The derived data is by far the larger of the two (one point per
+ * ten metres of height), so the cache is bounded by an estimate of the bytes held rather
+ * than by a count of entries. When full, the least recently used entries are evicted.
+ * @author Sancho McCann
+ *
+ */
+public class SoundingCache
+{
+	private static final int OBJECT_OVERHEAD = 256; ///< Estimated bytes for a SoundingData or DerivedData apart from its points
+	private static final int SOUNDING_LEVEL_BYTES = 6 * 8; ///< Six column entries; SoundingData holds no object per level
+	private static final int DERIVED_SAMPLE_BYTES = 9 * 8 + 1; ///< Nine column entries and a stratus bit, rounded up; DerivedProfile holds no object per sample
+
+	/**
+	 * A cached sounding and its derived data.
+	 */
+	public static class Entry
+	{
+		private final SoundingData m_data;
+		private final DerivedData m_derived;
+		private final long m_bytes; ///< Estimated memory held by this entry
+
+		Entry(SoundingData data, DerivedData derived)
+		{
+			m_data = data;
+			m_derived = derived;
+			// DerivedData holds a snapshot of the sounding besides the SoundingData itself
+			m_bytes = 2 * estimateSize(data) + estimateSize(derived);
+		}
+
+		public SoundingData getSoundingData()
+		{
+			return m_data;
+		}
+
+		public DerivedData getDerivedData()
+		{
+			return m_derived;
+		}
+
+		/**
+		 * Returns the immutable snapshot the derived data was made from, for sharing across threads
+		 */
+		public SoundingSnapshot getSnapshot()
+		{
+			return m_derived.getSnapshot();
+		}
+	}
+
+	/**
+	 * A station and synoptic time
+	 */
+	private static final class Key
+	{
+		private final String m_stationId;
+		private final long m_time; ///< Milliseconds since the epoch, rounded to twelve hours
+
+		Key(String stationId, long time)
+		{
+			m_stationId = stationId;
+			m_time = time;
+		}
+
+		public boolean equals(Object obj)
+		{
+			if (!(obj instanceof Key))
+				return false;
+			Key that = (Key)obj;
+			return m_time == that.m_time && m_stationId.equals(that.m_stationId);
+		}
+
+		public int hashCode()
+		{
+			return m_stationId.hashCode() * 31 + (int)(m_time ^ (m_time >>> 32));
+		}
+	}
+
+	private final long m_maxBytes; ///< The cap on the estimated size of the entries
+	private final LinkedHashMap<Key, Entry> m_entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true); ///< Least recently used first
+	private long m_bytes = 0;
+	private long m_hits = 0;
+	private long m_misses = 0;
+	private long m_evictions = 0;
+
+	/**
+	 * Constructor
+	 * @param maxBytes the cap on the estimated memory held by the cached entries
+	 */
+	public SoundingCache(long maxBytes)
+	{
+		m_maxBytes = maxBytes;
+	}
+
+	/**
+	 * Looks up a sounding.
+	 * @param id the station identifier
+	 * @param date_time the time of the sounding; it is rounded to the nearest twelve hours
+	 * @return the cached entry, or null if there is none
+	 */
+	public synchronized Entry get(String id, GregorianCalendar date_time)
+	{
+		Entry entry = m_entries.get(new Key(id, SoundingFetcher.round12(date_time).getTimeInMillis()));
+		if (entry == null)
+		{
+			m_misses++;
+		}
+		else
+		{
+			m_hits++;
+		}
+		return entry;
+	}
+
+	/**
+	 * Checks for a sounding without counting a hit or miss or marking it as used.
+	 * @param id the station identifier
+	 * @param date_time the time of the sounding; it is rounded to the nearest twelve hours
+	 * @return true if the sounding is cached
+	 */
+	public synchronized boolean contains(String id, GregorianCalendar date_time)
+	{
+		return m_entries.containsKey(new Key(id, SoundingFetcher.round12(date_time).getTimeInMillis()));
+	}
+
+	/**
+	 * Adds a sounding, replacing any entry for the same station and time, then evicts
+	 * the least recently used entries until the cache is within its cap.
+	 * @param id the station identifier
+	 * @param date_time the time of the sounding; it is rounded to the nearest twelve hours
+	 * @param data the sounding
+	 * @param derived the data derived from the sounding
+	 * @return the new entry
+	 */
+	public synchronized Entry put(String id, GregorianCalendar date_time, SoundingData data, DerivedData derived)
+	{
+		Entry entry = new Entry(data, derived);
+		Entry previous = m_entries.put(new Key(id, SoundingFetcher.round12(date_time).getTimeInMillis()), entry);
+		m_bytes += entry.m_bytes;
+		if (previous != null)
+		{
+			m_bytes -= previous.m_bytes;
+		}
+
+		Iterator<Map.Entry<Key, Entry>> it = m_entries.entrySet().iterator();
+		while (m_bytes > m_maxBytes && it.hasNext())
+		{
+			Entry eldest = it.next().getValue();
+			if (eldest == entry)
+			{
+				// Always keep what was just added, even if it alone exceeds the cap
+				continue;
+			}
+			m_bytes -= eldest.m_bytes;
+			m_evictions++;
+			it.remove();
+		}
+		return entry;
+	}
+
+	/**
+	 * Removes all entries. The statistics are kept.
+	 */
+	public synchronized void clear()
+	{
+		m_entries.clear();
+		m_bytes = 0;
+	}
+
+	/**
+	 * Returns the number of entries
+	 */
+	public synchronized int size()
+	{
+		return m_entries.size();
+	}
+
+	/**
+	 * Returns the estimated memory held by the entries, in bytes
+	 */
+	public synchronized long getEstimatedBytes()
+	{
+		return m_bytes;
+	}
+
+	public synchronized long getHits()
+	{
+		return m_hits;
+	}
+
+	public synchronized long getMisses()
+	{
+		return m_misses;
+	}
+
+	public synchronized long getEvictions()
+	{
+		return m_evictions;
+	}
+
+	public synchronized String toString()
+	{
+		return m_entries.size() + " entries, " + (m_bytes / 1024) + " KB, " +
+				m_hits + " hits, " + m_misses + " misses, " + m_evictions + " evictions";
+	}
+
+	/**
+	 * Estimates the memory held by a sounding
+	 * @param data the sounding
+	 * @return the estimate in bytes
+	 */
+	public static long estimateSize(SoundingData data)
+	{
+		return OBJECT_OVERHEAD + (long)data.size() * SOUNDING_LEVEL_BYTES;
+	}
+
+	/**
+	 * Estimates the memory held by the samples of derived data
+	 * @param derived the derived data
+	 * @return the estimate in bytes
+	 */
+	public static long estimateSize(DerivedData derived)
+	{
+		return OBJECT_OVERHEAD + (long)derived.size() * DERIVED_SAMPLE_BYTES;
+	}
+}
@@ -0,0 +1,420 @@
+package ca.ubc.cs.sanchom.AtmosView;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.GregorianCalendar;
+
+/**
+ * A compressed encoding of a sounding for long-term archives, after the Gorilla
+ * time series encoding.
+ *
+ * Each column is encoded one of two ways, whichever is smaller:
+ * <ul>
+ * <li>Delta-of-delta: used when every value is an exact decimal with at most two
+ * places (heights, pressures, and usually temperatures). The values are scaled to
+ * integers and the difference between successive deltas is written in a variable
+ * length bit code, so a steady lapse costs about one bit per level.</li>
+ * <li>XOR: each double is XORed with the previous one and only the meaningful bits
+ * of the result are written. This handles anything, including missing (NaN) values.</li>
+ * </ul>
+ * Each column is prefixed with its byte length, so a reader that wants only some
+ * columns can skip the rest without decoding them.
+ *
+ * Layout, big-endian:
+ * <pre>
+ *   int    magic ("ATMZ")
+ *   long   sounding time in milliseconds since the epoch
+ *   int    number of levels
+ *   short  station id length, then the UTF-8 station id
+ *   short  station name length, then the UTF-8 station name
+ *   6 x    [byte encoding, byte decimal scale, int byte length, bits]
+ *          for pressure, height, temperature, dewpoint, direction, speed
+ * </pre>
+ * @author Sancho McCann
+ *
+ */
+public class SoundingCodec
+{
+	static final int MAGIC = 0x41544D5A; ///< "ATMZ"
+
+	private static final byte ENCODING_XOR = 1;
+	private static final byte ENCODING_DELTA_OF_DELTA = 2;
+
+	private static final int[] DECIMAL_SCALES = { 1, 10, 100 }; ///< Scales tried for delta-of-delta encoding
+	private static final double MAX_EXACT = 9007199254740992.0; ///< 2^53
+
+	private static final int COLUMNS = 6;
+	private static final int COLUMN_HEADER = 1 + 1 + 4; ///< Bytes of encoding, scale and length before each column
+
+	private SoundingCodec()
+	{
+	}
+
+	/**
+	 * Encodes a sounding.
+	 * @param data the sounding
+	 * @return the encoded bytes
+	 * @throws IllegalArgumentException if the station id or name is over 32767 bytes in UTF-8
+	 */
+	public static byte[] encode(SoundingData data)
+	{
+		int n = data.size();
+		SoundingColumns levels = data.levels();
+		double[][] columns = { levels.millibars(), levels.metres(), levels.temperature(),
+				levels.dewpoint(), levels.direction(), levels.speed() };
+
+		BitOutput[] encoded = new BitOutput[COLUMNS];
+		int[] scales = new int[COLUMNS];
+		int length = 4 + 8 + 4 + SoundingRecord.stringSize(data.getStationId()) + SoundingRecord.stringSize(data.getStationName());
+		for (int c = 0; c < COLUMNS; c++)
+		{
+			encoded[c] = encodeXor(columns[c], n);
+			int scale = decimalScale(columns[c], n);
+			if (scale > 0)
+			{
+				BitOutput deltas = encodeDeltaOfDelta(columns[c], n, scale);
+				if (deltas.bitLength() < encoded[c].bitLength())
+				{
+					encoded[c] = deltas;
+					scales[c] = scale;
+				}
+			}
+			length += COLUMN_HEADER + encoded[c].byteLength();
+		}
+
+		ByteBuffer out = ByteBuffer.allocate(length);
+		out.putInt(MAGIC);
+		out.putLong(data.getTimeInMillis());
+		out.putInt(n);
+		SoundingRecord.putString(out, data.getStationId());
+		SoundingRecord.putString(out, data.getStationName());
+		for (int c = 0; c < COLUMNS; c++)
+		{
+			out.put(scales[c] > 0 ? ENCODING_DELTA_OF_DELTA : ENCODING_XOR);
+			out.put((byte)scales[c]);
+			out.putInt(encoded[c].byteLength());
+			encoded[c].copyTo(out);
+		}
+		return out.array();
+	}
+
+	/**
+	 * Decodes a sounding into a new SoundingData object.
+	 * @param in the encoded sounding, from its position to its limit
+	 * @return the sounding
+	 * @throws IllegalArgumentException if the bytes are not a valid encoding
+	 */
+	public static SoundingData decode(ByteBuffer in)
+	{
+		SoundingColumns columns = new SoundingColumns();
+		Decoder decoder = new Decoder(in);
+		decoder.decode(columns);
+
+		GregorianCalendar time = new GregorianCalendar();
+		time.setTimeInMillis(decoder.getTimeInMillis());
+		SoundingData data = columns.toSoundingData(time);
+		data.setStationId(decoder.getStationId());
+		if (decoder.getStationName() != null)
+			data.setStationName(decoder.getStationName());
+		return data;
+	}
+
+	/**
+	 * A streaming decoder. The header is read on construction; the columns are then
+	 * decoded straight into primitive arrays, either all at once or one at a time.
+	 */
+	public static class Decoder
+	{
+		private final ByteBuffer m_in;
+		private final long m_time;
+		private final int m_size;
+		private final String m_stationId;
+		private final String m_stationName;
+		private int m_column = 0; ///< Index of the next column in the stream
+
+		/**
+		 * Reads the header of an encoded sounding.
+		 * @param in the encoded sounding, from its position to its limit; its position is not changed
+		 * @throws IllegalArgumentException if the bytes are not a valid encoding
+		 */
+		public Decoder(ByteBuffer in)
+		{
+			m_in = in.slice();
+			try
+			{
+				if (m_in.getInt() != MAGIC)
+					throw new IllegalArgumentException("Not a compressed sounding");
+				m_time = m_in.getLong();
+				m_size = m_in.getInt();
+				m_stationId = SoundingRecord.getString(m_in);
+				m_stationName = SoundingRecord.getString(m_in);
+			}
+			catch (BufferUnderflowException e)
+			{
+				throw new IllegalArgumentException("Truncated compressed sounding");
+			}
+			if (m_size < 0)
+				throw new IllegalArgumentException("Corrupt compressed sounding");
+
+			// Bound the count before anything is sized by it: every column has its header, a
+			// full first value and at least a bit for each level after it
+			long columnBits = (m_size == 0 ? 0 : 64L + (m_size - 1));
+			if (m_in.remaining() < COLUMNS * (COLUMN_HEADER + (columnBits + 7) / 8))
+				throw new IllegalArgumentException("Corrupt compressed sounding: " + m_size + " levels");
+		}
+
+		public long getTimeInMillis()
+		{
+			return m_time;
+		}
+
+		public String getStationId()
+		{
+			return m_stationId;
+		}
+
+		public String getStationName()
+		{
+			return m_stationName;
+		}
+
+		/**
+		 * Returns the number of levels
+		 */
+		public int size()
+		{
+			return m_size;
+		}
+
+		/**
+		 * Decodes the next column in the stream (pressure, height, temperature, dewpoint,
+		 * direction, then speed).
+		 * @param out receives size() values; may be null to skip the column
+		 * @throws IllegalArgumentException if the column is corrupt or all columns have been read
+		 */
+		public void nextColumn(double[] out)
+		{
+			if (m_column == COLUMNS)
+				throw new IllegalArgumentException("No more columns");
+			try
+			{
+				byte encoding = m_in.get();
+				int scale = m_in.get();
+				int length = m_in.getInt();
+				int start = m_in.position();
+				if (length < 0 || start + length > m_in.limit())
+					throw new IllegalArgumentException("Truncated compressed sounding");
+				m_in.position(start + length);
+				m_column++;
+
+				if (out == null)
+					return;
+				BitInput bits = new BitInput(m_in, start, start + length);
+				if (encoding == ENCODING_XOR)
+					decodeXor(bits, out, m_size);
+				else if (encoding == ENCODING_DELTA_OF_DELTA && scale > 0)
+					decodeDeltaOfDelta(bits, out, m_size, scale);
+				else
+					throw new IllegalArgumentException("Unknown column encoding " + encoding);
+			}
+			catch (BufferUnderflowException e)
+			{
+				throw new IllegalArgumentException("Truncated compressed sounding");
+			}
+		}
+
+		/**
+		 * Decodes all remaining columns into a set of columns, replacing its contents.
+		 * @param columns the destination
+		 */
+		public void decode(SoundingColumns columns)
+		{
+			columns.setSize(m_size);
+			double[][] arrays = { columns.millibars(), columns.metres(), columns.temperature(),
+					columns.dewpoint(), columns.direction(), columns.speed() };
+			while (m_column < COLUMNS)
+			{
+				nextColumn(arrays[m_column]);
+			}
+		}
+	}
+
+	/**
+	 * Finds the smallest decimal scale at which every value is an exact integer.
+	 * @return the scale, or 0 if the column can't be delta-of-delta encoded
+	 */
+	private static int decimalScale(double[] values, int n)
+	{
+		for (int s = 0; s < DECIMAL_SCALES.length; s++)
+		{
+			int scale = DECIMAL_SCALES[s];
+			boolean exact = true;
+			for (int i = 0; i < n && exact; i++)
+			{
+				double scaled = values[i] * scale;
+				exact = !Double.isNaN(scaled) && Math.abs(scaled) < MAX_EXACT &&
+					Double.doubleToLongBits(Math.round(scaled) / (double)scale) == Double.doubleToLongBits(values[i]);
+			}
+			if (exact)
+				return scale;
+		}
+		return 0;
+	}
+
+	private static BitOutput encodeDeltaOfDelta(double[] values, int n, int scale)
+	{
+		BitOutput out = new BitOutput();
+		long previous = 0;
+		long previousDelta = 0;
+		for (int i = 0; i < n; i++)
+		{
+			long value = Math.round(values[i] * scale);
+			if (i == 0)
+			{
+				out.write(value, 64);
+			}
+			else
+			{
+				long delta = value - previous;
+				writeDeltaOfDelta(out, delta - previousDelta);
+				previousDelta = delta;
+			}
+			previous = value;
+		}
+		return out;
+	}
+
+	private static void decodeDeltaOfDelta(BitInput in, double[] out, int n, int scale)
+	{
+		long value = 0;
+		long delta = 0;
+		for (int i = 0; i < n; i++)
+		{
+			if (i == 0)
+			{
+				value = in.read(64);
+			}
+			else
+			{
+				delta += readDeltaOfDelta(in);
+				value += delta;
+			}
+			out[i] = value / (double)scale;
+		}
+	}
+
+	/**
+	 * Writes a delta-of-delta with the Gorilla prefix code:
+	 * '0' for zero, '10' + 7 bits, '110' + 9 bits, '1110' + 12 bits, or '1111' + 64 bits.
+	 */
+	private static void writeDeltaOfDelta(BitOutput out, long dod)
+	{
+		if (dod == 0)
+		{
+			out.write(0, 1);
+		}
+		else if (dod >= -63 && dod <= 64)
+		{
+			out.write(0x2, 2);
+			out.write(dod + 63, 7);
+		}
+		else if (dod >= -255 && dod <= 256)
+		{
+			out.write(0x6, 3);
+			out.write(dod + 255, 9);
+		}
+		else if (dod >= -2047 && dod <= 2048)
+		{
+			out.write(0xE, 4);
+			out.write(dod + 2047, 12);
+		}
+		else
+		{
+			out.write(0xF, 4);
+			out.write(dod, 64);
+		}
+	}
+
+	private static long readDeltaOfDelta(BitInput in)
+	{
+		if (!in.readBit())
+			return 0;
+		if (!in.readBit())
+			return in.read(7) - 63;
+		if (!in.readBit())
+			return in.read(9) - 255;
+		if (!in.readBit())
+			return in.read(12) - 2047;
+		return in.read(64);
+	}
+
+	private static BitOutput encodeXor(double[] values, int n)
+	{
+		BitOutput out = new BitOutput();
+		long previous = 0;
+		int previousLeading = -1;
+		int previousTrailing = 0;
+		for (int i = 0; i < n; i++)
+		{
+			long bits = Double.doubleToRawLongBits(values[i]);
+			if (i == 0)
+			{
+				out.write(bits, 64);
+				previous = bits;
+				continue;
+			}
+
+			long xor = bits ^ previous;
+			previous = bits;
+			if (xor == 0)
+			{
+				out.write(0, 1);
+				continue;
+			}
+
+			int leading = Math.min(Long.numberOfLeadingZeros(xor), 31);
+			int trailing = Long.numberOfTrailingZeros(xor);
+			if (previousLeading >= 0 && leading >= previousLeading && trailing >= previousTrailing)
+			{
+				// The meaningful bits fit in the previous window
+				out.write(0x2, 2);
+				out.write(xor >>> previousTrailing, 64 - previousLeading - previousTrailing);
+			}
+			else
+			{
+				int meaningful = 64 - leading - trailing;
+				out.write(0x3, 2);
+				out.write(leading, 5);
+				out.write(meaningful - 1, 6);
+				out.write(xor >>> trailing, meaningful);
+				previousLeading = leading;
+				previousTrailing = trailing;
+			}
+		}
+		return out;
+	}
+
+	private static void decodeXor(BitInput in, double[] out, int n)
+	{
+		long previous = 0;
+		int leading = 0;
+		int trailing = 0;
+		for (int i = 0; i < n; i++)
+		{
+			if (i == 0)
+			{
+				previous = in.read(64);
+			}
+			else if (in.readBit())
+			{
+				if (in.readBit())
+				{
+					leading = (int)in.read(5);
+					int meaningful = (int)in.read(6) + 1;
+					trailing = 64 - leading - meaningful;
+				}
+				previous ^= in.read(64 - leading - trailing) << trailing;
+			}
+			out[i] = Double.longBitsToDouble(previous);
+		}
+	}
+}
@@ -0,0 +1,312 @@
+package ca.ubc.cs.sanchom.AtmosView;
+import java.io.Serializable;
+import java.util.GregorianCalendar;
+
+/**
+ * A growable set of primitive columns holding the raw sample levels of a sounding.
+ * This is the allocation-free counterpart to a list of SoundingPoints: each variable
+ * is held in its own double array so that parsers can fill it without creating an
+ * object per level.
+ * @author Sancho McCann
+ *
+ */
+public class SoundingColumns implements Serializable
+{
+	private static final long serialVersionUID = 1L;
+
+	private static final int DEFAULT_CAPACITY = 64; ///< Typical number of levels in a sounding
+
+	private double[] m_millibars; ///< The pressure levels in millibars
+	private double[] m_metres; ///< The sample heights in metres
+	private double[] m_temperature; ///< The temperatures in degrees celcius
+	private double[] m_dewpoint; ///< The dewpoints in degrees celcius
+	private double[] m_direction; ///< The wind directions in degrees clockwise from North
+	private double[] m_speed; ///< The wind speeds in knots
+	private int m_size; ///< The number of levels held
+
+	/**
+	 * Constructor
+	 */
+	public SoundingColumns()
+	{
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Constructor
+	 * @param capacity the initial number of levels that can be held without growing
+	 */
+	public SoundingColumns(int capacity)
+	{
+		capacity = Math.max(capacity, 1);
+		m_millibars = new double[capacity];
+		m_metres = new double[capacity];
+		m_temperature = new double[capacity];
+		m_dewpoint = new double[capacity];
+		m_direction = new double[capacity];
+		m_speed = new double[capacity];
+		m_size = 0;
+	}
+
+	/**
+	 * Appends a level to the end of the columns.
+	 * @param millibars the pressure level in millibars
+	 * @param metres the height in metres
+	 * @param temperature the temperature in degrees celcius
+	 * @param dewpoint the dewpoint in degrees celcius
+	 * @param direction the wind direction in degrees clockwise from North
+	 * @param speed the wind speed in knots
+	 */
+	public void add(double millibars, double metres, double temperature, double dewpoint, double direction, double speed)
+	{
+		if (m_size == m_metres.length)
+		{
+			grow(m_size * 2);
+		}
+		m_millibars[m_size] = millibars;
+		m_metres[m_size] = metres;
+		m_temperature[m_size] = temperature;
+		m_dewpoint[m_size] = dewpoint;
+		m_direction[m_size] = direction;
+		m_speed[m_size] = speed;
+		m_size++;
+	}
+
+	/**
+	 * Removes all levels, keeping the allocated capacity for reuse.
+	 */
+	public void clear()
+	{
+		m_size = 0;
+	}
+
+	/**
+	 * Returns the number of levels held
+	 */
+	public int size()
+	{
+		return m_size;
+	}
+
+	public double getMillibars(int index)
+	{
+		return m_millibars[index];
+	}
+
+	public double getMetres(int index)
+	{
+		return m_metres[index];
+	}
+
+	public double getTemperature(int index)
+	{
+		return m_temperature[index];
+	}
+
+	public double getDewpoint(int index)
+	{
+		return m_dewpoint[index];
+	}
+
+	public double getDirection(int index)
+	{
+		return m_direction[index];
+	}
+
+	public double getSpeed(int index)
+	{
+		return m_speed[index];
+	}
+
+	/**
+	 * Makes room for a number of levels without growing again.
+	 * @param capacity the number of levels
+	 */
+	public void ensureCapacity(int capacity)
+	{
+		if (capacity > m_metres.length)
+		{
+			grow(capacity);
+		}
+	}
+
+	/**
+	 * Sorts the levels by height, keeping levels at the same height in their order.
+	 * This is an adaptive natural merge sort: one pass finds the ascending runs, and
+	 * sorted input, the usual case, stops there. Soundings out of order are nearly
+	 * always a few runs, such as a below-ground level reported after the surface, so
+	 * only a few merges of level indices follow before the six columns are permuted.
+	 * @return true if any level moved
+	 */
+	public boolean sortByMetres()
+	{
+		// Run boundaries: runs[r] is the first level of run r, and runs[runCount] is m_size
+		int[] runs = null;
+		int runCount = 1;
+		for (int i = 1; i < m_size; i++)
+		{
+			if (m_metres[i] < m_metres[i - 1])
+			{
+				if (runs == null)
+				{
+					runs = new int[m_size + 1];
+				}
+				runs[runCount++] = i;
+			}
+		}
+		if (runs == null)
+		{
+			return false;
+		}
+		runs[runCount] = m_size;
+
+		int[] order = new int[m_size];
+		int[] merged = new int[m_size];
+		for (int i = 0; i < m_size; i++)
+		{
+			order[i] = i;
+		}
+
+		// Merge neighbouring runs pairwise until one remains
+		while (runCount > 1)
+		{
+			int newCount = 0;
+			for (int r = 0; r < runCount; r += 2)
+			{
+				int start = runs[r];
+				int middle = runs[Math.min(r + 1, runCount)];
+				int end = runs[Math.min(r + 2, runCount)];
+				int left = start;
+				int right = middle;
+				for (int k = start; k < end; k++)
+				{
+					// Ties go to the left run, which keeps the sort stable
+					if (right >= end || (left < middle && m_metres[order[left]] <= m_metres[order[right]]))
+						merged[k] = order[left++];
+					else
+						merged[k] = order[right++];
+				}
+				runs[newCount++] = start;
+			}
+			runs[newCount] = m_size;
+			runCount = newCount;
+			int[] swap = order;
+			order = merged;
+			merged = swap;
+		}
+
+		m_millibars = permute(m_millibars, order);
+		m_metres = permute(m_metres, order);
+		m_temperature = permute(m_temperature, order);
+		m_dewpoint = permute(m_dewpoint, order);
+		m_direction = permute(m_direction, order);
+		m_speed = permute(m_speed, order);
+		return true;
+	}
+
+	/**
+	 * Returns a copy of these levels, trimmed to size.
+	 */
+	public SoundingColumns copy()
+	{
+		SoundingColumns copy = new SoundingColumns(m_size);
+		System.arraycopy(m_millibars, 0, copy.m_millibars, 0, m_size);
+		System.arraycopy(m_metres, 0, copy.m_metres, 0, m_size);
+		System.arraycopy(m_temperature, 0, copy.m_temperature, 0, m_size);
+		System.arraycopy(m_dewpoint, 0, copy.m_dewpoint, 0, m_size);
+		System.arraycopy(m_direction, 0, copy.m_direction, 0, m_size);
+		System.arraycopy(m_speed, 0, copy.m_speed, 0, m_size);
+		copy.m_size = m_size;
+		return copy;
+	}
+
+	/**
+	 * Sets the number of levels, growing the columns if needed. Levels beyond the
+	 * previous size are left unset; this is for decoders that fill the arrays directly.
+	 * @param size the new number of levels
+	 */
+	void setSize(int size)
+	{
+		if (size > m_metres.length)
+		{
+			grow(size);
+		}
+		m_size = size;
+	}
+
+	/**
+	 * @name Backing arrays
+	 * Direct access for bulk decoders. Only the first size() entries are meaningful.
+	 */
+	//@{
+	double[] millibars()
+	{
+		return m_millibars;
+	}
+
+	double[] metres()
+	{
+		return m_metres;
+	}
+
+	double[] temperature()
+	{
+		return m_temperature;
+	}
+
+	double[] dewpoint()
+	{
+		return m_dewpoint;
+	}
+
+	double[] direction()
+	{
+		return m_direction;
+	}
+
+	double[] speed()
+	{
+		return m_speed;
+	}
+	//@}
+
+	/**
+	 * Builds a SoundingData object holding a copy of these levels.
+	 * @param date_time the time of the sounding
+	 * @return the SoundingData
+	 */
+	public SoundingData toSoundingData(GregorianCalendar date_time)
+	{
+		return new SoundingData(date_time, copy());
+	}
+
+	private void grow(int capacity)
+	{
+		m_millibars = copyOf(m_millibars, capacity);
+		m_metres = copyOf(m_metres, capacity);
+		m_temperature = copyOf(m_temperature, capacity);
+		m_dewpoint = copyOf(m_dewpoint, capacity);
+		m_direction = copyOf(m_direction, capacity);
+		m_speed = copyOf(m_speed, capacity);
+	}
+
+	/**
+	 * Returns a column reordered so that entry i is column[order[i]]. Capacity is kept.
+	 */
+	private static double[] permute(double[] column, int[] order)
+	{
+		double[] permuted = new double[column.length];
+		for (int i = 0; i < order.length; i++)
+		{
+			permuted[i] = column[order[i]];
+		}
+		return permuted;
+	}
+
+	private static double[] copyOf(double[] column, int capacity)
+	{
+		double[] grown = new double[capacity];
+		System.arraycopy(column, 0, grown, 0, Math.min(column.length, capacity));
+		return grown;
+	}
+}
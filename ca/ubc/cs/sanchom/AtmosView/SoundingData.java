@@ -1,41 +1,75 @@
 package ca.ubc.cs.sanchom.AtmosView;
-import java.util.ArrayList;
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.Comparator;
 import java.util.GregorianCalendar;
 import java.util.ListIterator;
+import java.util.RandomAccess;
 
 
 /**
- * A list of SoundingPoints.
- * Extends an ArrayList of SoundingPoints with time information.
+ * A sounding: the sample levels from one station at one time.
+ * The levels are held in primitive columns, one double array per variable, rather than
+ * as an object per level, so scans over a variable are sequential and a sounding costs
+ * six doubles per level. The List of SoundingPoints is a view over the columns: points
+ * are built on demand, and the only change it allows is appending a level.
+ * Sorting orders the levels by height, which the derived calculations rely on.
  * @author Sancho McCann
  *
  */
-public class SoundingData extends ArrayList<SoundingPoint>
+public class SoundingData extends AbstractList<SoundingPoint> implements RandomAccess, Cloneable, Serializable
 {
-	private static final long serialVersionUID = 1L;
-	
-	
+	private static final long serialVersionUID = 2L;
+
+
 	private GregorianCalendar m_date_time; ///< The time of this SoundingData
-	
+
 	private String m_stationName; ///< The station name from which this SoundingData's data came
 
+	private String m_stationId; ///< The identifier of the station, or null if not known
+
+	private SoundingColumns m_levels; ///< The sample levels
+
+	private boolean m_sorted = true; ///< Whether the levels are in order of height
+
 	/**
 	 * Constructor
 	 * @param date_time the time of the sounding
 	 */
 	public SoundingData(GregorianCalendar date_time) {
+		this(date_time, new SoundingColumns());
+	}
+
+	/**
+	 * Constructor. Takes ownership of the columns.
+	 * @param date_time the time of the sounding
+	 * @param levels the sample levels
+	 */
+	SoundingData(GregorianCalendar date_time, SoundingColumns levels) {
 		m_date_time = (GregorianCalendar)date_time.clone();
 		m_stationName = "Unknown location";
+		m_levels = levels;
+		for (int i = 1; i < levels.size() && m_sorted; i++)
+		{
+			m_sorted = levels.getMetres(i - 1) <= levels.getMetres(i);
+		}
 	}
 
-	
+
 	/**
 	 * returns the time of the sounding
 	 */
 	public GregorianCalendar getTime() {
 		return (GregorianCalendar)m_date_time.clone();
 	}
-	
+
+	/**
+	 * returns the time of the sounding in milliseconds since the epoch, without copying the calendar
+	 */
+	public long getTimeInMillis() {
+		return m_date_time.getTimeInMillis();
+	}
+
 	/**
 	 * Sets the station name for this sounding
 	 * @param stationName the name of the station from which this SoundingData's data came
@@ -44,7 +78,7 @@ public class SoundingData extends ArrayList<SoundingPoint>
 	{
 		m_stationName = stationName;
 	}
-	
+
 	/**
 	 * Returns the station name
 	 */
@@ -52,8 +86,214 @@ public class SoundingData extends ArrayList<SoundingPoint>
 	{
 		return m_stationName;
 	}
-	
-	
+
+	/**
+	 * Sets the station identifier for this sounding
+	 * @param stationId the identifier of the station (eg. 71109)
+	 */
+	public void setStationId(String stationId)
+	{
+		m_stationId = stationId;
+	}
+
+	/**
+	 * Returns the station identifier, or null if it is not known
+	 */
+	public String getStationId()
+	{
+		return m_stationId;
+	}
+
+	/**
+	 * Appends a level.
+	 * @param millibars the pressure level in millibars
+	 * @param metres the height in metres
+	 * @param temperature the temperature in degrees celcius
+	 * @param dewpoint the dewpoint in degrees celcius
+	 * @param direction the wind direction in degrees clockwise from North
+	 * @param speed the wind speed in knots
+	 */
+	public void add(double millibars, double metres, double temperature, double dewpoint, double direction, double speed)
+	{
+		int size = m_levels.size();
+		if (size > 0 && !(m_levels.getMetres(size - 1) <= metres))
+		{
+			m_sorted = false;
+		}
+		m_levels.add(millibars, metres, temperature, dewpoint, direction, speed);
+		modCount++;
+	}
+
+	/**
+	 * Appends a level.
+	 * @param point the level
+	 * @return true
+	 */
+	public boolean add(SoundingPoint point)
+	{
+		add(point.getMillibars(), point.getMetres(), point.getTemperature(), point.getDewpoint(), point.getDirection(), point.getSpeed());
+		return true;
+	}
+
+	/**
+	 * Appends a level. Only appending is supported; index must be size().
+	 */
+	public void add(int index, SoundingPoint point)
+	{
+		if (index != m_levels.size())
+			throw new UnsupportedOperationException("Levels can only be appended");
+		add(point);
+	}
+
+	/**
+	 * Returns a new SoundingPoint holding a level. Changing it doesn't change this sounding.
+	 */
+	public SoundingPoint get(int index)
+	{
+		checkIndex(index);
+		return new SoundingPoint(m_levels.getMillibars(index), m_levels.getMetres(index), m_levels.getTemperature(index),
+				m_levels.getDewpoint(index), m_levels.getDirection(index), m_levels.getSpeed(index));
+	}
+
+	public int size()
+	{
+		return m_levels.size();
+	}
+
+	/**
+	 * Makes room for a number of levels without growing the columns again.
+	 * @param capacity the number of levels
+	 */
+	public void ensureCapacity(int capacity)
+	{
+		m_levels.ensureCapacity(capacity);
+	}
+
+	/**
+	 * Sorts the levels by height, keeping levels at the same height in their order.
+	 * Only the natural order of SoundingPoints, by height, is supported.
+	 * @param c null, for the natural order
+	 */
+	public void sort(Comparator<? super SoundingPoint> c)
+	{
+		if (c != null)
+			throw new UnsupportedOperationException("Levels can only be sorted by height");
+		if (!m_sorted)
+		{
+			m_levels.sortByMetres();
+			m_sorted = true;
+		}
+		modCount++;
+	}
+
+	/**
+	 * Returns true if the levels are in order of height
+	 */
+	public boolean isSorted()
+	{
+		return m_sorted;
+	}
+
+	/**
+	 * @name Columns
+	 * Direct access to a variable of a level, without building a SoundingPoint.
+	 */
+	//@{
+	public double getMillibars(int index)
+	{
+		checkIndex(index);
+		return m_levels.getMillibars(index);
+	}
+
+	public double getMetres(int index)
+	{
+		checkIndex(index);
+		return m_levels.getMetres(index);
+	}
+
+	public double getTemperature(int index)
+	{
+		checkIndex(index);
+		return m_levels.getTemperature(index);
+	}
+
+	public double getDewpoint(int index)
+	{
+		checkIndex(index);
+		return m_levels.getDewpoint(index);
+	}
+
+	public double getDirection(int index)
+	{
+		checkIndex(index);
+		return m_levels.getDirection(index);
+	}
+
+	public double getSpeed(int index)
+	{
+		checkIndex(index);
+		return m_levels.getSpeed(index);
+	}
+	//@}
+
+	/**
+	 * Searches the sorted levels for a height.
+	 * @param metres the height in metres
+	 * @return the index of a level at that height, or (-(insertion point) - 1) if there is none,
+	 * as Arrays.binarySearch
+	 * @throws IllegalStateException if the levels aren't sorted
+	 */
+	public int searchMetres(double metres)
+	{
+		if (!m_sorted)
+			throw new IllegalStateException("Levels are not sorted by height");
+
+		double[] column = m_levels.metres();
+		int low = 0;
+		int high = m_levels.size() - 1;
+		while (low <= high)
+		{
+			int mid = (low + high) >>> 1;
+			if (column[mid] < metres)
+				low = mid + 1;
+			else if (column[mid] > metres)
+				high = mid - 1;
+			else
+				return mid;
+		}
+		return -(low + 1);
+	}
+
+	/**
+	 * Takes an immutable snapshot of this sounding, sorted by height.
+	 */
+	public SoundingSnapshot snapshot()
+	{
+		return SoundingSnapshot.of(this);
+	}
+
+	/**
+	 * Returns the levels. Only the first size() entries are meaningful, and they must not be changed.
+	 */
+	SoundingColumns levels()
+	{
+		return m_levels;
+	}
+
+	/**
+	 * Notes that the levels were changed in place, as SoundingValidator does.
+	 */
+	void levelsChanged()
+	{
+		m_sorted = true;
+		for (int i = 1; i < m_levels.size() && m_sorted; i++)
+		{
+			m_sorted = m_levels.getMetres(i - 1) <= m_levels.getMetres(i);
+		}
+		modCount++;
+	}
+
+
 	/**
 	 * Returns a human readable string of the time of the sounding.
 	 * The format is: "YYYY-M(M)-D(D) H(H) UTC"
@@ -66,7 +306,7 @@ public class SoundingData extends ArrayList<SoundingPoint>
 		m_date_time.get(GregorianCalendar.DATE) + " " +
 		m_date_time.get(GregorianCalendar.HOUR_OF_DAY) + " UTC";
 	}
-	
+
 	/**
 	 * A nice output of the sounding time and list of SoundingPoint data.
 	 */
@@ -74,7 +314,7 @@ public class SoundingData extends ArrayList<SoundingPoint>
 	{
 		String outString = new String("");
 
-		outString = 
+		outString =
 			"Sounding time: " + timeString() + "\n";
 
 		ListIterator i = this.listIterator();
@@ -85,15 +325,29 @@ public class SoundingData extends ArrayList<SoundingPoint>
 
 		return outString;
 	}
-	
+
 	/**
 	 * Returns a deep copy of this SoundingData object.
 	 */
 	public Object clone()
 	{
-		SoundingData copy = (SoundingData)super.clone();
-		copy.m_date_time = (GregorianCalendar)m_date_time.clone();
-		
-		return copy;
+		try
+		{
+			SoundingData copy = (SoundingData)super.clone();
+			copy.m_date_time = (GregorianCalendar)m_date_time.clone();
+			copy.m_levels = m_levels.copy();
+			return copy;
+		}
+		catch ( CloneNotSupportedException e )
+		{
+			// Can't happen; this class is Cloneable
+			throw new InternalError(e.toString());
+		}
+	}
+
+	private void checkIndex(int index)
+	{
+		if (index < 0 || index >= m_levels.size())
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + m_levels.size());
 	}
 }
@@ -1,19 +1,50 @@
 package ca.ubc.cs.sanchom.AtmosView;
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
-import java.net.MalformedURLException;
-import java.net.URL;
-import java.net.URLConnection;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.GregorianCalendar;
-import java.util.StringTokenizer;
+import java.util.HashSet;
+import java.util.List;
 import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.zip.GZIPInputStream;
 
 /**
  * A singleton fetcher for data from http://weather.uwyo.edu/upperair/naconf.html.
+ * It is safe for use from many threads at once. Concurrent requests for the same
+ * station and time are coalesced into a single download whose result every caller receives.
+ *
+ * Requests go through one shared HttpClient, which keeps connections alive between
+ * requests and negotiates HTTP/2 where the server offers it. Responses are requested
+ * gzip compressed, and transient failures are retried with jittered exponential backoff.
  * @author Sancho McCann
  *
  */
@@ -21,36 +52,90 @@ public class SoundingFetcher
 {
 	private static SoundingFetcher m_instance = null; ///< The singleton instance
 	
-	private static TreeMap<String,String> stationMap; ///< Map of station ids to station names
+	public static final String DEFAULT_BASE_URL = "http://weather.uwyo.edu"; ///< The University of Wyoming server
+
+	public static final int DEFAULT_CONNECT_TIMEOUT = 10000; ///< Milliseconds allowed to connect to the server
+	public static final int DEFAULT_READ_TIMEOUT = 30000; ///< Milliseconds allowed for a whole response
+	public static final int DEFAULT_MAX_ATTEMPTS = 3; ///< Tries per request before a transient failure is reported
+	public static final long DEFAULT_RETRY_DELAY = 500; ///< Milliseconds bounding the jittered delay before the first retry; doubled for each further retry
+
+	private static final long STATION_LIST_TTL = 24 * 60 * 60 * 1000L; ///< How long a cached station list is used
+	private static final long HISTORICAL_AGE = 7 * 24 * 60 * 60 * 1000L; ///< Age after which a sounding response is cached permanently
+	private static final long RECENT_TTL = 60 * 60 * 1000L; ///< How long a cached response for a recent sounding is used
+
+	private static ResponseCache m_defaultCache = null; ///< The response cache given to the singleton instance
 
 	/**
-	 * Constructor.
-	 * Connects to the data source and populates the stationMap. 
-	 * @throws an IOException if connection to server fails
+	 * Receives the outcome of each station of a bulk fetch. Methods are called from the
+	 * fetching threads as each station completes, so implementations must be thread safe.
 	 */
-	private SoundingFetcher() throws IOException
+	public interface FetchListener
 	{
-		stationMap = new TreeMap<String,String>();
+		/**
+		 * Called for each station fetched, including those with no sounding available
+		 * @param id the station identifier
+		 * @param data the sounding, which is empty if there was none available
+		 */
+		void soundingFetched(String id, SoundingData data);
 
-		try
-		{
-			URL indexURL = new URL("http://weather.uwyo.edu/upperair/naconf.html");
-			URLConnection indexConnection = indexURL.openConnection();
-			HttpURLConnection httpConnection = (HttpURLConnection)indexConnection;
-			httpConnection.setRequestMethod("GET");
-			httpConnection.setDoOutput(true);
-			httpConnection.connect();
+		/**
+		 * Called for each station that could not be fetched
+		 * @param id the station identifier
+		 * @param cause the reason it could not be fetched
+		 */
+		void fetchFailed(String id, Exception cause);
+	}
+
+	private volatile TreeMap<String,String> stationMap; ///< Map of station names to station ids; replaced, never modified, once published
+	
+	private final String m_baseURL; ///< Scheme, host and port of the server, without a trailing slash
 
-			int response = httpConnection.getResponseCode();
+	private volatile SoundingStore m_store = null; ///< Local store consulted before the network, or null
+	private volatile MissingSoundingCache m_missing = null; ///< Soundings the server is known to lack, or null
 
-			if (response != 200)
-			{
-				throw new IOException("Bad http response from server: " + response);
-			}
-			
-			httpConnection.getInputStream();
-			BufferedReader in = new BufferedReader(new InputStreamReader(httpConnection.getInputStream()));
+	private final ConcurrentHashMap<String, CompletableFuture<SoundingData>> m_inFlight = new ConcurrentHashMap<String, CompletableFuture<SoundingData>>(); ///< Downloads in progress, keyed by station and rounded time
 
+	private final ResponseCache m_cache; ///< Cache of server responses, or null
+
+	private volatile StationCatalog m_catalog = null; ///< Local copy of the station list, or null
+
+	private volatile int m_connectTimeout = DEFAULT_CONNECT_TIMEOUT;
+	private volatile int m_readTimeout = DEFAULT_READ_TIMEOUT;
+	private volatile HttpClient m_client; ///< Shared by all requests so that connections are kept alive and reused
+
+	private volatile int m_maxAttempts = DEFAULT_MAX_ATTEMPTS;
+	private volatile long m_retryDelay = DEFAULT_RETRY_DELAY;
+
+	/**
+	 * Constructor.
+	 * Does not connect to the server; the station list starts out empty, or as loaded
+	 * from a StationCatalog, until refreshStationList is called.
+	 * @param baseURL the scheme, host and port of the server
+	 * @param cache cache of server responses, or null
+	 */
+	private SoundingFetcher(String baseURL, ResponseCache cache)
+	{
+		m_baseURL = baseURL;
+		m_cache = cache;
+		m_client = buildClient();
+		stationMap = new TreeMap<String,String>();
+	}
+
+	/**
+	 * Connects to the data source and replaces the station list with the one it serves.
+	 * If a catalog is set, the new list is saved to it.
+	 * @return the new map of station names to station ids
+	 * @throws IOException if connection to server fails
+	 */
+	public TreeMap<String,String> refreshStationList() throws IOException
+	{
+		TreeMap<String,String> stations = new TreeMap<String,String>();
+
+		// The body is already in memory, so there is no connection to release; the reader
+		// is only closed on every path for tidiness
+		try (BufferedReader in = new BufferedReader(new InputStreamReader(
+				openStream(m_baseURL + "/upperair/naconf.html", System.currentTimeMillis() + STATION_LIST_TTL))))
+		{
 			String inputLine = null;
 
 			while ( (inputLine = in.readLine()) != null )
@@ -65,50 +150,420 @@ public class SoundingFetcher
 						String stationID = stationString.substring(0, stationString.indexOf(" "));
 						String stationName = stationString.substring(stationString.indexOf(" ") + 1);
 
-						stationMap.put( stationName, stationID );
+						stations.put( stationName, stationID );
 					}
 				}
 			}
-
-			in.close();
-		}
-		catch ( MalformedURLException e )
-		{
-			// Should never happen... url is hand coded
-			System.err.println(e);
 		}
 		catch ( IOException e )
 		{
 			System.err.println(e);
 			throw e;
 		}
+
+		if (stations.isEmpty())
+		{
+			// Most likely a changed or broken page; keep what we have
+			throw new IOException("No stations found at " + m_baseURL);
+		}
+
+		stationMap = stations;
+		StationCatalog catalog = m_catalog;
+		if (catalog != null)
+		{
+			try
+			{
+				catalog.save(stations, System.currentTimeMillis());
+			}
+			catch ( IOException e )
+			{
+				System.err.println(e);
+			}
+		}
+		return getStationList();
+	}
+
+	/**
+	 * Sets a local catalog of stations. The station list is replaced with the catalog's
+	 * right away if it has any, and later refreshes are saved to it.
+	 * @param catalog the catalog, or null
+	 */
+	public void setStationCatalog(StationCatalog catalog)
+	{
+		m_catalog = catalog;
+		if (catalog != null)
+		{
+			TreeMap<String,String> stations = catalog.getStations();
+			if (!stations.isEmpty())
+			{
+				stationMap = stations;
+			}
+		}
 	}
 
 	/**
 	 * Gets a reference to the singleton instance.
 	 * @return the singleton instance
-	 * @throws an IOException if the constructor fails due to connection problems
 	 */
-	public static SoundingFetcher getInstance() throws IOException
+	public static synchronized SoundingFetcher getInstance()
 	{
 		if (m_instance == null)
 		{
-			m_instance = new SoundingFetcher();
+			m_instance = new SoundingFetcher(DEFAULT_BASE_URL, m_defaultCache);
 		}
 		return m_instance;
 	}
 
+	/**
+	 * Creates a fetcher for another server with the same layout as the Wyoming one,
+	 * such as a mirror or a local stub replaying recorded pages. It is independent of
+	 * the singleton instance.
+	 * @param baseURL the scheme, host and port of the server, eg. "http://localhost:8080"
+	 * @return the new fetcher
+	 */
+	public static SoundingFetcher create(String baseURL)
+	{
+		return new SoundingFetcher(baseURL, null);
+	}
+
+	/**
+	 * Creates a fetcher for another server, as create(String), with a response cache.
+	 * @param baseURL the scheme, host and port of the server
+	 * @param cache cache of server responses, or null
+	 * @return the new fetcher
+	 */
+	public static SoundingFetcher create(String baseURL, ResponseCache cache)
+	{
+		return new SoundingFetcher(baseURL, cache);
+	}
+
+	/**
+	 * Sets the response cache used by the singleton instance. Only has an effect if
+	 * called before the first getInstance, since the instance keeps the cache it was
+	 * created with.
+	 * @param cache cache of server responses, or null
+	 */
+	public static synchronized void setDefaultResponseCache(ResponseCache cache)
+	{
+		m_defaultCache = cache;
+	}
+
+	
+	/**
+	 * Sets a local store to read soundings from before going to the network.
+	 * Soundings fetched from the network are appended to it.
+	 * @param store the store, or null to always use the network
+	 */
+	public void setStore(SoundingStore store)
+	{
+		m_store = store;
+	}
+
+	
+	/**
+	 * Sets a record of soundings the server had no data for. Known gaps are answered
+	 * without a request, and new ones are recorded as they are found.
+	 * @param missing the record, or null to always ask the server
+	 */
+	public void setMissingSoundingCache(MissingSoundingCache missing)
+	{
+		m_missing = missing;
+	}
+
+	
+	/**
+	 * Sets the timeouts for each request to the server. A request that exceeds
+	 * either fails with an HttpTimeoutException once its retries are used up.
+	 * Connections already open are dropped.
+	 * @param connectTimeout milliseconds allowed to connect, or 0 to wait indefinitely
+	 * @param readTimeout milliseconds allowed for the whole response, or 0 to wait indefinitely
+	 */
+	public void setTimeouts(int connectTimeout, int readTimeout)
+	{
+		if (connectTimeout < 0 || readTimeout < 0)
+			throw new IllegalArgumentException("Timeouts can't be negative");
+		m_connectTimeout = connectTimeout;
+		m_readTimeout = readTimeout;
+		m_client = buildClient();
+	}
+
+	
+	/**
+	 * Sets how transient failures are retried.
+	 * @param maxAttempts tries per request, including the first; 1 disables retries
+	 * @param retryDelay milliseconds bounding the random delay before the first retry,
+	 * doubled for each further retry
+	 */
+	public void setRetries(int maxAttempts, long retryDelay)
+	{
+		if (maxAttempts < 1 || retryDelay < 0)
+			throw new IllegalArgumentException("maxAttempts must be positive and retryDelay can't be negative");
+		m_maxAttempts = maxAttempts;
+		m_retryDelay = retryDelay;
+	}
+
+
+	private HttpClient buildClient()
+	{
+		HttpClient.Builder builder = HttpClient.newBuilder()
+				.version(HttpClient.Version.HTTP_2)
+				.followRedirects(HttpClient.Redirect.NORMAL);
+		if (m_connectTimeout > 0)
+		{
+			builder.connectTimeout(Duration.ofMillis(m_connectTimeout));
+		}
+		return builder.build();
+	}
+
 	
 	/**
-	 * Gets the map of station ids to station names
-	 * @return the stationMap
+	 * Gets the map of station names to station ids
+	 * @return a copy of the stationMap
 	 */
-	public TreeMap getStationList()
+	public TreeMap<String,String> getStationList()
 	{
-		return (TreeMap)(stationMap.clone());
+		return new TreeMap<String,String>(stationMap);
 	}
 
 	
+	/**
+	 * Gets a URL, answering from the response cache if possible, and waits for the body.
+	 * @param urlString the URL to get
+	 * @param expires when a response stored in the cache should expire, in milliseconds
+	 * since the epoch, or ResponseCache.NEVER_EXPIRES
+	 * @return the response body
+	 * @throws IOException if the request fails or the server doesn't answer 200
+	 */
+	private InputStream openStream(String urlString, long expires) throws IOException
+	{
+		return new ByteArrayInputStream(await(fetchAsync(urlString, expires)));
+	}
+
+
+	/**
+	 * Gets a URL, answering from the response cache if possible. Responses from the
+	 * server are stored in the cache.
+	 * @param urlString the URL to get
+	 * @param expires when a response stored in the cache should expire, in milliseconds
+	 * since the epoch, or ResponseCache.NEVER_EXPIRES
+	 * @return the response body, decompressed; fails with an IOException if the request
+	 * fails or the server doesn't answer 200
+	 */
+	private CompletableFuture<byte[]> fetchAsync(final String urlString, final long expires)
+	{
+		byte[] cached = getCached(urlString);
+		if (cached != null)
+		{
+			return CompletableFuture.completedFuture(cached);
+		}
+
+		return downloadAsync(urlString).thenApply(new Function<byte[], byte[]>() {
+			public byte[] apply(byte[] body)
+			{
+				storeResponse(urlString, body, expires);
+				return body;
+			}
+		});
+	}
+
+
+	/**
+	 * Looks a URL up in the response cache.
+	 * @param urlString the URL
+	 * @return the cached response body, or null if there is none or no cache
+	 */
+	private byte[] getCached(String urlString)
+	{
+		ResponseCache cache = m_cache;
+		return (cache == null ? null : cache.get(urlString));
+	}
+
+
+	/**
+	 * Stores a response in the response cache, if there is one.
+	 * @param urlString the URL
+	 * @param body the response body
+	 * @param expires when the entry should expire, in milliseconds since the epoch, or
+	 * ResponseCache.NEVER_EXPIRES
+	 */
+	private void storeResponse(String urlString, byte[] body, long expires)
+	{
+		ResponseCache cache = m_cache;
+		if (cache != null)
+		{
+			try
+			{
+				cache.put(urlString, body, expires);
+			}
+			catch ( IOException e )
+			{
+				// The response is still good without the cache
+				System.err.println(e);
+			}
+		}
+	}
+
+
+	/**
+	 * Gets a URL from the server, bypassing the response cache.
+	 * @param urlString the URL to get
+	 * @return the response body, decompressed; fails with an IOException if the request
+	 * fails or the server doesn't answer 200
+	 */
+	private CompletableFuture<byte[]> downloadAsync(String urlString)
+	{
+		HttpRequest request;
+		try
+		{
+			HttpRequest.Builder builder = HttpRequest.newBuilder(new URI(urlString))
+					.header("Accept-Encoding", "gzip")
+					.GET();
+			if (m_readTimeout > 0)
+			{
+				builder.timeout(Duration.ofMillis(m_readTimeout));
+			}
+			request = builder.build();
+		}
+		catch ( URISyntaxException e )
+		{
+			// Shouldn't happen... URL is hand crafted
+			return failedFuture(new IOException(e));
+		}
+
+		return send(request, 1);
+	}
+
+
+	/**
+	 * Sends a request, retrying transient failures (connection problems, timeouts, 5xx
+	 * and 429 responses) after a randomly jittered, exponentially growing delay.
+	 * @param request the request
+	 * @param attempt the number of this attempt, starting at 1
+	 * @return the decompressed body of the 200 response
+	 */
+	private CompletableFuture<byte[]> send(final HttpRequest request, final int attempt)
+	{
+		return m_client.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray())
+			.handle(new BiFunction<HttpResponse<byte[]>, Throwable, CompletableFuture<byte[]>>() {
+				public CompletableFuture<byte[]> apply(HttpResponse<byte[]> response, Throwable failure)
+				{
+					boolean retry;
+					if (failure == null)
+					{
+						int status = response.statusCode();
+						if (status == 200)
+						{
+							try
+							{
+								return CompletableFuture.completedFuture(decodeBody(response));
+							}
+							catch ( IOException e )
+							{
+								return failedFuture(e);
+							}
+						}
+						failure = new IOException("Bad HTTP response from server: " + status);
+						retry = (status >= 500 || status == 429);
+					}
+					else
+					{
+						failure = unwrap(failure);
+						retry = (failure instanceof IOException) && !(failure instanceof InterruptedIOException);
+					}
+
+					if (!retry || attempt >= m_maxAttempts)
+					{
+						return failedFuture(failure);
+					}
+
+					// Full jitter: anywhere up to the exponential bound, so that a burst of
+					// failed requests doesn't retry in lockstep
+					long bound = m_retryDelay << Math.min(attempt - 1, 16);
+					long delay = ThreadLocalRandom.current().nextLong(bound + 1);
+					Executor later = CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS);
+					return CompletableFuture.supplyAsync(new Supplier<CompletableFuture<byte[]>>() {
+						public CompletableFuture<byte[]> get()
+						{
+							return send(request, attempt + 1);
+						}
+					}, later).thenCompose(Function.<CompletableFuture<byte[]>>identity());
+				}
+			}).thenCompose(Function.<CompletableFuture<byte[]>>identity());
+	}
+
+
+	/**
+	 * Returns the body of a response, gunzipping it if the server compressed it.
+	 */
+	private static byte[] decodeBody(HttpResponse<byte[]> response) throws IOException
+	{
+		byte[] body = response.body();
+		String encoding = response.headers().firstValue("Content-Encoding").orElse("identity");
+		if (!encoding.equalsIgnoreCase("gzip"))
+		{
+			return body;
+		}
+
+		// A corrupt body must still release the inflater
+		try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(body)))
+		{
+			return in.readAllBytes();
+		}
+	}
+
+
+	private static <T> CompletableFuture<T> failedFuture(Throwable failure)
+	{
+		CompletableFuture<T> future = new CompletableFuture<T>();
+		future.completeExceptionally(failure);
+		return future;
+	}
+
+
+	/**
+	 * Strips the CompletionException and ExecutionException wrappers from a failure.
+	 */
+	private static Throwable unwrap(Throwable failure)
+	{
+		while ((failure instanceof CompletionException || failure instanceof ExecutionException) && failure.getCause() != null)
+		{
+			failure = failure.getCause();
+		}
+		return failure;
+	}
+
+
+	/**
+	 * Waits for an asynchronous result, rethrowing its failure as it was raised.
+	 * @param future the result
+	 * @return the value
+	 * @throws IOException if the operation failed, or the wait was interrupted
+	 */
+	private static <T> T await(CompletableFuture<T> future) throws IOException
+	{
+		try
+		{
+			return future.get();
+		}
+		catch ( InterruptedException e )
+		{
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted waiting for the server");
+		}
+		catch ( ExecutionException e )
+		{
+			Throwable cause = unwrap(e);
+			if (cause instanceof IOException)
+				throw (IOException)cause;
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException)cause;
+			if (cause instanceof Error)
+				throw (Error)cause;
+			throw new IOException(cause);
+		}
+	}
+
+
 	/**
 	 * A utility function for the building of the url query string
 	 * @param property the name of the query string field (eg. id)
@@ -133,14 +588,18 @@ public class SoundingFetcher
 
 	
 	/**
-	 * Rounds a GregorianCalendar time to the nearest 12 hours
+	 * Rounds a GregorianCalendar time to the nearest 12 hours, the synoptic times at
+	 * which soundings are taken.
 	 * @param date_time the GregorianCalendar time to be rounded
 	 * @return The rounded time
 	 */
-	private GregorianCalendar round12( GregorianCalendar date_time )
+	public static GregorianCalendar round12( GregorianCalendar date_time )
 	{
 		int hour = date_time.get(Calendar.HOUR_OF_DAY);
 		GregorianCalendar rounded = (GregorianCalendar)date_time.clone();
+		rounded.set(Calendar.MINUTE, 0);
+		rounded.set(Calendar.SECOND, 0);
+		rounded.set(Calendar.MILLISECOND, 0);
 		if ( hour < 6 )
 			rounded.set(Calendar.HOUR_OF_DAY, 0);
 		else if ( hour >= 6 && hour < 18 )
@@ -153,6 +612,23 @@ public class SoundingFetcher
 	}
 
 
+	/**
+	 * Steps a time already rounded to twelve hours through the synoptic times, stepping
+	 * the calendar's fields so that the hour stays 00 or 12 whatever the default zone does.
+	 * @param rounded the time to step from; it is not changed
+	 * @param steps the number of twelve hour steps, negative to step back
+	 * @return the new time
+	 */
+	static GregorianCalendar add12(GregorianCalendar rounded, int steps)
+	{
+		GregorianCalendar next = (GregorianCalendar)rounded.clone();
+		int halfDays = (next.get(Calendar.HOUR_OF_DAY) < 12 ? 0 : 1) + steps;
+		next.set(Calendar.HOUR_OF_DAY, 12 * Math.floorMod(halfDays, 2));
+		next.add(Calendar.DATE, Math.floorDiv(halfDays, 2));
+		return next;
+	}
+
+
 	/**
 	 * Gets a sounding. If no data is available for the requested time or station,
 	 * an empty SoundingData object is returned.
@@ -164,101 +640,480 @@ public class SoundingFetcher
 	 */
 	public SoundingData getSounding(String id, GregorianCalendar date_time) throws IOException
 	{
-		GregorianCalendar roundedTime = round12(date_time);
-
-		String urlString = "http://weather.uwyo.edu/cgi-bin/sounding?region=naconf&TYPE=TEXT%3ALIST";
-		urlString += urlProperty("YEAR", (new Integer(roundedTime.get(Calendar.YEAR))).toString() );
-		urlString += urlProperty("MONTH", (new Integer(roundedTime.get(Calendar.MONTH)+1)).toString() );
-		urlString += urlProperty("FROM", pad(roundedTime.get(Calendar.DAY_OF_MONTH)) + pad(roundedTime.get(Calendar.HOUR_OF_DAY)) );
-		urlString += urlProperty("TO", pad(roundedTime.get(Calendar.DAY_OF_MONTH)) + pad(roundedTime.get(Calendar.HOUR_OF_DAY)) );
-		urlString += urlProperty("STNM", id);
-		
-		SoundingData soundingData = new SoundingData(roundedTime);
+		return await(getSoundingAsync(id, date_time));
+	}
 
-		try
-		{
-			URL indexURL = new URL(urlString);
-			URLConnection indexConnection = indexURL.openConnection();
-			HttpURLConnection httpConnection = (HttpURLConnection)indexConnection;
-			httpConnection.setRequestMethod("GET");
-			httpConnection.setDoOutput(true);
-			httpConnection.connect();
 
-			int response = httpConnection.getResponseCode();
+	/**
+	 * Gets a sounding without blocking, as getSounding. A stored sounding completes
+	 * at once; otherwise the result completes when the download does. Concurrent
+	 * requests for the same sounding share one download, and each gets its own copy.
+	 * @param id The station identifier
+	 * @param date_time The date and time of the requested sounding in UTC.
+	 * It will be rounded to the nearest twelve hours before the actual fetch.
+	 * @return The sounding, which is empty if there was none available; fails with
+	 * an IOException if the server can't be reached
+	 */
+	public CompletableFuture<SoundingData> getSoundingAsync(final String id, GregorianCalendar date_time)
+	{
+		final GregorianCalendar roundedTime = round12(date_time);
+		final SoundingStore store = m_store;
 
-			if (response != 200)
+		if (store != null)
+		{
+			try
 			{
-				throw new IOException("Bad HTTP response from server: " + response);
+				SoundingData stored = store.get(id, roundedTime.getTimeInMillis());
+				if (stored != null)
+				{
+					return CompletableFuture.completedFuture(stored);
+				}
+			}
+			catch ( IOException e )
+			{
+				// Fall back to the network
+				System.err.println(e);
 			}
-			
-			httpConnection.getInputStream();
-			BufferedReader in = new BufferedReader(new InputStreamReader(httpConnection.getInputStream()));
+		}
 
-			String inputLine = null;
-			boolean dataSection = false;
-			boolean done = false;
-			int barCount = 0;
+		final MissingSoundingCache missing = m_missing;
+		if (missing != null && missing.isMissing(id, roundedTime.getTimeInMillis()))
+		{
+			SoundingData empty = new SoundingData(roundedTime);
+			empty.setStationId(id);
+			return CompletableFuture.completedFuture(empty);
+		}
 
-			// wierd parsing needed for input from U of Wyoming site
-			while ( (inputLine = in.readLine()) != null )
+		// Single flight: concurrent requests for the same sounding share one download
+		final String key = id + "@" + roundedTime.getTimeInMillis();
+		final CompletableFuture<SoundingData> result = new CompletableFuture<SoundingData>();
+		CompletableFuture<SoundingData> inFlight = m_inFlight.putIfAbsent(key, result);
+		if (inFlight != null)
+		{
+			return copyOf(inFlight);
+		}
+
+		downloadSoundingsAsync(id, roundedTime, roundedTime).whenComplete(new BiConsumer<SoundingPage, Throwable>() {
+			public void accept(SoundingPage page, Throwable failure)
 			{
-				if (inputLine.indexOf("<H2>") != -1)
+				m_inFlight.remove(key, result);
+				if (failure != null)
 				{
-					String obs = new String("Observations");
-					String t = inputLine.substring(10, inputLine.indexOf("</H2>"));
-					String first = t.substring(0, t.indexOf(obs));
-					String last = t.substring(t.indexOf(obs) + obs.length() + 1);
-					soundingData.setStationName(first + last);
+					result.completeExceptionally(unwrap(failure));
+					return;
 				}
-				
-				if ( inputLine.toLowerCase().indexOf("------------------------") != -1 )
+
+				SoundingData soundingData;
+				if (page.soundings.size() > 0)
+				{
+					soundingData = page.soundings.get(0);
+				}
+				else
+				{
+					soundingData = new SoundingData(roundedTime);
+					soundingData.setStationId(id);
+				}
+
+				if (missing != null)
 				{
-					barCount++;
-					if (barCount == 2)
+					if (soundingData.size() > 0)
+						missing.found(id, roundedTime.getTimeInMillis());
+					else if (page.isConclusive())
+						missing.addMissing(id, roundedTime.getTimeInMillis());
+				}
+
+				if (store != null && soundingData.size() > 0)
+				{
+					try
+					{
+						store.append(soundingData);
+					}
+					catch ( IOException e )
+					{
+						System.err.println(e);
+					}
+				}
+				result.complete(soundingData);
+			}
+		});
+		return copyOf(result);
+	}
+
+
+	/**
+	 * Gives a caller of a shared download its own copy of the sounding. The shared one is
+	 * never handed out, not even to the caller that started the download, so that none of
+	 * them can disturb another's.
+	 * @param shared the shared result
+	 * @return a result completing with a copy of the shared sounding
+	 */
+	private static CompletableFuture<SoundingData> copyOf(CompletableFuture<SoundingData> shared)
+	{
+		return shared.thenApply(new Function<SoundingData, SoundingData>() {
+			public SoundingData apply(SoundingData data)
+			{
+				return (SoundingData)data.clone();
+			}
+		});
+	}
+
+
+	/**
+	 * Gets the sounding for one time from many stations at once, such as a whole synoptic
+	 * sweep. Each station is fetched as by getSounding, on a pool of at most maxConcurrent
+	 * threads so that the server never sees more than that many requests from us at a time.
+	 * Results are passed to the listener as each station completes, in no particular order.
+	 * Blocks until every station has been reported.
+	 * @param ids The station identifiers
+	 * @param date_time The date and time of the soundings in UTC.
+	 * It will be rounded to the nearest twelve hours before the actual fetch.
+	 * @param maxConcurrent The largest number of requests in flight at once
+	 * @param listener Receives each sounding or failure
+	 * @return The number of stations fetched without error
+	 * @throws InterruptedException if interrupted while waiting; stations not yet
+	 * started are abandoned and those in flight are interrupted
+	 */
+	public int getSoundings(Collection<String> ids, final GregorianCalendar date_time, int maxConcurrent, final FetchListener listener) throws InterruptedException
+	{
+		if (maxConcurrent < 1)
+			throw new IllegalArgumentException("maxConcurrent must be positive");
+
+		final AtomicInteger fetched = new AtomicInteger();
+		ExecutorService pool = Executors.newFixedThreadPool(Math.min(maxConcurrent, Math.max(ids.size(), 1)), new ThreadFactory() {
+			private final AtomicInteger m_count = new AtomicInteger();
+
+			public Thread newThread(Runnable r)
+			{
+				Thread thread = new Thread(r, "SoundingFetcher-" + m_count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+
+		try
+		{
+			for (final String id : ids)
+			{
+				pool.execute(new Runnable() {
+					public void run()
 					{
-						dataSection = true;
+						SoundingData data;
+						try
+						{
+							data = getSounding(id, date_time);
+						}
+						catch ( Exception e )
+						{
+							listener.fetchFailed(id, e);
+							return;
+						}
+						fetched.incrementAndGet();
+						listener.soundingFetched(id, data);
 					}
+				});
+			}
+			pool.shutdown();
+			while (!pool.awaitTermination(1, TimeUnit.MINUTES))
+			{
+				// Keep waiting; each request is bounded by the timeouts
+			}
+		}
+		finally
+		{
+			pool.shutdownNow();
+		}
+
+		return fetched.get();
+	}
+
+
+	/**
+	 * Gets all the soundings of one station within a time range. The server is asked
+	 * for the whole range at once, one request per calendar month spanned, instead of
+	 * once per sounding. Each request is narrowed to the times neither stored nor known
+	 * to be missing, and a month with none is skipped. Times with no data available are
+	 * simply absent from the result.
+	 * @param id The station identifier
+	 * @param from The start of the range in UTC, inclusive. It will be rounded to the nearest twelve hours.
+	 * @param to The end of the range in UTC, inclusive. It will be rounded to the nearest twelve hours.
+	 * @return The soundings found, in time order
+	 */
+	public List<SoundingData> getSoundings(String id, GregorianCalendar from, GregorianCalendar to) throws IOException
+	{
+		GregorianCalendar roundedFrom = round12(from);
+		GregorianCalendar roundedTo = round12(to);
+		long first = roundedFrom.getTimeInMillis();
+		long last = roundedTo.getTimeInMillis();
+		if (last < first)
+		{
+			return new ArrayList<SoundingData>();
+		}
+
+		// The calendars hold UTC fields in the default zone, so the synoptic times are
+		// stepped through the fields; a fixed twelve hours drifts across a DST change
+		List<Long> grid = new ArrayList<Long>();
+		for (GregorianCalendar t = roundedFrom; !t.after(roundedTo); t = add12(t, 1))
+		{
+			grid.add(t.getTimeInMillis());
+		}
+
+		// Times stored or known to be missing
+		List<SoundingData> soundings = new ArrayList<SoundingData>();
+		HashSet<Long> known = new HashSet<Long>();
+
+		SoundingStore store = m_store;
+		if (store != null)
+		{
+			try
+			{
+				for (SoundingData data : store.getRange(id, first, last))
+				{
+					soundings.add(data);
+					known.add(data.getTimeInMillis());
+				}
+			}
+			catch ( IOException e )
+			{
+				// Fall back to the network
+				System.err.println(e);
+				soundings.clear();
+				known.clear();
+			}
+		}
+
+		MissingSoundingCache missing = m_missing;
+		if (missing != null)
+		{
+			for (long t : grid)
+			{
+				if (!known.contains(t) && missing.isMissing(id, t))
+				{
+					known.add(t);
 				}
-				else if ( inputLine.toLowerCase().indexOf("</pre>") != -1 )
+			}
+		}
+
+		List<SoundingData> downloaded = new ArrayList<SoundingData>();
+		GregorianCalendar monthStart = (GregorianCalendar)roundedFrom.clone();
+		while (!monthStart.after(roundedTo))
+		{
+			GregorianCalendar monthEnd = (GregorianCalendar)monthStart.clone();
+			monthEnd.set(Calendar.DAY_OF_MONTH, monthEnd.getActualMaximum(Calendar.DAY_OF_MONTH));
+			monthEnd.set(Calendar.HOUR_OF_DAY, 12);
+			if (monthEnd.after(roundedTo))
+			{
+				monthEnd = roundedTo;
+			}
+
+			// Narrow the request to the first and last times still needed
+			long needFrom = -1;
+			long needTo = -1;
+			for (long t : grid)
+			{
+				if (t >= monthStart.getTimeInMillis() && t <= monthEnd.getTimeInMillis() && !known.contains(t))
 				{
-					dataSection = false;
-					done = true;
+					if (needFrom < 0)
+						needFrom = t;
+					needTo = t;
 				}
-				else if ( dataSection && !done )
+			}
+
+			if (needFrom >= 0)
+			{
+				GregorianCalendar requestFrom = (GregorianCalendar)monthStart.clone();
+				requestFrom.setTimeInMillis(needFrom);
+				GregorianCalendar requestTo = (GregorianCalendar)monthStart.clone();
+				requestTo.setTimeInMillis(needTo);
+
+				SoundingPage page = downloadSoundings(id, requestFrom, requestTo);
+				HashSet<Long> returned = new HashSet<Long>();
+				for (SoundingData data : page.soundings)
 				{
-					StringTokenizer st = new StringTokenizer( inputLine );
-
-					if ( st.countTokens() == 11 ) {
-						double pressureLevel = Double.parseDouble(st.nextToken());
-						double metres = Double.parseDouble(st.nextToken());
-						double temperature = Double.parseDouble(st.nextToken());
-						double dewpoint = Double.parseDouble(st.nextToken());
-						st.nextToken(); // ignore relative humidity
-						st.nextToken(); // ignore mixing ratio
-						double windDirection = Double.parseDouble(st.nextToken());
-						double windSpeed = Double.parseDouble(st.nextToken());
-						soundingData.add(new SoundingPoint(pressureLevel, metres, temperature, dewpoint, windDirection, windSpeed));
+					long t = data.getTimeInMillis();
+					if (t >= needFrom && t <= needTo && !known.contains(t) && returned.add(t))
+					{
+						downloaded.add(data);
 					}
+				}
 
+				// A page with no tables proves nothing unless it says the server has none
+				if (missing != null && page.isConclusive())
+				{
+					for (long t : grid)
+					{
+						if (t < needFrom || t > needTo || known.contains(t))
+							continue;
+						if (returned.contains(t))
+							missing.found(id, t);
+						else
+							missing.addMissing(id, t);
+					}
 				}
 			}
-			
-			Collections.sort(soundingData);
-			in.close();
 
+			monthStart = (GregorianCalendar)monthEnd.clone();
+			monthStart.set(Calendar.DAY_OF_MONTH, 1);
+			monthStart.set(Calendar.HOUR_OF_DAY, 0);
+			monthStart.add(Calendar.MONTH, 1);
 		}
-		catch ( MalformedURLException e )
+
+		if (store != null)
 		{
-			// Shouldn't happen... URL is hand crafted
-			System.err.println(e);
+			for (SoundingData data : downloaded)
+			{
+				try
+				{
+					store.append(data);
+				}
+				catch ( IOException e )
+				{
+					System.err.println(e);
+				}
+			}
 		}
-		catch ( IOException e )
+
+		soundings.addAll(downloaded);
+		Collections.sort(soundings, new Comparator<SoundingData>() {
+			public int compare(SoundingData a, SoundingData b)
+			{
+				return Long.compare(a.getTimeInMillis(), b.getTimeInMillis());
+			}
+		});
+		return soundings;
+	}
+
+
+	/**
+	 * Gets all the soundings of one station within a time range as a series, as
+	 * getSoundings(String, GregorianCalendar, GregorianCalendar).
+	 * @param id The station identifier
+	 * @param from The start of the range in UTC, inclusive. It will be rounded to the nearest twelve hours.
+	 * @param to The end of the range in UTC, inclusive. It will be rounded to the nearest twelve hours.
+	 * @return The soundings found
+	 */
+	public SoundingSeries getSeries(String id, GregorianCalendar from, GregorianCalendar to) throws IOException
+	{
+		SoundingSeries series = new SoundingSeries(id);
+		for (SoundingData data : getSoundings(id, from, to))
 		{
-			System.err.println(e);
-			throw e;
+			series.append(data);
+		}
+		return series;
+	}
+
+
+	/**
+	 * Downloads the soundings between two times in the same month with one request.
+	 * @param id The station identifier
+	 * @param from The first sounding time, already rounded to twelve hours
+	 * @param to The last sounding time, already rounded to twelve hours, in the same month as from
+	 * @return The soundings found
+	 */
+	private SoundingPage downloadSoundings(String id, GregorianCalendar from, GregorianCalendar to) throws IOException
+	{
+		return await(downloadSoundingsAsync(id, from, to));
+	}
+
+
+	/**
+	 * Downloads the soundings between two times in the same month with one request,
+	 * without blocking.
+	 * @param id The station identifier
+	 * @param from The first sounding time, already rounded to twelve hours
+	 * @param to The last sounding time, already rounded to twelve hours, in the same month as from
+	 * @return The soundings found
+	 */
+	private CompletableFuture<SoundingPage> downloadSoundingsAsync(final String id, final GregorianCalendar from, final GregorianCalendar to)
+	{
+
+		String urlString = m_baseURL + "/cgi-bin/sounding?region=naconf&TYPE=TEXT%3ALIST";
+		urlString += urlProperty("YEAR", (new Integer(from.get(Calendar.YEAR))).toString() );
+		urlString += urlProperty("MONTH", (new Integer(from.get(Calendar.MONTH)+1)).toString() );
+		urlString += urlProperty("FROM", pad(from.get(Calendar.DAY_OF_MONTH)) + pad(from.get(Calendar.HOUR_OF_DAY)) );
+		urlString += urlProperty("TO", pad(to.get(Calendar.DAY_OF_MONTH)) + pad(to.get(Calendar.HOUR_OF_DAY)) );
+		urlString += urlProperty("STNM", id);
+		final String url = urlString;
+
+		final byte[] cached = getCached(url);
+		CompletableFuture<byte[]> response = (cached != null ? CompletableFuture.completedFuture(cached) : downloadAsync(url));
+		return response.thenApply(new Function<byte[], SoundingPage>() {
+			public SoundingPage apply(byte[] body)
+			{
+				SoundingPage page;
+				try
+				{
+					page = parseSoundings(body, id, from, to);
+				}
+				catch ( IOException e )
+				{
+					throw new CompletionException(e);
+				}
+
+				if (cached == null)
+				{
+					// Soundings well in the past won't change, but a page without any may be
+					// an error or an outage rather than the server's last word
+					long now = System.currentTimeMillis();
+					boolean historical = (to.getTimeInMillis() < now - HISTORICAL_AGE);
+					storeResponse(url, body, (historical && page.soundings.size() > 0 ?
+							ResponseCache.NEVER_EXPIRES : now + RECENT_TTL));
+				}
+				return page;
+			}
+		});
+	}
+
+
+	/**
+	 * The soundings read from one TEXT:LIST page
+	 */
+	private static final class SoundingPage
+	{
+		final List<SoundingData> soundings = new ArrayList<SoundingData>(); ///< In time order
+		boolean noDataReported = false; ///< Whether the page said the server has no observations for the request
+
+		/**
+		 * Returns whether the page settles which of the requested soundings exist: either it
+		 * holds some, and so lists all there are, or it says that there are none. Anything
+		 * else, such as an error page, says nothing about the missing ones.
+		 */
+		boolean isConclusive()
+		{
+			return soundings.size() > 0 || noDataReported;
 		}
+	}
+
+
+	/**
+	 * Splits a TEXT:LIST page into its soundings.
+	 * @param page the page
+	 * @param id The station identifier
+	 * @param from The first sounding time requested
+	 * @param to The last sounding time requested
+	 * @return The soundings found
+	 */
+	private static SoundingPage parseSoundings(byte[] page, String id, GregorianCalendar from, GregorianCalendar to) throws IOException
+	{
+		SoundingPage result = new SoundingPage();
+		List<SoundingData> soundings = result.soundings;
+		WyomingSoundingParser parser = new WyomingSoundingParser(new ByteArrayInputStream(page));
+		boolean single = (from.getTimeInMillis() == to.getTimeInMillis());
+		while (parser.next())
+		{
+			// A single time request can only return the time asked for; keep the caller's calendar
+			GregorianCalendar time = (single ? from : parser.getTime());
+			if (time == null)
+			{
+				continue;
+			}
 
-		return soundingData;
+			SoundingData soundingData = parser.toSoundingData(time);
+			soundingData.setStationId(id);
+			SoundingValidator.clean(soundingData);
+			soundings.add(soundingData);
+		}
+		result.noDataReported = parser.isNoDataReported();
+		return result;
 	}
 
 }
@@ -0,0 +1,263 @@
+package ca.ubc.cs.sanchom.AtmosView;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Imports a directory tree of sounding csv files in parallel.
+ * Files must be named "<station id>_<YYYYMMDDHH>.csv" (eg. 71109_2006010100.csv); the
+ * station id and time of each sounding are taken from the name.
+ *
+ * Files are parsed on a work-stealing pool with one thread per core by default. The
+ * directory walk blocks once a bounded number of files are in flight, so a slow
+ * listener slows the walk down instead of letting parsed soundings pile up in memory.
+ * A file that fails to import is reported to the listener and the import carries on.
+ * @author Sancho McCann
+ *
+ */
+public class SoundingImporter
+{
+	private static final Pattern FILE_NAME = Pattern.compile("(\\w+?)[_-](\\d{4})(\\d{2})(\\d{2})(\\d{2})\\.csv"); ///< station id and YYYYMMDDHH
+
+	private static final int PENDING_PER_THREAD = 4; ///< Default number of files in flight per pool thread
+
+	/**
+	 * Receives the outcome of each file. Methods are called from the pool threads, so
+	 * implementations must be thread safe.
+	 */
+	public interface Listener
+	{
+		/**
+		 * Called for each successfully imported file
+		 * @param file the file
+		 * @param data the sounding read from the file
+		 */
+		void soundingImported(File file, SoundingData data);
+
+		/**
+		 * Called for each file that could not be imported
+		 * @param file the file
+		 * @param cause the reason it could not be imported
+		 */
+		void importFailed(File file, Exception cause);
+	}
+
+	/**
+	 * Totals for one import.
+	 */
+	public static class Summary
+	{
+		private final int m_imported;
+		private final int m_failed;
+		private final long m_rejectedLines;
+
+		Summary(int imported, int failed, long rejectedLines)
+		{
+			m_imported = imported;
+			m_failed = failed;
+			m_rejectedLines = rejectedLines;
+		}
+
+		/**
+		 * Returns the number of files imported
+		 */
+		public int getImported()
+		{
+			return m_imported;
+		}
+
+		/**
+		 * Returns the number of files that failed to import
+		 */
+		public int getFailed()
+		{
+			return m_failed;
+		}
+
+		/**
+		 * Returns the number of rows rejected within the imported files
+		 */
+		public long getRejectedLines()
+		{
+			return m_rejectedLines;
+		}
+
+		public String toString()
+		{
+			return m_imported + " imported, " + m_failed + " failed, " + m_rejectedLines + " rejected lines";
+		}
+	}
+
+	private final int m_parallelism; ///< The number of pool threads
+	private final int m_maxPending; ///< The number of files allowed in flight at once
+
+	/**
+	 * Constructor. Uses one thread per available core.
+	 */
+	public SoundingImporter()
+	{
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Constructor
+	 * @param parallelism the number of threads to parse with
+	 */
+	public SoundingImporter(int parallelism)
+	{
+		this(parallelism, parallelism * PENDING_PER_THREAD);
+	}
+
+	/**
+	 * Constructor
+	 * @param parallelism the number of threads to parse with
+	 * @param maxPending the number of files allowed to be queued or in flight at once
+	 */
+	public SoundingImporter(int parallelism, int maxPending)
+	{
+		if (parallelism < 1 || maxPending < 1)
+			throw new IllegalArgumentException("parallelism and maxPending must be positive");
+		m_parallelism = parallelism;
+		m_maxPending = maxPending;
+	}
+
+	/**
+	 * Imports every csv file below a directory. Blocks until all files have been handed
+	 * to the listener.
+	 * @param root the directory to import
+	 * @param listener receives each sounding or failure
+	 * @return the import totals
+	 * @throws IOException if the directory itself can't be walked
+	 */
+	public Summary importDirectory(File root, final Listener listener) throws IOException
+	{
+		final ForkJoinPool pool = new ForkJoinPool(m_parallelism);
+		final Semaphore pending = new Semaphore(m_maxPending);
+		final AtomicInteger imported = new AtomicInteger();
+		final AtomicInteger failed = new AtomicInteger();
+		final AtomicLong rejected = new AtomicLong();
+		final ThreadLocal<SoundingColumns> buffers = new ThreadLocal<SoundingColumns>() {
+			protected SoundingColumns initialValue()
+			{
+				return new SoundingColumns();
+			}
+		};
+
+		try
+		{
+			Files.walkFileTree(root.toPath(), new SimpleFileVisitor<Path>() {
+				public FileVisitResult visitFile(Path path, BasicFileAttributes attrs)
+				{
+					if (!attrs.isRegularFile() || !path.getFileName().toString().endsWith(".csv"))
+						return FileVisitResult.CONTINUE;
+
+					final File file = path.toFile();
+					pending.acquireUninterruptibly();
+					pool.execute(new Runnable() {
+						public void run()
+						{
+							try
+							{
+								SoundingData data = null;
+								try
+								{
+									data = importFile(file, buffers.get(), rejected);
+								}
+								catch (Exception e)
+								{
+									failed.incrementAndGet();
+									listener.importFailed(file, e);
+									return;
+								}
+								imported.incrementAndGet();
+								listener.soundingImported(file, data);
+							}
+							finally
+							{
+								pending.release();
+							}
+						}
+					});
+					return FileVisitResult.CONTINUE;
+				}
+
+				public FileVisitResult visitFileFailed(Path path, IOException e)
+				{
+					failed.incrementAndGet();
+					listener.importFailed(path.toFile(), e);
+					return FileVisitResult.CONTINUE;
+				}
+			});
+
+			// Wait for the files still in flight
+			pending.acquireUninterruptibly(m_maxPending);
+			pending.release(m_maxPending);
+		}
+		finally
+		{
+			pool.shutdown();
+		}
+
+		return new Summary(imported.get(), failed.get(), rejected.get());
+	}
+
+	/**
+	 * Reads a single file named by the import convention.
+	 * @param file the file to read
+	 * @param columns scratch buffers for the parse
+	 * @param rejected accumulates the number of rejected rows
+	 * @return the sounding
+	 * @throws IOException if the file can't be read, is misnamed, names no real time or holds no valid rows
+	 */
+	private static SoundingData importFile(File file, SoundingColumns columns, AtomicLong rejected) throws IOException
+	{
+		Matcher m = FILE_NAME.matcher(file.getName());
+		if (!m.matches())
+		{
+			throw new IOException("File name does not match <station id>_<YYYYMMDDHH>.csv");
+		}
+
+		// Checked by hand rather than by a non-lenient calendar, which would also reject
+		// hours skipped by the default zone's daylight time
+		int year = Integer.parseInt(m.group(2));
+		int month = Integer.parseInt(m.group(3)) - 1;
+		int day = Integer.parseInt(m.group(4));
+		int hour = Integer.parseInt(m.group(5));
+		GregorianCalendar time = new GregorianCalendar(year, month, 1);
+		if (month < 0 || month > 11 || day < 1 || day > time.getActualMaximum(Calendar.DAY_OF_MONTH) || hour > 23)
+		{
+			throw new IOException("File name has no such time: " + m.group(2) + m.group(3) + m.group(4) + m.group(5));
+		}
+		time.set(Calendar.DAY_OF_MONTH, day);
+		time.set(Calendar.HOUR_OF_DAY, hour);
+
+		MappedSoundingCSVParser.Result result = MappedSoundingCSVParser.parse(file, columns);
+		rejected.addAndGet(result.getRejectedLines());
+		if (result.getColumns().size() == 0)
+		{
+			throw new IOException("No valid rows (" + result.getRejectedLines() + " rejected)");
+		}
+
+		SoundingData data = result.toSoundingData(time);
+		SoundingValidator.clean(data);
+		if (data.size() == 0)
+		{
+			throw new IOException("No valid levels");
+		}
+		data.setStationId(m.group(1));
+		data.setStationName(m.group(1));
+		return data;
+	}
+}
@@ -0,0 +1,177 @@
+package ca.ubc.cs.sanchom.AtmosView;
+
+/**
+ * A cursor that interpolates a sounding at a rising sequence of heights.
+ * The derived calculations sample a sounding every few metres from the bottom up, so
+ * rather than searching the levels for each height, the cursor keeps its place between
+ * calls and only steps forward past the levels it has climbed over. A whole profile is
+ * then one walk up the levels and the sample grid together. The interpolated values are
+ * held in the cursor, so moving it allocates nothing.
+ *
+ * Moving the cursor down works but starts the walk again from the bottom.
+ * Heights above the top level take the top level's values.
+ * @author Sancho McCann
+ *
+ */
+public class SoundingInterpolator
+{
+	private final SoundingSnapshot m_levels; ///< The sounding, sorted by height
+	private int m_upper = 0; ///< The first level at or above the current height
+
+	/**
+	 * @name Current values
+	 * The sounding interpolated at the current height
+	 */
+	//@{
+	private double m_metres = Double.NaN;
+	private double m_millibars = Double.NaN;
+	private double m_temperature = Double.NaN;
+	private double m_dewpoint = Double.NaN;
+	private double m_direction = Double.NaN;
+	private double m_speed = Double.NaN;
+	//@}
+
+	/**
+	 * Constructor
+	 * @param levels the sounding; must have at least one level
+	 */
+	public SoundingInterpolator(SoundingSnapshot levels)
+	{
+		if (levels.size() == 0)
+			throw new IllegalArgumentException("Can't interpolate an empty sounding");
+		m_levels = levels;
+	}
+
+	/**
+	 * Moves the cursor to a height and interpolates the sounding there.
+	 * @param metres the height in metres, at or above the bottom level
+	 */
+	public void moveTo(double metres)
+	{
+		int size = m_levels.size();
+		if (metres < m_metres || Double.isNaN(m_metres))
+		{
+			m_upper = 0;
+		}
+		while (m_upper < size && m_levels.getMetres(m_upper) < metres)
+		{
+			m_upper++;
+		}
+		m_metres = metres;
+
+		if (m_upper == size || m_levels.getMetres(m_upper) == metres || m_upper == 0)
+		{
+			// On a level, or off either end of the sounding
+			int level = Math.min(m_upper, size - 1);
+			m_millibars = m_levels.getMillibars(level);
+			m_temperature = m_levels.getTemperature(level);
+			m_dewpoint = m_levels.getDewpoint(level);
+			m_direction = m_levels.getDirection(level);
+			m_speed = m_levels.getSpeed(level);
+			return;
+		}
+
+		int a = m_upper - 1;
+		int b = m_upper;
+		double diff = Math.abs(m_levels.getMetres(b) - m_levels.getMetres(a));
+		double aWeight = 1 - Math.abs(metres - m_levels.getMetres(a)) / diff;
+		double bWeight = 1 - aWeight;
+
+		m_temperature = aWeight * m_levels.getTemperature(a) + bWeight * m_levels.getTemperature(b);
+		m_dewpoint = aWeight * m_levels.getDewpoint(a) + bWeight * m_levels.getDewpoint(b);
+		m_millibars = aWeight * m_levels.getMillibars(a) + bWeight * m_levels.getMillibars(b);
+		m_direction = interpolateDirection(m_levels.getDirection(a), m_levels.getDirection(b), aWeight, bWeight);
+		m_speed = aWeight * m_levels.getSpeed(a) + bWeight * m_levels.getSpeed(b);
+	}
+
+	/**
+	 * Returns the current height in metres
+	 */
+	public double getMetres()
+	{
+		return m_metres;
+	}
+
+	public double getMillibars()
+	{
+		return m_millibars;
+	}
+
+	public double getTemperature()
+	{
+		return m_temperature;
+	}
+
+	public double getDewpoint()
+	{
+		return m_dewpoint;
+	}
+
+	public double getDirection()
+	{
+		return m_direction;
+	}
+
+	public double getSpeed()
+	{
+		return m_speed;
+	}
+
+	/**
+	 * Returns a new DerivedPoint holding the current values
+	 */
+	public DerivedPoint toDerivedPoint()
+	{
+		return new DerivedPoint(m_metres, m_millibars, m_temperature, m_dewpoint, m_direction, m_speed);
+	}
+
+	/**
+	 * Interpolates between two wind directions the short way round the circle.
+	 * This isn't necessarily valid to do.
+	 * @param aDirection the first direction in degrees clockwise from North
+	 * @param bDirection the second direction in degrees clockwise from North
+	 * @param aWeight the weight of the first direction
+	 * @param bWeight the weight of the second direction
+	 */
+	static double interpolateDirection(double aDirection, double bDirection, double aWeight, double bWeight)
+	{
+		double smallestDirection;
+		double largestDirection;
+		double smallWeight;
+		if (aDirection < bDirection)
+		{
+			smallestDirection = aDirection;
+			largestDirection = bDirection;
+			smallWeight = aWeight;
+		}
+		else
+		{
+			smallestDirection = bDirection;
+			largestDirection = aDirection;
+			smallWeight = bWeight;
+		}
+
+		double cwFromLargest = smallestDirection - largestDirection;
+		if (cwFromLargest < 0)
+		{
+			cwFromLargest += 360;
+		}
+
+		double cwFromSmallest = largestDirection - smallestDirection;
+
+		double direction;
+		if (cwFromLargest < cwFromSmallest)
+		{
+			direction = smallWeight * cwFromLargest + largestDirection;
+		}
+		else
+		{
+			direction = (1 - smallWeight) * cwFromSmallest + smallestDirection;
+		}
+		if (direction > 360)
+		{
+			direction -= 360;
+		}
+		return direction;
+	}
+}
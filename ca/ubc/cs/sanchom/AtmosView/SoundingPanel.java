@@ -8,7 +8,6 @@ import java.awt.RenderingHints;
 import java.awt.font.TextLayout;
 import java.awt.geom.Line2D;
 import java.awt.geom.Point2D;
-import java.util.ListIterator;
 import java.awt.Color;
 import java.awt.geom.AffineTransform;
 import java.util.Vector;
@@ -29,7 +28,7 @@ public class SoundingPanel extends JPanel {
 	/**
 	 * The data that is plotted on this panel
 	 */
-	private SoundingData m_data = null;
+	private SoundingSnapshot m_data = null;
 	private DerivedData m_derivedData = null;
 	
 	private final Color AXIS_COLOUR = Color.BLACK;
@@ -75,8 +74,19 @@ public class SoundingPanel extends JPanel {
 	 */
 	public void linkSoundingData(SoundingData data)
 	{
-		m_data = data;
-		m_derivedData = new DerivedData(data);
+		linkSounding(new DerivedData(data));
+	}
+	
+	/**
+	 * Provides data already derived from a sounding, such as from a SoundingCache.
+	 * The sounding drawn is the derived data's own snapshot, so the same derived data
+	 * can be shown by several widgets without copying.
+	 * @param derived the derived data
+	 */
+	public void linkSounding(DerivedData derived)
+	{
+		m_data = derived.getSnapshot();
+		m_derivedData = derived;
 		updateShapes();
 	}
 	
@@ -139,16 +149,13 @@ public class SoundingPanel extends JPanel {
 			tempPath = new GeneralPath();
 			dewPath = new GeneralPath();
 
-			ListIterator i = m_data.listIterator();
 			int n = 0;
-			while ( i.hasNext() ) {
-				SoundingPoint sp = (SoundingPoint)(i.next());
-
-				if ( sp.getMetres() < MAX_HEIGHT )
+			for (int i = 0; i < m_data.size(); i++) {
+				if ( m_data.getMetres(i) < MAX_HEIGHT )
 				{
-					double yVal = sp.getMetres();
-					double temp = sp.getTemperature();
-					double dew = sp.getDewpoint();
+					double yVal = m_data.getMetres(i);
+					double temp = m_data.getTemperature(i);
+					double dew = m_data.getDewpoint(i);
 
 					Point2D transformedTemp = new Point2D.Double();
 					Point2D transformedDewpoint = new Point2D.Double();
@@ -169,10 +176,10 @@ public class SoundingPanel extends JPanel {
 			}
 			
 			
-			ListIterator j = m_derivedData.getList().listIterator();
+			DerivedProfile.Cursor dp = m_derivedData.getProfile().cursor();
 			boolean first = true;
-			while ( j.hasNext() ) {
-				DerivedPoint dp = (DerivedPoint)(j.next());
+			for (int j = 0; j < m_derivedData.size(); j++) {
+				dp.moveTo(j);
 				double parcelTemp = dp.getLiftedParcelTemp();
 				
 				if ( dp.getSampleHeight() < MAX_HEIGHT &&  parcelTemp >= MIN_TEMP)
@@ -0,0 +1,215 @@
+package ca.ubc.cs.sanchom.AtmosView;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.GregorianCalendar;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fetches the soundings a user is likely to ask for next into a SoundingCache, so that
+ * stepping through a station's 00Z/12Z sequence or comparing neighbouring stations
+ * doesn't wait on the network.
+ *
+ * After each interactive request the prefetcher queues the same station at -12h, +12h,
+ * -24h and +24h, then the same time at the most recently used other stations. A new
+ * request replaces whatever was still queued from the previous one, since the user has
+ * moved on. Prefetches run one at a time on a single minimum priority thread, and never
+ * start while an interactive request is in flight. A prefetch already under way when an
+ * interactive request for the same sounding arrives is shared with it by the fetcher.
+ * @author Sancho McCann
+ *
+ */
+public class SoundingPrefetcher
+{
+	private static final int[] STEP_OFFSETS = { -1, 1, -2, 2 }; ///< Times around a request to prefetch in twelve hour steps, nearest first
+	private static final int RECENT_STATIONS = 4; ///< Number of other recently used stations to prefetch
+
+	/**
+	 * A station and time to prefetch
+	 */
+	private static final class Request
+	{
+		final String m_id;
+		final GregorianCalendar m_time;
+
+		Request(String id, GregorianCalendar time)
+		{
+			m_id = id;
+			m_time = time;
+		}
+	}
+
+	private final SoundingFetcher m_fetcher;
+	private final SoundingCache m_cache;
+	private final LinkedBlockingDeque<Request> m_queue = new LinkedBlockingDeque<Request>();
+	private final LinkedHashSet<String> m_recentStations = new LinkedHashSet<String>(); ///< Least recently used first
+	private final Object m_lock = new Object(); ///< Guards m_interactive and m_recentStations
+	private int m_interactive = 0; ///< Number of interactive requests in flight
+	private final AtomicLong m_prefetched = new AtomicLong();
+	private final Thread m_thread;
+	private volatile boolean m_closed = false;
+
+	/**
+	 * Constructor. Starts the prefetch thread.
+	 * @param fetcher the fetcher to prefetch through
+	 * @param cache the cache to fill
+	 */
+	public SoundingPrefetcher(SoundingFetcher fetcher, SoundingCache cache)
+	{
+		m_fetcher = fetcher;
+		m_cache = cache;
+		m_thread = new Thread(new Runnable() {
+			public void run()
+			{
+				prefetchLoop();
+			}
+		}, "SoundingPrefetcher");
+		m_thread.setDaemon(true);
+		m_thread.setPriority(Thread.MIN_PRIORITY);
+		m_thread.start();
+	}
+
+	/**
+	 * Marks the start of an interactive request. No prefetch starts until every
+	 * interactive request has been matched by interactiveFinished.
+	 */
+	public void interactiveStarted()
+	{
+		synchronized (m_lock)
+		{
+			m_interactive++;
+		}
+	}
+
+	/**
+	 * Marks the end of an interactive request started with interactiveStarted.
+	 */
+	public void interactiveFinished()
+	{
+		synchronized (m_lock)
+		{
+			m_interactive--;
+			m_lock.notifyAll();
+		}
+	}
+
+	/**
+	 * Records an interactive request and queues the soundings likely to follow it,
+	 * replacing anything still queued.
+	 * @param id the station identifier
+	 * @param date_time the time requested; it is rounded to the nearest twelve hours
+	 */
+	public void requested(String id, GregorianCalendar date_time)
+	{
+		GregorianCalendar rounded = SoundingFetcher.round12(date_time);
+		long now = System.currentTimeMillis();
+		List<Request> requests = new ArrayList<Request>();
+
+		// Stepped through the calendar's fields, as the fetcher does; adding hours drifts
+		// off the synoptic times across a DST change in the default zone
+		for (int i = 0; i < STEP_OFFSETS.length; i++)
+		{
+			GregorianCalendar time = SoundingFetcher.add12(rounded, STEP_OFFSETS[i]);
+			if (time.getTimeInMillis() <= now)
+			{
+				requests.add(new Request(id, time));
+			}
+		}
+
+		synchronized (m_lock)
+		{
+			// Most recently used first, skipping the station just requested
+			List<String> recent = new ArrayList<String>(m_recentStations);
+			for (int i = recent.size() - 1; i >= 0; i--)
+			{
+				if (!recent.get(i).equals(id))
+				{
+					requests.add(new Request(recent.get(i), rounded));
+				}
+			}
+
+			m_recentStations.remove(id);
+			m_recentStations.add(id);
+			Iterator<String> it = m_recentStations.iterator();
+			while (m_recentStations.size() > RECENT_STATIONS + 1)
+			{
+				it.next();
+				it.remove();
+			}
+		}
+
+		m_queue.clear();
+		m_queue.addAll(requests);
+	}
+
+	/**
+	 * Returns the number of soundings prefetched into the cache
+	 */
+	public long getPrefetched()
+	{
+		return m_prefetched.get();
+	}
+
+	/**
+	 * Returns the number of prefetches still queued
+	 */
+	public int getQueued()
+	{
+		return m_queue.size();
+	}
+
+	/**
+	 * Stops the prefetch thread. A prefetch in progress is abandoned.
+	 */
+	public void close()
+	{
+		m_closed = true;
+		m_thread.interrupt();
+	}
+
+	private void prefetchLoop()
+	{
+		try
+		{
+			while (!m_closed)
+			{
+				Request request = m_queue.take();
+
+				synchronized (m_lock)
+				{
+					while (m_interactive > 0)
+					{
+						m_lock.wait();
+					}
+				}
+
+				if (m_cache.contains(request.m_id, request.m_time))
+				{
+					continue;
+				}
+
+				try
+				{
+					SoundingData data = m_fetcher.getSounding(request.m_id, request.m_time);
+					if (data.size() > 0)
+					{
+						m_cache.put(request.m_id, request.m_time, data, new DerivedData(data));
+						m_prefetched.incrementAndGet();
+					}
+				}
+				catch ( IOException e )
+				{
+					// Only a guess; the user may never ask for it
+					System.err.println(e);
+				}
+			}
+		}
+		catch ( InterruptedException e )
+		{
+			// Closed
+		}
+	}
+}
@@ -0,0 +1,306 @@
+package ca.ubc.cs.sanchom.AtmosView;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.charset.Charset;
+import java.util.GregorianCalendar;
+
+/**
+ * A read-only view of one sounding stored in the binary columnar format.
+ * The columns are exposed directly from the underlying buffer (typically a mapped
+ * file), so opening a record copies nothing but the small header.
+ *
+ * Layout, big-endian:
+ * <pre>
+ *   int    magic ("ATMS")
+ *   short  format version
+ *   short  flags (reserved)
+ *   long   sounding time in milliseconds since the epoch
+ *   int    number of levels
+ *   short  station id length, then the UTF-8 station id
+ *   short  station name length, then the UTF-8 station name
+ *   padding to a multiple of 8 bytes from the start of the record
+ *   double[levels] x 6 columns: pressure, height, temperature, dewpoint, direction, speed
+ * </pre>
+ * @author Sancho McCann
+ *
+ */
+public class SoundingRecord
+{
+	static final int MAGIC = 0x41544D53; ///< "ATMS"
+	static final short VERSION = 1;
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final int COLUMNS = 6;
+
+	private final long m_time; ///< The sounding time in milliseconds since the epoch
+	private final String m_stationId;
+	private final String m_stationName;
+	private final int m_size; ///< The number of levels
+	private final int m_length; ///< The encoded length of this record in bytes
+	private final DoubleBuffer m_millibars;
+	private final DoubleBuffer m_metres;
+	private final DoubleBuffer m_temperature;
+	private final DoubleBuffer m_dewpoint;
+	private final DoubleBuffer m_direction;
+	private final DoubleBuffer m_speed;
+
+	/**
+	 * Opens a record starting at the buffer's position. The buffer's position is not changed.
+	 * @param buffer the buffer holding the record
+	 * @throws IllegalArgumentException if the bytes are not a valid record
+	 */
+	public SoundingRecord(ByteBuffer buffer)
+	{
+		ByteBuffer in = buffer.slice();
+		try
+		{
+			if (in.getInt() != MAGIC)
+				throw new IllegalArgumentException("Not a sounding record");
+			short version = in.getShort();
+			if (version != VERSION)
+				throw new IllegalArgumentException("Unsupported sounding record version " + version);
+			in.getShort(); // flags
+			m_time = in.getLong();
+			m_size = in.getInt();
+			m_stationId = getString(in);
+			m_stationName = getString(in);
+		}
+		catch (BufferUnderflowException e)
+		{
+			throw new IllegalArgumentException("Truncated sounding record");
+		}
+
+		// In long, so that a corrupt level count can't overflow into a plausible length
+		int columnsStart = align(in.position());
+		if (m_size < 0)
+			throw new IllegalArgumentException("Corrupt sounding record: " + m_size + " levels");
+		long length = columnsStart + (long)COLUMNS * m_size * 8;
+		if (length > in.limit())
+			throw new IllegalArgumentException("Truncated sounding record");
+		m_length = (int)length;
+
+		in.position(columnsStart);
+		DoubleBuffer columns = in.asDoubleBuffer().asReadOnlyBuffer();
+		m_millibars = column(columns, 0, m_size);
+		m_metres = column(columns, 1, m_size);
+		m_temperature = column(columns, 2, m_size);
+		m_dewpoint = column(columns, 3, m_size);
+		m_direction = column(columns, 4, m_size);
+		m_speed = column(columns, 5, m_size);
+	}
+
+	/**
+	 * Returns the number of bytes needed to encode a sounding
+	 * @param data the sounding
+	 */
+	public static int encodedSize(SoundingData data)
+	{
+		return align(headerSize(data)) + COLUMNS * data.size() * 8;
+	}
+
+	/**
+	 * Encodes a sounding at the buffer's position, advancing the position past the record.
+	 * @param data the sounding to encode
+	 * @param out the destination; must have encodedSize(data) bytes remaining
+	 * @throws IllegalArgumentException if the station id or name is over 32767 bytes in UTF-8
+	 */
+	public static void write(SoundingData data, ByteBuffer out)
+	{
+		int start = out.position();
+		out.putInt(MAGIC);
+		out.putShort(VERSION);
+		out.putShort((short)0);
+		out.putLong(data.getTimeInMillis());
+		out.putInt(data.size());
+		putString(out, data.getStationId());
+		putString(out, data.getStationName());
+		while ((out.position() - start) % 8 != 0)
+			out.put((byte)0);
+
+		int n = data.size();
+		for (int i = 0; i < n; i++)
+			out.putDouble(data.getMillibars(i));
+		for (int i = 0; i < n; i++)
+			out.putDouble(data.getMetres(i));
+		for (int i = 0; i < n; i++)
+			out.putDouble(data.getTemperature(i));
+		for (int i = 0; i < n; i++)
+			out.putDouble(data.getDewpoint(i));
+		for (int i = 0; i < n; i++)
+			out.putDouble(data.getDirection(i));
+		for (int i = 0; i < n; i++)
+			out.putDouble(data.getSpeed(i));
+	}
+
+	/**
+	 * Returns the number of bytes this record occupies in its buffer
+	 */
+	public int getEncodedLength()
+	{
+		return m_length;
+	}
+
+	/**
+	 * Returns the sounding time in milliseconds since the epoch
+	 */
+	public long getTimeInMillis()
+	{
+		return m_time;
+	}
+
+	/**
+	 * Returns the station identifier, or null if it was not known
+	 */
+	public String getStationId()
+	{
+		return m_stationId;
+	}
+
+	public String getStationName()
+	{
+		return m_stationName;
+	}
+
+	/**
+	 * Returns the number of levels
+	 */
+	public int size()
+	{
+		return m_size;
+	}
+
+	public double getMillibars(int index)
+	{
+		return m_millibars.get(index);
+	}
+
+	public double getMetres(int index)
+	{
+		return m_metres.get(index);
+	}
+
+	public double getTemperature(int index)
+	{
+		return m_temperature.get(index);
+	}
+
+	public double getDewpoint(int index)
+	{
+		return m_dewpoint.get(index);
+	}
+
+	public double getDirection(int index)
+	{
+		return m_direction.get(index);
+	}
+
+	public double getSpeed(int index)
+	{
+		return m_speed.get(index);
+	}
+
+	/**
+	 * @name Column views
+	 * Read-only views of whole columns, backed by the record's buffer.
+	 */
+	//@{
+	public DoubleBuffer getMillibarsColumn()
+	{
+		return m_millibars.duplicate();
+	}
+
+	public DoubleBuffer getMetresColumn()
+	{
+		return m_metres.duplicate();
+	}
+
+	public DoubleBuffer getTemperatureColumn()
+	{
+		return m_temperature.duplicate();
+	}
+
+	public DoubleBuffer getDewpointColumn()
+	{
+		return m_dewpoint.duplicate();
+	}
+
+	public DoubleBuffer getDirectionColumn()
+	{
+		return m_direction.duplicate();
+	}
+
+	public DoubleBuffer getSpeedColumn()
+	{
+		return m_speed.duplicate();
+	}
+	//@}
+
+	/**
+	 * Copies this record into a new SoundingData object.
+	 */
+	public SoundingData toSoundingData()
+	{
+		GregorianCalendar time = new GregorianCalendar();
+		time.setTimeInMillis(m_time);
+
+		SoundingData data = new SoundingData(time);
+		data.setStationId(m_stationId);
+		if (m_stationName != null)
+			data.setStationName(m_stationName);
+		data.ensureCapacity(m_size);
+		for (int i = 0; i < m_size; i++)
+		{
+			data.add(getMillibars(i), getMetres(i), getTemperature(i), getDewpoint(i), getDirection(i), getSpeed(i));
+		}
+		return data;
+	}
+
+	private static DoubleBuffer column(DoubleBuffer columns, int index, int size)
+	{
+		DoubleBuffer column = columns.duplicate();
+		column.position(index * size);
+		column.limit(index * size + size);
+		return column.slice();
+	}
+
+	private static int headerSize(SoundingData data)
+	{
+		return 4 + 2 + 2 + 8 + 4 + stringSize(data.getStationId()) + stringSize(data.getStationName());
+	}
+
+	private static int align(int offset)
+	{
+		return (offset + 7) & ~7;
+	}
+
+	static int stringSize(String s)
+	{
+		return 2 + (s == null ? 0 : s.getBytes(UTF8).length);
+	}
+
+	static void putString(ByteBuffer out, String s)
+	{
+		if (s == null)
+		{
+			out.putShort((short)-1);
+			return;
+		}
+		byte[] bytes = s.getBytes(UTF8);
+		// Longer would wrap to a negative length and read back as null, or as garbage
+		if (bytes.length > Short.MAX_VALUE)
+			throw new IllegalArgumentException("String of " + bytes.length + " bytes is too long to encode");
+		out.putShort((short)bytes.length);
+		out.put(bytes);
+	}
+
+	static String getString(ByteBuffer in)
+	{
+		short length = in.getShort();
+		if (length < 0)
+			return null;
+		byte[] bytes = new byte[length];
+		in.get(bytes);
+		return new String(bytes, UTF8);
+	}
+}
@@ -0,0 +1,312 @@
+package ca.ubc.cs.sanchom.AtmosView;
+import java.util.Arrays;
+
+/**
+ * Many soundings from one station, in time order. The levels of every sounding are held
+ * end to end in one shared set of columns, and a small index maps each launch time to
+ * its run of levels, sorted by height. Appending a launch only adds its levels to the
+ * end of the columns, even when it is out of time order; no sounding already held is
+ * moved or copied.
+ *
+ * Slices share the columns with the series they came from, so taking a week out of a
+ * season costs only a copy of the index. Slices are read-only.
+ * Like SoundingData, a series is not safe for appending while other threads read it.
+ * @author Sancho McCann
+ *
+ */
+public class SoundingSeries
+{
+	private static final int DEFAULT_SOUNDINGS = 16; ///< Initial index capacity; two weeks of launches at 00Z and 12Z
+	private static final int DEFAULT_LEVELS = 16 * 64; ///< Initial column capacity
+
+	private final String m_stationId; ///< The identifier of the station, or null if not known
+	private final SoundingColumns m_levels; ///< The levels of every sounding, shared with slices
+	private final boolean m_readOnly; ///< Whether this is a slice
+
+	/**
+	 * @name Index
+	 * One entry per sounding, in time order
+	 */
+	//@{
+	private long[] m_times; ///< Launch times in milliseconds since the epoch, ascending
+	private int[] m_offsets; ///< The first level of each sounding in m_levels
+	private int[] m_counts; ///< The number of levels of each sounding
+	private String[] m_names; ///< The station name given with each sounding
+	private int m_size = 0;
+	//@}
+
+	/**
+	 * Constructor
+	 * @param stationId the identifier of the station, or null if not known
+	 */
+	public SoundingSeries(String stationId)
+	{
+		m_stationId = stationId;
+		m_levels = new SoundingColumns(DEFAULT_LEVELS);
+		m_readOnly = false;
+		m_times = new long[DEFAULT_SOUNDINGS];
+		m_offsets = new int[DEFAULT_SOUNDINGS];
+		m_counts = new int[DEFAULT_SOUNDINGS];
+		m_names = new String[DEFAULT_SOUNDINGS];
+	}
+
+	/**
+	 * Slice constructor. Shares the parent's columns and copies part of its index.
+	 */
+	private SoundingSeries(SoundingSeries parent, int from, int to)
+	{
+		m_stationId = parent.m_stationId;
+		m_levels = parent.m_levels;
+		m_readOnly = true;
+		m_times = Arrays.copyOfRange(parent.m_times, from, to);
+		m_offsets = Arrays.copyOfRange(parent.m_offsets, from, to);
+		m_counts = Arrays.copyOfRange(parent.m_counts, from, to);
+		m_names = Arrays.copyOfRange(parent.m_names, from, to);
+		m_size = to - from;
+	}
+
+	/**
+	 * Appends a sounding. A sounding at a time already held replaces it.
+	 * @param snapshot the sounding
+	 * @throws IllegalArgumentException if the sounding is from another station
+	 * @throws UnsupportedOperationException if this is a slice
+	 */
+	public void append(SoundingSnapshot snapshot)
+	{
+		checkAppend(snapshot.getStationId());
+		int offset = m_levels.size();
+		int count = snapshot.size();
+		m_levels.ensureCapacity(offset + count);
+		for (int i = 0; i < count; i++)
+		{
+			m_levels.add(snapshot.getMillibars(i), snapshot.getMetres(i), snapshot.getTemperature(i),
+					snapshot.getDewpoint(i), snapshot.getDirection(i), snapshot.getSpeed(i));
+		}
+		index(snapshot.getTime(), offset, count, snapshot.getStationName());
+	}
+
+	/**
+	 * Appends a sounding. A sounding at a time already held replaces it.
+	 * @param data the sounding
+	 * @throws IllegalArgumentException if the sounding is from another station
+	 * @throws UnsupportedOperationException if this is a slice
+	 */
+	public void append(SoundingData data)
+	{
+		if (!data.isSorted())
+		{
+			append(data.snapshot());
+			return;
+		}
+
+		checkAppend(data.getStationId());
+		int offset = m_levels.size();
+		int count = data.size();
+		m_levels.ensureCapacity(offset + count);
+		for (int i = 0; i < count; i++)
+		{
+			m_levels.add(data.getMillibars(i), data.getMetres(i), data.getTemperature(i),
+					data.getDewpoint(i), data.getDirection(i), data.getSpeed(i));
+		}
+		index(data.getTimeInMillis(), offset, count, data.getStationName());
+	}
+
+	/**
+	 * Returns the identifier of the station, or null if it is not known
+	 */
+	public String getStationId()
+	{
+		return m_stationId;
+	}
+
+	/**
+	 * Returns the number of soundings
+	 */
+	public int size()
+	{
+		return m_size;
+	}
+
+	/**
+	 * Returns the time of a sounding in milliseconds since the epoch
+	 * @param index the sounding, in time order
+	 */
+	public long getTime(int index)
+	{
+		checkIndex(index);
+		return m_times[index];
+	}
+
+	/**
+	 * Returns the number of levels in a sounding
+	 * @param index the sounding, in time order
+	 */
+	public int getLevelCount(int index)
+	{
+		checkIndex(index);
+		return m_counts[index];
+	}
+
+	/**
+	 * @name Levels
+	 * Direct access to a variable of a level of a sounding, without copying.
+	 * Levels are in order of height.
+	 */
+	//@{
+	public double getMillibars(int index, int level)
+	{
+		return m_levels.getMillibars(levelIndex(index, level));
+	}
+
+	public double getMetres(int index, int level)
+	{
+		return m_levels.getMetres(levelIndex(index, level));
+	}
+
+	public double getTemperature(int index, int level)
+	{
+		return m_levels.getTemperature(levelIndex(index, level));
+	}
+
+	public double getDewpoint(int index, int level)
+	{
+		return m_levels.getDewpoint(levelIndex(index, level));
+	}
+
+	public double getDirection(int index, int level)
+	{
+		return m_levels.getDirection(levelIndex(index, level));
+	}
+
+	public double getSpeed(int index, int level)
+	{
+		return m_levels.getSpeed(levelIndex(index, level));
+	}
+	//@}
+
+	/**
+	 * Copies a sounding out of the series.
+	 * @param index the sounding, in time order
+	 * @return the sounding
+	 */
+	public SoundingSnapshot get(int index)
+	{
+		checkIndex(index);
+		SoundingColumns levels = new SoundingColumns(m_counts[index]);
+		for (int i = m_offsets[index]; i < m_offsets[index] + m_counts[index]; i++)
+		{
+			levels.add(m_levels.getMillibars(i), m_levels.getMetres(i), m_levels.getTemperature(i),
+					m_levels.getDewpoint(i), m_levels.getDirection(i), m_levels.getSpeed(i));
+		}
+		return SoundingSnapshot.of(m_times[index], m_stationId, m_names[index], levels);
+	}
+
+	/**
+	 * Finds the sounding at a time.
+	 * @param time the time in milliseconds since the epoch
+	 * @return its index, or (-(insertion point) - 1) if there is none, as Arrays.binarySearch
+	 */
+	public int indexOf(long time)
+	{
+		return Arrays.binarySearch(m_times, 0, m_size, time);
+	}
+
+	/**
+	 * Finds the sounding nearest a time. Of two equally near, the earlier is chosen.
+	 * @param time the time in milliseconds since the epoch
+	 * @return its index, or -1 if the series is empty
+	 */
+	public int nearest(long time)
+	{
+		if (m_size == 0)
+		{
+			return -1;
+		}
+		int index = indexOf(time);
+		if (index >= 0)
+		{
+			return index;
+		}
+		int after = -index - 1;
+		if (after == 0)
+			return 0;
+		if (after == m_size)
+			return m_size - 1;
+		return (time - m_times[after - 1] <= m_times[after] - time ? after - 1 : after);
+	}
+
+	/**
+	 * Returns the soundings within a time range as a read-only series sharing this one's levels.
+	 * @param from the start of the range in milliseconds since the epoch, inclusive
+	 * @param to the end of the range in milliseconds since the epoch, inclusive
+	 * @return the slice, which is empty if no soundings fall in the range
+	 */
+	public SoundingSeries slice(long from, long to)
+	{
+		// First sounding at or after from, and first after to
+		int start = indexOf(from);
+		start = (start < 0 ? -start - 1 : start);
+		int end = indexOf(to);
+		end = (end < 0 ? -end - 1 : end + 1);
+		return new SoundingSeries(this, start, Math.max(start, end));
+	}
+
+	private void checkAppend(String stationId)
+	{
+		if (m_readOnly)
+			throw new UnsupportedOperationException("Slices are read-only");
+		if (stationId != null && m_stationId != null && !stationId.equals(m_stationId))
+			throw new IllegalArgumentException("Sounding from station " + stationId + " appended to series for " + m_stationId);
+	}
+
+	/**
+	 * Adds a sounding's levels, already appended to the columns, to the index.
+	 */
+	private void index(long time, int offset, int count, String name)
+	{
+		int index = indexOf(time);
+		if (index >= 0)
+		{
+			// A relaunch or correction; the old levels are left unreferenced in the columns
+			m_offsets[index] = offset;
+			m_counts[index] = count;
+			m_names[index] = name;
+			return;
+		}
+
+		index = -index - 1;
+		if (m_size == m_times.length)
+		{
+			int capacity = m_size * 2;
+			m_times = Arrays.copyOf(m_times, capacity);
+			m_offsets = Arrays.copyOf(m_offsets, capacity);
+			m_counts = Arrays.copyOf(m_counts, capacity);
+			m_names = Arrays.copyOf(m_names, capacity);
+		}
+		// Launches nearly always arrive in order, so this rarely moves anything
+		int moved = m_size - index;
+		System.arraycopy(m_times, index, m_times, index + 1, moved);
+		System.arraycopy(m_offsets, index, m_offsets, index + 1, moved);
+		System.arraycopy(m_counts, index, m_counts, index + 1, moved);
+		System.arraycopy(m_names, index, m_names, index + 1, moved);
+		m_times[index] = time;
+		m_offsets[index] = offset;
+		m_counts[index] = count;
+		m_names[index] = name;
+		m_size++;
+	}
+
+	private int levelIndex(int index, int level)
+	{
+		checkIndex(index);
+		if (level < 0 || level >= m_counts[index])
+			throw new IndexOutOfBoundsException("Level: " + level + ", Levels: " + m_counts[index]);
+		return m_offsets[index] + level;
+	}
+
+	private void checkIndex(int index)
+	{
+		if (index < 0 || index >= m_size)
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + m_size);
+	}
+}
@@ -0,0 +1,301 @@
+package ca.ubc.cs.sanchom.AtmosView;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.GregorianCalendar;
+
+/**
+ * An immutable sounding, sorted by height. Since nothing can change it, one snapshot can
+ * be shared by any number of threads, panels and caches without defensive copies. The
+ * time is held as milliseconds since the epoch, so reading it allocates nothing.
+ *
+ * Modified snapshots are made with the with* methods, which copy only the columns they
+ * replace and share the rest with the original.
+ * @author Sancho McCann
+ *
+ */
+public final class SoundingSnapshot implements Serializable
+{
+	private static final long serialVersionUID = 1L;
+
+	private final long m_time; ///< The time of the sounding in milliseconds since the epoch
+	private final String m_stationId; ///< The identifier of the station, or null if not known
+	private final String m_stationName; ///< The name of the station
+
+	/**
+	 * @name Columns
+	 * Never changed once the snapshot is made; snapshots made by the with* methods share them.
+	 */
+	//@{
+	private final double[] m_millibars; ///< The pressure levels in millibars
+	private final double[] m_metres; ///< The sample heights in metres, ascending
+	private final double[] m_temperature; ///< The temperatures in degrees celcius
+	private final double[] m_dewpoint; ///< The dewpoints in degrees celcius
+	private final double[] m_direction; ///< The wind directions in degrees clockwise from North
+	private final double[] m_speed; ///< The wind speeds in knots
+	//@}
+
+	private SoundingSnapshot(long time, String stationId, String stationName, double[] millibars, double[] metres,
+			double[] temperature, double[] dewpoint, double[] direction, double[] speed)
+	{
+		m_time = time;
+		m_stationId = stationId;
+		m_stationName = stationName;
+		m_millibars = millibars;
+		m_metres = metres;
+		m_temperature = temperature;
+		m_dewpoint = dewpoint;
+		m_direction = direction;
+		m_speed = speed;
+	}
+
+	/**
+	 * Takes a snapshot of a sounding. The levels are copied and sorted by height.
+	 * @param data the sounding
+	 * @return the snapshot
+	 */
+	public static SoundingSnapshot of(SoundingData data)
+	{
+		SoundingColumns levels = data.levels().copy();
+		levels.sortByMetres();
+		return of(data.getTimeInMillis(), data.getStationId(), data.getStationName(), levels);
+	}
+
+	/**
+	 * Makes a snapshot from levels already sorted by height. Takes ownership of the columns.
+	 */
+	static SoundingSnapshot of(long time, String stationId, String stationName, SoundingColumns levels)
+	{
+		int n = levels.size();
+		return new SoundingSnapshot(time, stationId, stationName,
+				trim(levels.millibars(), n), trim(levels.metres(), n), trim(levels.temperature(), n),
+				trim(levels.dewpoint(), n), trim(levels.direction(), n), trim(levels.speed(), n));
+	}
+
+	/**
+	 * Returns the time of the sounding in milliseconds since the epoch
+	 */
+	public long getTime()
+	{
+		return m_time;
+	}
+
+	/**
+	 * Returns a new calendar holding the time of the sounding
+	 */
+	public GregorianCalendar getCalendar()
+	{
+		GregorianCalendar time = new GregorianCalendar();
+		time.setTimeInMillis(m_time);
+		return time;
+	}
+
+	/**
+	 * Returns the station identifier, or null if it is not known
+	 */
+	public String getStationId()
+	{
+		return m_stationId;
+	}
+
+	/**
+	 * Returns the station name
+	 */
+	public String getStationName()
+	{
+		return m_stationName;
+	}
+
+	/**
+	 * Returns the number of levels
+	 */
+	public int size()
+	{
+		return m_metres.length;
+	}
+
+	public double getMillibars(int index)
+	{
+		return m_millibars[index];
+	}
+
+	public double getMetres(int index)
+	{
+		return m_metres[index];
+	}
+
+	public double getTemperature(int index)
+	{
+		return m_temperature[index];
+	}
+
+	public double getDewpoint(int index)
+	{
+		return m_dewpoint[index];
+	}
+
+	public double getDirection(int index)
+	{
+		return m_direction[index];
+	}
+
+	public double getSpeed(int index)
+	{
+		return m_speed[index];
+	}
+
+	/**
+	 * Returns a new SoundingPoint holding a level
+	 */
+	public SoundingPoint get(int index)
+	{
+		return new SoundingPoint(m_millibars[index], m_metres[index], m_temperature[index],
+				m_dewpoint[index], m_direction[index], m_speed[index]);
+	}
+
+	/**
+	 * Searches the levels for a height.
+	 * @param metres the height in metres
+	 * @return the index of a level at that height, or (-(insertion point) - 1) if there is none,
+	 * as Arrays.binarySearch
+	 */
+	public int searchMetres(double metres)
+	{
+		return Arrays.binarySearch(m_metres, metres);
+	}
+
+	/**
+	 * Returns a snapshot at another time, sharing this one's levels.
+	 * @param time the time in milliseconds since the epoch
+	 */
+	public SoundingSnapshot withTime(long time)
+	{
+		return new SoundingSnapshot(time, m_stationId, m_stationName,
+				m_millibars, m_metres, m_temperature, m_dewpoint, m_direction, m_speed);
+	}
+
+	/**
+	 * Returns a snapshot from another station, sharing this one's levels.
+	 * @param stationId the station identifier, or null if not known
+	 * @param stationName the station name
+	 */
+	public SoundingSnapshot withStation(String stationId, String stationName)
+	{
+		return new SoundingSnapshot(m_time, stationId, stationName,
+				m_millibars, m_metres, m_temperature, m_dewpoint, m_direction, m_speed);
+	}
+
+	/**
+	 * Returns a snapshot with other temperatures, sharing the other columns.
+	 * @param temperature the temperature of each level in degrees celcius; copied
+	 * @throws IllegalArgumentException if there isn't one value per level
+	 */
+	public SoundingSnapshot withTemperature(double[] temperature)
+	{
+		return new SoundingSnapshot(m_time, m_stationId, m_stationName,
+				m_millibars, m_metres, column(temperature), m_dewpoint, m_direction, m_speed);
+	}
+
+	/**
+	 * Returns a snapshot with other dewpoints, sharing the other columns.
+	 * @param dewpoint the dewpoint of each level in degrees celcius; copied
+	 * @throws IllegalArgumentException if there isn't one value per level
+	 */
+	public SoundingSnapshot withDewpoint(double[] dewpoint)
+	{
+		return new SoundingSnapshot(m_time, m_stationId, m_stationName,
+				m_millibars, m_metres, m_temperature, column(dewpoint), m_direction, m_speed);
+	}
+
+	/**
+	 * Returns a snapshot with other winds, sharing the other columns.
+	 * @param direction the wind direction of each level in degrees clockwise from North; copied
+	 * @param speed the wind speed of each level in knots; copied
+	 * @throws IllegalArgumentException if there isn't one value per level
+	 */
+	public SoundingSnapshot withWind(double[] direction, double[] speed)
+	{
+		return new SoundingSnapshot(m_time, m_stationId, m_stationName,
+				m_millibars, m_metres, m_temperature, m_dewpoint, column(direction), column(speed));
+	}
+
+	/**
+	 * Returns a snapshot with one level's temperature and dewpoint changed, sharing the
+	 * other columns.
+	 * @param index the level
+	 * @param temperature the temperature in degrees celcius
+	 * @param dewpoint the dewpoint in degrees celcius
+	 */
+	public SoundingSnapshot withLevel(int index, double temperature, double dewpoint)
+	{
+		double[] temperatures = m_temperature.clone();
+		double[] dewpoints = m_dewpoint.clone();
+		temperatures[index] = temperature;
+		dewpoints[index] = dewpoint;
+		return new SoundingSnapshot(m_time, m_stationId, m_stationName,
+				m_millibars, m_metres, temperatures, dewpoints, m_direction, m_speed);
+	}
+
+	/**
+	 * Copies this snapshot into a new, modifiable SoundingData object.
+	 */
+	public SoundingData toSoundingData()
+	{
+		SoundingData data = new SoundingData(getCalendar());
+		data.setStationId(m_stationId);
+		data.setStationName(m_stationName);
+		data.ensureCapacity(m_metres.length);
+		for (int i = 0; i < m_metres.length; i++)
+		{
+			data.add(m_millibars[i], m_metres[i], m_temperature[i], m_dewpoint[i], m_direction[i], m_speed[i]);
+		}
+		return data;
+	}
+
+	/**
+	 * Tests for equal time, station and levels. Levels compare as SoundingPoints do.
+	 */
+	public boolean equals(Object obj)
+	{
+		if (this == obj)
+			return true;
+		if (!(obj instanceof SoundingSnapshot))
+			return false;
+		SoundingSnapshot that = (SoundingSnapshot)obj;
+		if (m_time != that.m_time || m_metres.length != that.m_metres.length ||
+				!equal(m_stationId, that.m_stationId) || !equal(m_stationName, that.m_stationName))
+			return false;
+		for (int i = 0; i < m_metres.length; i++)
+		{
+			if (!get(i).equals(that.get(i)))
+				return false;
+		}
+		return true;
+	}
+
+	public int hashCode()
+	{
+		return (int)(m_time ^ (m_time >>> 32)) * 31 + Arrays.hashCode(m_metres);
+	}
+
+	public String toString()
+	{
+		return m_stationName + " at " + m_time + ", " + m_metres.length + " levels";
+	}
+
+	private double[] column(double[] values)
+	{
+		if (values.length != m_metres.length)
+			throw new IllegalArgumentException("Expected " + m_metres.length + " values, got " + values.length);
+		return values.clone();
+	}
+
+	private static double[] trim(double[] column, int size)
+	{
+		return (column.length == size ? column : Arrays.copyOf(column, size));
+	}
+
+	private static boolean equal(String a, String b)
+	{
+		return (a == null ? b == null : a.equals(b));
+	}
+}
@@ -0,0 +1,839 @@
+package ca.ubc.cs.sanchom.AtmosView;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A local, append-only store of soundings.
+ *
+ * Soundings are appended as frames to segment files in the store directory. A sorted
+ * in-memory index from (station id, time) to frame location gives O(log n) point
+ * lookups and range scans over one station; it is rebuilt on open by scanning the frame
+ * headers. Appending a sounding that is already stored supersedes the old copy. Once
+ * enough small or mostly superseded sealed segments accumulate, a background thread
+ * compacts them into one, dropping superseded frames.
+ *
+ * The index is rebuilt on the background thread too, so opening a large store doesn't
+ * hold up its caller; operations wait for the rebuild to finish.
+ *
+ * Frame layout, big-endian:
+ * <pre>
+ *   int    frame magic
+ *   int    payload length
+ *   long   sequence number (later frames win when the index is rebuilt)
+ *   long   sounding time in milliseconds since the epoch
+ *   short  payload format
+ *   short  station id length, then the UTF-8 station id
+ *   padding to 8 bytes, the payload, padding to 8 bytes
+ * </pre>
+ * @author Sancho McCann
+ *
+ */
+public class SoundingStore
+{
+	private static final int FRAME_MAGIC = 0x534E4446; ///< "SNDF"
+	private static final short FORMAT_RECORD = 0; ///< Payload is a SoundingRecord
+	private static final short FORMAT_COMPRESSED = 1; ///< Payload is a SoundingCodec encoding
+
+	private static final String SEGMENT_PREFIX = "segment-";
+	private static final String SEGMENT_SUFFIX = ".seg";
+	private static final String TEMP_SUFFIX = ".tmp";
+
+	private static final long DEFAULT_SEGMENT_SIZE = 64L << 20; ///< Segments are sealed once they reach this size
+	private static final int COMPACTION_THRESHOLD = 4; ///< Number of compactable sealed segments that triggers a compaction
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/**
+	 * Index key: station id, then time.
+	 */
+	private static class Key implements Comparable<Key>
+	{
+		final String stationId;
+		final long time;
+
+		Key(String stationId, long time)
+		{
+			this.stationId = stationId;
+			this.time = time;
+		}
+
+		public int compareTo(Key that)
+		{
+			int c = stationId.compareTo(that.stationId);
+			if (c != 0)
+				return c;
+			return (time < that.time ? -1 : (time == that.time ? 0 : 1));
+		}
+
+		public boolean equals(Object obj)
+		{
+			return (obj instanceof Key) && compareTo((Key)obj) == 0;
+		}
+
+		public int hashCode()
+		{
+			return stationId.hashCode() * 31 + (int)(time ^ (time >>> 32));
+		}
+	}
+
+	/**
+	 * Where a frame's payload lives.
+	 */
+	private static class Location
+	{
+		final Segment segment;
+		final long sequence;
+		final int offset; ///< Offset of the payload within the segment
+		final int length; ///< Length of the payload
+		final short format;
+
+		Location(Segment segment, long sequence, int offset, int length, short format)
+		{
+			this.segment = segment;
+			this.sequence = sequence;
+			this.offset = offset;
+			this.length = length;
+			this.format = format;
+		}
+	}
+
+	/**
+	 * One segment file.
+	 */
+	private static class Segment
+	{
+		final int number;
+		final File file;
+		final FileChannel channel;
+		long size; ///< Bytes of complete frames in the file
+		boolean sealed;
+		long liveBytes; ///< Payload bytes of the frames the index still points at
+		MappedByteBuffer mapped; ///< Mapping of a sealed segment, created on first read
+
+		Segment(int number, File file) throws IOException
+		{
+			this.number = number;
+			this.file = file;
+			this.channel = new RandomAccessFile(file, "rw").getChannel();
+		}
+
+		ByteBuffer read(int offset, int length) throws IOException
+		{
+			if (sealed)
+			{
+				synchronized (this)
+				{
+					if (mapped == null)
+						mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+				}
+				ByteBuffer view = mapped.duplicate();
+				view.position(offset);
+				view.limit(offset + length);
+				return view.slice();
+			}
+
+			ByteBuffer buffer = ByteBuffer.allocate(length);
+			while (buffer.hasRemaining())
+			{
+				if (channel.read(buffer, offset + buffer.position()) < 0)
+					throw new IOException("Unexpected end of segment " + file);
+			}
+			buffer.flip();
+			return buffer;
+		}
+	}
+
+	private final File m_directory;
+	private final long m_segmentSize;
+	private final TreeMap<Key, Location> m_index = new TreeMap<Key, Location>();
+	private final TreeMap<Integer, Segment> m_segments = new TreeMap<Integer, Segment>();
+	private final ReentrantReadWriteLock m_lock = new ReentrantReadWriteLock();
+	private final Object m_compactionLock = new Object();
+	private final ExecutorService m_compactor;
+	private Segment m_active = null;
+	private long m_sequence = 0;
+	private boolean m_compactionPending = false;
+	private volatile boolean m_compressed = false;
+	private final CountDownLatch m_loaded = new CountDownLatch(1); ///< Released once the index is rebuilt
+	private volatile IOException m_loadFailure = null; ///< Why the index couldn't be rebuilt, or null
+
+	/**
+	 * Opens a store, creating the directory if necessary. The segments are read in the
+	 * background; a segment that can't be read fails the operations that follow.
+	 * @param directory the directory holding the segment files
+	 * @throws IOException if the directory can't be created
+	 */
+	public SoundingStore(File directory) throws IOException
+	{
+		this(directory, DEFAULT_SEGMENT_SIZE);
+	}
+
+	/**
+	 * Opens a store, creating the directory if necessary. The segments are read in the
+	 * background; a segment that can't be read fails the operations that follow.
+	 * @param directory the directory holding the segment files
+	 * @param segmentSize the size in bytes at which segments are sealed
+	 * @throws IOException if the directory can't be created
+	 */
+	public SoundingStore(File directory, long segmentSize) throws IOException
+	{
+		m_directory = directory;
+		m_segmentSize = segmentSize;
+		if (!directory.isDirectory() && !directory.mkdirs())
+		{
+			throw new IOException("Can't create sounding store " + directory);
+		}
+
+		m_compactor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r)
+			{
+				Thread t = new Thread(r, "SoundingStore compaction");
+				t.setDaemon(true);
+				t.setPriority(Thread.MIN_PRIORITY);
+				return t;
+			}
+		});
+
+		// The compaction thread runs tasks in order, so no compaction can start before this
+		m_compactor.execute(new Runnable() {
+			public void run()
+			{
+				try
+				{
+					load();
+				}
+				catch (IOException e)
+				{
+					System.err.println(e);
+					m_loadFailure = e;
+				}
+				finally
+				{
+					m_loaded.countDown();
+				}
+			}
+		});
+	}
+
+	/**
+	 * Waits until the index has been rebuilt from the segment files.
+	 * @throws IOException if a segment couldn't be read, or the wait was interrupted
+	 */
+	public void awaitLoaded() throws IOException
+	{
+		try
+		{
+			m_loaded.await();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted opening sounding store " + m_directory);
+		}
+		if (m_loadFailure != null)
+		{
+			throw new IOException("Can't open sounding store " + m_directory + ": " + m_loadFailure.getMessage());
+		}
+	}
+
+	/**
+	 * Waits for the index, for the operations that don't report IOExceptions.
+	 * @return true if the index is usable
+	 */
+	private boolean waitForLoad()
+	{
+		try
+		{
+			awaitLoaded();
+			return true;
+		}
+		catch (IOException e)
+		{
+			return false;
+		}
+	}
+
+	/**
+	 * Sets whether newly appended soundings are compressed with SoundingCodec.
+	 * Compressed frames are several times smaller, at the cost of decoding on every read.
+	 * Frames already in the store keep their format.
+	 * @param compressed true to compress new frames
+	 */
+	public void setCompressed(boolean compressed)
+	{
+		m_compressed = compressed;
+	}
+
+	/**
+	 * Appends a sounding. The sounding must have a station id.
+	 * @param data the sounding to store
+	 * @throws IOException if the segment can't be written
+	 */
+	public void append(SoundingData data) throws IOException
+	{
+		if (data.getStationId() == null)
+		{
+			throw new IllegalArgumentException("Sounding has no station id");
+		}
+		awaitLoaded();
+
+		if (m_compressed)
+		{
+			append(data.getStationId(), data.getTimeInMillis(), FORMAT_COMPRESSED, ByteBuffer.wrap(SoundingCodec.encode(data)));
+		}
+		else
+		{
+			ByteBuffer payload = ByteBuffer.allocate(SoundingRecord.encodedSize(data));
+			SoundingRecord.write(data, payload);
+			payload.flip();
+			append(data.getStationId(), data.getTimeInMillis(), FORMAT_RECORD, payload);
+		}
+	}
+
+	/**
+	 * Looks up one sounding.
+	 * @param stationId the station identifier
+	 * @param time the sounding time in milliseconds since the epoch
+	 * @return the stored sounding, or null if it is not in the store
+	 * @throws IOException if the segment can't be read
+	 */
+	public SoundingData get(String stationId, long time) throws IOException
+	{
+		awaitLoaded();
+		m_lock.readLock().lock();
+		try
+		{
+			Location location = m_index.get(new Key(stationId, time));
+			return (location == null ? null : decode(location));
+		}
+		finally
+		{
+			m_lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns true if a sounding is in the store
+	 * @param stationId the station identifier
+	 * @param time the sounding time in milliseconds since the epoch
+	 */
+	public boolean contains(String stationId, long time)
+	{
+		if (!waitForLoad())
+			return false;
+		m_lock.readLock().lock();
+		try
+		{
+			return m_index.containsKey(new Key(stationId, time));
+		}
+		finally
+		{
+			m_lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns the stored soundings for one station within a time range, in time order.
+	 * @param stationId the station identifier
+	 * @param from the start of the range in milliseconds since the epoch, inclusive
+	 * @param to the end of the range in milliseconds since the epoch, inclusive
+	 * @return the soundings in the range
+	 * @throws IOException if a segment can't be read
+	 */
+	public List<SoundingData> getRange(String stationId, long from, long to) throws IOException
+	{
+		awaitLoaded();
+		m_lock.readLock().lock();
+		try
+		{
+			NavigableMap<Key, Location> range = m_index.subMap(new Key(stationId, from), true, new Key(stationId, to), true);
+			List<SoundingData> result = new ArrayList<SoundingData>(range.size());
+			for (Location location : range.values())
+			{
+				result.add(decode(location));
+			}
+			return result;
+		}
+		finally
+		{
+			m_lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns the number of soundings in the store
+	 */
+	public int size()
+	{
+		if (!waitForLoad())
+			return 0;
+		m_lock.readLock().lock();
+		try
+		{
+			return m_index.size();
+		}
+		finally
+		{
+			m_lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns the number of segment files
+	 */
+	public int getSegmentCount()
+	{
+		if (!waitForLoad())
+			return 0;
+		m_lock.readLock().lock();
+		try
+		{
+			return m_segments.size();
+		}
+		finally
+		{
+			m_lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Merges the small or mostly superseded sealed segments into one, dropping
+	 * superseded frames.
+	 * This normally runs in the background; it is exposed for maintenance tools.
+	 * @throws IOException if a segment can't be read or written
+	 */
+	public void compact() throws IOException
+	{
+		awaitLoaded();
+		synchronized (m_compactionLock)
+		{
+			List<Segment> inputs = new ArrayList<Segment>();
+			int outputNumber;
+			m_lock.readLock().lock();
+			try
+			{
+				m_compactionPending = false;
+				for (Segment s : m_segments.values())
+				{
+					if (isCompactionCandidate(s))
+						inputs.add(s);
+				}
+				if (inputs.size() < 2)
+					return;
+				// The output takes the place of the newest input. Sequence numbers, not
+				// segment numbers, decide which frame wins on reload.
+				outputNumber = inputs.get(inputs.size() - 1).number;
+			}
+			finally
+			{
+				m_lock.readLock().unlock();
+			}
+
+			// Only the locations are taken under the lock. The inputs are sealed and only
+			// compaction closes them, so their frames can be copied without it; a key
+			// rewritten meanwhile is caught by its sequence number below.
+			Map<Key, Location> sources = new TreeMap<Key, Location>();
+			m_lock.readLock().lock();
+			try
+			{
+				for (Map.Entry<Key, Location> e : m_index.entrySet())
+				{
+					if (inputs.contains(e.getValue().segment))
+						sources.put(e.getKey(), e.getValue());
+				}
+			}
+			finally
+			{
+				m_lock.readLock().unlock();
+			}
+
+			File temp = new File(m_directory, segmentName(outputNumber) + TEMP_SUFFIX);
+			Map<Key, Location> moved = new HashMap<Key, Location>();
+			FileChannel out = new RandomAccessFile(temp, "rw").getChannel();
+			try
+			{
+				out.truncate(0);
+				for (Map.Entry<Key, Location> e : sources.entrySet())
+				{
+					Location l = e.getValue();
+					ByteBuffer payload = l.segment.read(l.offset, l.length);
+					int offset = writeFrame(out, out.size(), e.getKey(), l.sequence, l.format, payload);
+					moved.put(e.getKey(), new Location(null, l.sequence, offset, l.length, l.format));
+				}
+				out.force(true);
+			}
+			finally
+			{
+				out.close();
+			}
+
+			m_lock.writeLock().lock();
+			try
+			{
+				// Replacing the newest input is atomic, and the other inputs are deleted only
+				// after it. A crash before the move leaves every input and a stray .tmp; a
+				// crash after it leaves inputs whose frames the merged copies supersede or
+				// duplicate, which reloading sorts out by sequence number. Until the merged
+				// segment is open the inputs stay open and indexed, so a failure up to there
+				// leaves the store as it was.
+				File output = new File(m_directory, segmentName(outputNumber));
+				Segment merged;
+				try
+				{
+					Files.move(temp.toPath(), output.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+					merged = new Segment(outputNumber, output);
+					merged.size = merged.channel.size();
+					merged.sealed = true;
+				}
+				catch (IOException e)
+				{
+					temp.delete();
+					throw e;
+				}
+
+				for (Segment s : inputs)
+				{
+					s.channel.close();
+					m_segments.remove(s.number);
+				}
+				m_segments.put(outputNumber, merged);
+
+				for (Map.Entry<Key, Location> e : moved.entrySet())
+				{
+					Location current = m_index.get(e.getKey());
+					// Skip keys re-appended to the active segment while we were copying
+					if (current != null && current.sequence == e.getValue().sequence)
+					{
+						Location l = e.getValue();
+						index(e.getKey(), new Location(merged, l.sequence, l.offset, l.length, l.format));
+					}
+				}
+
+				// A leftover input only costs space; reloading sorts its frames out by sequence number
+				for (Segment s : inputs)
+				{
+					if (s.number != outputNumber && !s.file.delete())
+						System.err.println("Can't delete compacted segment " + s.file);
+				}
+			}
+			finally
+			{
+				m_lock.writeLock().unlock();
+			}
+		}
+	}
+
+	/**
+	 * Closes the segment files. The store can't be used afterwards.
+	 */
+	public void close() throws IOException
+	{
+		m_compactor.shutdown();
+		waitForLoad();
+		synchronized (m_compactionLock)
+		{
+			m_lock.writeLock().lock();
+			try
+			{
+				for (Segment s : m_segments.values())
+				{
+					s.channel.close();
+				}
+				m_segments.clear();
+				m_index.clear();
+				m_active = null;
+			}
+			finally
+			{
+				m_lock.writeLock().unlock();
+			}
+		}
+	}
+
+	private void append(String stationId, long time, short format, ByteBuffer payload) throws IOException
+	{
+		Key key = new Key(stationId, time);
+		boolean scheduleCompaction = false;
+
+		m_lock.writeLock().lock();
+		try
+		{
+			if (m_active == null || m_active.size >= m_segmentSize)
+			{
+				scheduleCompaction = roll();
+			}
+
+			long sequence = ++m_sequence;
+			int length = payload.remaining();
+			int offset = writeFrame(m_active.channel, m_active.size, key, sequence, format, payload);
+			m_active.size = m_active.channel.size();
+
+			index(key, new Location(m_active, sequence, offset, length, format));
+		}
+		finally
+		{
+			m_lock.writeLock().unlock();
+		}
+
+		if (scheduleCompaction)
+		{
+			m_compactor.execute(new Runnable() {
+				public void run()
+				{
+					try
+					{
+						compact();
+					}
+					catch (IOException e)
+					{
+						System.err.println(e);
+					}
+				}
+			});
+		}
+	}
+
+	/**
+	 * Seals the active segment and starts a new one. Must hold the write lock.
+	 * @return true if enough sealed segments need compacting to warrant a compaction
+	 */
+	private boolean roll() throws IOException
+	{
+		if (m_active != null)
+		{
+			m_active.channel.force(false);
+			m_active.sealed = true;
+		}
+		int number = (m_segments.isEmpty() ? 1 : m_segments.lastKey() + 1);
+		m_active = new Segment(number, new File(m_directory, segmentName(number)));
+		m_segments.put(number, m_active);
+
+		int candidates = 0;
+		for (Segment s : m_segments.values())
+		{
+			if (isCompactionCandidate(s))
+				candidates++;
+		}
+		if (candidates >= COMPACTION_THRESHOLD && !m_compactionPending)
+		{
+			m_compactionPending = true;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Points the index at a frame, keeping the live byte counts of the segments up to date.
+	 */
+	private void index(Key key, Location location)
+	{
+		Location previous = m_index.put(key, location);
+		if (previous != null)
+			previous.segment.liveBytes -= previous.length;
+		location.segment.liveBytes += location.length;
+	}
+
+	/**
+	 * A sealed segment is worth compacting if it is small or mostly superseded frames.
+	 */
+	private boolean isCompactionCandidate(Segment s)
+	{
+		return s.sealed && (s.size < m_segmentSize / 2 || s.liveBytes < s.size / 2);
+	}
+
+	/**
+	 * Writes a frame at a position in a channel.
+	 * @return the offset of the payload
+	 */
+	private static int writeFrame(FileChannel channel, long position, Key key, long sequence, short format, ByteBuffer payload) throws IOException
+	{
+		byte[] id = key.stationId.getBytes(UTF8);
+		int headerLength = align(28 + id.length);
+		int length = payload.remaining();
+
+		ByteBuffer header = ByteBuffer.allocate(headerLength);
+		header.putInt(FRAME_MAGIC);
+		header.putInt(length);
+		header.putLong(sequence);
+		header.putLong(key.time);
+		header.putShort(format);
+		header.putShort((short)id.length);
+		header.put(id);
+		header.position(0);
+
+		ByteBuffer padding = ByteBuffer.allocate(align(length) - length);
+		ByteBuffer[] parts = { header, payload.duplicate(), padding };
+		long p = position;
+		for (int i = 0; i < parts.length; i++)
+		{
+			while (parts[i].hasRemaining())
+				p += channel.write(parts[i], p);
+		}
+		return (int)(position + headerLength);
+	}
+
+	private SoundingData decode(Location location) throws IOException
+	{
+		ByteBuffer payload = location.segment.read(location.offset, location.length);
+		try
+		{
+			if (location.format == FORMAT_RECORD)
+				return new SoundingRecord(payload).toSoundingData();
+			if (location.format == FORMAT_COMPRESSED)
+				return SoundingCodec.decode(payload);
+			throw new IOException("Unknown sounding format " + location.format + " in " + location.segment.file);
+		}
+		catch (IllegalArgumentException e)
+		{
+			throw new IOException(location.segment.file + ": " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Reads every segment in the directory and rebuilds the index.
+	 */
+	private void load() throws IOException
+	{
+		File[] files = m_directory.listFiles();
+		if (files == null)
+			throw new IOException("Can't list sounding store " + m_directory);
+
+		// Settle interrupted compactions first, since one may supply a segment
+		for (int i = 0; i < files.length; i++)
+		{
+			if (files[i].getName().endsWith(TEMP_SUFFIX))
+			{
+				recoverCompaction(files[i]);
+			}
+		}
+
+		files = m_directory.listFiles();
+		if (files == null)
+			throw new IOException("Can't list sounding store " + m_directory);
+		for (int i = 0; i < files.length; i++)
+		{
+			String name = files[i].getName();
+			if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX))
+			{
+				int number = Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+				m_segments.put(number, new Segment(number, files[i]));
+			}
+		}
+
+		for (Segment s : m_segments.values())
+		{
+			scan(s);
+			s.sealed = true;
+		}
+
+		// Leave sealed segments alone; new frames go into a fresh segment
+		m_active = null;
+		Iterator<Segment> i = m_segments.values().iterator();
+		while (i.hasNext())
+		{
+			Segment s = i.next();
+			if (s.size == 0)
+			{
+				s.channel.close();
+				s.file.delete();
+				i.remove();
+			}
+		}
+	}
+
+	/**
+	 * Settles the output of a compaction that was interrupted. The output only replaces
+	 * the newest input, atomically, once it is complete; so while that input exists the
+	 * output is stray and is discarded. Without it, the output is kept, and scanning
+	 * truncates any damaged tail.
+	 */
+	private void recoverCompaction(File temp) throws IOException
+	{
+		File output = new File(m_directory, temp.getName().substring(0, temp.getName().length() - TEMP_SUFFIX.length()));
+		if (output.exists())
+		{
+			if (!temp.delete())
+				throw new IOException("Can't delete " + temp);
+		}
+		else
+		{
+			Files.move(temp.toPath(), output.toPath(), StandardCopyOption.ATOMIC_MOVE);
+		}
+	}
+
+	/**
+	 * Adds a segment's frames to the index. A partially written frame at the end of the
+	 * segment (from a crash mid-append) is truncated away.
+	 */
+	private void scan(Segment segment) throws IOException
+	{
+		long fileSize = segment.channel.size();
+		long position = 0;
+		ByteBuffer header = ByteBuffer.allocate(28);
+		while (position + 28 <= fileSize)
+		{
+			header.clear();
+			segment.channel.read(header, position);
+			header.flip();
+			if (header.getInt() != FRAME_MAGIC)
+				break;
+			int length = header.getInt();
+			long sequence = header.getLong();
+			long time = header.getLong();
+			short format = header.getShort();
+			short idLength = header.getShort();
+
+			int headerLength = align(28 + idLength);
+			if (length < 0 || idLength < 0 || position + headerLength + align(length) > fileSize)
+				break;
+
+			ByteBuffer id = ByteBuffer.allocate(idLength);
+			segment.channel.read(id, position + 28);
+			Key key = new Key(new String(id.array(), UTF8), time);
+
+			Location existing = m_index.get(key);
+			if (existing == null || existing.sequence < sequence)
+			{
+				index(key, new Location(segment, sequence, (int)(position + headerLength), length, format));
+			}
+			m_sequence = Math.max(m_sequence, sequence);
+			position += headerLength + align(length);
+		}
+
+		if (position < fileSize)
+		{
+			System.err.println("Truncating damaged tail of " + segment.file + " at " + position);
+			segment.channel.truncate(position);
+		}
+		segment.size = position;
+	}
+
+	private static String segmentName(int number)
+	{
+		return SEGMENT_PREFIX + String.format("%08d", number) + SEGMENT_SUFFIX;
+	}
+
+	private static int align(int offset)
+	{
+		return (offset + 7) & ~7;
+	}
+}
@@ -0,0 +1,200 @@
+package ca.ubc.cs.sanchom.AtmosView;
+
+/**
+ * The ingestion pass every parsed sounding goes through before it is stored or derived.
+ * It leaves a sounding the derived calculations can rely on: every level has a pressure,
+ * height, temperature and dewpoint, heights are ascending, and no two levels share a height.
+ *
+ * The checks are one pass over the columns, compacting in place. Values outside what the
+ * atmosphere can hold, such as the -9999 and 999.9 sentinels archives use for a missing
+ * value, are flagged by setting them to NaN; a level left without one of the four values
+ * the calculations need is dropped, while one missing only its wind is kept. The pass also
+ * notes whether the heights are ascending, so the sort only runs when they aren't, and
+ * then it is an adaptive merge that costs little on nearly sorted input. Levels at the
+ * same height are merged into the first, which takes any wind it was missing from the others.
+ * @author Sancho McCann
+ *
+ */
+public class SoundingValidator
+{
+	/**
+	 * @name Plausible ranges
+	 * Values outside these are taken to be sentinels or corrupt.
+	 */
+	//@{
+	public static final double MIN_MILLIBARS = 0; ///< Exclusive
+	public static final double MAX_MILLIBARS = 1100;
+	public static final double MIN_METRES = -500; ///< Below the Dead Sea
+	public static final double MAX_METRES = 60000; ///< Above where sounding balloons burst
+	public static final double MIN_TEMPERATURE = -150;
+	public static final double MAX_TEMPERATURE = 70;
+	public static final double MAX_DIRECTION = 360;
+	public static final double MAX_SPEED = 500;
+	//@}
+
+	private SoundingValidator()
+	{
+	}
+
+	/**
+	 * What a pass over a sounding found and changed.
+	 */
+	public static class Report
+	{
+		private int m_flagged = 0; ///< The number of values set to NaN
+		private int m_dropped = 0; ///< The number of levels removed for lack of a needed value
+		private int m_merged = 0; ///< The number of levels merged into another at the same height
+		private boolean m_reordered = false; ///< Whether the levels had to be sorted
+
+		/**
+		 * Returns the number of values flagged as missing because they were out of range
+		 */
+		public int getFlagged()
+		{
+			return m_flagged;
+		}
+
+		/**
+		 * Returns the number of levels dropped because they lacked a pressure, height,
+		 * temperature or dewpoint
+		 */
+		public int getDropped()
+		{
+			return m_dropped;
+		}
+
+		/**
+		 * Returns the number of levels merged into another at the same height
+		 */
+		public int getMerged()
+		{
+			return m_merged;
+		}
+
+		/**
+		 * Returns true if the levels were not in order of height
+		 */
+		public boolean isReordered()
+		{
+			return m_reordered;
+		}
+
+		/**
+		 * Returns true if the sounding needed no changes
+		 */
+		public boolean isClean()
+		{
+			return m_flagged == 0 && m_dropped == 0 && m_merged == 0 && !m_reordered;
+		}
+
+		public String toString()
+		{
+			return m_flagged + " value(s) flagged, " + m_dropped + " level(s) dropped, " +
+				m_merged + " level(s) merged" + (m_reordered ? ", reordered" : "");
+		}
+	}
+
+	/**
+	 * Cleans a sounding in place.
+	 * @param data the sounding
+	 * @return what was found and changed
+	 */
+	public static Report clean(SoundingData data)
+	{
+		Report report = new Report();
+		SoundingColumns levels = data.levels();
+		double[] millibars = levels.millibars();
+		double[] metres = levels.metres();
+		double[] temperature = levels.temperature();
+		double[] dewpoint = levels.dewpoint();
+		double[] direction = levels.direction();
+		double[] speed = levels.speed();
+
+		// Flag, compact and check the order in one pass
+		int size = levels.size();
+		int kept = 0;
+		boolean ascending = true;
+		for (int i = 0; i < size; i++)
+		{
+			double p = flag(millibars[i], Math.nextUp(MIN_MILLIBARS), MAX_MILLIBARS, report);
+			double h = flag(metres[i], MIN_METRES, MAX_METRES, report);
+			double t = flag(temperature[i], MIN_TEMPERATURE, MAX_TEMPERATURE, report);
+			double td = flag(dewpoint[i], MIN_TEMPERATURE, MAX_TEMPERATURE, report);
+			double dir = flag(direction[i], 0, MAX_DIRECTION, report);
+			double knots = flag(speed[i], 0, MAX_SPEED, report);
+			if (Double.isNaN(p) || Double.isNaN(h) || Double.isNaN(t) || Double.isNaN(td))
+			{
+				report.m_dropped++;
+				continue;
+			}
+			if (kept > 0 && h < metres[kept - 1])
+			{
+				ascending = false;
+			}
+			millibars[kept] = p;
+			metres[kept] = h;
+			temperature[kept] = t;
+			dewpoint[kept] = td;
+			direction[kept] = dir;
+			speed[kept] = knots;
+			kept++;
+		}
+		levels.setSize(kept);
+
+		if (!ascending)
+		{
+			report.m_reordered = levels.sortByMetres();
+			// Sorting replaces the columns
+			millibars = levels.millibars();
+			metres = levels.metres();
+			temperature = levels.temperature();
+			dewpoint = levels.dewpoint();
+			direction = levels.direction();
+			speed = levels.speed();
+		}
+
+		// Merge levels at the same height into the first of them
+		int unique = (kept > 0 ? 1 : 0);
+		for (int i = 1; i < kept; i++)
+		{
+			int last = unique - 1;
+			if (metres[i] == metres[last])
+			{
+				if (Double.isNaN(direction[last]) || Double.isNaN(speed[last]))
+				{
+					direction[last] = direction[i];
+					speed[last] = speed[i];
+				}
+				report.m_merged++;
+				continue;
+			}
+			millibars[unique] = millibars[i];
+			metres[unique] = metres[i];
+			temperature[unique] = temperature[i];
+			dewpoint[unique] = dewpoint[i];
+			direction[unique] = direction[i];
+			speed[unique] = speed[i];
+			unique++;
+		}
+		levels.setSize(unique);
+
+		data.levelsChanged();
+		return report;
+	}
+
+	/**
+	 * Returns a value, or NaN if it is outside a range, counting it as flagged.
+	 */
+	private static double flag(double value, double min, double max, Report report)
+	{
+		if (value >= min && value <= max)
+		{
+			return value;
+		}
+		if (!Double.isNaN(value))
+		{
+			report.m_flagged++;
+		}
+		return Double.NaN;
+	}
+}
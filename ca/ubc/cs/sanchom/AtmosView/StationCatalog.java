@@ -0,0 +1,156 @@
+package ca.ubc.cs.sanchom.AtmosView;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A local copy of the station list, so that it is available at startup without
+ * waiting on the server. The file is plain text: a header line holding the format
+ * version and the time the list was fetched, then one "id&lt;tab&gt;name" line per station.
+ * A file written in another format version is ignored.
+ * @author Sancho McCann
+ *
+ */
+public class StationCatalog
+{
+	private static final String HEADER = "AtmosView-stations"; ///< First word of the header line
+	private static final int FORMAT_VERSION = 1; ///< Bumped whenever the file layout changes
+
+	private final File m_file;
+	private TreeMap<String,String> m_stations = new TreeMap<String,String>(); ///< Map of station names to station ids
+	private long m_updated = 0; ///< When the stations were fetched, in milliseconds since the epoch, or 0 if never
+
+	/**
+	 * Constructor. Loads the catalog file if there is a usable one.
+	 * @param file the catalog file; it need not exist yet
+	 */
+	public StationCatalog(File file)
+	{
+		m_file = file;
+		try
+		{
+			load();
+		}
+		catch ( FileNotFoundException e )
+		{
+			// No catalog yet
+		}
+		catch ( IOException e )
+		{
+			System.err.println(e);
+		}
+	}
+
+	/**
+	 * Returns a copy of the map of station names to station ids; empty if the catalog was never saved
+	 */
+	public synchronized TreeMap<String,String> getStations()
+	{
+		return new TreeMap<String,String>(m_stations);
+	}
+
+	/**
+	 * Returns when the stations were fetched, in milliseconds since the epoch, or 0 if never
+	 */
+	public synchronized long getUpdated()
+	{
+		return m_updated;
+	}
+
+	/**
+	 * Replaces the stations and writes the catalog file. The file is written and synced
+	 * beside the old one, then atomically moved over it, so a crash leaves either the
+	 * old catalog or the new one.
+	 * @param stations map of station names to station ids
+	 * @param updated when the stations were fetched, in milliseconds since the epoch
+	 * @throws IOException if the file can't be written
+	 */
+	public synchronized void save(Map<String,String> stations, long updated) throws IOException
+	{
+		m_stations = new TreeMap<String,String>(stations);
+		m_updated = updated;
+
+		File parent = m_file.getAbsoluteFile().getParentFile();
+		if (parent != null && !parent.isDirectory() && !parent.mkdirs())
+		{
+			throw new IOException("Can't create directory " + parent);
+		}
+		File temp = new File(m_file.getPath() + ".tmp");
+		FileOutputStream file = new FileOutputStream(temp);
+		BufferedWriter out = new BufferedWriter(new OutputStreamWriter(file, StandardCharsets.UTF_8));
+		try
+		{
+			out.write(HEADER + " " + FORMAT_VERSION + " " + updated);
+			out.newLine();
+			for (Map.Entry<String,String> e : m_stations.entrySet())
+			{
+				out.write(e.getValue() + "\t" + e.getKey());
+				out.newLine();
+			}
+			out.flush();
+			file.getFD().sync();
+		}
+		finally
+		{
+			out.close();
+		}
+
+		try
+		{
+			Files.move(temp.toPath(), m_file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch (IOException e)
+		{
+			temp.delete();
+			throw e;
+		}
+	}
+
+	private synchronized void load() throws IOException
+	{
+		BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(m_file), StandardCharsets.UTF_8));
+		try
+		{
+			String header = in.readLine();
+			String[] fields = (header == null ? new String[0] : header.split(" "));
+			if (fields.length != 3 || !fields[0].equals(HEADER) || !fields[1].equals(Integer.toString(FORMAT_VERSION)))
+			{
+				throw new IOException("Unrecognized station catalog " + m_file);
+			}
+			long updated = Long.parseLong(fields[2]);
+
+			TreeMap<String,String> stations = new TreeMap<String,String>();
+			String line;
+			while ((line = in.readLine()) != null)
+			{
+				int tab = line.indexOf('\t');
+				if (tab > 0)
+				{
+					stations.put(line.substring(tab + 1), line.substring(0, tab));
+				}
+			}
+
+			m_stations = stations;
+			m_updated = updated;
+		}
+		catch ( NumberFormatException e )
+		{
+			throw new IOException("Unrecognized station catalog " + m_file);
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+}
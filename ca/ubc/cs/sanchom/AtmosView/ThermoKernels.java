@@ -0,0 +1,179 @@
+package ca.ubc.cs.sanchom.AtmosView;
+
+/**
+ * Batch versions of DerivedData's thermodynamic functions, over columns of doubles, for
+ * deriving a whole profile at once rather than a point at a time.
+ *
+ * Each kernel is one tight loop over primitive arrays with no calls out of it, and the
+ * powers are computed with the fast exp and log below in place of Math.pow. These are
+ * polynomial approximations after range reduction; the exp is within 1e-12 relative
+ * error, and the log within 1e-12 absolute, well inside the precision of the empirical
+ * formulas they serve. Arguments outside their reduced range go to java.lang.Math.
+ *
+ * With setExact(true) every kernel falls back to the scalar methods of DerivedData, and
+ * agrees with them exactly.
+ * @author Sancho McCann
+ *
+ */
+public final class ThermoKernels
+{
+	private static volatile boolean m_exact = false; ///< Whether the kernels defer to DerivedData's scalar methods
+
+	private static final double LN_10 = Math.log(10);
+	private static final double LOG2_E = 1 / Math.log(2);
+	private static final double SQRT_2 = Math.sqrt(2);
+
+	/**
+	 * @name ln 2
+	 * Split so that k * LN_2_HIGH is exact for the k of any double's exponent
+	 */
+	//@{
+	private static final double LN_2_HIGH = 6.93147180369123816490e-01;
+	private static final double LN_2_LOW = 1.90821492927058770002e-10;
+	private static final double LN_2 = LN_2_HIGH + LN_2_LOW;
+	//@}
+
+	/**
+	 * @name Bit patterns
+	 */
+	//@{
+	private static final long MANTISSA_MASK = 0x000FFFFFFFFFFFFFL;
+	private static final long ONE_BITS = 0x3FF0000000000000L; ///< The exponent bits of 1.0
+	private static final int EXPONENT_BIAS = 1023;
+	//@}
+
+	private ThermoKernels()
+	{
+	}
+
+	/**
+	 * Sets whether the kernels use DerivedData's scalar methods rather than the fast approximations
+	 */
+	public static void setExact(boolean exact)
+	{
+		m_exact = exact;
+	}
+
+	public static boolean isExact()
+	{
+		return m_exact;
+	}
+
+	/**
+	 * Returns e to the power x, within 1e-12 relative error.
+	 */
+	public static double exp(double x)
+	{
+		// Out of range of the reduction, or NaN
+		if (!(x >= -708 && x <= 709))
+		{
+			return Math.exp(x);
+		}
+
+		// x = k ln 2 + r, with |r| <= ln 2 / 2
+		double k = Math.rint(x * LOG2_E);
+		double r = (x - k * LN_2_HIGH) - k * LN_2_LOW;
+
+		// Taylor series to the tenth power; the remainder is below 3e-13
+		double p = 1 + r * (1 + r * (1.0 / 2 + r * (1.0 / 6 + r * (1.0 / 24 + r * (1.0 / 120 +
+				r * (1.0 / 720 + r * (1.0 / 5040 + r * (1.0 / 40320 + r * (1.0 / 362880 + r * (1.0 / 3628800))))))))));
+		return p * Double.longBitsToDouble(((long)k + EXPONENT_BIAS) << 52);
+	}
+
+	/**
+	 * Returns the natural log of x, within 1e-12 absolute error.
+	 */
+	public static double log(double x)
+	{
+		// Zero, subnormal, negative, infinite or NaN
+		if (!(x >= Double.MIN_NORMAL && x <= Double.MAX_VALUE))
+		{
+			return Math.log(x);
+		}
+
+		// x = 2^e m, with m within a factor of root two of one
+		long bits = Double.doubleToRawLongBits(x);
+		int e = (int)(bits >>> 52) - EXPONENT_BIAS;
+		double m = Double.longBitsToDouble((bits & MANTISSA_MASK) | ONE_BITS);
+		if (m > SQRT_2)
+		{
+			m /= 2;
+			e++;
+		}
+
+		// ln m = 2 atanh(s); |s| <= 0.172, so the series' remainder is below 5e-13
+		double s = (m - 1) / (m + 1);
+		double s2 = s * s;
+		double atanh = s * (1 + s2 * (1.0 / 3 + s2 * (1.0 / 5 + s2 * (1.0 / 7 + s2 * (1.0 / 9 + s2 * (1.0 / 11 + s2 * (1.0 / 13)))))));
+		return e * LN_2 + 2 * atanh;
+	}
+
+	/**
+	 * Computes the saturation vapour pressure of each temperature, as DerivedData.getVapourPressure.
+	 * @param temperature the temperatures in degrees celcius
+	 * @param vapourPressure receives the vapour pressures in millibars; may be temperature
+	 * @param from the first index
+	 * @param to one past the last index
+	 */
+	public static void getVapourPressure(double[] temperature, double[] vapourPressure, int from, int to)
+	{
+		if (m_exact)
+		{
+			for (int i = from; i < to; i++)
+			{
+				vapourPressure[i] = DerivedData.getVapourPressure(temperature[i]);
+			}
+			return;
+		}
+		for (int i = from; i < to; i++)
+		{
+			double t = temperature[i];
+			vapourPressure[i] = DerivedData.PRESSURE_COEFFICIENT * exp(LN_10 * 7.5 * t / (237.3 + t));
+		}
+	}
+
+	/**
+	 * Computes the mixing ratio at each pressure level, as DerivedData.getMixingRatio.
+	 * @param pressure the pressure levels in millibars
+	 * @param vapourPressure the vapour pressures in millibars
+	 * @param mixingRatio receives the mixing ratios in g/kg; may be either input
+	 * @param from the first index
+	 * @param to one past the last index
+	 */
+	public static void getMixingRatio(double[] pressure, double[] vapourPressure, double[] mixingRatio, int from, int to)
+	{
+		// Only arithmetic, so there is nothing to approximate
+		for (int i = from; i < to; i++)
+		{
+			mixingRatio[i] = DerivedData.getMixingRatio(pressure[i], vapourPressure[i]);
+		}
+	}
+
+	/**
+	 * Computes the temperature of a parcel moved dry adiabatically to each pressure level,
+	 * as DerivedData.getDryAdiabaticCooledTemperature.
+	 * @param initialPressure the parcel's starting pressure in millibars
+	 * @param initialTemp the parcel's starting temperature in degrees celcius
+	 * @param queryPressure the pressure levels of interest in millibars
+	 * @param temperature receives the temperatures in degrees celcius; may be queryPressure
+	 * @param from the first index
+	 * @param to one past the last index
+	 */
+	public static void getDryAdiabaticCooledTemperature(double initialPressure, double initialTemp, double[] queryPressure, double[] temperature, int from, int to)
+	{
+		if (m_exact)
+		{
+			for (int i = from; i < to; i++)
+			{
+				temperature[i] = DerivedData.getDryAdiabaticCooledTemperature(initialPressure, initialTemp, queryPressure[i]);
+			}
+			return;
+		}
+		double kelvin = DerivedData.toKelvin(initialTemp);
+		double logInitial = log(initialPressure);
+		for (int i = from; i < to; i++)
+		{
+			temperature[i] = DerivedData.toCelcius(kelvin * exp(DerivedData.KAPPA * (log(queryPressure[i]) - logInitial)));
+		}
+	}
+}
@@ -0,0 +1,436 @@
+package ca.ubc.cs.sanchom.AtmosView;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.GregorianCalendar;
+
+/**
+ * A streaming parser for the TEXT:LIST pages served by http://weather.uwyo.edu/cgi-bin/sounding.
+ * The page holds one block per sounding: an &lt;H2&gt; title naming the station and time,
+ * followed by a &lt;PRE&gt; table of fixed width columns between two dashed rules and a
+ * closing &lt;/PRE&gt;. Fields the station did not report are left blank.
+ *
+ * The parser works directly on the bytes of the stream. Each line is collected into a
+ * reused buffer and fed to a small state machine; table rows are sliced into their fixed
+ * width fields and parsed in place into a SoundingColumns, so nothing is allocated per row.
+ * Blank fields become NaN rather than causing the row to be dropped.
+ * @author Sancho McCann
+ *
+ */
+public class WyomingSoundingParser
+{
+	private static final int BUFFER_SIZE = 8192; ///< Bytes read from the stream at a time
+	private static final int FIELD_WIDTH = 7; ///< Width of each column of the table
+	private static final int MIN_RULE_LENGTH = 5; ///< Dashes needed for a line to count as a table rule
+
+	private static final String[] COLUMN_NAMES = { "PRES", "HGHT", "TEMP", "DWPT", "DRCT", "SKNT" }; ///< The columns read, in SoundingColumns order
+	private static final int[] DEFAULT_COLUMNS = { 0, 1, 2, 3, 6, 7 }; ///< Positions of COLUMN_NAMES in the usual layout
+	private static final String[] MONTHS = { "Jan", "Feb", "Mar", "Apr", "May", "Jun", "Jul", "Aug", "Sep", "Oct", "Nov", "Dec" };
+
+	/**
+	 * The states of the line parser
+	 */
+	private enum State
+	{
+		HEADER, ///< Before the table: reading the title, column names and rules
+		TABLE, ///< Between the second rule and the closing &lt;/PRE&gt;
+		END ///< The stream is exhausted
+	}
+
+	private final InputStream m_in;
+	private final byte[] m_buffer = new byte[BUFFER_SIZE];
+	private int m_position = 0; ///< Index of the next unread byte in m_buffer
+	private int m_limit = 0; ///< Index one past the last valid byte in m_buffer
+
+	private byte[] m_line = new byte[128]; ///< The current line, without its terminator
+	private ByteBuffer m_lineBuffer = ByteBuffer.wrap(m_line); ///< View of m_line for AsciiNumberParser
+	private int m_lineLength = 0;
+
+	private final int[] m_fieldStart = new int[COLUMN_NAMES.length]; ///< Start of each read column within a row
+	private final int[] m_fieldEnd = new int[COLUMN_NAMES.length]; ///< End of each read column within a row, or -1 if the table lacks it
+
+	private State m_state = State.HEADER;
+	private final SoundingColumns m_columns;
+	private int m_skippedRows = 0;
+	private String m_stationId = null;
+	private String m_stationName = null;
+	private GregorianCalendar m_time = null;
+	private boolean m_noData = false; ///< Whether the page said the server has no observations for the request
+
+	/**
+	 * Constructor
+	 * @param in the response stream; it is read as needed but not closed
+	 */
+	public WyomingSoundingParser(InputStream in)
+	{
+		this(in, new SoundingColumns());
+	}
+
+	/**
+	 * Constructor
+	 * @param in the response stream; it is read as needed but not closed
+	 * @param columns columns to fill, reused for each sounding
+	 */
+	public WyomingSoundingParser(InputStream in, SoundingColumns columns)
+	{
+		m_in = in;
+		m_columns = columns;
+	}
+
+	/**
+	 * Advances to the next sounding in the page.
+	 * @return true if a sounding table was read, false if the page holds no more
+	 * @throws IOException if the stream can't be read, or ends inside a table
+	 */
+	public boolean next() throws IOException
+	{
+		m_columns.clear();
+		m_skippedRows = 0;
+		m_stationId = null;
+		m_stationName = null;
+		m_time = null;
+		setDefaultLayout();
+
+		int rules = 0;
+		m_state = (m_state == State.END ? State.END : State.HEADER);
+		while (m_state != State.END)
+		{
+			if (!readLine())
+			{
+				// A table is only complete at its closing </PRE>; a page cut off inside one
+				// would otherwise pass for a sounding missing its upper levels
+				boolean truncated = (m_state == State.TABLE);
+				m_state = State.END;
+				if (truncated)
+					throw new IOException("Truncated sounding table" + (m_stationName == null ? "" : " for " + m_stationName));
+				return false;
+			}
+
+			int first = firstNonBlank();
+			switch (m_state)
+			{
+			case HEADER:
+				if (isRule(first))
+				{
+					if (++rules == 2)
+						m_state = State.TABLE;
+				}
+				else if (startsWithIgnoreCase(first, "<H2>"))
+				{
+					parseTitle(first + 4);
+				}
+				else if (startsWithIgnoreCase(first, "CAN'T GET"))
+				{
+					// "Can't get 71109 YZT Port Hardy Observations at 00Z 01 Jan 2006."
+					m_noData = true;
+				}
+				else if (rules == 1 && first < m_lineLength && m_line[first] != '<')
+				{
+					parseLayout();
+				}
+				break;
+
+			case TABLE:
+				if (first < m_lineLength && m_line[first] == '<')
+				{
+					// The closing </PRE> ends the table
+					m_state = State.HEADER;
+					return true;
+				}
+				if (first < m_lineLength)
+				{
+					parseRow();
+				}
+				break;
+
+			default:
+				break;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the levels of the current sounding. Fields that were blank are NaN.
+	 */
+	public SoundingColumns getColumns()
+	{
+		return m_columns;
+	}
+
+	/**
+	 * Returns the number of rows of the current table that were skipped because they had no pressure
+	 */
+	public int getSkippedRows()
+	{
+		return m_skippedRows;
+	}
+
+	/**
+	 * Returns whether the page said that the server has no observations for the request,
+	 * as opposed to holding no tables for some other reason, such as being an error page
+	 */
+	public boolean isNoDataReported()
+	{
+		return m_noData;
+	}
+
+	/**
+	 * Returns the station number from the title of the current sounding, or null if there was no title
+	 */
+	public String getStationId()
+	{
+		return m_stationId;
+	}
+
+	/**
+	 * Returns the station name and time from the title of the current sounding,
+	 * eg. "YZT Port Hardy at 00Z 01 Jan 2006", or null if there was no title
+	 */
+	public String getStationName()
+	{
+		return m_stationName;
+	}
+
+	/**
+	 * Returns the time from the title of the current sounding, or null if it couldn't be read
+	 */
+	public GregorianCalendar getTime()
+	{
+		return (m_time == null ? null : (GregorianCalendar)m_time.clone());
+	}
+
+	/**
+	 * Builds a SoundingData object from the current sounding. Levels missing any of
+	 * pressure, height, temperature or dewpoint are left out, since the derived
+	 * calculations can't use them; levels missing only wind are kept with NaN wind.
+	 * @param date_time the time of the sounding
+	 * @return the SoundingData, in the order the levels appeared
+	 */
+	public SoundingData toSoundingData(GregorianCalendar date_time)
+	{
+		SoundingData data = new SoundingData(date_time);
+		if (m_stationId != null)
+			data.setStationId(m_stationId);
+		if (m_stationName != null)
+			data.setStationName(m_stationName);
+		data.ensureCapacity(m_columns.size());
+		for (int i = 0; i < m_columns.size(); i++)
+		{
+			double millibars = m_columns.getMillibars(i);
+			double metres = m_columns.getMetres(i);
+			double temperature = m_columns.getTemperature(i);
+			double dewpoint = m_columns.getDewpoint(i);
+			if (Double.isNaN(millibars) || Double.isNaN(metres) || Double.isNaN(temperature) || Double.isNaN(dewpoint))
+				continue;
+			data.add(millibars, metres, temperature, dewpoint, m_columns.getDirection(i), m_columns.getSpeed(i));
+		}
+		return data;
+	}
+
+	/**
+	 * Reads the next line into m_line, dropping the line terminator.
+	 * @return false if the stream was already exhausted
+	 */
+	private boolean readLine() throws IOException
+	{
+		m_lineLength = 0;
+		while (true)
+		{
+			if (m_position == m_limit)
+			{
+				m_limit = m_in.read(m_buffer, 0, m_buffer.length);
+				m_position = 0;
+				if (m_limit <= 0)
+				{
+					m_limit = 0;
+					return m_lineLength > 0;
+				}
+			}
+
+			int start = m_position;
+			while (m_position < m_limit && m_buffer[m_position] != '\n')
+				m_position++;
+			append(start, m_position);
+
+			if (m_position < m_limit)
+			{
+				m_position++; // consume the '\n'
+				if (m_lineLength > 0 && m_line[m_lineLength - 1] == '\r')
+					m_lineLength--;
+				return true;
+			}
+		}
+	}
+
+	private void append(int start, int end)
+	{
+		int count = end - start;
+		if (m_lineLength + count > m_line.length)
+		{
+			byte[] grown = new byte[Math.max(m_line.length * 2, m_lineLength + count)];
+			System.arraycopy(m_line, 0, grown, 0, m_lineLength);
+			m_line = grown;
+			m_lineBuffer = ByteBuffer.wrap(m_line);
+		}
+		System.arraycopy(m_buffer, start, m_line, m_lineLength, count);
+		m_lineLength += count;
+	}
+
+	private int firstNonBlank()
+	{
+		int i = 0;
+		while (i < m_lineLength && (m_line[i] == ' ' || m_line[i] == '\t'))
+			i++;
+		return i;
+	}
+
+	private boolean isRule(int first)
+	{
+		int i = first;
+		while (i < m_lineLength && m_line[i] == '-')
+			i++;
+		return i - first >= MIN_RULE_LENGTH;
+	}
+
+	private boolean startsWithIgnoreCase(int offset, String prefix)
+	{
+		if (m_lineLength - offset < prefix.length())
+			return false;
+		for (int i = 0; i < prefix.length(); i++)
+		{
+			if (Character.toUpperCase((char)m_line[offset + i]) != prefix.charAt(i))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Slices a table row into its fields and appends it to the columns.
+	 */
+	private void parseRow()
+	{
+		double millibars = field(0);
+		if (Double.isNaN(millibars))
+		{
+			m_skippedRows++;
+			return;
+		}
+		m_columns.add(millibars, field(1), field(2), field(3), field(4), field(5));
+	}
+
+	private double field(int column)
+	{
+		int start = m_fieldStart[column];
+		int end = Math.min(m_fieldEnd[column], m_lineLength);
+		if (start >= end)
+			return Double.NaN;
+		return AsciiNumberParser.parse(m_lineBuffer, start, end);
+	}
+
+	private void setDefaultLayout()
+	{
+		for (int i = 0; i < COLUMN_NAMES.length; i++)
+		{
+			m_fieldStart[i] = DEFAULT_COLUMNS[i] * FIELD_WIDTH;
+			m_fieldEnd[i] = m_fieldStart[i] + FIELD_WIDTH;
+		}
+	}
+
+	/**
+	 * Reads the column names line. Names are right aligned in their columns, so each
+	 * column runs from the end of the previous name to the end of its own.
+	 */
+	private void parseLayout()
+	{
+		String line = new String(m_line, 0, m_lineLength, StandardCharsets.ISO_8859_1);
+		boolean found = false;
+		int[] start = new int[COLUMN_NAMES.length];
+		int[] end = new int[COLUMN_NAMES.length];
+		Arrays.fill(end, -1);
+
+		int previousEnd = 0;
+		int i = 0;
+		while (i < line.length())
+		{
+			while (i < line.length() && line.charAt(i) == ' ')
+				i++;
+			int tokenStart = i;
+			while (i < line.length() && line.charAt(i) != ' ')
+				i++;
+			if (i == tokenStart)
+				break;
+
+			String name = line.substring(tokenStart, i);
+			for (int c = 0; c < COLUMN_NAMES.length; c++)
+			{
+				if (COLUMN_NAMES[c].equals(name))
+				{
+					start[c] = previousEnd;
+					end[c] = i;
+					found = true;
+				}
+			}
+			previousEnd = i;
+		}
+
+		if (found)
+		{
+			System.arraycopy(start, 0, m_fieldStart, 0, start.length);
+			System.arraycopy(end, 0, m_fieldEnd, 0, end.length);
+		}
+	}
+
+	/**
+	 * Reads the station and time from a title such as
+	 * "71109 YZT Port Hardy Observations at 00Z 01 Jan 2006&lt;/H2&gt;".
+	 * @param offset the index just past the &lt;H2&gt; tag
+	 */
+	private void parseTitle(int offset)
+	{
+		String title = new String(m_line, offset, m_lineLength - offset, StandardCharsets.ISO_8859_1);
+		int close = title.toUpperCase().indexOf("</H2>");
+		if (close != -1)
+			title = title.substring(0, close);
+		title = title.trim();
+
+		int space = title.indexOf(' ');
+		if (space == -1)
+			return;
+		m_stationId = title.substring(0, space);
+
+		String name = title.substring(space + 1);
+		String obs = "Observations ";
+		int obsIndex = name.indexOf(obs);
+		if (obsIndex != -1)
+			name = name.substring(0, obsIndex) + name.substring(obsIndex + obs.length());
+		m_stationName = name;
+
+		// "at HHZ DD Mon YYYY"
+		int at = title.lastIndexOf(" at ");
+		if (at == -1)
+			return;
+		String[] fields = title.substring(at + 4).trim().split(" +");
+		if (fields.length != 4 || !fields[0].endsWith("Z"))
+			return;
+		try
+		{
+			int hour = Integer.parseInt(fields[0].substring(0, fields[0].length() - 1));
+			int day = Integer.parseInt(fields[1]);
+			int year = Integer.parseInt(fields[3]);
+			for (int month = 0; month < MONTHS.length; month++)
+			{
+				if (MONTHS[month].equalsIgnoreCase(fields[2]))
+				{
+					m_time = new GregorianCalendar(year, month, day, hour, 0);
+				}
+			}
+		}
+		catch ( NumberFormatException e )
+		{
+			// Leave the time unset
+		}
+	}
+}